@@ -0,0 +1,124 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.cpc;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.datasketches.memory.Memory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmarks of the update, union, serialize, heapify/wrap and query paths of the
+ * CpcSketch and CpcUnion, swept over lgK and the stream length.
+ *
+ * <p>Each benchmark method processes a whole stream or a whole group of sketches, so the
+ * per-item cost is the reported time (and the <i>gc.alloc.rate.norm</i> of the GC profiler)
+ * divided by <i>n</i>.</p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class CpcSketchBenchmark {
+
+  @Param({"10", "12", "14", "16"})
+  int lgK;
+
+  @Param({"1000", "100000", "1000000"})
+  int n;
+
+  @Param({"16"})
+  int numSketches;
+
+  private CpcSketch sketch;
+  private CpcSketch[] sketches;
+  private byte[] sketchBytes;
+  private Memory sketchMem;
+  private CpcWrapper wrapper;
+  private long key;
+
+  @Setup
+  public void setup() {
+    sketch = new CpcSketch(lgK);
+    for (int i = 0; i < n; i++) { sketch.update(key++); }
+    sketches = new CpcSketch[numSketches];
+    for (int s = 0; s < numSketches; s++) {
+      final CpcSketch sk = new CpcSketch(lgK);
+      final long start = (long) s * (n / 2); //each sketch overlaps half of the next one
+      for (long i = start; i < (start + n); i++) { sk.update(i); }
+      sketches[s] = sk;
+    }
+    sketchBytes = sketch.toByteArray();
+    sketchMem = Memory.wrap(sketchBytes);
+    wrapper = new CpcWrapper(sketchMem);
+  }
+
+  @Benchmark
+  public CpcSketch update() {
+    final CpcSketch sk = new CpcSketch(lgK);
+    for (int i = 0; i < n; i++) { sk.update(key++); }
+    return sk;
+  }
+
+  @Benchmark
+  public CpcSketch union() {
+    final CpcUnion union = new CpcUnion(lgK);
+    for (int s = 0; s < numSketches; s++) { union.update(sketches[s]); }
+    return union.getResult();
+  }
+
+  @Benchmark
+  public byte[] serialize() {
+    return sketch.toByteArray();
+  }
+
+  @Benchmark
+  public CpcSketch heapify() {
+    return CpcSketch.heapify(sketchMem);
+  }
+
+  @Benchmark
+  public CpcWrapper wrap() {
+    return new CpcWrapper(sketchMem);
+  }
+
+  @Benchmark
+  public double queryHeap() {
+    return sketch.getEstimate() + sketch.getUpperBound(2) + sketch.getLowerBound(2);
+  }
+
+  @Benchmark
+  public double queryWrapped() {
+    return wrapper.getEstimate() + wrapper.getUpperBound(2) + wrapper.getLowerBound(2);
+  }
+
+}
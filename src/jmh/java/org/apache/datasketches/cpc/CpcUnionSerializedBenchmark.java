@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.datasketches.cpc;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.datasketches.memory.Memory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmarks comparing the union of compressed CpcSketch images by heapifying each image,
+ * <code>CpcUnion.update(CpcSketch.heapify(mem))</code>, with decoding each image straight into
+ * the union, <code>CpcUnion.update(mem)</code>, swept over the number of unique items per image,
+ * which selects the flavor of the images.
+ *
+ * <p>Each benchmark method merges the same <i>numSketches</i> images into a union that already
+ * holds a bit matrix, so the per-sketch cost is the reported time divided by
+ * <i>numSketches</i>.</p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class CpcUnionSerializedBenchmark {
+
+  @Param({"12"})
+  int lgK;
+
+  //multiples of K: 1/16 is Sparse, 1/4 is Hybrid, 1 is Pinned and 32 is Sliding
+  @Param({"0.0625", "0.25", "1", "32"})
+  double nOverK;
+
+  @Param({"64"})
+  int numSketches;
+
+  private Memory[] images;
+  private CpcUnion union;
+
+  @Setup
+  public void setup() {
+    final int n = (int) (nOverK * (1 << lgK));
+    images = new Memory[numSketches];
+    long v = 0;
+    for (int s = 0; s < numSketches; s++) {
+      final CpcSketch sk = new CpcSketch(lgK);
+      for (int i = 0; i < n; i++) { sk.update(v++); }
+      images[s] = Memory.wrap(sk.toByteArray());
+    }
+    final CpcSketch big = new CpcSketch(lgK);
+    for (int i = 0; i < (32 << lgK); i++) { big.update(v++); }
+    union = new CpcUnion(lgK);
+    union.update(big);
+  }
+
+  @Benchmark
+  public CpcUnion heapifyAndUpdate() {
+    for (int s = 0; s < numSketches; s++) {
+      union.update(CpcSketch.heapify(images[s]));
+    }
+    return union;
+  }
+
+  @Benchmark
+  public CpcUnion updateMemory() {
+    for (int s = 0; s < numSketches; s++) {
+      union.update(images[s]);
+    }
+    return union;
+  }
+
+}
@@ -0,0 +1,164 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.frequencies;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.datasketches.ArrayOfLongsSerDe;
+import org.apache.datasketches.memory.Memory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmarks of the update, merge, serialize, heapify and query paths of the
+ * LongsSketch and ItemsSketch, swept over lgK (maxMapSize = 2<sup>lgK</sup>) and the stream
+ * length. The stream is log-uniformly distributed, so that a few items are very frequent.
+ *
+ * <p>Each benchmark method processes a whole stream or a whole group of sketches, so the
+ * per-item cost is the reported time (and the <i>gc.alloc.rate.norm</i> of the GC profiler)
+ * divided by <i>n</i>.</p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class FrequentItemsBenchmark {
+
+  @Param({"10", "12", "14"})
+  int lgK;
+
+  @Param({"1000", "100000", "1000000"})
+  int n;
+
+  @Param({"16"})
+  int numSketches;
+
+  private final ArrayOfLongsSerDe serDe = new ArrayOfLongsSerDe();
+  private long[] items;
+  private Long[] boxedItems;
+  private LongsSketch longsSketch;
+  private LongsSketch[] longsSketches;
+  private ItemsSketch<Long> itemsSketch;
+  private ItemsSketch<Long>[] itemsSketches;
+  private Memory longsMem;
+  private Memory itemsMem;
+
+  @Setup
+  @SuppressWarnings("unchecked")
+  public void setup() {
+    final Random rand = new Random(1);
+    items = new long[n];
+    boxedItems = new Long[n];
+    for (int i = 0; i < n; i++) {
+      items[i] = (long) Math.exp(rand.nextDouble() * Math.log(n));
+      boxedItems[i] = items[i];
+    }
+    longsSketch = new LongsSketch(1 << lgK);
+    itemsSketch = new ItemsSketch<>(1 << lgK);
+    for (int i = 0; i < n; i++) {
+      longsSketch.update(items[i]);
+      itemsSketch.update(boxedItems[i]);
+    }
+    longsSketches = new LongsSketch[numSketches];
+    itemsSketches = new ItemsSketch[numSketches];
+    for (int s = 0; s < numSketches; s++) {
+      longsSketches[s] = new LongsSketch(1 << lgK);
+      itemsSketches[s] = new ItemsSketch<>(1 << lgK);
+      for (int i = 0; i < n; i++) {
+        final int j = (i + s) % n; //shift the stream so that the sketches differ
+        longsSketches[s].update(items[j]);
+        itemsSketches[s].update(boxedItems[j]);
+      }
+    }
+    longsMem = Memory.wrap(longsSketch.toByteArray());
+    itemsMem = Memory.wrap(itemsSketch.toByteArray(serDe));
+  }
+
+  @Benchmark
+  public LongsSketch updateLongs() {
+    final LongsSketch sk = new LongsSketch(1 << lgK);
+    for (int i = 0; i < n; i++) { sk.update(items[i]); }
+    return sk;
+  }
+
+  @Benchmark
+  public ItemsSketch<Long> updateItems() {
+    final ItemsSketch<Long> sk = new ItemsSketch<>(1 << lgK);
+    for (int i = 0; i < n; i++) { sk.update(boxedItems[i]); }
+    return sk;
+  }
+
+  @Benchmark
+  public LongsSketch mergeLongs() {
+    final LongsSketch union = new LongsSketch(1 << lgK);
+    for (int s = 0; s < numSketches; s++) { union.merge(longsSketches[s]); }
+    return union;
+  }
+
+  @Benchmark
+  public ItemsSketch<Long> mergeItems() {
+    final ItemsSketch<Long> union = new ItemsSketch<>(1 << lgK);
+    for (int s = 0; s < numSketches; s++) { union.merge(itemsSketches[s]); }
+    return union;
+  }
+
+  @Benchmark
+  public byte[] serializeLongs() {
+    return longsSketch.toByteArray();
+  }
+
+  @Benchmark
+  public byte[] serializeItems() {
+    return itemsSketch.toByteArray(serDe);
+  }
+
+  @Benchmark
+  public LongsSketch heapifyLongs() {
+    return LongsSketch.getInstance(longsMem);
+  }
+
+  @Benchmark
+  public ItemsSketch<Long> heapifyItems() {
+    return ItemsSketch.getInstance(itemsMem, serDe);
+  }
+
+  @Benchmark
+  public LongsSketch.Row[] queryLongs() {
+    return longsSketch.getFrequentItems(ErrorType.NO_FALSE_NEGATIVES);
+  }
+
+  @Benchmark
+  public ItemsSketch.Row<Long>[] queryItems() {
+    return itemsSketch.getFrequentItems(ErrorType.NO_FALSE_NEGATIVES);
+  }
+
+}
@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.datasketches.hll;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.datasketches.memory.Memory;
+import org.apache.datasketches.memory.WritableMemory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmarks comparing per-item HllSketch updates with the batch update methods,
+ * swept over TgtHllType and the size of the batches the stream is delivered in.
+ *
+ * <p>Each benchmark method feeds the same <i>n</i> distinct values into a fresh sketch,
+ * so the per-item cost is the reported time divided by <i>n</i>.</p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class HllBatchUpdateBenchmark {
+
+  @Param({"12"})
+  int lgK;
+
+  @Param({"HLL_4", "HLL_6", "HLL_8"})
+  TgtHllType tgtHllType;
+
+  @Param({"4096", "65536"})
+  int batchSize;
+
+  @Param({"1048576"})
+  int n;
+
+  private long[] longs;
+  private double[] doubles;
+  private Memory mem;
+
+  @Setup
+  public void setup() {
+    longs = new long[n];
+    doubles = new double[n];
+    for (int i = 0; i < n; i++) {
+      longs[i] = i;
+      doubles[i] = i;
+    }
+    final WritableMemory wmem = WritableMemory.allocate(n << 3);
+    wmem.putLongArray(0, longs, 0, n);
+    mem = wmem;
+  }
+
+  @Benchmark
+  public HllSketch itemUpdateLongs() {
+    final HllSketch sk = new HllSketch(lgK, tgtHllType);
+    for (int i = 0; i < n; i++) { sk.update(longs[i]); }
+    return sk;
+  }
+
+  @Benchmark
+  public HllSketch batchUpdateLongs() {
+    final HllSketch sk = new HllSketch(lgK, tgtHllType);
+    for (int off = 0; off < n; off += batchSize) {
+      sk.batchUpdate(longs, off, Math.min(batchSize, n - off));
+    }
+    return sk;
+  }
+
+  @Benchmark
+  public HllSketch itemUpdateDoubles() {
+    final HllSketch sk = new HllSketch(lgK, tgtHllType);
+    for (int i = 0; i < n; i++) { sk.update(doubles[i]); }
+    return sk;
+  }
+
+  @Benchmark
+  public HllSketch batchUpdateDoubles() {
+    final HllSketch sk = new HllSketch(lgK, tgtHllType);
+    for (int off = 0; off < n; off += batchSize) {
+      sk.batchUpdate(doubles, off, Math.min(batchSize, n - off));
+    }
+    return sk;
+  }
+
+  @Benchmark
+  public HllSketch itemUpdateMemory() {
+    final HllSketch sk = new HllSketch(lgK, tgtHllType);
+    for (int i = 0; i < n; i++) { sk.update(mem.getLong((long) i << 3)); }
+    return sk;
+  }
+
+  @Benchmark
+  public HllSketch batchUpdateMemory() {
+    final HllSketch sk = new HllSketch(lgK, tgtHllType);
+    for (int off = 0; off < n; off += batchSize) {
+      sk.batchUpdate(mem, (long) off << 3, Math.min(batchSize, n - off));
+    }
+    return sk;
+  }
+
+}
@@ -0,0 +1,147 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.hll;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.datasketches.memory.Memory;
+import org.apache.datasketches.memory.WritableMemory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmarks of the update, union, serialize, heapify/wrap and query paths of the
+ * HllSketch and Union, swept over lgK, TgtHllType and the stream length.
+ *
+ * <p>Each benchmark method processes a whole stream or a whole group of sketches, so the
+ * per-item cost is the reported time (and the <i>gc.alloc.rate.norm</i> of the GC profiler)
+ * divided by <i>n</i>.</p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class HllSketchBenchmark {
+
+  @Param({"10", "12", "14", "16"})
+  int lgK;
+
+  @Param({"HLL_4", "HLL_6", "HLL_8"})
+  TgtHllType tgtHllType;
+
+  @Param({"1000", "100000", "1000000"})
+  int n;
+
+  @Param({"16"})
+  int numSketches;
+
+  private HllSketch sketch;
+  private HllSketch[] sketches;
+  private Memory updatableMem;
+  private Memory compactMem;
+  private HllSketch wrappedCompact;
+  private long key;
+
+  @Setup
+  public void setup() {
+    sketch = new HllSketch(lgK, tgtHllType);
+    for (int i = 0; i < n; i++) { sketch.update(key++); }
+    sketches = new HllSketch[numSketches];
+    for (int s = 0; s < numSketches; s++) {
+      final HllSketch sk = new HllSketch(lgK, tgtHllType);
+      final long start = (long) s * (n / 2); //each sketch overlaps half of the next one
+      for (long i = start; i < (start + n); i++) { sk.update(i); }
+      sketches[s] = sk;
+    }
+    updatableMem = Memory.wrap(sketch.toUpdatableByteArray());
+    compactMem = Memory.wrap(sketch.toCompactByteArray());
+    wrappedCompact = HllSketch.wrap(compactMem);
+  }
+
+  @Benchmark
+  public HllSketch updateHeap() {
+    final HllSketch sk = new HllSketch(lgK, tgtHllType);
+    for (int i = 0; i < n; i++) { sk.update(key++); }
+    return sk;
+  }
+
+  @Benchmark
+  public HllSketch updateDirect() {
+    final int bytes = HllSketch.getMaxUpdatableSerializationBytes(lgK, tgtHllType);
+    final HllSketch sk = new HllSketch(lgK, tgtHllType, WritableMemory.allocate(bytes));
+    for (int i = 0; i < n; i++) { sk.update(key++); }
+    return sk;
+  }
+
+  @Benchmark
+  public HllSketch union() {
+    final Union union = new Union(lgK);
+    for (int s = 0; s < numSketches; s++) { union.update(sketches[s]); }
+    return union.getResult(tgtHllType);
+  }
+
+  @Benchmark
+  public byte[] serializeUpdatable() {
+    return sketch.toUpdatableByteArray();
+  }
+
+  @Benchmark
+  public byte[] serializeCompact() {
+    return sketch.toCompactByteArray();
+  }
+
+  @Benchmark
+  public HllSketch heapifyUpdatable() {
+    return HllSketch.heapify(updatableMem);
+  }
+
+  @Benchmark
+  public HllSketch heapifyCompact() {
+    return HllSketch.heapify(compactMem);
+  }
+
+  @Benchmark
+  public HllSketch wrapCompact() {
+    return HllSketch.wrap(compactMem);
+  }
+
+  @Benchmark
+  public double queryHeap() {
+    return sketch.getEstimate() + sketch.getUpperBound(2) + sketch.getLowerBound(2);
+  }
+
+  @Benchmark
+  public double queryWrappedCompact() {
+    return wrappedCompact.getEstimate() + wrappedCompact.getUpperBound(2)
+        + wrappedCompact.getLowerBound(2);
+  }
+
+}
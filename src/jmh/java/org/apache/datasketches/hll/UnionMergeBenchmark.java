@@ -0,0 +1,97 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.datasketches.hll;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.datasketches.memory.WritableMemory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmarks comparing the eight-at-a-time register merge of the HLL Union with a merge
+ * that reads and updates one register at a time, swept over the TgtHllType of the source and
+ * whether the source is on or off heap. The target is always the HLL_8 union gadget.
+ *
+ * <p>Each benchmark method merges the same source, in HLL mode, into the same target, so the
+ * per-register cost is the reported time divided by <i>K</i>.</p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class UnionMergeBenchmark {
+
+  @Param({"12", "16"})
+  int lgK;
+
+  @Param({"HLL_4", "HLL_6", "HLL_8"})
+  TgtHllType srcHllType;
+
+  @Param({"false", "true"})
+  boolean srcDirect;
+
+  private HllSketch src;
+  private HllSketch tgt;
+
+  @Setup
+  public void setup() {
+    final int n = 32 << lgK;
+    src = srcDirect
+        ? new HllSketch(lgK, srcHllType, WritableMemory.allocate(
+            HllSketch.getMaxUpdatableSerializationBytes(lgK, srcHllType)))
+        : new HllSketch(lgK, srcHllType);
+    tgt = new HllSketch(lgK, TgtHllType.HLL_8);
+    for (int i = 0; i < n; i++) {
+      src.update(i);
+      tgt.update(-1L - i);
+    }
+  }
+
+  @Benchmark
+  public HllSketch swar() {
+    HllArrayMerge.merge(src, tgt, lgK, lgK);
+    return tgt;
+  }
+
+  @Benchmark
+  public HllSketch slotwise() {
+    final AbstractHllArray srcArr = (AbstractHllArray) src.hllSketchImpl;
+    final AbstractHllArray tgtArr = (AbstractHllArray) tgt.hllSketchImpl;
+    final int srcK = 1 << lgK;
+    for (int i = 0; i < srcK; i++) {
+      tgtArr.updateSlotNoKxQ(i, srcArr.getSlotValue(i));
+    }
+    return tgt;
+  }
+
+}
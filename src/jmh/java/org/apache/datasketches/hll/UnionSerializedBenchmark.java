@@ -0,0 +1,100 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.datasketches.hll;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.datasketches.memory.Memory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmarks comparing the union of serialized HllSketch images by wrapping each image,
+ * <code>Union.update(HllSketch.wrap(mem))</code>, with streaming each image straight into the
+ * union, <code>Union.update(mem)</code>, swept over the TgtHllType and form of the images.
+ *
+ * <p>Each benchmark method merges the same <i>numSketches</i> images, in HLL mode, into a union
+ * that is already in HLL mode, so the per-sketch cost is the reported time divided by
+ * <i>numSketches</i>.</p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class UnionSerializedBenchmark {
+
+  @Param({"12"})
+  int lgK;
+
+  @Param({"HLL_4", "HLL_6", "HLL_8"})
+  TgtHllType srcHllType;
+
+  @Param({"false", "true"})
+  boolean compact;
+
+  @Param({"64"})
+  int numSketches;
+
+  private Memory[] images;
+  private Union union;
+
+  @Setup
+  public void setup() {
+    final int n = 32 << lgK;
+    images = new Memory[numSketches];
+    long v = 0;
+    for (int s = 0; s < numSketches; s++) {
+      final HllSketch sk = new HllSketch(lgK, srcHllType);
+      for (int i = 0; i < n; i++) { sk.update(v++); }
+      images[s] = Memory.wrap(compact ? sk.toCompactByteArray() : sk.toUpdatableByteArray());
+    }
+    union = new Union(lgK);
+    union.update(images[0]);
+  }
+
+  @Benchmark
+  public Union wrapAndUpdate() {
+    for (int s = 0; s < numSketches; s++) {
+      union.update(HllSketch.wrap(images[s]));
+    }
+    return union;
+  }
+
+  @Benchmark
+  public Union updateMemory() {
+    for (int s = 0; s < numSketches; s++) {
+      union.update(images[s]);
+    }
+    return union;
+  }
+
+}
@@ -0,0 +1,113 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.datasketches.kll;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH scaling benchmark of KllFloatsSketch compaction, swept over the number of updating threads.
+ *
+ * <p>Each worker thread owns <i>keysPerThread</i> sketches, as in per-key aggregation, and feeds
+ * them <i>itemsPerThread</i> items round robin, so every sketch compacts many times. The work per
+ * thread is fixed, so with no shared state between sketches the reported time stays flat as
+ * <i>threads</i> grows, up to the number of cores.</p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class KllCompactionScalingBenchmark {
+
+  @Param({"20", "200"})
+  int k;
+
+  @Param({"1", "2", "4", "8", "16", "32"})
+  int threads;
+
+  @Param({"256"})
+  int keysPerThread;
+
+  @Param({"1048576"})
+  int itemsPerThread;
+
+  private ExecutorService pool;
+  private float[][] values; //one stream per thread
+
+  @Setup
+  public void setup() {
+    pool = Executors.newFixedThreadPool(threads);
+    values = new float[threads][itemsPerThread];
+    for (int t = 0; t < threads; t++) {
+      final SplittableRandom rand = new SplittableRandom(t);
+      for (int i = 0; i < itemsPerThread; i++) { values[t][i] = (float) rand.nextDouble(); }
+    }
+  }
+
+  @TearDown
+  public void tearDown() {
+    pool.shutdown();
+  }
+
+  @Benchmark
+  public long updatePerKeySketches() throws Exception {
+    final List<Future<Long>> futures = new ArrayList<>(threads);
+    for (int t = 0; t < threads; t++) {
+      final float[] stream = values[t];
+      futures.add(pool.submit(new Callable<Long>() {
+        @Override
+        public Long call() {
+          final KllFloatsSketch[] sketches = new KllFloatsSketch[keysPerThread];
+          for (int s = 0; s < keysPerThread; s++) { sketches[s] = new KllFloatsSketch(k); }
+          for (int i = 0; i < stream.length; i++) { sketches[i % keysPerThread].update(stream[i]); }
+          long retained = 0;
+          for (int s = 0; s < keysPerThread; s++) { retained += sketches[s].getNumRetained(); }
+          return retained;
+        }
+      }));
+    }
+    long retained = 0;
+    for (final Future<Long> f : futures) { retained += f.get(); }
+    return retained;
+  }
+
+}
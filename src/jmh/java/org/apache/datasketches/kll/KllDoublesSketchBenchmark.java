@@ -0,0 +1,133 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.kll;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.datasketches.memory.Memory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmarks of the update, merge, serialize, heapify and query paths of the
+ * KllDoublesSketch, swept over k and the stream length.
+ *
+ * <p>Each benchmark method processes a whole stream or a whole group of sketches, so the
+ * per-item cost is the reported time (and the <i>gc.alloc.rate.norm</i> of the GC profiler)
+ * divided by <i>n</i>.</p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class KllDoublesSketchBenchmark {
+
+  @Param({"100", "200", "800"})
+  int k;
+
+  @Param({"1000", "100000", "1000000"})
+  int n;
+
+  @Param({"16"})
+  int numSketches;
+
+  private double[] values;
+  private KllDoublesSketch sketch;
+  private KllDoublesSketch[] sketches;
+  private Memory sketchMem;
+  private double[] splitPoints;
+
+  @Setup
+  public void setup() {
+    final Random rand = new Random(1);
+    values = new double[n];
+    for (int i = 0; i < n; i++) { values[i] = rand.nextDouble(); }
+    sketch = new KllDoublesSketch(k);
+    for (int i = 0; i < n; i++) { sketch.update(values[i]); }
+    sketches = new KllDoublesSketch[numSketches];
+    for (int s = 0; s < numSketches; s++) {
+      sketches[s] = new KllDoublesSketch(k);
+      for (int i = 0; i < n; i++) { sketches[s].update(rand.nextDouble()); }
+    }
+    sketchMem = Memory.wrap(sketch.toByteArray());
+    splitPoints = new double[] {0.1, 0.25, 0.5, 0.75, 0.9};
+  }
+
+  @Benchmark
+  public KllDoublesSketch update() {
+    final KllDoublesSketch sk = new KllDoublesSketch(k);
+    for (int i = 0; i < n; i++) { sk.update(values[i]); }
+    return sk;
+  }
+
+  @Benchmark
+  public KllDoublesSketch merge() {
+    final KllDoublesSketch union = new KllDoublesSketch(k);
+    for (int s = 0; s < numSketches; s++) { union.merge(sketches[s]); }
+    return union;
+  }
+
+  @Benchmark
+  public byte[] serialize() {
+    return sketch.toByteArray();
+  }
+
+  @Benchmark
+  public KllDoublesSketch heapify() {
+    return KllDoublesSketch.heapify(sketchMem);
+  }
+
+  @Benchmark
+  public double queryQuantile() {
+    return sketch.getQuantile(0.5);
+  }
+
+  @Benchmark
+  public double queryRank() {
+    return sketch.getRank(0.5);
+  }
+
+  @Benchmark
+  public double[] queryCdf() {
+    return sketch.getCDF(splitPoints);
+  }
+
+  @Benchmark
+  public double queryRanksAfterUpdate() {
+    //one update followed by a burst of point queries: the sorted view is rebuilt once per burst
+    sketch.update(0.5);
+    double sum = 0;
+    for (int i = 0; i < splitPoints.length; i++) { sum += sketch.getRank(splitPoints[i]); }
+    return sum;
+  }
+
+}
@@ -0,0 +1,139 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.req;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.datasketches.memory.Memory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmarks of the single and bulk update, merge, serialize, heapify and query paths
+ * of the ReqSketch, swept over k and the stream length.
+ *
+ * <p>Each benchmark method processes a whole stream or a whole group of sketches, so the
+ * per-item cost is the reported time (and the <i>gc.alloc.rate.norm</i> of the GC profiler)
+ * divided by <i>n</i>.</p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ReqSketchBenchmark {
+
+  private static final int BATCH_SIZE = 4096;
+
+  @Param({"12", "50"})
+  int k;
+
+  @Param({"true", "false"})
+  boolean hra;
+
+  @Param({"1000", "100000", "1000000"})
+  int n;
+
+  @Param({"16"})
+  int numSketches;
+
+  private ReqSketchBuilder bldr;
+  private float[] values;
+  private ReqSketch sketch;
+  private ReqSketch[] sketches;
+  private Memory sketchMem;
+  private float[] splitPoints;
+
+  @Setup
+  public void setup() {
+    bldr = ReqSketch.builder().setK(k).setHighRankAccuracy(hra);
+    final Random rand = new Random(1);
+    values = new float[n];
+    for (int i = 0; i < n; i++) { values[i] = rand.nextFloat(); }
+    sketch = bldr.build();
+    for (int i = 0; i < n; i++) { sketch.update(values[i]); }
+    sketches = new ReqSketch[numSketches];
+    for (int s = 0; s < numSketches; s++) {
+      sketches[s] = bldr.build();
+      for (int i = 0; i < n; i++) { sketches[s].update(rand.nextFloat()); }
+    }
+    sketchMem = Memory.wrap(sketch.toByteArray());
+    splitPoints = new float[] {0.1f, 0.25f, 0.5f, 0.75f, 0.9f};
+  }
+
+  @Benchmark
+  public ReqSketch update() {
+    final ReqSketch sk = bldr.build();
+    for (int i = 0; i < n; i++) { sk.update(values[i]); }
+    return sk;
+  }
+
+  @Benchmark
+  public ReqSketch updateBulk() {
+    //the stream arrives in batches, as from a metrics scrape, compare with update
+    final ReqSketch sk = bldr.build();
+    for (int i = 0; i < n; i += BATCH_SIZE) { sk.update(values, i, Math.min(BATCH_SIZE, n - i)); }
+    return sk;
+  }
+
+  @Benchmark
+  public ReqSketch merge() {
+    final ReqSketch union = bldr.build();
+    for (int s = 0; s < numSketches; s++) { union.merge(sketches[s]); }
+    return union;
+  }
+
+  @Benchmark
+  public byte[] serialize() {
+    return sketch.toByteArray();
+  }
+
+  @Benchmark
+  public ReqSketch heapify() {
+    return ReqSketch.heapify(sketchMem);
+  }
+
+  @Benchmark
+  public float queryQuantile() {
+    return sketch.getQuantile(0.5);
+  }
+
+  @Benchmark
+  public double queryRank() {
+    return sketch.getRank(0.5f);
+  }
+
+  @Benchmark
+  public double[] queryCdf() {
+    return sketch.getCDF(splitPoints);
+  }
+
+}
@@ -0,0 +1,166 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.sampling;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.datasketches.ArrayOfLongsSerDe;
+import org.apache.datasketches.memory.Memory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmarks of the update, union, serialize, heapify and query paths of the
+ * ReservoirLongsSketch and VarOptItemsSketch, swept over lgK (k = 2<sup>lgK</sup>) and the
+ * stream length.
+ *
+ * <p>Each benchmark method processes a whole stream or a whole group of sketches, so the
+ * per-item cost is the reported time (and the <i>gc.alloc.rate.norm</i> of the GC profiler)
+ * divided by <i>n</i>.</p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class SamplingBenchmark {
+
+  @Param({"8", "10", "12"})
+  int lgK;
+
+  @Param({"1000", "100000", "1000000"})
+  int n;
+
+  @Param({"16"})
+  int numSketches;
+
+  private final ArrayOfLongsSerDe serDe = new ArrayOfLongsSerDe();
+  private long[] items;
+  private Long[] boxedItems;
+  private double[] weights;
+  private ReservoirLongsSketch reservoir;
+  private ReservoirLongsSketch[] reservoirs;
+  private VarOptItemsSketch<Long> varOpt;
+  private VarOptItemsSketch<Long>[] varOpts;
+  private Memory reservoirMem;
+  private Memory varOptMem;
+
+  @Setup
+  @SuppressWarnings("unchecked")
+  public void setup() {
+    final Random rand = new Random(1);
+    items = new long[n];
+    boxedItems = new Long[n];
+    weights = new double[n];
+    for (int i = 0; i < n; i++) {
+      items[i] = i;
+      boxedItems[i] = items[i];
+      weights[i] = 1.0 / (rand.nextDouble() + 1e-3); //heavy-tailed weights
+    }
+    reservoir = ReservoirLongsSketch.newInstance(1 << lgK);
+    varOpt = VarOptItemsSketch.newInstance(1 << lgK);
+    for (int i = 0; i < n; i++) {
+      reservoir.update(items[i]);
+      varOpt.update(boxedItems[i], weights[i]);
+    }
+    reservoirs = new ReservoirLongsSketch[numSketches];
+    varOpts = new VarOptItemsSketch[numSketches];
+    for (int s = 0; s < numSketches; s++) {
+      reservoirs[s] = ReservoirLongsSketch.newInstance(1 << lgK);
+      varOpts[s] = VarOptItemsSketch.newInstance(1 << lgK);
+      for (int i = 0; i < n; i++) {
+        reservoirs[s].update(items[i]);
+        varOpts[s].update(boxedItems[i], weights[i]);
+      }
+    }
+    reservoirMem = Memory.wrap(reservoir.toByteArray());
+    varOptMem = Memory.wrap(varOpt.toByteArray(serDe));
+  }
+
+  @Benchmark
+  public ReservoirLongsSketch updateReservoir() {
+    final ReservoirLongsSketch sk = ReservoirLongsSketch.newInstance(1 << lgK);
+    for (int i = 0; i < n; i++) { sk.update(items[i]); }
+    return sk;
+  }
+
+  @Benchmark
+  public VarOptItemsSketch<Long> updateVarOpt() {
+    final VarOptItemsSketch<Long> sk = VarOptItemsSketch.newInstance(1 << lgK);
+    for (int i = 0; i < n; i++) { sk.update(boxedItems[i], weights[i]); }
+    return sk;
+  }
+
+  @Benchmark
+  public ReservoirLongsSketch unionReservoir() {
+    final ReservoirLongsUnion union = ReservoirLongsUnion.newInstance(1 << lgK);
+    for (int s = 0; s < numSketches; s++) { union.update(reservoirs[s]); }
+    return union.getResult();
+  }
+
+  @Benchmark
+  public VarOptItemsSketch<Long> unionVarOpt() {
+    final VarOptItemsUnion<Long> union = VarOptItemsUnion.newInstance(1 << lgK);
+    for (int s = 0; s < numSketches; s++) { union.update(varOpts[s]); }
+    return union.getResult();
+  }
+
+  @Benchmark
+  public byte[] serializeReservoir() {
+    return reservoir.toByteArray();
+  }
+
+  @Benchmark
+  public byte[] serializeVarOpt() {
+    return varOpt.toByteArray(serDe);
+  }
+
+  @Benchmark
+  public ReservoirLongsSketch heapifyReservoir() {
+    return ReservoirLongsSketch.heapify(reservoirMem);
+  }
+
+  @Benchmark
+  public VarOptItemsSketch<Long> heapifyVarOpt() {
+    return VarOptItemsSketch.heapify(varOptMem, serDe);
+  }
+
+  @Benchmark
+  public long[] queryReservoir() {
+    return reservoir.getSamples();
+  }
+
+  @Benchmark
+  public SampleSubsetSummary queryVarOpt() {
+    return varOpt.estimateSubsetSum(item -> (item & 1L) == 0);
+  }
+
+}
@@ -0,0 +1,130 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.datasketches.theta;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH contention benchmark of the concurrent theta sketches: the buffered shared sketch with
+ * background propagation versus the compare-and-swap shared sketch, swept over the number of
+ * updating threads.
+ *
+ * <p>Each benchmark method has <i>threads</i> worker threads feed disjoint ranges of <i>n</i>
+ * distinct values in total into one fresh shared sketch and waits until all of them have been
+ * absorbed, so the per-item cost is the reported time divided by <i>n</i>.</p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConcurrentThetaContentionBenchmark {
+
+  @Param({"12"})
+  int lgK;
+
+  @Param({"4", "8", "16", "32", "64"})
+  int threads;
+
+  @Param({"4194304"})
+  int n;
+
+  private ExecutorService pool;
+
+  @Setup
+  public void setup() {
+    pool = Executors.newFixedThreadPool(threads);
+  }
+
+  @TearDown
+  public void tearDown() {
+    pool.shutdown();
+  }
+
+  @Benchmark
+  public double bufferedShared() throws Exception {
+    final UpdateSketchBuilder bldr = UpdateSketch.builder().setLogNominalEntries(lgK);
+    final UpdateSketch shared = bldr.buildShared();
+    run(new WorkerFactory() {
+      @Override
+      public UpdateSketch sketchForWorker() {
+        return bldr.buildLocal(shared);
+      }
+    });
+    ((ConcurrentSharedThetaSketch) shared).awaitBgPropagationTermination();
+    return shared.getEstimate();
+  }
+
+  @Benchmark
+  public double casShared() throws Exception {
+    final UpdateSketch shared = UpdateSketch.builder().setLogNominalEntries(lgK).buildSharedCas(null);
+    run(new WorkerFactory() {
+      @Override
+      public UpdateSketch sketchForWorker() {
+        return shared;
+      }
+    });
+    return shared.getEstimate();
+  }
+
+  private interface WorkerFactory {
+    //Called on the worker thread
+    UpdateSketch sketchForWorker();
+  }
+
+  private void run(final WorkerFactory factory) throws Exception {
+    final int perThread = n / threads;
+    final List<Future<?>> futures = new ArrayList<>(threads);
+    for (int t = 0; t < threads; t++) {
+      final long start = (long) t * perThread;
+      futures.add(pool.submit(new Callable<Void>() {
+        @Override
+        public Void call() {
+          final UpdateSketch sk = factory.sketchForWorker();
+          for (long i = start; i < (start + perThread); i++) { sk.update(i); }
+          return null;
+        }
+      }));
+    }
+    for (final Future<?> f : futures) { f.get(); }
+  }
+
+}
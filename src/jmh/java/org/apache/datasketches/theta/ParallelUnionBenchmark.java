@@ -0,0 +1,107 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.datasketches.theta;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.datasketches.memory.Memory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmarks comparing the sequential union of many ordered CompactSketches with
+ * {@link Union#unionAll(java.util.Collection, ForkJoinPool)}, swept over the number of sketches
+ * and the parallelism of the pool.
+ *
+ * <p>Each benchmark method unions all <i>numSketches</i> sketches, each of up to <i>n</i>
+ * overlapping items, so the per-sketch cost is the reported time divided by <i>numSketches</i>.
+ * Half of the sketches are on the heap and half are wrapped images in Memory.</p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ParallelUnionBenchmark {
+
+  @Param({"12"})
+  int lgK;
+
+  @Param({"10000", "100000"})
+  int numSketches;
+
+  @Param({"256"})
+  int n;
+
+  @Param({"1", "4", "16", "32"})
+  int parallelism;
+
+  private List<Sketch> sketches;
+  private ForkJoinPool pool;
+
+  @Setup
+  public void setup() {
+    sketches = new ArrayList<>(numSketches);
+    for (int s = 0; s < numSketches; s++) {
+      final UpdateSketch sk = UpdateSketch.builder().setNominalEntries(1 << lgK).build();
+      final long start = (long) s * (n / 2); //each sketch overlaps half of the next one
+      for (long i = start; i < (start + n); i++) { sk.update(i); }
+      sketches.add(((s & 1) == 0)
+          ? sk.compact(true, null)
+          : Sketch.wrap(Memory.wrap(sk.compact().toByteArray())));
+    }
+    pool = new ForkJoinPool(parallelism);
+  }
+
+  @TearDown
+  public void tearDown() {
+    pool.shutdown();
+  }
+
+  @Benchmark
+  public CompactSketch sequentialUnion() {
+    final Union union = SetOperation.builder().setNominalEntries(1 << lgK).buildUnion();
+    for (final Sketch sk : sketches) { union.union(sk); }
+    return union.getResult();
+  }
+
+  @Benchmark
+  public CompactSketch parallelUnion() {
+    final Union union = SetOperation.builder().setNominalEntries(1 << lgK).buildUnion();
+    union.unionAll(sketches, pool);
+    return union.getResult();
+  }
+
+}
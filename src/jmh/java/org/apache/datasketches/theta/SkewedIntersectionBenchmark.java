@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.datasketches.theta;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.datasketches.memory.Memory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmarks comparing the sequential intersection of ordered CompactSketches of very
+ * different sizes with the galloping {@link Intersection#intersectAll(java.util.Collection)},
+ * for sketches on the heap and sketches wrapped in Memory.
+ *
+ * <p>The inputs are one large dimension sketch of nominal entries 2^<i>lgK</i> in estimation
+ * mode, followed by <i>numFilters</i> exact filter sketches of <i>filterN</i> items each.
+ * Each benchmark method computes one whole intersection.</p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class SkewedIntersectionBenchmark {
+
+  @Param({"16", "20"})
+  int lgK;
+
+  @Param({"4"})
+  int numFilters;
+
+  @Param({"16", "256", "4096"})
+  int filterN;
+
+  private List<Sketch> heapSketches;
+  private List<Sketch> wrappedSketches;
+
+  @Setup
+  public void setup() {
+    heapSketches = new ArrayList<>();
+    wrappedSketches = new ArrayList<>();
+    final UpdateSketch large = UpdateSketch.builder().setNominalEntries(1 << lgK).build();
+    final long n = 4L << lgK;
+    for (long i = 0; i < n; i++) { large.update(i); }
+    add(large);
+    for (int f = 0; f < numFilters; f++) {
+      final UpdateSketch filter = UpdateSketch.builder().setNominalEntries(2 * filterN).build();
+      final long stride = n / filterN; //spread each filter over the domain of the large sketch
+      for (int i = 0; i < filterN; i++) { filter.update((i * stride) + f); }
+      add(filter);
+    }
+  }
+
+  private void add(final UpdateSketch sk) {
+    heapSketches.add(sk.compact(true, null));
+    wrappedSketches.add(Sketch.wrap(Memory.wrap(sk.compact(true, null).toByteArray())));
+  }
+
+  @Benchmark
+  public CompactSketch sequentialHeap() {
+    return sequential(heapSketches);
+  }
+
+  @Benchmark
+  public CompactSketch gallopingHeap() {
+    return SetOperation.builder().buildIntersection().intersectAll(heapSketches);
+  }
+
+  @Benchmark
+  public CompactSketch sequentialWrapped() {
+    return sequential(wrappedSketches);
+  }
+
+  @Benchmark
+  public CompactSketch gallopingWrapped() {
+    return SetOperation.builder().buildIntersection().intersectAll(wrappedSketches);
+  }
+
+  private static CompactSketch sequential(final List<Sketch> sketches) {
+    final Intersection inter = SetOperation.builder().buildIntersection();
+    for (final Sketch sk : sketches) { inter.intersect(sk); }
+    return inter.getResult();
+  }
+
+}
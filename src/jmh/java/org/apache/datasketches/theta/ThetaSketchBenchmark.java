@@ -0,0 +1,147 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.theta;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.datasketches.memory.Memory;
+import org.apache.datasketches.memory.WritableMemory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmarks of the update, union, serialize, heapify/wrap and query paths of the
+ * theta UpdateSketch and Union, swept over lgK and the stream length.
+ *
+ * <p>Each benchmark method processes a whole stream or a whole group of sketches, so the
+ * per-item cost is the reported time (and the <i>gc.alloc.rate.norm</i> of the GC profiler)
+ * divided by <i>n</i>.</p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ThetaSketchBenchmark {
+
+  @Param({"10", "12", "14", "16"})
+  int lgK;
+
+  @Param({"1000", "100000", "1000000"})
+  int n;
+
+  @Param({"16"})
+  int numSketches;
+
+  private UpdateSketchBuilder bldr;
+  private SetOperationBuilder setOpBldr;
+  private UpdateSketch sketch;
+  private CompactSketch[] compactSketches;
+  private Memory updatableMem;
+  private Memory compactMem;
+  private Sketch wrappedCompact;
+  private long key;
+
+  @Setup
+  public void setup() {
+    bldr = UpdateSketch.builder().setNominalEntries(1 << lgK);
+    setOpBldr = SetOperation.builder().setNominalEntries(1 << lgK);
+    sketch = bldr.build();
+    for (int i = 0; i < n; i++) { sketch.update(key++); }
+    compactSketches = new CompactSketch[numSketches];
+    for (int s = 0; s < numSketches; s++) {
+      final UpdateSketch sk = bldr.build();
+      final long start = (long) s * (n / 2); //each sketch overlaps half of the next one
+      for (long i = start; i < (start + n); i++) { sk.update(i); }
+      compactSketches[s] = sk.compact(true, null);
+    }
+    updatableMem = Memory.wrap(sketch.toByteArray());
+    compactMem = Memory.wrap(sketch.compact(true, null).toByteArray());
+    wrappedCompact = Sketch.wrap(compactMem);
+  }
+
+  @Benchmark
+  public UpdateSketch updateHeap() {
+    final UpdateSketch sk = bldr.build();
+    for (int i = 0; i < n; i++) { sk.update(key++); }
+    return sk;
+  }
+
+  @Benchmark
+  public UpdateSketch updateDirect() {
+    final UpdateSketch sk = bldr.build(WritableMemory.allocate(Sketch.getMaxUpdateSketchBytes(1 << lgK)));
+    for (int i = 0; i < n; i++) { sk.update(key++); }
+    return sk;
+  }
+
+  @Benchmark
+  public CompactSketch unionHeap() {
+    final Union union = setOpBldr.buildUnion();
+    for (int s = 0; s < numSketches; s++) { union.union(compactSketches[s]); }
+    return union.getResult();
+  }
+
+  @Benchmark
+  public byte[] serializeUpdatable() {
+    return sketch.toByteArray();
+  }
+
+  @Benchmark
+  public byte[] serializeCompact() {
+    return sketch.compact(true, null).toByteArray();
+  }
+
+  @Benchmark
+  public Sketch heapifyUpdatable() {
+    return Sketch.heapify(updatableMem);
+  }
+
+  @Benchmark
+  public Sketch heapifyCompact() {
+    return Sketch.heapify(compactMem);
+  }
+
+  @Benchmark
+  public Sketch wrapCompact() {
+    return Sketch.wrap(compactMem);
+  }
+
+  @Benchmark
+  public double queryHeap() {
+    return sketch.getEstimate() + sketch.getUpperBound(2) + sketch.getLowerBound(2);
+  }
+
+  @Benchmark
+  public double queryWrappedCompact() {
+    return wrappedCompact.getEstimate() + wrappedCompact.getUpperBound(2)
+        + wrappedCompact.getLowerBound(2);
+  }
+
+}
@@ -285,6 +285,42 @@ public final class HashOperations {
 
   //Other related methods
 
+  /**
+   * The same as {@link #hashSearchOrInsertMemory(WritableMemory, int, long, int)}, except that
+   * empty slots are claimed with an atomic compare-and-swap. Several threads may call this on the
+   * same table at once, as long as no thread removes or moves values while they do, and a given
+   * hash value is then inserted only once.
+   *
+   * @param wmem The <i>WritableMemory</i> that contains the hashTable to insert into.
+   * @param lgArrLongs The log_base2(hashTable.length).
+   * <a href="{@docRoot}/resources/dictionary.html#lgArrLongs">See lgArrLongs</a>.
+   * @param hash The hash value to be potentially inserted into an empty slot only if it is not
+   * a duplicate of any other hash value in the table. It must not be zero.
+   * @param memOffsetBytes offset in the <i>WritableMemory</i> where the hash array starts
+   * @return index &ge; 0 if found (duplicate); &lt; 0 if inserted, inserted at -(index + 1).
+   */
+  public static int hashSearchOrInsertMemoryAtomic(final WritableMemory wmem, final int lgArrLongs,
+      final long hash, final int memOffsetBytes) {
+    final int arrayMask = (1 << lgArrLongs) - 1; // current Size -1
+    final int stride = getStride(hash, lgArrLongs);
+    int curProbe = (int) (hash & arrayMask);
+    // search for duplicate or zero
+    final int loopIndex = curProbe;
+    do {
+      final int curProbeOffsetBytes = (curProbe << 3) + memOffsetBytes;
+      long curArrayHash = wmem.getLong(curProbeOffsetBytes);
+      if (curArrayHash == EMPTY) {
+        if (wmem.compareAndSwapLong(curProbeOffsetBytes, EMPTY, hash)) { return ~curProbe; }
+        // lost the race for this slot, see what the winner inserted
+        curArrayHash = wmem.getLong(curProbeOffsetBytes);
+      }
+      if (curArrayHash == hash) { return curProbe; } // curArrayHash is a duplicate
+      // curArrayHash is not a duplicate and not zero, continue searching
+      curProbe = (curProbe + stride) & arrayMask;
+    } while (curProbe != loopIndex);
+    throw new SketchesArgumentException("Key not found and no empty slot in table!");
+  }
+
   /**
    * @param thetaLong must be greater than zero otherwise throws an exception.
    * <a href="{@docRoot}/resources/dictionary.html#thetaLong">See Theta Long</a>
@@ -82,6 +82,7 @@ final class CompressedState {
   }
 
   static CompressedState compress(final CpcSketch source) {
+    if (source.wmem != null) { return compress(source.copy()); } //compresses a copy on the heap
     final short seedHash = computeSeedHash(source.seed);
     final CompressedState target = new CompressedState(source.lgK, seedHash);
     target.fiCol = source.fiCol;
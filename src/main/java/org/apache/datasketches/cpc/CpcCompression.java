@@ -28,6 +28,8 @@ import static org.apache.datasketches.cpc.CompressionData.lengthLimitedUnaryEnco
 import static org.apache.datasketches.cpc.PairTable.introspectiveInsertionSort;
 //import static org.apache.datasketches.cpc.RuntimeAsserts.rtAssertEquals;
 
+import java.util.Arrays;
+
 /**
  * @author Lee Rhodes
  * @author Kevin Lang
@@ -672,12 +674,7 @@ final class CpcCompression {
     else {
       assert numPairs > 0;
       assert source.csvStream != null;
-      final int[] pairs = uncompressTheSurprisingValues(source);
-      // undo the compressor's 8-column shift
-      for (int i = 0; i < numPairs; i++) {
-        assert (pairs[i] & 63) < 56;
-        pairs[i] += 8;
-      }
+      final int[] pairs = uncompressThePairsOfMatrix(source);
       final PairTable table = PairTable.newInstanceFromPairsArray(pairs, numPairs, srcLgK);
       target.pairTable = table;
     }
@@ -733,8 +730,32 @@ final class CpcCompression {
     else {
       assert (numPairs > 0);
       assert (source.csvStream != null);
-      final int[] pairs = uncompressTheSurprisingValues(source);
-      final int pseudoPhase = determinePseudoPhase(srcLgK, source.numCoupons); // NB
+      final int[] pairs = uncompressThePairsOfMatrix(source);
+      final PairTable table = PairTable.newInstanceFromPairsArray(pairs, numPairs, srcLgK);
+      target.pairTable = table;
+    }
+  }
+
+  /**
+   * Decodes the surprising values of the given source and undoes the column transformations of
+   * its flavor, so that the returned pairs are positions in the bit matrix of the source.
+   * For the Hybrid flavor these include the coupons of the window.
+   * @param source the given compressed source, which must have surprising values
+   * @return the array of rowCol pairs, which has source.numCsv entries
+   */
+  static int[] uncompressThePairsOfMatrix(final CompressedState source) {
+    final int[] pairs = uncompressTheSurprisingValues(source);
+    final int numPairs = source.numCsv;
+    final Flavor flavor = source.getFlavor();
+    if (flavor == Flavor.PINNED) {
+      // undo the compressor's 8-column shift
+      for (int i = 0; i < numPairs; i++) {
+        assert (pairs[i] & 63) < 56;
+        pairs[i] += 8;
+      }
+    }
+    else if (flavor == Flavor.SLIDING) {
+      final int pseudoPhase = determinePseudoPhase(source.lgK, source.numCoupons); // NB
       assert (pseudoPhase < 16);
       final byte[] permutation = columnPermutationsForDecoding[pseudoPhase];
 
@@ -751,10 +772,67 @@ final class CpcCompression {
         col = (col + (offset + 8)) & 63;
         pairs[i] = (row << 6) | col;
       }
+    }
+    return pairs;
+  }
 
-      final PairTable table = PairTable.newInstanceFromPairsArray(pairs, numPairs, srcLgK);
-      target.pairTable = table;
+  /**
+   * Decodes the compressed window of the given source straight into the given bit matrix, without
+   * building the window. Each byte is shifted to the window offset of the source and OR'ed into
+   * row (srcRow mod destK) of the matrix, which downsamples when destLgK &lt; srcLgK.
+   * @param matrix the given bit matrix of destK longs
+   * @param destLgK the log2 of the number of rows of the matrix
+   * @param source the given compressed source, which must be Pinned or Sliding
+   */
+  static void uncompressTheWindowIntoMatrix(final long[] matrix, final int destLgK,
+      final CompressedState source) {
+    final int srcLgK = source.lgK;
+    assert (destLgK <= srcLgK);
+    assert (source.cwStream != null);
+    final int srcK = 1 << srcLgK;
+    final int destMask = (1 << destLgK) - 1;
+    final int offset = source.getWindowOffset();
+    final short[] decodingTable = decodingTablesForHighEntropyByte[
+        determinePseudoPhase(srcLgK, source.numCoupons)];
+    final int[] compressedWords = source.cwStream;
+
+    int nextWordIndex = 0;
+    long bitBuf = 0;
+    int bufBits = 0;
+    for (int srcRow = 0; srcRow < srcK; srcRow++) {
+      if (bufBits < 12) { // Prepare for a 12-bit peek into the bitstream.
+        bitBuf |= ((compressedWords[nextWordIndex++] & 0XFFFF_FFFFL) << bufBits);
+        bufBits += 32;
+      }
+      final int lookup = decodingTable[(int) (bitBuf & 0XFFFL)] & 0XFFFF;
+      final int codeWordLength = lookup >>> 8;
+      matrix[srcRow & destMask] |= ((long) (lookup & 0XFF)) << offset;
+      bitBuf >>>= codeWordLength;
+      bufBits -= codeWordLength;
+    }
+    assert (nextWordIndex <= source.cwLengthInts);
+  }
+
+  /**
+   * Returns the full-size k-by-64 bit matrix of a Pinned or Sliding compressed source.
+   * This is the equivalent of CpcUtil.bitMatrixOfSketch(), but it does not build the sketch.
+   * @param source the given compressed source, which must be Pinned or Sliding
+   * @param pairs the pairs of the source from uncompressThePairsOfMatrix(), or null if none.
+   * @return the bit matrix as an array of longs.
+   */
+  static long[] uncompressToBitMatrix(final CompressedState source, final int[] pairs) {
+    final int srcLgK = source.lgK;
+    final long[] matrix = new long[1 << srcLgK];
+    //Fill the matrix with default rows in which the "early zone" is filled with ones.
+    Arrays.fill(matrix, (1L << source.getWindowOffset()) - 1L);
+    uncompressTheWindowIntoMatrix(matrix, srcLgK, source);
+    final int numPairs = (pairs == null) ? 0 : source.numCsv;
+    for (int i = 0; i < numPairs; i++) {
+      final int rowCol = pairs[i];
+      // Flip the specified matrix bit from its default value.
+      matrix[rowCol >>> 6] ^= (1L << (rowCol & 63));
     }
+    return matrix;
   }
 
   static CompressedState compress(final CpcSketch source, final CompressedState target) {
@@ -21,7 +21,6 @@ package org.apache.datasketches.cpc;
 
 import static java.lang.Math.log;
 import static java.lang.Math.sqrt;
-import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.apache.datasketches.Util.DEFAULT_UPDATE_SEED;
 import static org.apache.datasketches.Util.checkSeedHashes;
 import static org.apache.datasketches.Util.computeSeedHash;
@@ -30,12 +29,27 @@ import static org.apache.datasketches.Util.zeroPad;
 import static org.apache.datasketches.cpc.CpcUtil.bitMatrixOfSketch;
 import static org.apache.datasketches.cpc.CpcUtil.checkLgK;
 import static org.apache.datasketches.cpc.CpcUtil.countBitsSetInMatrix;
+import static org.apache.datasketches.cpc.PreambleUtil.HIP_FLAG_MASK;
+import static org.apache.datasketches.cpc.PreambleUtil.UPD_HIP_ACCUM_DOUBLE;
+import static org.apache.datasketches.cpc.PreambleUtil.UPD_KXP_DOUBLE;
+import static org.apache.datasketches.cpc.PreambleUtil.UPD_LG_SIZE_INTS_BYTE;
+import static org.apache.datasketches.cpc.PreambleUtil.UPD_NUM_COUPONS_INT;
+import static org.apache.datasketches.cpc.PreambleUtil.UPD_WINDOW_OFFSET_BYTE;
+import static org.apache.datasketches.cpc.PreambleUtil.UPD_WINDOW_START;
+import static org.apache.datasketches.cpc.PreambleUtil.WINDOW_FLAG_MASK;
+import static org.apache.datasketches.cpc.PreambleUtil.checkCapacity;
+import static org.apache.datasketches.cpc.PreambleUtil.checkUpdatablePreamble;
+import static org.apache.datasketches.cpc.PreambleUtil.getUpdatableBytes;
+import static org.apache.datasketches.cpc.PreambleUtil.isCompressed;
 import static org.apache.datasketches.hash.MurmurHash3.hash;
 
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 import org.apache.datasketches.Family;
+import org.apache.datasketches.memory.DefaultMemoryRequestServer;
 import org.apache.datasketches.memory.Memory;
+import org.apache.datasketches.memory.MemoryRequestServer;
 import org.apache.datasketches.memory.WritableMemory;
 
 /**
@@ -60,6 +74,13 @@ import org.apache.datasketches.memory.WritableMemory;
  *
  * <p>For additional security this sketch can be configured with a user-specified hash seed.
  *
+ * <p>A sketch may also be held in a WritableMemory, which can be off the Java heap, see
+ * {@link #CpcSketch(int, long, WritableMemory)} and {@link #writableWrap(WritableMemory, long)}.
+ * Such a sketch holds its sliding window and its table of surprising values in the Memory, and
+ * requests a larger Memory from the MemoryRequestServer of the Memory if the table outgrows it.
+ * The Memory is always kept up to date, so it can be wrapped again later. It must not be
+ * written by any other object while the sketch is in use.
+ *
  * @author Lee Rhodes
  * @author Kevin Lang
  */
@@ -86,6 +107,14 @@ public final class CpcSketch {
   double kxp;                  //used with HIP
   double hipEstAccum;          //used with HIP
 
+  //Non-null if this sketch is held in Memory. The variables above are then written through to
+  //the Memory, and slidingWindow is null as the window is held in the Memory.
+  WritableMemory wmem;
+  private MemoryRequestServer memReqSvr; //acquired on the first request for a larger Memory
+
+  //Reusable output of the update hash, so that the update path does not allocate.
+  private final long[] hashOut = new long[2];
+
   /**
    * Constructor with default log_base2 of k
    */
@@ -115,8 +144,109 @@ public final class CpcSketch {
   }
 
   /**
-   * Returns a copy of this sketch
-   * @return a copy of this sketch
+   * Constructs a new sketch with log_base2 of k and seed in the given WritableMemory, which must
+   * have at least {@link #getMinUpdatableBytes(int)} bytes.
+   * Any prior contents of the Memory are overwritten.
+   * @param lgK the given log_base2 of k
+   * @param seed the given seed
+   * @param dstMem the given WritableMemory, which may be off the Java heap.
+   * See {@link #getUpdatableStorageBytes(int)} for a size that is almost never outgrown.
+   */
+  public CpcSketch(final int lgK, final long seed, final WritableMemory dstMem) {
+    checkLgK(lgK);
+    checkCapacity(dstMem.getCapacity(), getMinUpdatableBytes(lgK));
+    this.lgK = lgK;
+    this.seed = seed;
+    wmem = dstMem;
+    PreambleUtil.putUpdatablePreamble(dstMem, lgK, computeSeedHash(seed));
+    reset();
+  }
+
+  //Wraps an existing UPDATABLE image
+  private CpcSketch(final WritableMemory srcMem, final long seed) {
+    checkUpdatablePreamble(srcMem, false);
+    checkSeedHashes(computeSeedHash(seed), PreambleUtil.getSeedHash(srcMem));
+    lgK = PreambleUtil.getLgK(srcMem);
+    this.seed = seed;
+    wmem = srcMem;
+    loadScalars(srcMem);
+    pairTable = (numCoupons == 0) ? null : new PairTable(this, false);
+  }
+
+  private void loadScalars(final Memory mem) {
+    numCoupons = mem.getInt(UPD_NUM_COUPONS_INT) & 0XFFFF_FFFFL;
+    mergeFlag = (PreambleUtil.getFlags(mem) & HIP_FLAG_MASK) == 0;
+    fiCol = PreambleUtil.getFiCol(mem);
+    windowOffset = mem.getByte(UPD_WINDOW_OFFSET_BYTE);
+    kxp = mem.getDouble(UPD_KXP_DOUBLE);
+    hipEstAccum = mem.getDouble(UPD_HIP_ACCUM_DOUBLE);
+  }
+
+  /**
+   * Wraps the given WritableMemory, which holds a sketch created with
+   * {@link #CpcSketch(int, long, WritableMemory)}, using the DEFAULT_UPDATE_SEED.
+   * Updates of the returned sketch are written to the Memory.
+   * @param srcMem the given WritableMemory
+   * @return a CpcSketch held in the given WritableMemory
+   */
+  public static CpcSketch writableWrap(final WritableMemory srcMem) {
+    return writableWrap(srcMem, DEFAULT_UPDATE_SEED);
+  }
+
+  /**
+   * Wraps the given WritableMemory, which holds a sketch created with
+   * {@link #CpcSketch(int, long, WritableMemory)}.
+   * Updates of the returned sketch are written to the Memory.
+   * @param srcMem the given WritableMemory
+   * @param seed the seed used to create the sketch held in the Memory.
+   * @return a CpcSketch held in the given WritableMemory
+   */
+  public static CpcSketch writableWrap(final WritableMemory srcMem, final long seed) {
+    return new CpcSketch(srcMem, seed);
+  }
+
+  /**
+   * Returns the minimum number of bytes of a WritableMemory that can hold a sketch, which are
+   * enough for the sliding window and a small table of surprising values.
+   * @param lgK the given value of lgK.
+   * @return the minimum number of bytes of a WritableMemory that can hold a sketch.
+   */
+  public static int getMinUpdatableBytes(final int lgK) {
+    checkLgK(lgK);
+    return (int) getUpdatableBytes(lgK, 2);
+  }
+
+  /**
+   * Returns a number of bytes of a WritableMemory that can hold a sketch of any number of
+   * unique items without requesting more Memory, except in extremely rare cases.
+   * It is about 1.5 * K bytes.
+   * @param lgK the given value of lgK.
+   * @return a number of bytes of a WritableMemory that is almost never outgrown by a sketch.
+   */
+  public static int getUpdatableStorageBytes(final int lgK) {
+    checkLgK(lgK);
+    return (int) getUpdatableBytes(lgK, Math.max(lgK - 3, 4));
+  }
+
+  /**
+   * Returns true if this sketch is held in a Memory, which may be on or off the Java heap.
+   * @return true if this sketch is held in a Memory.
+   */
+  public boolean hasMemory() {
+    return wmem != null;
+  }
+
+  /**
+   * Returns true if this sketch is held in a Memory off the Java heap.
+   * @return true if this sketch is held in a Memory off the Java heap.
+   */
+  public boolean isDirect() {
+    return (wmem != null) && wmem.isDirect();
+  }
+
+  /**
+   * Returns a copy of this sketch on the Java heap
+   * @return a copy of this sketch on the Java heap
    */
   CpcSketch copy() {
     final CpcSketch copy = new CpcSketch(lgK, seed);
@@ -125,7 +255,11 @@ public final class CpcSketch {
     copy.fiCol = fiCol;
 
     copy.windowOffset = windowOffset;
-    copy.slidingWindow = (slidingWindow == null) ? null : slidingWindow.clone();
+    if (wmem == null) {
+      copy.slidingWindow = (slidingWindow == null) ? null : slidingWindow.clone();
+    } else {
+      copy.slidingWindow = getWindowArr(); //already a copy
+    }
     copy.pairTable = (pairTable == null) ? null : pairTable.copy();
 
     copy.kxp = kxp;
@@ -250,10 +384,28 @@ public final class CpcSketch {
    * @return the given Memory as a CpcSketch on the Java heap.
    */
   public static CpcSketch heapify(final Memory mem, final long seed) {
+    if (!isCompressed(mem)) { return heapifyUpdatable(mem, seed); }
     final CompressedState state = CompressedState.importFromMemory(mem);
     return uncompress(state, seed);
   }
 
+  //Copies an UPDATABLE image to the heap
+  private static CpcSketch heapifyUpdatable(final Memory mem, final long seed) {
+    checkUpdatablePreamble(mem, false);
+    checkSeedHashes(computeSeedHash(seed), PreambleUtil.getSeedHash(mem));
+    final int lgK = PreambleUtil.getLgK(mem);
+    final CpcSketch sketch = new CpcSketch(lgK, seed);
+    sketch.loadScalars(mem);
+    if ((PreambleUtil.getFlags(mem) & WINDOW_FLAG_MASK) != 0) {
+      sketch.slidingWindow = new byte[1 << lgK];
+      mem.getByteArray(UPD_WINDOW_START, sketch.slidingWindow, 0, 1 << lgK);
+    }
+    if (sketch.numCoupons > 0) {
+      sketch.pairTable = PairTable.heapify(mem, lgK);
+    }
+    return sketch;
+  }
+
   /**
    * Return the given byte array as a CpcSketch on the Java heap.
    * @param byteArray the given byte array
@@ -287,6 +439,14 @@ public final class CpcSketch {
 
     kxp = 1 << lgK;
     hipEstAccum = 0;
+    if (wmem != null) {
+      PreambleUtil.putFiCol(wmem, 0);
+      PreambleUtil.putFlags(wmem, HIP_FLAG_MASK);
+      wmem.putInt(PreambleUtil.UPD_NUM_PAIRS_INT, 0);
+      wmem.putByte(UPD_WINDOW_OFFSET_BYTE, (byte) 0);
+      wmem.putByte(UPD_LG_SIZE_INTS_BYTE, (byte) 2);
+      putCouponState(this);
+    }
   }
 
   /**
@@ -307,8 +467,7 @@ public final class CpcSketch {
    * @param datum The given long datum.
    */
   public void update(final long datum) {
-    final long[] data = { datum };
-    final long[] arr = hash(data, seed);
+    final long[] arr = hash(datum, seed, hashOut);
     hashUpdate(arr[0], arr[1]);
   }
 
@@ -323,29 +482,39 @@ public final class CpcSketch {
    */
   public void update(final double datum) {
     final double d = (datum == 0.0) ? 0.0 : datum; // canonicalize -0.0, 0.0
-    final long[] data = { Double.doubleToLongBits(d) };// canonicalize all NaN forms
-    final long[] arr = hash(data, seed);
+    final long data = Double.doubleToLongBits(d);// canonicalize all NaN forms
+    final long[] arr = hash(data, seed, hashOut);
     hashUpdate(arr[0], arr[1]);
   }
 
   /**
    * Present the given String as a potential unique item.
-   * The string is converted to a byte array using UTF8 encoding.
+   * The string is hashed as its UTF-8 encoding, see {@link #update(CharSequence)}.
    * If the string is null or empty no update attempt is made and the method returns.
    *
-   * <p>Note: About 2X faster performance can be obtained by first converting the String to a
-   * char[] and updating the sketch with that. This bypasses the complexity of the Java UTF_8
-   * encoding. This, of course, will not produce the same internal hash values as updating directly
-   * with a String. So be consistent!  Unioning two sketches, one fed with strings and the other
-   * fed with char[] will be meaningless.
+   * <p>Note: updating with a String will not produce the same internal hash values as updating
+   * with the char[] of the String. So be consistent!  Unioning two sketches, one fed with strings
+   * and the other fed with char[] will be meaningless.
    * </p>
    *
    * @param datum The given String.
    */
   public void update(final String datum) {
-    if ((datum == null) || datum.isEmpty()) { return; }
-    final byte[] data = datum.getBytes(UTF_8);
-    final long[] arr = hash(data, seed);
+    update((CharSequence) datum);
+  }
+
+  /**
+   * Present the given CharSequence, such as a String or a StringBuilder, as a potential unique item.
+   * The UTF-8 encoding of the characters is streamed into the hash without creating a byte array,
+   * and produces the same result as {@link #update(byte[])} given the UTF-8 bytes of the
+   * CharSequence. So updating with a StringBuilder is the same as updating with its String.
+   * If the CharSequence is null or empty no update attempt is made and the method returns.
+   *
+   * @param datum The given CharSequence.
+   */
+  public void update(final CharSequence datum) {
+    if ((datum == null) || (datum.length() == 0)) { return; }
+    final long[] arr = hash(datum, seed, hashOut);
     hashUpdate(arr[0], arr[1]);
   }
 
@@ -357,7 +526,7 @@ public final class CpcSketch {
    */
   public void update(final byte[] data) {
     if ((data == null) || (data.length == 0)) { return; }
-    final long[] arr = hash(data, seed);
+    final long[] arr = hash(data, seed, hashOut);
     hashUpdate(arr[0], arr[1]);
   }
 
@@ -372,7 +541,7 @@ public final class CpcSketch {
    */
   public void update(final char[] data) {
     if ((data == null) || (data.length == 0)) { return; }
-    final long[] arr = hash(data, seed);
+    final long[] arr = hash(data, seed, hashOut);
     hashUpdate(arr[0], arr[1]);
   }
 
@@ -384,7 +553,7 @@ public final class CpcSketch {
    */
   public void update(final int[] data) {
     if ((data == null) || (data.length == 0)) { return; }
-    final long[] arr = hash(data, seed);
+    final long[] arr = hash(data, seed, hashOut);
     hashUpdate(arr[0], arr[1]);
   }
 
@@ -396,7 +565,41 @@ public final class CpcSketch {
    */
   public void update(final long[] data) {
     if ((data == null) || (data.length == 0)) { return; }
-    final long[] arr = hash(data, seed);
+    final long[] arr = hash(data, seed, hashOut);
+    hashUpdate(arr[0], arr[1]);
+  }
+
+  /**
+   * Present the given region of Memory as a potential unique item.
+   * The region is hashed in place, without copying or allocation, and produces the same result as
+   * {@link #update(byte[])} given a byte array with the same contents.
+   * If the Memory is null or the length is zero no update attempt is made and the method returns.
+   *
+   * @param mem the given Memory
+   * @param offsetBytes the offset in bytes of the region within the Memory
+   * @param lengthBytes the length in bytes of the region
+   */
+  public void update(final Memory mem, final long offsetBytes, final long lengthBytes) {
+    if ((mem == null) || (lengthBytes == 0)) { return; }
+    final long[] arr = hash(mem, offsetBytes, lengthBytes, seed, hashOut);
+    hashUpdate(arr[0], arr[1]);
+  }
+
+  /**
+   * Present the given region of a ByteBuffer as a potential unique item.
+   * The region is hashed in place, without copying or allocation, and produces the same result as
+   * {@link #update(byte[])} given a byte array with the same contents, regardless of the byte
+   * order of the ByteBuffer. The position and limit of the ByteBuffer are not changed.
+   * If the ByteBuffer is null or the length is zero no update attempt is made and the method
+   * returns.
+   *
+   * @param buf the given ByteBuffer
+   * @param offset the absolute index of the first byte of the region within the ByteBuffer
+   * @param length the length in bytes of the region
+   */
+  public void update(final ByteBuffer buf, final int offset, final int length) {
+    if ((buf == null) || (length == 0)) { return; }
+    final long[] arr = hash(buf, offset, length, seed, hashOut);
     hashUpdate(arr[0], arr[1]);
   }
 
@@ -434,17 +637,119 @@ public final class CpcSketch {
     if ((f == Flavor.HYBRID) || (f == Flavor.SPARSE)) {
       ordinal = 2 | ( mergeFlag ? 0 : 1 ); //Hybrid is serialized as SPARSE
     } else {
-      ordinal = ((slidingWindow != null) ? 4 : 0)
+      ordinal = (hasWindow() ? 4 : 0)
                | (((pairTable != null) && (pairTable.getNumPairs() > 0)) ? 2 : 0)
                | ( mergeFlag ? 0 : 1 );
     }
     return Format.ordinalToFormat(ordinal);
   }
 
+  /**
+   * Returns true if the sliding window is valid.
+   * @return true if the sliding window is valid.
+   */
+  boolean hasWindow() {
+    return (wmem == null) ? (slidingWindow != null)
+        : ((PreambleUtil.getFlags(wmem) & WINDOW_FLAG_MASK) != 0);
+  }
+
+  /**
+   * Returns the sliding window, or null if it is not valid.
+   * If the window is held in Memory, this returns a copy of it.
+   * @return the sliding window, or null if it is not valid.
+   */
+  byte[] getWindowArr() {
+    if (wmem == null) { return slidingWindow; }
+    if (!hasWindow()) { return null; }
+    final byte[] window = new byte[1 << lgK];
+    wmem.getByteArray(UPD_WINDOW_START, window, 0, window.length);
+    return window;
+  }
+
+  /**
+   * Makes sure that the Memory of this sketch has at least the given capacity, requesting a larger
+   * Memory from the MemoryRequestServer if needed. Called by the PairTable held in the Memory.
+   * A Memory without a MemoryRequestServer, such as one allocated on the heap, grows through the
+   * DefaultMemoryRequestServer.
+   * @param requiredBytes the required capacity in bytes
+   */
+  void ensureCapacity(final long requiredBytes) {
+    final long oldCapBytes = wmem.getCapacity();
+    if (requiredBytes <= oldCapBytes) { return; }
+    if (memReqSvr == null) {
+      memReqSvr = wmem.getMemoryRequestServer();
+      if (memReqSvr == null) { memReqSvr = new DefaultMemoryRequestServer(); }
+    }
+    final WritableMemory newWmem = memReqSvr.request(requiredBytes);
+    wmem.copyTo(0, newWmem, 0, oldCapBytes);
+    memReqSvr.requestClose(wmem, newWmem); //old wmem is now invalid
+    wmem = newWmem;
+  }
+
+  /**
+   * Writes a copy of the given sketch to the given WritableMemory.
+   * @param source the given sketch, which may be on the heap or in Memory
+   * @param dstMem the given WritableMemory
+   * @return the copy held in the given WritableMemory
+   */
+  static CpcSketch copyToMemory(final CpcSketch source, final WritableMemory dstMem) {
+    final CpcSketch sketch = new CpcSketch(source.lgK, source.seed, dstMem);
+    storeState(sketch, source);
+    return sketch;
+  }
+
+  /**
+   * Replaces the state of the given sketch held in Memory with the state of the given source.
+   * @param sketch the given sketch held in Memory
+   * @param source the given source, which may be on the heap or in another Memory
+   */
+  private static void storeState(final CpcSketch sketch, final CpcSketch source) {
+    final byte[] window = source.getWindowArr();
+    if (window != null) {
+      sketch.wmem.putByteArray(UPD_WINDOW_START, window, 0, window.length);
+    }
+    sketch.pairTable = null;
+    if (source.pairTable != null) {
+      final PairTable table = new PairTable(sketch, true);
+      final int[] slots = source.pairTable.getSlotsArr();
+      for (int i = 0; i < slots.length; i++) {
+        if (slots[i] != -1) { PairTable.maybeInsertInMemory(table, slots[i]); }
+      }
+      sketch.pairTable = table;
+    }
+    sketch.numCoupons = source.numCoupons;
+    sketch.mergeFlag = source.mergeFlag;
+    sketch.fiCol = source.fiCol;
+    sketch.windowOffset = source.windowOffset;
+    sketch.kxp = source.kxp;
+    sketch.hipEstAccum = source.hipEstAccum;
+    PreambleUtil.putFlags(sketch.wmem, (source.mergeFlag ? 0 : HIP_FLAG_MASK)
+        | ((window != null) ? WINDOW_FLAG_MASK : 0));
+    putWindowState(sketch);
+    putCouponState(sketch);
+  }
+
+  //Writes the variables that change with each new coupon through to the Memory.
+  private static void putCouponState(final CpcSketch sketch) {
+    final WritableMemory wmem = sketch.wmem;
+    wmem.putInt(UPD_NUM_COUPONS_INT, (int) sketch.numCoupons);
+    wmem.putDouble(UPD_KXP_DOUBLE, sketch.kxp);
+    wmem.putDouble(UPD_HIP_ACCUM_DOUBLE, sketch.hipEstAccum);
+  }
+
+  //Writes the variables that change when the window moves through to the Memory.
+  private static void putWindowState(final CpcSketch sketch) {
+    sketch.wmem.putByte(UPD_WINDOW_OFFSET_BYTE, (byte) sketch.windowOffset);
+    PreambleUtil.putFiCol(sketch.wmem, sketch.fiCol);
+    sketch.wmem.putDouble(UPD_KXP_DOUBLE, sketch.kxp);
+  }
+
   private static void promoteEmptyToSparse(final CpcSketch sketch) {
     assert sketch.numCoupons == 0;
     assert sketch.pairTable == null;
-    sketch.pairTable = new PairTable(2, 6 + sketch.lgK);
+    sketch.pairTable = (sketch.wmem == null)
+        ? new PairTable(2, 6 + sketch.lgK)
+        : new PairTable(sketch, true);
   }
 
   //In terms of flavor, this promotes SPARSE to HYBRID.
@@ -646,6 +951,54 @@ public final class CpcSketch {
     }
   }
 
+  /**
+   * The update path of a sketch held in Memory. It is kept apart from updateSparse() and
+   * updateWindowed(), so that the update path of a sketch on the heap does not check where the
+   * sketch is held. The rare promotion to HYBRID and moves of the window are done by the heap
+   * methods on a copy of the sketch, which is then stored back into the Memory.
+   * @param sketch the given sketch held in Memory
+   * @param rowCol the given rowCol
+   */
+  private static void updateInMemory(final CpcSketch sketch, final int rowCol) {
+    final int k = 1 << sketch.lgK;
+    final boolean isSparse = (sketch.numCoupons << 5) < (3L * k);
+    final int offset = sketch.windowOffset;
+    final int col = rowCol & 63;
+    final boolean isNovel;
+
+    if (isSparse) {
+      isNovel = PairTable.maybeInsertInMemory(sketch.pairTable, rowCol);
+    }
+    else if (col < offset) { // track the surprising 0's "before" the window
+      isNovel = PairTable.maybeDeleteInMemory(sketch.pairTable, rowCol); // inverted logic
+    }
+    else if (col < (offset + 8)) { // track the 8 bits inside the window
+      final long windowByteOffset = UPD_WINDOW_START + (rowCol >>> 6);
+      final byte oldBits = sketch.wmem.getByte(windowByteOffset);
+      final byte newBits = (byte) (oldBits | (1 << (col - offset)));
+      isNovel = newBits != oldBits;
+      if (isNovel) { sketch.wmem.putByte(windowByteOffset, newBits); }
+    }
+    else { // track the surprising 1's "after" the window
+      isNovel = PairTable.maybeInsertInMemory(sketch.pairTable, rowCol); // normal logic
+    }
+
+    if (isNovel) {
+      sketch.numCoupons += 1;
+      updateHIP(sketch, rowCol);
+      putCouponState(sketch);
+      final boolean promote = isSparse && ((sketch.numCoupons << 5) >= (3L * k));
+      final boolean moveWindow = !isSparse
+          && ((sketch.numCoupons << 3) >= ((27L + (offset << 3)) * k));
+      if (promote || moveWindow) {
+        final CpcSketch heapCopy = sketch.copy();
+        if (promote) { promoteSparseToWindowed(heapCopy); }
+        else { modifyOffset(heapCopy, offset + 1); }
+        storeState(sketch, heapCopy);
+      }
+    }
+  }
+
 
   //also used in test
   static CpcSketch uncompress(final CompressedState source, final long seed) {
@@ -680,7 +1033,8 @@ public final class CpcSketch {
     // It can't happen at all if lgK (or maxLgK) < 26.
     if (rowCol == -1) { rowCol ^= (1 << 6); } //set the LSB of row to 0
 
-    if ((c << 5) < (3L * k)) { updateSparse(this, rowCol); }
+    if (wmem != null) { updateInMemory(this, rowCol); }
+    else if ((c << 5) < (3L * k)) { updateSparse(this, rowCol); }
     else { updateWindowed(this, rowCol); }
   }
 
@@ -691,7 +1045,8 @@ public final class CpcSketch {
     final long c = numCoupons;
     if (c == 0) { promoteEmptyToSparse(this); }
     final long k = 1L << lgK;
-    if ((c << 5) < (3L * k)) { updateSparse(this, rowCol); }
+    if (wmem != null) { updateInMemory(this, rowCol); }
+    else if ((c << 5) < (3L * k)) { updateSparse(this, rowCol); }
     else { updateWindowed(this, rowCol); }
   }
 
@@ -725,7 +1080,8 @@ public final class CpcSketch {
     sb.append("  Num Coupons    : ").append(numCoupons).append(LS);
     sb.append("  Num Pairs (SV) : ").append(numPairs).append(LS);
     sb.append("  First Inter Col: ").append(fiCol).append(LS);
-    sb.append("  Valid Window   : ").append(slidingWindow != null).append(LS);
+    sb.append("  Valid Window   : ").append(hasWindow()).append(LS);
+    sb.append("  Held in Memory : ").append(wmem != null).append(LS);
     sb.append("  Valid PairTable: ").append(pairTable != null).append(LS);
     sb.append("  Window Offset  : ").append(windowOffset).append(LS);
     sb.append("  KxP            : ").append(kxp).append(LS);
@@ -735,12 +1091,13 @@ public final class CpcSketch {
       if (pairTable != null) {
         sb.append(pairTable.toString(true));
       }
-      if (slidingWindow != null) {
+      final byte[] window = getWindowArr();
+      if (window != null) {
         sb.append("SlidingWindow  : ").append(LS);
         sb.append("    Index Bits (lsb ->)").append(LS);
-        for (int i = 0; i < slidingWindow.length; i++) {
+        for (int i = 0; i < window.length; i++) {
 
-          final String bits = zeroPad(Integer.toBinaryString(slidingWindow[i] & 0XFF), 8);
+          final String bits = zeroPad(Integer.toBinaryString(window[i] & 0XFF), 8);
           sb.append(String.format("%9d %8s" + LS, i, bits));
         }
       }
@@ -20,14 +20,27 @@
 package org.apache.datasketches.cpc;
 
 import static org.apache.datasketches.Util.DEFAULT_UPDATE_SEED;
+import static org.apache.datasketches.Util.ceilingPowerOf2;
 import static org.apache.datasketches.Util.iGolden;
+import static org.apache.datasketches.Util.checkSeedHashes;
+import static org.apache.datasketches.Util.computeSeedHash;
+import static org.apache.datasketches.cpc.CpcUtil.checkLgK;
 import static org.apache.datasketches.cpc.CpcUtil.countBitsSetInMatrix;
 import static org.apache.datasketches.cpc.Flavor.EMPTY;
+import static org.apache.datasketches.cpc.Flavor.HYBRID;
+import static org.apache.datasketches.cpc.Flavor.PINNED;
 import static org.apache.datasketches.cpc.Flavor.SPARSE;
+import static org.apache.datasketches.cpc.PreambleUtil.MATRIX_FLAG_MASK;
+import static org.apache.datasketches.cpc.PreambleUtil.UNION_DATA_START;
+import static org.apache.datasketches.cpc.PreambleUtil.UNION_FLAG_MASK;
+import static org.apache.datasketches.cpc.PreambleUtil.checkCapacity;
+import static org.apache.datasketches.cpc.PreambleUtil.checkUpdatablePreamble;
 
 import org.apache.datasketches.Family;
 import org.apache.datasketches.SketchesArgumentException;
 import org.apache.datasketches.SketchesStateException;
+import org.apache.datasketches.memory.Memory;
+import org.apache.datasketches.memory.WritableMemory;
 
 /*
  * The merging logic is somewhat involved, so it will be summarized here.
@@ -79,10 +92,22 @@ import org.apache.datasketches.SketchesStateException;
  * bitMatrix back into a sketch, which requires doing some extra work to
  * figure out the values of numCoupons, offset, fiCol, and KxQ.
  *
+ * <p>A compressed image of a sketch is merged with the same cases, but its surprising values
+ * are decoded into an array of pairs, which is walked instead of the PairTable, and its window
+ * is decoded straight into the bitMatrix. A Hybrid image holds its window in its pairs.
+ *
+ * <p>A union held in WritableMemory follows the same logic. Its accumulator is a sketch held in
+ * the Memory after the preamble, and when it graduates the bitMatrix overwrites it in place.
+ * The Memory of such a union has a fixed size, because a SPARSE accumulator never needs more
+ * space than the bitMatrix.
  */
 /**
  * The union (merge) operation for the CPC sketches.
  *
+ * <p>A union can also be held in a WritableMemory, which may be off the Java heap, with
+ * {@link #CpcUnion(int, long, WritableMemory)}. Such a union can be wrapped again later with
+ * {@link #writableWrap(WritableMemory, long)}.
+ *
  * @author Lee Rhodes
  * @author Kevin Lang
  */
@@ -98,6 +123,10 @@ public class CpcUnion {
   private long[] bitMatrix;
   private CpcSketch accumulator; //can only be empty or sparse Flavor
 
+  // When non-null the union is held in this Memory. The bitMatrix field then stays null and the
+  // MATRIX flag of the preamble tells whether the Memory holds the bitMatrix or the accumulator.
+  private final WritableMemory wmem;
+
   /**
    * Construct this unioning object with the default LgK and the default update seed.
    */
@@ -125,6 +154,88 @@ public class CpcUnion {
     // We begin with the accumulator holding an EMPTY_MERGED sketch object.
     // As an optimization the accumulator could start as NULL, but that would require changes elsewhere.
     accumulator = new CpcSketch(lgK);
+    wmem = null;
+  }
+
+  /**
+   * Construct this unioning object with LgK and a given seed in the given WritableMemory, which
+   * must have at least {@link #getMaxUnionBytes(int)} bytes.
+   * Any prior contents of the Memory are overwritten.
+   * @param lgK The given log2 of K.
+   * @param seed The given seed.
+   * @param dstMem the given WritableMemory, which may be off the Java heap.
+   */
+  public CpcUnion(final int lgK, final long seed, final WritableMemory dstMem) {
+    checkLgK(lgK);
+    checkCapacity(dstMem.getCapacity(), getMaxUnionBytes(lgK));
+    this.seed = seed;
+    this.lgK = lgK;
+    bitMatrix = null;
+    wmem = dstMem;
+    PreambleUtil.putUnionPreamble(dstMem, lgK, computeSeedHash(seed));
+    accumulator = new CpcSketch(lgK, seed, getDataRegion());
+  }
+
+  //Wraps an existing UNION image
+  private CpcUnion(final WritableMemory srcMem, final long seed) {
+    checkUpdatablePreamble(srcMem, true);
+    checkSeedHashes(computeSeedHash(seed), PreambleUtil.getSeedHash(srcMem));
+    this.seed = seed;
+    lgK = PreambleUtil.getLgK(srcMem);
+    checkCapacity(srcMem.getCapacity(), getMaxUnionBytes(lgK));
+    bitMatrix = null;
+    wmem = srcMem;
+    accumulator = hasMatrix() ? null : CpcSketch.writableWrap(getDataRegion(), seed);
+  }
+
+  /**
+   * Wraps the given WritableMemory, which holds a union created with
+   * {@link #CpcUnion(int, long, WritableMemory)}, using the DEFAULT_UPDATE_SEED.
+   * Updates of the returned union are written to the Memory.
+   * @param srcMem the given WritableMemory
+   * @return a CpcUnion held in the given WritableMemory
+   */
+  public static CpcUnion writableWrap(final WritableMemory srcMem) {
+    return writableWrap(srcMem, DEFAULT_UPDATE_SEED);
+  }
+
+  /**
+   * Wraps the given WritableMemory, which holds a union created with
+   * {@link #CpcUnion(int, long, WritableMemory)}.
+   * Updates of the returned union are written to the Memory.
+   * @param srcMem the given WritableMemory
+   * @param seed the seed used to create the union held in the Memory.
+   * @return a CpcUnion held in the given WritableMemory
+   */
+  public static CpcUnion writableWrap(final WritableMemory srcMem, final long seed) {
+    return new CpcUnion(srcMem, seed);
+  }
+
+  /**
+   * Returns the number of bytes of a WritableMemory that can hold a union, which is the size of
+   * the bitMatrix of K longs plus 8 bytes of preamble.
+   * @param lgK the given value of lgK.
+   * @return the number of bytes of a WritableMemory that can hold a union.
+   */
+  public static int getMaxUnionBytes(final int lgK) {
+    checkLgK(lgK);
+    return UNION_DATA_START + (8 << lgK);
+  }
+
+  /**
+   * Returns true if this union is held in a Memory, which may be on or off the Java heap.
+   * @return true if this union is held in a Memory.
+   */
+  public boolean hasMemory() {
+    return wmem != null;
+  }
+
+  /**
+   * Returns true if this union is held in a Memory off the Java heap.
+   * @return true if this union is held in a Memory off the Java heap.
+   */
+  public boolean isDirect() {
+    return (wmem != null) && wmem.isDirect();
   }
 
   /**
@@ -135,6 +246,21 @@ public class CpcUnion {
     mergeInto(this, sketch);
   }
 
+  /**
+   * Update this union with the given Memory image of a CpcSketch. This is equivalent to
+   * <code>update(CpcSketch.heapify(srcMem, seed))</code>, but a compressed image, as produced by
+   * {@link CpcSketch#toByteArray()}, is decoded straight into this union without building the
+   * sliding window and PairTable of a sketch on the heap.
+   * @param srcMem the given Memory image of a CpcSketch, which is read-only.
+   */
+  public void update(final Memory srcMem) {
+    if (!PreambleUtil.isCompressed(srcMem)) {
+      mergeInto(this, CpcSketch.heapify(srcMem, seed));
+      return;
+    }
+    mergeCompressedInto(this, CompressedState.importFromMemory(srcMem));
+  }
+
   /**
    * Returns the result of union operations as a CPC sketch.
    * @return the result of union operations as a CPC sketch.
@@ -164,8 +290,8 @@ public class CpcUnion {
 
   //used for testing only
   long getNumCoupons() {
-    if (bitMatrix != null) {
-      return countBitsSetInMatrix(bitMatrix);
+    if (hasMatrix()) {
+      return countBitsSetInMatrix(getMatrixArr());
     }
     return accumulator.numCoupons;
   }
@@ -173,11 +299,66 @@ public class CpcUnion {
   //used for testing only
   static long[] getBitMatrix(final CpcUnion union) {
     checkUnionState(union);
-    return (union.bitMatrix != null)
-        ? union.bitMatrix
+    return union.hasMatrix()
+        ? union.getMatrixArr()
         : CpcUtil.bitMatrixOfSketch(union.accumulator);
   }
 
+  private boolean hasMatrix() {
+    return (wmem == null) ? (bitMatrix != null)
+        : ((PreambleUtil.getFlags(wmem) & MATRIX_FLAG_MASK) != 0);
+  }
+
+  //Returns the bitMatrix. If it is held in Memory, this returns a copy of it.
+  private long[] getMatrixArr() {
+    if (wmem == null) { return bitMatrix; }
+    final long[] matrix = new long[1 << lgK];
+    wmem.getLongArray(UNION_DATA_START, matrix, 0, matrix.length);
+    return matrix;
+  }
+
+  private WritableMemory getDataRegion() {
+    return wmem.writableRegion(UNION_DATA_START, wmem.getCapacity() - UNION_DATA_START);
+  }
+
+  //The accumulator of a union held in Memory is held in the data region of that Memory, which has
+  //room for any sketch that is still SPARSE, or that has just been promoted out of SPARSE by a walk.
+  //So the accumulator never requests a larger Memory, which would leave the union with a region
+  //that no longer holds the accumulator.
+  private boolean isAccumulatorInPlace() {
+    return (wmem == null) || (accumulator == null)
+        || accumulator.wmem.isSameResource(getDataRegion());
+  }
+
+  private void setLgK(final int newLgK) {
+    lgK = newLgK;
+    if (wmem != null) { PreambleUtil.putLgK(wmem, newLgK); }
+  }
+
+  //Replaces the accumulator with the given sketch, which must be EMPTY or SPARSE.
+  private void setAccumulator(final CpcSketch sketch) {
+    accumulator = (wmem == null) ? sketch : CpcSketch.copyToMemory(sketch, getDataRegion());
+    assert isAccumulatorInPlace();
+  }
+
+  //Replaces the accumulator with the bitMatrix of the given sketch.
+  private void graduate(final CpcSketch sketch) {
+    final long[] matrix = CpcUtil.bitMatrixOfSketch(sketch);
+    accumulator = null;
+    if (wmem == null) {
+      bitMatrix = matrix;
+    } else {
+      wmem.putLongArray(UNION_DATA_START, matrix, 0, matrix.length);
+      PreambleUtil.putFlags(wmem, UNION_FLAG_MASK | MATRIX_FLAG_MASK);
+    }
+  }
+
+  //ORs the given bits into the given row of the bitMatrix held in the Memory.
+  private static void orMemRow(final WritableMemory wmem, final int row, final long bits) {
+    final long offsetBytes = UNION_DATA_START + ((long) row << 3);
+    wmem.putLong(offsetBytes, wmem.getLong(offsetBytes) | bits);
+  }
+
   private static void walkTableUpdatingSketch(final CpcSketch dest, final PairTable table) {
     final int[] slots = table.getSlotsArr();
     final int numSlots = (1 << table.getLgSizeInts());
@@ -201,27 +382,77 @@ public class CpcUnion {
     }
   }
 
-  private static void orTableIntoMatrix(final long[] bitMatrix, final int destLgK, final PairTable table) {
+  private static void orTableIntoMatrix(final CpcUnion union, final PairTable table) {
     final int[] slots = table.getSlotsArr();
     final int numSlots = 1 << table.getLgSizeInts();
-    final int destMask = (1 << destLgK) - 1;  // downsamples when destlgK < srcLgK
+    final int destMask = (1 << union.lgK) - 1;  // downsamples when destlgK < srcLgK
+    final long[] bitMatrix = union.bitMatrix;
     for (int i = 0; i < numSlots; i++) {
       final int rowCol = slots[i];
       if (rowCol != -1) {
         final int col = rowCol & 63;
         final int row = rowCol >>> 6;
+        if (bitMatrix != null) {
+          bitMatrix[row & destMask] |= (1L << col); // Set the bit.
+        } else {
+          orMemRow(union.wmem, row & destMask, 1L << col);
+        }
+      }
+    }
+  }
+
+  private static void orPairsIntoMatrix(final CpcUnion union, final int[] pairs,
+      final int numPairs) {
+    final int destMask = (1 << union.lgK) - 1;  // downsamples when destlgK < srcLgK
+    final long[] bitMatrix = union.bitMatrix;
+    for (int i = 0; i < numPairs; i++) {
+      final int rowCol = pairs[i];
+      final int col = rowCol & 63;
+      final int row = rowCol >>> 6;
+      if (bitMatrix != null) {
         bitMatrix[row & destMask] |= (1L << col); // Set the bit.
+      } else {
+        orMemRow(union.wmem, row & destMask, 1L << col);
+      }
+    }
+  }
+
+  private static void walkPairsUpdatingSketch(final CpcSketch dest, final int[] pairs,
+      final int numPairs) {
+    final int destMask = (((1 << dest.lgK) - 1) << 6) | 63; //downsamples when destlgK < srcLgK
+
+    /* The pairs of a compressed image are sorted, and inserting them in that order into the
+     * linearly probed PairTable causes the
+     * <a href="{@docRoot}/resources/dictionary.html#SnowPlow">Snow Plow Effect</a>.
+     * As in walkTableUpdatingSketch, they are visited with the inverse golden ratio stride,
+     * here over the next power of two, skipping the indices past the end.
+     */
+    final int bound = ceilingPowerOf2(numPairs);
+    int stride = (int) (iGolden * bound);
+    if (stride == ((stride >>> 1) << 1)) { stride += 1; } //force the stride to be odd
+
+    for (int i = 0, j = 0; i < bound; i++, j += stride) {
+      j &= (bound - 1);
+      if (j < numPairs) {
+        dest.rowColUpdate(pairs[j] & destMask);
       }
     }
   }
 
-  private static void orWindowIntoMatrix(final long[] destMatrix, final int destLgK,
+  private static void orWindowIntoMatrix(final CpcUnion union,
       final byte[] srcWindow, final int srcOffset, final int srcLgK) {
-    assert (destLgK <= srcLgK);
-    final int destMask = (1 << destLgK) - 1;  // downsamples when destlgK < srcLgK
+    assert (union.lgK <= srcLgK);
+    final int destMask = (1 << union.lgK) - 1;  // downsamples when destlgK < srcLgK
     final int srcK = 1 << srcLgK;
-    for (int srcRow = 0; srcRow < srcK; srcRow++) {
-      destMatrix[srcRow & destMask] |= ((srcWindow[srcRow] & 0XFFL) << srcOffset);
+    final long[] destMatrix = union.bitMatrix;
+    if (destMatrix != null) {
+      for (int srcRow = 0; srcRow < srcK; srcRow++) {
+        destMatrix[srcRow & destMask] |= ((srcWindow[srcRow] & 0XFFL) << srcOffset);
+      }
+    } else {
+      for (int srcRow = 0; srcRow < srcK; srcRow++) {
+        orMemRow(union.wmem, srcRow & destMask, (srcWindow[srcRow] & 0XFFL) << srcOffset);
+      }
     }
   }
 
@@ -235,10 +466,40 @@ public class CpcUnion {
     }
   }
 
+  private static void orMatrixIntoMemMatrix(final WritableMemory wmem, final int destLgK,
+      final long[] srcMatrix, final int srcLgK) {
+    assert (destLgK <= srcLgK);
+    final int destMask = (1 << destLgK) - 1; // downsamples when destlgK < srcLgK
+    final int srcK = 1 << srcLgK;
+    for (int srcRow = 0; srcRow < srcK; srcRow++) {
+      orMemRow(wmem, srcRow & destMask, srcMatrix[srcRow]);
+    }
+  }
+
+  //Downsamples the bitMatrix held in the Memory in place. Each new row is the OR of old rows
+  //with the same index mod newK, which are never at a lower index than the new row.
+  private static void downsampleMemMatrix(final WritableMemory wmem, final int oldLgK,
+      final int newLgK) {
+    final int newK = 1 << newLgK;
+    final int oldK = 1 << oldLgK;
+    for (int row = 0; row < newK; row++) {
+      long bits = 0;
+      for (int oldRow = row; oldRow < oldK; oldRow += newK) {
+        bits |= wmem.getLong(UNION_DATA_START + ((long) oldRow << 3));
+      }
+      wmem.putLong(UNION_DATA_START + ((long) row << 3), bits);
+    }
+  }
+
   private static void reduceUnionK(final CpcUnion union, final int newLgK) {
     assert (newLgK < union.lgK);
 
-    if (union.bitMatrix != null) { // downsample the union's bit matrix
+    if (union.hasMatrix()) { // downsample the union's bit matrix
+      if (union.wmem != null) {
+        downsampleMemMatrix(union.wmem, union.lgK, newLgK);
+        union.setLgK(newLgK);
+        return;
+      }
       final int newK = 1 << newLgK;
       final long[] newMatrix = new long[newK];
 
@@ -251,8 +512,9 @@ public class CpcUnion {
       final CpcSketch oldSketch = union.accumulator;
 
       if (oldSketch.numCoupons == 0) {
-        union.accumulator = new CpcSketch(newLgK, oldSketch.seed);
-        union.lgK = newLgK;
+        union.accumulator = (union.wmem == null) ? new CpcSketch(newLgK, oldSketch.seed)
+            : new CpcSketch(newLgK, oldSketch.seed, union.getDataRegion());
+        union.setLgK(newLgK);
         return;
       }
 
@@ -263,15 +525,14 @@ public class CpcUnion {
       assert (finalNewFlavor != EMPTY); //SV table had to have something in it
 
       if (finalNewFlavor == SPARSE) {
-        union.accumulator = newSketch;
-        union.lgK = newLgK;
+        union.setAccumulator(newSketch);
+        union.setLgK(newLgK);
         return;
       }
 
       // the new sketch has graduated beyond sparse, so convert to bitMatrix
-      union.accumulator = null;
-      union.bitMatrix = CpcUtil.bitMatrixOfSketch(newSketch);
-      union.lgK = newLgK;
+      union.graduate(newSketch);
+      union.setLgK(newLgK);
     }
   }
 
@@ -291,48 +552,94 @@ public class CpcUnion {
 
     // if source is past SPARSE mode, make sure that union is a bitMatrix.
     if ((sourceFlavorOrd > 1) && (union.accumulator != null)) {
-      union.bitMatrix = CpcUtil.bitMatrixOfSketch(union.accumulator);
-      union.accumulator = null;
+      union.graduate(union.accumulator);
     }
 
-    final int state = ((sourceFlavorOrd - 1) << 1) | ((union.bitMatrix != null) ? 1 : 0);
+    final int state = ((sourceFlavorOrd - 1) << 1) | ((union.accumulator == null) ? 1 : 0);
     switch (state) {
       case 0 : { //A: Sparse, bitMatrix == null, accumulator valid
         if ((union.accumulator.getFlavor() == EMPTY) //lgtm [java/dereferenced-value-may-be-null]
             && (union.lgK == source.lgK)) {
-          union.accumulator = source.copy();
+          union.setAccumulator(source.copy());
           break;
         }
         walkTableUpdatingSketch(union.accumulator, source.pairTable);
+        assert union.isAccumulatorInPlace();
         // if the accumulator has graduated beyond sparse, switch union to a bitMatrix
         if (union.accumulator.getFlavor().ordinal() > 1) {
-          union.bitMatrix = CpcUtil.bitMatrixOfSketch(union.accumulator);
-          union.accumulator = null;
+          union.graduate(union.accumulator);
         }
         break;
       }
       case 1 : { //B: Sparse, bitMatrix valid, accumulator == null
-        orTableIntoMatrix(union.bitMatrix, union.lgK, source.pairTable);
+        orTableIntoMatrix(union, source.pairTable);
         break;
       }
       case 3 :   //C: Hybrid, bitMatrix valid, accumulator == null
       case 5 : { //C: Pinned, bitMatrix valid, accumulator == null
-        orWindowIntoMatrix(union.bitMatrix, union.lgK, source.slidingWindow,
-            source.windowOffset, source.lgK);
-        orTableIntoMatrix(union.bitMatrix, union.lgK, source.pairTable);
+        orWindowIntoMatrix(union, source.getWindowArr(), source.windowOffset, source.lgK);
+        orTableIntoMatrix(union, source.pairTable);
         break;
       }
       case 7 : { //D: Sliding, bitMatrix valid, accumulator == null
         // SLIDING mode involves inverted logic, so we can't just walk the source sketch.
         // Instead, we convert it to a bitMatrix that can be OR'ed into the destination.
         final long[] sourceMatrix = CpcUtil.bitMatrixOfSketch(source);
-        orMatrixIntoMatrix(union.bitMatrix, union.lgK, sourceMatrix, source.lgK);
+        if (union.wmem == null) {
+          orMatrixIntoMatrix(union.bitMatrix, union.lgK, sourceMatrix, source.lgK);
+        } else {
+          orMatrixIntoMemMatrix(union.wmem, union.lgK, sourceMatrix, source.lgK);
+        }
         break;
       }
       default: throw new SketchesStateException("Illegal Union state: " + state);
     }
   }
 
+  //The same cases as mergeInto, for a compressed source
+  private static void mergeCompressedInto(final CpcUnion union, final CompressedState source) {
+    checkSeedHashes(computeSeedHash(union.seed), source.seedHash);
+
+    final Flavor sourceFlavor = source.getFlavor();
+    if (sourceFlavor == EMPTY) { return; }
+    checkUnionState(union);
+
+    if (source.lgK < union.lgK) { reduceUnionK(union, source.lgK); }
+
+    // if source is past SPARSE mode, make sure that union is a bitMatrix.
+    if ((sourceFlavor != SPARSE) && (union.accumulator != null)) {
+      union.graduate(union.accumulator);
+    }
+
+    final int numPairs = source.numCsv;
+    final int[] pairs = (numPairs > 0) ? CpcCompression.uncompressThePairsOfMatrix(source) : null;
+    if ((sourceFlavor == SPARSE) || (sourceFlavor == HYBRID)) {
+      if (union.accumulator != null) { //A: the source is Sparse
+        walkPairsUpdatingSketch(union.accumulator, pairs, numPairs);
+        assert union.isAccumulatorInPlace();
+        // if the accumulator has graduated beyond sparse, switch union to a bitMatrix
+        if (union.accumulator.getFlavor().ordinal() > 1) {
+          union.graduate(union.accumulator);
+        }
+      } else { //B, and C for Hybrid, whose window is held in its pairs
+        orPairsIntoMatrix(union, pairs, numPairs);
+      }
+    }
+    else if ((sourceFlavor == PINNED) && (union.wmem == null)) { //C
+      CpcCompression.uncompressTheWindowIntoMatrix(union.bitMatrix, union.lgK, source);
+      orPairsIntoMatrix(union, pairs, numPairs);
+    }
+    else { //D, and C for a union held in Memory
+      // SLIDING mode involves inverted logic, so we build the bitMatrix of the source.
+      final long[] sourceMatrix = CpcCompression.uncompressToBitMatrix(source, pairs);
+      if (union.wmem == null) {
+        orMatrixIntoMatrix(union.bitMatrix, union.lgK, sourceMatrix, source.lgK);
+      } else {
+        orMatrixIntoMemMatrix(union.wmem, union.lgK, sourceMatrix, source.lgK);
+      }
+    }
+  }
+
   private static CpcSketch getResult(final CpcUnion union) {
     checkUnionState(union);
 
@@ -349,7 +656,7 @@ public class CpcUnion {
     } // end of case where union contains a sketch
 
     // start of case where union contains a bitMatrix
-    final long[] matrix = union.bitMatrix;
+    final long[] matrix = union.getMatrixArr();
     final int lgK = union.lgK;
     final CpcSketch result = new CpcSketch(union.lgK, union.seed);
 
@@ -420,15 +727,16 @@ public class CpcUnion {
       throw new SketchesStateException("union cannot be null");
     }
     final CpcSketch accumulator = union.accumulator;
-    if ( !((accumulator != null) ^ (union.bitMatrix != null)) ) {
+    final boolean matrixValid = union.hasMatrix();
+    if ( !((accumulator != null) ^ matrixValid) ) {
       throw new SketchesStateException(
         "accumulator and bitMatrix cannot be both valid or both null: "
         + "accumValid = " + (accumulator != null)
-        + ", bitMatrixValid = " + (union.bitMatrix != null));
+        + ", bitMatrixValid = " + matrixValid);
     }
     if (accumulator != null) { //must be SPARSE or EMPTY
       if (accumulator.numCoupons > 0) { //SPARSE
-        if ( !((accumulator.slidingWindow == null) && (accumulator.pairTable != null)) ) {
+        if ( !(!accumulator.hasWindow() && (accumulator.pairTable != null)) ) {
           throw new SketchesStateException(
               "Non-empty union accumulator must be SPARSE: " + accumulator.getFlavor());
         }
@@ -89,7 +89,7 @@ final class CpcUtil {
     final long defaultRow = (1L << offset) - 1L;
     Arrays.fill(matrix, defaultRow);
 
-    final byte[] window = sketch.slidingWindow;
+    final byte[] window = sketch.getWindowArr(); //a copy if the sketch is held in Memory
     if (window != null) { // In other words, we are in window mode, not sparse mode.
       for (int i = 0; i < k; i++) { // set the window bits, trusting the sketch's current offset.
         matrix[i] |= ((window[i] & 0XFFL) << offset);
@@ -19,6 +19,9 @@
 
 package org.apache.datasketches.cpc;
 
+import static org.apache.datasketches.cpc.PreambleUtil.UPD_LG_SIZE_INTS_BYTE;
+import static org.apache.datasketches.cpc.PreambleUtil.UPD_NUM_PAIRS_INT;
+import static org.apache.datasketches.cpc.PreambleUtil.UPD_WINDOW_START;
 import static org.apache.datasketches.cpc.RuntimeAsserts.rtAssert;
 import static org.apache.datasketches.cpc.RuntimeAsserts.rtAssertEquals;
 
@@ -26,9 +29,13 @@ import java.util.Arrays;
 
 import org.apache.datasketches.SketchesArgumentException;
 import org.apache.datasketches.SketchesStateException;
+import org.apache.datasketches.memory.Memory;
 
 /**
- * Note: Definition of
+ * The slots of a PairTable are held either in an int array on the Java heap, or in the
+ * WritableMemory of the host CpcSketch, following its sliding window.
+ *
+ * <p>Note: Definition of
  * <a href="{@docRoot}/resources/dictionary.html#SnowPlow">Snow Plow Effect</a>.
  * @author Lee Rhodes
  * @author Kevin Lang
@@ -43,7 +50,9 @@ final class PairTable {
   private int lgSizeInts;
   private final int validBits;
   private int numPairs;
-  private int[] slotsArr;
+  private int[] slotsArr; //null if the slots are held in the Memory of the host
+  private final CpcSketch host; //the sketch that holds the slots in its Memory, or null
+  private final long slotsStart; //the offset of the slots in the Memory of the host
 
   PairTable(final int lgSizeInts, final int numValidBits) {
     checkLgSizeInts(lgSizeInts);
@@ -53,6 +62,30 @@ final class PairTable {
     numPairs = 0;
     slotsArr = new int[numSlots];
     for (int i = 0; i < numSlots; i++) { slotsArr[i] = -1; }
+    host = null;
+    slotsStart = 0;
+  }
+
+  /**
+   * Constructs a PairTable with the slots held in the WritableMemory of the given host sketch.
+   * @param host the given sketch, which must have a WritableMemory.
+   * @param initialize if true, the table is initialized to be empty with 4 slots, otherwise the
+   * table already in the Memory is used.
+   */
+  PairTable(final CpcSketch host, final boolean initialize) {
+    this.host = host;
+    validBits = 6 + host.lgK;
+    slotsStart = UPD_WINDOW_START + (1L << host.lgK);
+    if (initialize) {
+      lgSizeInts = 2;
+      host.wmem.putByte(UPD_LG_SIZE_INTS_BYTE, (byte) 2);
+      host.wmem.fill(slotsStart, 4L << lgSizeInts, (byte) -1);
+      putNumPairs(0);
+    } else {
+      lgSizeInts = host.wmem.getByte(UPD_LG_SIZE_INTS_BYTE) & 0XFF;
+      checkLgSizeInts(lgSizeInts);
+      numPairs = host.wmem.getInt(UPD_NUM_PAIRS_INT);
+    }
   }
 
   //Factory
@@ -76,16 +109,27 @@ final class PairTable {
     return table;
   }
 
+  //Copies the table of an UPDATABLE image to the heap
+  static PairTable heapify(final Memory mem, final int lgK) {
+    final int lgSizeInts = mem.getByte(UPD_LG_SIZE_INTS_BYTE) & 0XFF;
+    final PairTable table = new PairTable(lgSizeInts, 6 + lgK);
+    mem.getIntArray(UPD_WINDOW_START + (1L << lgK), table.slotsArr, 0, 1 << lgSizeInts);
+    table.numPairs = mem.getInt(UPD_NUM_PAIRS_INT);
+    return table;
+  }
+
+  //Only used with a table on the heap
   PairTable clear() {
     Arrays.fill(slotsArr, -1);
     numPairs = 0;
     return this;
   }
 
+  //The copy is always on the heap
   PairTable copy() {
     final PairTable copy = new PairTable(lgSizeInts, validBits);
     copy.numPairs = numPairs;
-    copy.slotsArr = slotsArr.clone(); //slotsArr can never be null
+    copy.slotsArr = (host == null) ? slotsArr.clone() : getSlotsArr();
     return copy;
   }
 
@@ -97,8 +141,12 @@ final class PairTable {
     return numPairs;
   }
 
+  //If the slots are held in Memory, this returns a copy of them.
   int[] getSlotsArr() {
-    return slotsArr;
+    if (host == null) { return slotsArr; }
+    final int[] arr = new int[1 << lgSizeInts];
+    host.wmem.getIntArray(slotsStart, arr, 0, arr.length);
+    return arr;
   }
 
   int getValidBits() {
@@ -223,6 +271,97 @@ final class PairTable {
     }
   }
 
+  // The counterparts of mustInsert(), maybeInsert(), maybeDelete() and rebuild() for a table held
+  // in the Memory of its host sketch. They are kept apart so that the methods above, which are on
+  // the update path of every sketch on the heap, do not check where the slots are held.
+
+  private int getSlot(final int index) {
+    return host.wmem.getInt(slotsStart + ((long) index << 2));
+  }
+
+  private void putSlot(final int index, final int item) {
+    host.wmem.putInt(slotsStart + ((long) index << 2), item);
+  }
+
+  private void putNumPairs(final int numPairs) {
+    this.numPairs = numPairs;
+    host.wmem.putInt(UPD_NUM_PAIRS_INT, numPairs);
+  }
+
+  //Returns the slot that holds the given item, or else the empty slot where it belongs.
+  private static int findInMemory(final PairTable table, final int item) {
+    final int mask = (1 << table.lgSizeInts) - 1;
+    final int shift = table.validBits - table.lgSizeInts;
+    rtAssert(shift > 0);
+    int probe = item >>> shift;
+    rtAssert((probe >= 0) && (probe <= mask));
+    int fetched = table.getSlot(probe);
+    while ((fetched != item) && (fetched != -1)) {
+      probe = (probe + 1) & mask;
+      fetched = table.getSlot(probe);
+    }
+    return probe;
+  }
+
+  private static void mustInsertInMemory(final PairTable table, final int item) {
+    final int probe = findInMemory(table, item);
+    if (table.getSlot(probe) == item) {
+      throw new SketchesStateException("PairTable mustInsert() failed");
+    }
+    table.putSlot(probe, item);
+    // counts and resizing must be handled by the caller.
+  }
+
+  static boolean maybeInsertInMemory(final PairTable table, final int item) {
+    final int probe = findInMemory(table, item);
+    if (table.getSlot(probe) == item) { return false; }
+    table.putSlot(probe, item);
+    table.putNumPairs(table.numPairs + 1);
+    while ((upsizeDenom * table.numPairs) > (upsizeNumer * (1 << table.lgSizeInts))) {
+      table.rebuildInMemory(table.lgSizeInts + 1);
+    }
+    return true;
+  }
+
+  static boolean maybeDeleteInMemory(final PairTable table, final int item) {
+    int probe = findInMemory(table, item);
+    if (table.getSlot(probe) == -1) { return false; }
+    table.putSlot(probe, -1);
+    table.putNumPairs(table.numPairs - 1); assert (table.numPairs >= 0);
+
+    // re-insert all items between the freed slot and the next empty slot
+    final int mask = (1 << table.lgSizeInts) - 1;
+    probe = (probe + 1) & mask;
+    int fetched = table.getSlot(probe);
+    while (fetched != -1) {
+      table.putSlot(probe, -1);
+      mustInsertInMemory(table, fetched);
+      probe = (probe + 1) & mask; fetched = table.getSlot(probe);
+    }
+
+    // shrink if necessary
+    while (((downsizeDenom * table.numPairs)
+            < (downsizeNumer * (1 << table.lgSizeInts))) && (table.lgSizeInts > 2)) {
+      table.rebuildInMemory(table.lgSizeInts - 1);
+    }
+    return true;
+  }
+
+  //Growing the table may request a larger Memory for the host.
+  private void rebuildInMemory(final int newLgSizeInts) {
+    checkLgSizeInts(newLgSizeInts);
+    rtAssert((1 << newLgSizeInts) > numPairs);
+    final int[] oldSlotsArr = getSlotsArr();
+    host.ensureCapacity(slotsStart + (4L << newLgSizeInts));
+    host.wmem.fill(slotsStart, 4L << newLgSizeInts, (byte) -1);
+    host.wmem.putByte(UPD_LG_SIZE_INTS_BYTE, (byte) newLgSizeInts);
+    lgSizeInts = newLgSizeInts;
+    for (int i = 0; i < oldSlotsArr.length; i++) {
+      final int item = oldSlotsArr[i];
+      if (item != -1) { mustInsertInMemory(this, item); }
+    }
+  }
+
   /**
    * While extracting the items from a linear probing hashtable,
    * this will usually undo the wrap-around provided that the table
@@ -235,7 +374,7 @@ final class PairTable {
    */
   static int[] unwrappingGetItems(final PairTable table, final int numPairs) {
     if (numPairs < 1) { return null; }
-    final int[] slotsArr = table.slotsArr;
+    final int[] slotsArr = table.getSlotsArr();
     final int tableSize = 1 << table.lgSizeInts;
     final int[] result = new int[numPairs];
     int i = 0;
@@ -367,8 +506,9 @@ final class PairTable {
       sb.append("  DATA (hex) : ").append(LS);
       final String hdr = String.format("%9s %9s %9s %4s", "Index","Word","Row","Col");
       sb.append(hdr).append(LS);
+      final int[] slots = getSlotsArr();
       for (int i = 0; i < sizeInts; i++) {
-        final int word = slotsArr[i];
+        final int word = slots[i];
         if (word == -1) { //empty
           final String h = String.format("%9d %9s", i, "--");
           sb.append(h).append(LS);
@@ -126,6 +126,33 @@ import org.apache.datasketches.memory.WritableMemory;
  *
  *          ||   XX   |   XX   |   XX   |   XX   |   43   |   42   |   41   |   40   |
  *      5   ||--------Start of SV stream---------|--------Start of Window stream-----|
+ *
+ *
+ * UPDATABLE: the uncompressed state of a CpcSketch held in WritableMemory.
+ * The Compressed flag is clear. The Flags byte has the HIP flag if the sketch is not the result
+ * of a merge, and the Window flag if the sliding window is valid.
+ * The PairTable is valid if numCoupons &gt; 0. PI = 10, FIcol = valid.
+ * Long adr ||
+ *          ||   15   |   14   |   13   |   12   |   11   |   10   |    9   |    8   |
+ *      1   ||--------------numPairs-------------|------------numCoupons-------------|
+ *
+ *          ||   23   |   22   |   21   |   20   |   19   |   18   |   17   |   16   |
+ *      2   ||----------------------------------KxP----------------------------------|
+ *
+ *          ||   31   |   30   |   29   |   28   |   27   |   26   |   25   |   24   |
+ *      3   ||-------------------------------HIP Accum-------------------------------|
+ *
+ *          ||   39   |   38   |   37   |   36   |   35   |   34   |   33   |   32   |
+ *      4   ||                                            |LgSzInts|-WinOff-|
+ *
+ *          ||   XX   |   XX   |   XX   |   XX   |   43   |   42   |   41   |   40   |
+ *      5   ||----Start of PairTable slots at 40 + K-----|---Start of Window, K bytes----|
+ *
+ *
+ * UNION: the state of a CpcUnion held in WritableMemory. The Union flag is set and the
+ * Compressed flag is clear. LgK is the current LgK of the union. PI = 2, FIcol = 0.
+ * If the Matrix flag is set, the bit matrix of K longs starts at byte 8. Otherwise an UPDATABLE
+ * image of the accumulator sketch, which is EMPTY or SPARSE, starts at byte 8.
  * </pre>
  *
  * @author Lee Rhodes
@@ -155,6 +182,22 @@ final class PreambleUtil {
   static final int HIP_FLAG_MASK            = 4;
   static final int SUP_VAL_FLAG_MASK        = 8; //num Suprising Values > 0
   static final int WINDOW_FLAG_MASK         = 16;//window length > 0
+  static final int UNION_FLAG_MASK          = 32;//the state of a CpcUnion
+  static final int MATRIX_FLAG_MASK         = 64;//the union holds a bit matrix
+
+  //UPDATABLE IMAGE OFFSETS, bytes
+  static final int UPDATABLE_PRE_INTS       = 10;
+  static final int UPD_NUM_COUPONS_INT      = 8;
+  static final int UPD_NUM_PAIRS_INT        = 12;
+  static final int UPD_KXP_DOUBLE           = 16;
+  static final int UPD_HIP_ACCUM_DOUBLE     = 24;
+  static final int UPD_WINDOW_OFFSET_BYTE   = 32;
+  static final int UPD_LG_SIZE_INTS_BYTE    = 33;
+  static final int UPD_WINDOW_START         = 40;
+
+  //UNION IMAGE OFFSETS, bytes
+  static final int UNION_PRE_INTS           = 2;
+  static final int UNION_DATA_START         = 8;
 
   //PREAMBLE SIZE
 
@@ -247,6 +290,59 @@ final class PreambleUtil {
     return (getFlags(mem) & COMPRESSED_FLAG_MASK) > 0;
   }
 
+  static final boolean isUnion(final Memory mem) {
+    return (getFlags(mem) & UNION_FLAG_MASK) > 0;
+  }
+
+  static void putFiCol(final WritableMemory wmem, final int fiCol) {
+    wmem.putByte(getLoFieldOffset(LoField.FI_COL), (byte) fiCol);
+  }
+
+  static void putFlags(final WritableMemory wmem, final int flags) {
+    wmem.putByte(getLoFieldOffset(LoField.FLAGS), (byte) flags);
+  }
+
+  static void putLgK(final WritableMemory wmem, final int lgK) {
+    wmem.putByte(getLoFieldOffset(LoField.LG_K), (byte) lgK);
+  }
+
+  //UPDATABLE AND UNION IMAGES
+
+  /**
+   * Returns the bytes of an UPDATABLE image given lgK and the log2 of the PairTable size.
+   * @param lgK the given lgK
+   * @param lgSizeInts the log2 of the number of slots of the PairTable
+   * @return the bytes of an UPDATABLE image
+   */
+  static long getUpdatableBytes(final int lgK, final int lgSizeInts) {
+    return UPD_WINDOW_START + (1L << lgK) + (4L << lgSizeInts);
+  }
+
+  static void putUpdatablePreamble(final WritableMemory wmem, final int lgK, final short seedHash) {
+    putFirst8(wmem, (byte) UPDATABLE_PRE_INTS, (byte) lgK, (byte) 0, (byte) HIP_FLAG_MASK, seedHash);
+  }
+
+  static void putUnionPreamble(final WritableMemory wmem, final int lgK, final short seedHash) {
+    putFirst8(wmem, (byte) UNION_PRE_INTS, (byte) lgK, (byte) 0, (byte) UNION_FLAG_MASK, seedHash);
+  }
+
+  //basic checks of SerVer, preInts, Family, lgK and the flags of an UPDATABLE or UNION image.
+  static void checkUpdatablePreamble(final Memory mem, final boolean union) {
+    checkCapacity(mem.getCapacity(), 8);
+    final String type = union ? "CpcUnion" : "updatable CpcSketch";
+    if ((getSerVer(mem) != SER_VER) || (getFamily(mem) != Family.CPC) || isCompressed(mem)
+        || (isUnion(mem) != union)
+        || (getPreInts(mem) != (union ? UNION_PRE_INTS : UPDATABLE_PRE_INTS))) {
+      throw new SketchesArgumentException("Memory does not hold the image of a " + type);
+    }
+    final int lgK = getLgK(mem);
+    rtAssert((lgK >= 4) && (lgK <= 26));
+    if (!union) {
+      checkCapacity(mem.getCapacity(),
+          getUpdatableBytes(lgK, mem.getByte(UPD_LG_SIZE_INTS_BYTE) & 0XFF));
+    }
+  }
+
   //PREAMBLE HI_FIELD DEFINITIONS
 
   /**
@@ -584,6 +680,9 @@ final class PreambleUtil {
     final boolean hasSV = (flags & SUP_VAL_FLAG_MASK) > 0;
     final boolean hasWindow = (flags & WINDOW_FLAG_MASK) > 0;
 
+    if (!compressed) {
+      return updatableToString(mem, flags);
+    }
     final int formatOrdinal = (flags >>> 2) & 0x7;
     final Format format = Format.ordinalToFormat(formatOrdinal);
 
@@ -783,6 +882,42 @@ final class PreambleUtil {
     return sb.toString();
   } //end toString(mem)
 
+  private static String updatableToString(final Memory mem, final int flags) {
+    final int lgK = getLgK(mem);
+    final StringBuilder sb = new StringBuilder();
+    sb.append(LS);
+    if ((flags & UNION_FLAG_MASK) > 0) {
+      sb.append("### CPC UNION IMAGE - PREAMBLE:").append(LS);
+      sb.append("Byte 3: lgK                     : ").append(lgK).append(LS);
+      sb.append("Byte 5: Flags                   : ").append(flags).append(LS);
+      sb.append("  Has Bit Matrix                : ").append((flags & MATRIX_FLAG_MASK) > 0).append(LS);
+      sb.append("Byte 6, 7: Seed Hash            : ")
+        .append(Integer.toHexString(getSeedHash(mem) & 0XFFFF)).append(LS);
+      sb.append("### END CPC UNION IMAGE").append(LS);
+      return sb.toString();
+    }
+    final long numCoupons = mem.getInt(UPD_NUM_COUPONS_INT) & 0XFFFF_FFFFL;
+    sb.append("### CPC SKETCH IMAGE - PREAMBLE:").append(LS);
+    sb.append("Format                          : UPDATABLE").append(LS);
+    sb.append("Byte 3: lgK                     : ").append(lgK).append(LS);
+    sb.append("Byte 4: First Interesting Col   : ").append(getFiCol(mem)).append(LS);
+    sb.append("Byte 5: Flags                   : ").append(flags).append(LS);
+    sb.append("  Has HIP                       : ").append((flags & HIP_FLAG_MASK) > 0).append(LS);
+    sb.append("  Has Window Values             : ").append((flags & WINDOW_FLAG_MASK) > 0).append(LS);
+    sb.append("Byte 6, 7: Seed Hash            : ")
+      .append(Integer.toHexString(getSeedHash(mem) & 0XFFFF)).append(LS);
+    sb.append("Flavor                          : ")
+      .append(CpcUtil.determineFlavor(lgK, numCoupons)).append(LS);
+    sb.append("Num Coupons                     : ").append(numCoupons).append(LS);
+    sb.append("Num Pairs                       : ").append(mem.getInt(UPD_NUM_PAIRS_INT)).append(LS);
+    sb.append("KxP                             : ").append(mem.getDouble(UPD_KXP_DOUBLE)).append(LS);
+    sb.append("HipAccum                        : ").append(mem.getDouble(UPD_HIP_ACCUM_DOUBLE)).append(LS);
+    sb.append("Window Offset                   : ").append(mem.getByte(UPD_WINDOW_OFFSET_BYTE)).append(LS);
+    sb.append("PairTable LgSizeInts            : ").append(mem.getByte(UPD_LG_SIZE_INTS_BYTE)).append(LS);
+    sb.append("### END CPC SKETCH IMAGE").append(LS);
+    return sb.toString();
+  }
+
   private static void listData(final Memory mem, final long offsetBytes, final long lengthInts,
       final StringBuilder sb) {
     final long memCap = mem.getCapacity();
@@ -46,7 +46,7 @@ public class TestUtil {
     rtAssertEquals(sk1.numCoupons, sk2.numCoupons);
 
     rtAssertEquals(sk1.windowOffset, sk2.windowOffset);
-    rtAssertEquals(sk1.slidingWindow, sk2.slidingWindow);
+    rtAssertEquals(sk1.getWindowArr(), sk2.getWindowArr());
     PairTable.equals(sk1.pairTable, sk2.pairTable);
 
     // fiCol is only updated occasionally while stream processing,
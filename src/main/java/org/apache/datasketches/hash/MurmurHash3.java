@@ -20,6 +20,11 @@
 package org.apache.datasketches.hash;
 
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.apache.datasketches.memory.Memory;
+import org.apache.datasketches.memory.UnsafeUtil;
 
 
 /**
@@ -47,6 +52,10 @@ import java.io.Serializable;
  * bytes, and if the contents of the values in the arrays have the same byte endianness and
  * overall order. There is a unit test for this class that demonstrates this.</p>
  *
+ * <p>Each hash function also has a variant that returns the hash in a caller-owned long array of
+ * size 2, so that the hash can be computed without any object allocation. The sketch update
+ * methods use these variants.</p>
+ *
  * <p>
  * The structure of this implementation also reflects a separation of code that is dependent on the
  * input structure (in this case byte[], int[] or long[]) from code that is independent of the input
@@ -60,6 +69,21 @@ public final class MurmurHash3 implements Serializable {
 
   private MurmurHash3() {}
 
+  //--Hash of long----------------------------------------------------
+  /**
+   * Returns the 128-bit hash of the given long in the caller-owned <i>hashOut</i> array.
+   * This produces the same hash as {@link #hash(long[], long)} given a long[] of length one,
+   * but without any object allocation.
+   *
+   * @param key The input long.
+   * @param seed A long valued seed.
+   * @param hashOut A long array of size 2, which receives the hash.
+   * @return hashOut
+   */
+  public static long[] hash(final long key, final long seed, final long[] hashOut) {
+    return finalMix128(seed ^ mixK1(key), seed, Long.BYTES, hashOut);
+  }
+
   //--Hash of long[]----------------------------------------------------
   /**
    * Returns a long array of size 2, which is a 128-bit hash of the input.
@@ -69,7 +93,21 @@ public final class MurmurHash3 implements Serializable {
    * @return the hash.
    */
   public static long[] hash(final long[] key, final long seed) {
-    final HashState hashState = new HashState(seed, seed);
+    return hash(key, seed, new long[2]);
+  }
+
+  /**
+   * Returns the 128-bit hash of the input in the caller-owned <i>hashOut</i> array,
+   * without any object allocation.
+   *
+   * @param key The input long[] array. Must be non-null and non-empty.
+   * @param seed A long valued seed.
+   * @param hashOut A long array of size 2, which receives the hash.
+   * @return hashOut
+   */
+  public static long[] hash(final long[] key, final long seed, final long[] hashOut) {
+    long h1 = seed;
+    long h2 = seed;
     final int longs = key.length; //in longs
 
     // Number of full 128-bit blocks of 2 longs (the body).
@@ -80,7 +118,8 @@ public final class MurmurHash3 implements Serializable {
     for (int i = 0; i < nblocks; i++ ) {
       final long k1 = key[i << 1]; //0, 2, 4, ...
       final long k2 = key[(i << 1) + 1]; //1, 3, 5, ...
-      hashState.blockMix128(k1, k2);
+      h1 = blockMixH1(h1, h2, k1);
+      h2 = blockMixH2(h2, h1, k2);
     }
 
     // Get the tail index, remainder length
@@ -90,7 +129,7 @@ public final class MurmurHash3 implements Serializable {
     // Get the tail
     final long k1 = (rem == 0) ? 0 : key[tail]; //k2 -> 0
     // Mix the tail into the hash and return
-    return hashState.finalMix128(k1, 0, longs << 3); //convert to bytes
+    return finalMix128(h1 ^ mixK1(k1), h2, longs << 3, hashOut); //convert to bytes
   }
 
   //--Hash of int[]----------------------------------------------------
@@ -102,7 +141,21 @@ public final class MurmurHash3 implements Serializable {
    * @return the hash.
    */
   public static long[] hash(final int[] key, final long seed) {
-    final HashState hashState = new HashState(seed, seed);
+    return hash(key, seed, new long[2]);
+  }
+
+  /**
+   * Returns the 128-bit hash of the input in the caller-owned <i>hashOut</i> array,
+   * without any object allocation.
+   *
+   * @param key The input int[] array. Must be non-null and non-empty.
+   * @param seed A long valued seed.
+   * @param hashOut A long array of size 2, which receives the hash.
+   * @return hashOut
+   */
+  public static long[] hash(final int[] key, final long seed, final long[] hashOut) {
+    long h1 = seed;
+    long h2 = seed;
     final int ints = key.length; //in ints
 
     // Number of full 128-bit blocks of 4 ints.
@@ -113,7 +166,8 @@ public final class MurmurHash3 implements Serializable {
     for (int i = 0; i < nblocks; i++ ) { //4 ints per block
       final long k1 = getLong(key, i << 2, 2); //0, 4, 8, ...
       final long k2 = getLong(key, (i << 2) + 2, 2); //2, 6, 10, ...
-      hashState.blockMix128(k1, k2);
+      h1 = blockMixH1(h1, h2, k1);
+      h2 = blockMixH2(h2, h1, k2);
     }
 
     // Get the tail index, remainder length
@@ -132,7 +186,7 @@ public final class MurmurHash3 implements Serializable {
       k2 = 0;
     }
     // Mix the tail into the hash and return
-    return hashState.finalMix128(k1, k2, ints << 2); //convert to bytes
+    return finalMix128(h1 ^ mixK1(k1), h2 ^ mixK2(k2), ints << 2, hashOut); //convert to bytes
   }
 
   //--Hash of char[]----------------------------------------------------
@@ -144,7 +198,21 @@ public final class MurmurHash3 implements Serializable {
    * @return the hash.
    */
   public static long[] hash(final char[] key, final long seed) {
-    final HashState hashState = new HashState(seed, seed);
+    return hash(key, seed, new long[2]);
+  }
+
+  /**
+   * Returns the 128-bit hash of the input in the caller-owned <i>hashOut</i> array,
+   * without any object allocation.
+   *
+   * @param key The input char[] array. Must be non-null and non-empty.
+   * @param seed A long valued seed.
+   * @param hashOut A long array of size 2, which receives the hash.
+   * @return hashOut
+   */
+  public static long[] hash(final char[] key, final long seed, final long[] hashOut) {
+    long h1 = seed;
+    long h2 = seed;
     final int chars = key.length; //in chars
 
     // Number of full 128-bit blocks of 8 chars.
@@ -155,7 +223,8 @@ public final class MurmurHash3 implements Serializable {
     for (int i = 0; i < nblocks; i++ ) { //8 chars per block
       final long k1 = getLong(key, i << 3, 4); //0, 8, 16, ...
       final long k2 = getLong(key, (i << 3) + 4, 4); //4, 12, 20, ...
-      hashState.blockMix128(k1, k2);
+      h1 = blockMixH1(h1, h2, k1);
+      h2 = blockMixH2(h2, h1, k2);
     }
 
     // Get the tail index, remainder length
@@ -174,7 +243,7 @@ public final class MurmurHash3 implements Serializable {
       k2 = 0;
     }
     // Mix the tail into the hash and return
-    return hashState.finalMix128(k1, k2, chars << 1); //convert to bytes
+    return finalMix128(h1 ^ mixK1(k1), h2 ^ mixK2(k2), chars << 1, hashOut); //convert to bytes
   }
 
   //--Hash of byte[]----------------------------------------------------
@@ -186,7 +255,21 @@ public final class MurmurHash3 implements Serializable {
    * @return the hash.
    */
   public static long[] hash(final byte[] key, final long seed) {
-    final HashState hashState = new HashState(seed, seed);
+    return hash(key, seed, new long[2]);
+  }
+
+  /**
+   * Returns the 128-bit hash of the input in the caller-owned <i>hashOut</i> array,
+   * without any object allocation.
+   *
+   * @param key The input byte[] array. Must be non-null and non-empty.
+   * @param seed A long valued seed.
+   * @param hashOut A long array of size 2, which receives the hash.
+   * @return hashOut
+   */
+  public static long[] hash(final byte[] key, final long seed, final long[] hashOut) {
+    long h1 = seed;
+    long h2 = seed;
     final int bytes = key.length; //in bytes
 
     // Number of full 128-bit blocks of 16 bytes.
@@ -197,7 +280,8 @@ public final class MurmurHash3 implements Serializable {
     for (int i = 0; i < nblocks; i++ ) { //16 bytes per block
       final long k1 = getLong(key, i << 4, 8); //0, 16, 32, ...
       final long k2 = getLong(key, (i << 4) + 8, 8); //8, 24, 40, ...
-      hashState.blockMix128(k1, k2);
+      h1 = blockMixH1(h1, h2, k1);
+      h2 = blockMixH2(h2, h1, k2);
     }
 
     // Get the tail index, remainder length
@@ -216,96 +300,255 @@ public final class MurmurHash3 implements Serializable {
       k2 = 0;
     }
     // Mix the tail into the hash and return
-    return hashState.finalMix128(k1, k2, bytes);
+    return finalMix128(h1 ^ mixK1(k1), h2 ^ mixK2(k2), bytes, hashOut);
   }
 
-  //--HashState class---------------------------------------------------
+  //--Hash of the UTF-8 encoding of a CharSequence----------------------------
   /**
-   * Common processing of the 128-bit hash state independent of input type.
+   * Returns the 128-bit hash of the UTF-8 encoding of the given CharSequence in the caller-owned
+   * <i>hashOut</i> array. The encoding is streamed into the hash, without any object allocation.
+   * This produces the same hash as {@link #hash(byte[], long)} given
+   * <i>key.toString().getBytes(StandardCharsets.UTF_8)</i>, including the replacement of unpaired
+   * surrogates by '?'.
+   *
+   * <p>Note: this will not produce the same hash as {@link #hash(char[], long)}, which hashes the
+   * UTF-16 chars.</p>
+   *
+   * @param key The input CharSequence. Must be non-null and non-empty.
+   * @param seed A long valued seed.
+   * @param hashOut A long array of size 2, which receives the hash.
+   * @return hashOut
    */
-  private static final class HashState {
-    private static final long C1 = 0x87c37b91114253d5L;
-    private static final long C2 = 0x4cf5ad432745937fL;
-    private long h1;
-    private long h2;
-
-    HashState(final long h1, final long h2) {
-      this.h1 = h1;
-      this.h2 = h2;
+  public static long[] hash(final CharSequence key, final long seed, final long[] hashOut) {
+    long h1 = seed;
+    long h2 = seed;
+    long k1 = 0; //bytes 0 to 7 of the current block, little-endian
+    long k2 = 0; //bytes 8 to 15 of the current block, little-endian
+    int blockBytes = 0; //number of bytes in the current block
+    long bytes = 0; //total number of bytes
+    final int chars = key.length();
+    for (int i = 0; i < chars; i++) {
+      final char c = key.charAt(i);
+      //the UTF-8 bytes of the code point, packed little-endian, and their number
+      int utf;
+      int n;
+      if (c < 0x80) {
+        utf = c;
+        n = 1;
+      } else if (c < 0x800) {
+        utf = (0xC0 | (c >> 6)) | ((0x80 | (c & 0x3F)) << 8);
+        n = 2;
+      } else if (!Character.isSurrogate(c)) {
+        utf = (0xE0 | (c >> 12)) | ((0x80 | ((c >> 6) & 0x3F)) << 8)
+            | ((0x80 | (c & 0x3F)) << 16);
+        n = 3;
+      } else if (Character.isHighSurrogate(c) && ((i + 1) < chars)
+          && Character.isLowSurrogate(key.charAt(i + 1))) {
+        final int cp = Character.toCodePoint(c, key.charAt(++i));
+        utf = (0xF0 | (cp >> 18)) | ((0x80 | ((cp >> 12) & 0x3F)) << 8)
+            | ((0x80 | ((cp >> 6) & 0x3F)) << 16) | ((0x80 | (cp & 0x3F)) << 24);
+        n = 4;
+      } else { //unpaired surrogate
+        utf = '?';
+        n = 1;
+      }
+      bytes += n;
+      for (; n > 0; n--) {
+        final long b = utf & 0xFFL;
+        utf >>>= 8;
+        if (blockBytes < 8) {
+          k1 |= b << (blockBytes << 3);
+        } else {
+          k2 |= b << ((blockBytes - 8) << 3);
+        }
+        if (++blockBytes == 16) {
+          h1 = blockMixH1(h1, h2, k1);
+          h2 = blockMixH2(h2, h1, k2);
+          k1 = 0;
+          k2 = 0;
+          blockBytes = 0;
+        }
+      }
     }
+    // Mix the tail into the hash and return
+    return finalMix128(h1 ^ mixK1(k1), h2 ^ mixK2(k2), bytes, hashOut);
+  }
 
-    /**
-     * Block mix (128-bit block) of input key to internal hash state.
-     *
-     * @param k1 intermediate mix value
-     * @param k2 intermediate mix value
-     */
-    void blockMix128(final long k1, final long k2) {
-      h1 ^= mixK1(k1);
-      h1 = Long.rotateLeft(h1, 27);
-      h1 += h2;
-      h1 = (h1 * 5) + 0x52dce729;
-
-      h2 ^= mixK2(k2);
-      h2 = Long.rotateLeft(h2, 31);
-      h2 += h1;
-      h2 = (h2 * 5) + 0x38495ab5;
-    }
+  //--Hash of a region of Memory or ByteBuffer--------------------------------
+  /**
+   * Returns the 128-bit hash of the given region of Memory in the caller-owned <i>hashOut</i>
+   * array, reading the bytes in place and without any object allocation.
+   * This produces the same hash as {@link #hash(byte[], long)} given a byte[] with the same
+   * contents as the region.
+   *
+   * @param mem The input Memory.
+   * @param offsetBytes the offset in bytes of the region within the Memory.
+   * @param lengthBytes the length in bytes of the region. Must be greater than zero.
+   * @param seed A long valued seed.
+   * @param hashOut A long array of size 2, which receives the hash.
+   * @return hashOut
+   */
+  public static long[] hash(final Memory mem, final long offsetBytes, final long lengthBytes,
+      final long seed, final long[] hashOut) {
+    UnsafeUtil.checkBounds(offsetBytes, lengthBytes, mem.getCapacity());
+    return MurmurHash3v2.hash(mem, offsetBytes, lengthBytes, seed, hashOut);
+  }
 
-    long[] finalMix128(final long k1, final long k2, final long inputLengthBytes) {
-      h1 ^= mixK1(k1);
-      h2 ^= mixK2(k2);
-      h1 ^= inputLengthBytes;
-      h2 ^= inputLengthBytes;
-      h1 += h2;
-      h2 += h1;
-      h1 = finalMix64(h1);
-      h2 = finalMix64(h2);
-      h1 += h2;
-      h2 += h1;
-      return new long[] { h1, h2 };
-    }
+  /**
+   * Returns the 128-bit hash of the given region of a ByteBuffer in the caller-owned
+   * <i>hashOut</i> array, reading the bytes in place and without any object allocation.
+   * This produces the same hash as {@link #hash(byte[], long)} given a byte[] with the same
+   * contents as the region, regardless of the byte order of the ByteBuffer.
+   * The position, limit and byte order of the ByteBuffer are not changed.
+   *
+   * @param buf The input ByteBuffer.
+   * @param offset the absolute index of the first byte of the region within the ByteBuffer.
+   * @param length the length in bytes of the region. Must be greater than zero.
+   * @param seed A long valued seed.
+   * @param hashOut A long array of size 2, which receives the hash.
+   * @return hashOut
+   */
+  public static long[] hash(final ByteBuffer buf, final int offset, final int length,
+      final long seed, final long[] hashOut) {
+    UnsafeUtil.checkBounds(offset, length, buf.limit());
+    final boolean bigEndian = buf.order() == ByteOrder.BIG_ENDIAN;
+    long h1 = seed;
+    long h2 = seed;
 
-    /**
-     * Final self mix of h*.
-     *
-     * @param h input to final mix
-     * @return mix
-     */
-    private static long finalMix64(long h) {
-      h ^= h >>> 33;
-      h *= 0xff51afd7ed558ccdL;
-      h ^= h >>> 33;
-      h *= 0xc4ceb9fe1a85ec53L;
-      h ^= h >>> 33;
-      return h;
-    }
+    // Number of full 128-bit blocks of 16 bytes.
+    // Possible exclusion of a remainder of up to 15 bytes.
+    final int nblocks = length >>> 4; //bytes / 16
 
-    /**
-     * Self mix of k1
-     *
-     * @param k1 input argument
-     * @return mix
-     */
-    private static long mixK1(long k1) {
-      k1 *= C1;
-      k1 = Long.rotateLeft(k1, 31);
-      k1 *= C2;
-      return k1;
+    // Process the 128-bit blocks (the body) into the hash
+    for (int i = 0; i < nblocks; i++ ) { //16 bytes per block
+      final int index = offset + (i << 4);
+      long k1 = buf.getLong(index);
+      long k2 = buf.getLong(index + 8);
+      if (bigEndian) {
+        k1 = Long.reverseBytes(k1);
+        k2 = Long.reverseBytes(k2);
+      }
+      h1 = blockMixH1(h1, h2, k1);
+      h2 = blockMixH2(h2, h1, k2);
     }
 
-    /**
-     * Self mix of k2
-     *
-     * @param k2 input argument
-     * @return mix
-     */
-    private static long mixK2(long k2) {
-      k2 *= C2;
-      k2 = Long.rotateLeft(k2, 33);
-      k2 *= C1;
-      return k2;
+    // Get the tail index, remainder length
+    final int tail = offset + (nblocks << 4); //16 bytes per block
+    final int rem = length - (nblocks << 4); // remainder bytes: 0,1,...,15
+
+    // Get the tail
+    final long k1;
+    final long k2;
+    if (rem > 8) { //k1 -> whole; k2 -> partial
+      k1 = getLong(buf, tail, 8);
+      k2 = getLong(buf, tail + 8, rem - 8);
     }
+    else { //k1 -> whole, partial or 0; k2 == 0
+      k1 = (rem == 0) ? 0 : getLong(buf, tail, rem);
+      k2 = 0;
+    }
+    // Mix the tail into the hash and return
+    return finalMix128(h1 ^ mixK1(k1), h2 ^ mixK2(k2), length, hashOut);
+  }
+
+  //--Common processing of the 128-bit hash state independent of input type---
+  private static final long C1 = 0x87c37b91114253d5L;
+  private static final long C2 = 0x4cf5ad432745937fL;
+
+  /**
+   * Block mix (128-bit block) of input key into the first half of the hash state.
+   *
+   * @param h1 the first half of the hash state
+   * @param h2 the second half of the hash state
+   * @param k1 intermediate mix value
+   * @return the new first half of the hash state
+   */
+  private static long blockMixH1(long h1, final long h2, final long k1) {
+    h1 ^= mixK1(k1);
+    h1 = Long.rotateLeft(h1, 27);
+    h1 += h2;
+    return (h1 * 5) + 0x52dce729;
+  }
+
+  /**
+   * Block mix (128-bit block) of input key into the second half of the hash state.
+   * This must follow {@link #blockMixH1(long, long, long)} for the same block.
+   *
+   * @param h2 the second half of the hash state
+   * @param h1 the new first half of the hash state
+   * @param k2 intermediate mix value
+   * @return the new second half of the hash state
+   */
+  private static long blockMixH2(long h2, final long h1, final long k2) {
+    h2 ^= mixK2(k2);
+    h2 = Long.rotateLeft(h2, 31);
+    h2 += h1;
+    return (h2 * 5) + 0x38495ab5;
+  }
+
+  /**
+   * Finalization: Add the length into the hash and mix.
+   *
+   * @param h1 intermediate hash, with the tail already mixed in
+   * @param h2 intermediate hash, with the tail already mixed in
+   * @param inputLengthBytes the length of the input in bytes
+   * @param hashOut the output array of 2 longs
+   * @return hashOut
+   */
+  private static long[] finalMix128(long h1, long h2, final long inputLengthBytes,
+      final long[] hashOut) {
+    h1 ^= inputLengthBytes;
+    h2 ^= inputLengthBytes;
+    h1 += h2;
+    h2 += h1;
+    h1 = finalMix64(h1);
+    h2 = finalMix64(h2);
+    h1 += h2;
+    h2 += h1;
+    hashOut[0] = h1;
+    hashOut[1] = h2;
+    return hashOut;
+  }
+
+  /**
+   * Final self mix of h*.
+   *
+   * @param h input to final mix
+   * @return mix
+   */
+  private static long finalMix64(long h) {
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return h;
+  }
+
+  /**
+   * Self mix of k1
+   *
+   * @param k1 input argument
+   * @return mix
+   */
+  private static long mixK1(long k1) {
+    k1 *= C1;
+    k1 = Long.rotateLeft(k1, 31);
+    k1 *= C2;
+    return k1;
+  }
+
+  /**
+   * Self mix of k2
+   *
+   * @param k2 input argument
+   * @return mix
+   */
+  private static long mixK2(long k2) {
+    k2 *= C2;
+    k2 = Long.rotateLeft(k2, 33);
+    k2 *= C1;
+    return k2;
   }
 
   //--Helper methods----------------------------------------------------
@@ -328,6 +571,25 @@ public final class MurmurHash3 implements Serializable {
     return out;
   }
 
+  /**
+   * Gets a long from the given ByteBuffer starting at the given absolute index and continuing for
+   * remainder (rem) bytes. The bytes are extracted in little-endian order. There is no limit
+   * checking.
+   *
+   * @param buf The given input ByteBuffer.
+   * @param index Zero-based absolute index within the ByteBuffer.
+   * @param rem Remainder bytes. An integer in the range [1,8].
+   * @return long
+   */
+  private static long getLong(final ByteBuffer buf, final int index, final int rem) {
+    long out = 0L;
+    for (int i = rem; i-- > 0;) { //i= 7,6,5,4,3,2,1,0
+      final byte b = buf.get(index + i);
+      out ^= (b & 0xFFL) << (i * 8); //equivalent to |=
+    }
+    return out;
+  }
+
   /**
    * Gets a long from the given char array starting at the given char array index and continuing for
    * remainder (rem) chars. The chars are extracted in little-endian order. There is no limit
@@ -19,7 +19,6 @@
 
 package org.apache.datasketches.hash;
 
-import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.apache.datasketches.memory.UnsafeUtil.unsafe;
 
 import org.apache.datasketches.memory.Memory;
@@ -152,8 +151,7 @@ public final class MurmurHash3v2 {
     if ((in == null) || (in.length() == 0)) {
       return emptyOrNull(seed, hashOut);
     }
-    final byte[] byteArr = in.getBytes(UTF_8);
-    return hash(Memory.wrap(byteArr), 0L, byteArr.length, seed, hashOut);
+    return MurmurHash3.hash(in, seed, hashOut); //streams the UTF-8 encoding
   }
 
   //The main API call
@@ -55,6 +55,15 @@ abstract class AbstractHllArray extends HllSketchImpl {
     return Conversions.convertToHll8(this);
   }
 
+  @Override
+  HllSketchImpl couponBatchUpdate(final int[] coupons, final int start, final int end) {
+    //HLL mode is final, so every coupon is applied to this array
+    for (int i = start; i < end; i++) {
+      couponUpdate(coupons[i]);
+    }
+    return this;
+  }
+
   abstract void decNumAtCurMin();
 
   AuxHashMap getAuxHashMap() {
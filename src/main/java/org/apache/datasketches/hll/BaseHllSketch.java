@@ -19,13 +19,15 @@
 
 package org.apache.datasketches.hll;
 
-import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.apache.datasketches.Util.DEFAULT_UPDATE_SEED;
 import static org.apache.datasketches.hash.MurmurHash3.hash;
 import static org.apache.datasketches.hll.HllUtil.KEY_BITS_26;
 import static org.apache.datasketches.hll.HllUtil.KEY_MASK_26;
 
+import java.nio.ByteBuffer;
+
 import org.apache.datasketches.memory.Memory;
+import org.apache.datasketches.memory.UnsafeUtil;
 
 /**
  * Although this class is package-private, it provides a single place to define and document
@@ -34,9 +36,20 @@ import org.apache.datasketches.memory.Memory;
  * @author Kevin Lang
  */
 abstract class BaseHllSketch {
+  //Reusable output of the update hash, so that the update path does not allocate.
+  private final long[] hashOut = new long[2];
+
+  //Number of coupons hashed ahead of being applied by the batch update methods.
+  static final int COUPON_BATCH_SIZE = 1024;
+
+  //Reusable coupon buffer of the batch update methods, allocated on first use.
+  private int[] couponBuf;
 
   abstract void couponUpdate(int coupon);
 
+  //Applies coupons[0, count) in order, equivalent to calling couponUpdate() on each.
+  abstract void couponBatchUpdate(int[] coupons, int count);
+
   /**
    * Gets the size in bytes of the current sketch when serialized using
    * <i>toCompactByteArray()</i>.
@@ -288,8 +301,7 @@ abstract class BaseHllSketch {
    * @param datum The given long datum.
    */
   public void update(final long datum) {
-    final long[] data = { datum };
-    couponUpdate(coupon(hash(data, DEFAULT_UPDATE_SEED)));
+    couponUpdate(coupon(hash(datum, DEFAULT_UPDATE_SEED, getHashOut())));
   }
 
   /**
@@ -303,28 +315,38 @@ abstract class BaseHllSketch {
    */
   public void update(final double datum) {
     final double d = (datum == 0.0) ? 0.0 : datum; // canonicalize -0.0, 0.0
-    final long[] data = { Double.doubleToLongBits(d) };// canonicalize all NaN forms
-    couponUpdate(coupon(hash(data, DEFAULT_UPDATE_SEED)));
+    final long data = Double.doubleToLongBits(d);// canonicalize all NaN forms
+    couponUpdate(coupon(hash(data, DEFAULT_UPDATE_SEED, getHashOut())));
   }
 
   /**
    * Present the given String as a potential unique item.
-   * The string is converted to a byte array using UTF8 encoding.
+   * The string is hashed as its UTF-8 encoding, see {@link #update(CharSequence)}.
    * If the string is null or empty no update attempt is made and the method returns.
    *
-   * <p>Note: About 2X faster performance can be obtained by first converting the String to a
-   * char[] and updating the sketch with that. This bypasses the complexity of the Java UTF_8
-   * encoding. This, of course, will not produce the same internal hash values as updating directly
-   * with a String. So be consistent!  Unioning two sketches, one fed with strings and the other
-   * fed with char[] will be meaningless.
+   * <p>Note: updating with a String will not produce the same internal hash values as updating
+   * with the char[] of the String. So be consistent!  Unioning two sketches, one fed with strings
+   * and the other fed with char[] will be meaningless.
    * </p>
    *
    * @param datum The given String.
    */
   public void update(final String datum) {
-    if ((datum == null) || datum.isEmpty()) { return; }
-    final byte[] data = datum.getBytes(UTF_8);
-    couponUpdate(coupon(hash(data, DEFAULT_UPDATE_SEED)));
+    update((CharSequence) datum);
+  }
+
+  /**
+   * Present the given CharSequence, such as a String or a StringBuilder, as a potential unique item.
+   * The UTF-8 encoding of the characters is streamed into the hash without creating a byte array,
+   * and produces the same result as {@link #update(byte[])} given the UTF-8 bytes of the
+   * CharSequence. So updating with a StringBuilder is the same as updating with its String.
+   * If the CharSequence is null or empty no update attempt is made and the method returns.
+   *
+   * @param datum The given CharSequence.
+   */
+  public void update(final CharSequence datum) {
+    if ((datum == null) || (datum.length() == 0)) { return; }
+    couponUpdate(coupon(hash(datum, DEFAULT_UPDATE_SEED, getHashOut())));
   }
 
   /**
@@ -335,7 +357,7 @@ abstract class BaseHllSketch {
    */
   public void update(final byte[] data) {
     if ((data == null) || (data.length == 0)) { return; }
-    couponUpdate(coupon(hash(data, DEFAULT_UPDATE_SEED)));
+    couponUpdate(coupon(hash(data, DEFAULT_UPDATE_SEED, getHashOut())));
   }
 
   /**
@@ -349,7 +371,7 @@ abstract class BaseHllSketch {
    */
   public void update(final char[] data) {
     if ((data == null) || (data.length == 0)) { return; }
-    couponUpdate(coupon(hash(data, DEFAULT_UPDATE_SEED)));
+    couponUpdate(coupon(hash(data, DEFAULT_UPDATE_SEED, getHashOut())));
   }
 
   /**
@@ -360,7 +382,7 @@ abstract class BaseHllSketch {
    */
   public void update(final int[] data) {
     if ((data == null) || (data.length == 0)) { return; }
-    couponUpdate(coupon(hash(data, DEFAULT_UPDATE_SEED)));
+    couponUpdate(coupon(hash(data, DEFAULT_UPDATE_SEED, getHashOut())));
   }
 
   /**
@@ -371,7 +393,125 @@ abstract class BaseHllSketch {
    */
   public void update(final long[] data) {
     if ((data == null) || (data.length == 0)) { return; }
-    couponUpdate(coupon(hash(data, DEFAULT_UPDATE_SEED)));
+    couponUpdate(coupon(hash(data, DEFAULT_UPDATE_SEED, getHashOut())));
+  }
+
+  /**
+   * Present the given region of Memory as a potential unique item.
+   * The region is hashed in place, without copying or allocation, and produces the same result as
+   * {@link #update(byte[])} given a byte array with the same contents.
+   * If the Memory is null or the length is zero no update attempt is made and the method returns.
+   *
+   * @param mem the given Memory
+   * @param offsetBytes the offset in bytes of the region within the Memory
+   * @param lengthBytes the length in bytes of the region
+   */
+  public void update(final Memory mem, final long offsetBytes, final long lengthBytes) {
+    if ((mem == null) || (lengthBytes == 0)) { return; }
+    couponUpdate(coupon(hash(mem, offsetBytes, lengthBytes, DEFAULT_UPDATE_SEED, getHashOut())));
+  }
+
+  /**
+   * Present the given region of a ByteBuffer as a potential unique item.
+   * The region is hashed in place, without copying or allocation, and produces the same result as
+   * {@link #update(byte[])} given a byte array with the same contents, regardless of the byte
+   * order of the ByteBuffer. The position and limit of the ByteBuffer are not changed.
+   * If the ByteBuffer is null or the length is zero no update attempt is made and the method
+   * returns.
+   *
+   * @param buf the given ByteBuffer
+   * @param offset the absolute index of the first byte of the region within the ByteBuffer
+   * @param length the length in bytes of the region
+   */
+  public void update(final ByteBuffer buf, final int offset, final int length) {
+    if ((buf == null) || (length == 0)) { return; }
+    couponUpdate(coupon(hash(buf, offset, length, DEFAULT_UPDATE_SEED, getHashOut())));
+  }
+
+  /**
+   * Present each of the given longs as a separate potential unique item.
+   * The result is identical to calling {@link #update(long)} on each value in order, but the whole
+   * batch is hashed first and the resulting coupons are then applied to the sketch in a tight loop.
+   *
+   * <p>Note: this is different from {@link #update(long[])}, which presents the entire array as a
+   * single item.</p>
+   *
+   * @param values the array containing the long values
+   * @param offset the index of the first value to present
+   * @param length the number of values to present
+   */
+  public void batchUpdate(final long[] values, final int offset, final int length) {
+    UnsafeUtil.checkBounds(offset, length, values.length);
+    final int[] coupons = getCouponBuffer();
+    final long[] hashBuf = getHashOut();
+    for (int start = 0; start < length; start += COUPON_BATCH_SIZE) {
+      final int count = Math.min(COUPON_BATCH_SIZE, length - start);
+      final int base = offset + start;
+      for (int i = 0; i < count; i++) {
+        coupons[i] = coupon(hash(values[base + i], DEFAULT_UPDATE_SEED, hashBuf));
+      }
+      couponBatchUpdate(coupons, count);
+    }
+  }
+
+  /**
+   * Present each of the given doubles as a separate potential unique item.
+   * The result is identical to calling {@link #update(double)} on each value in order, but the
+   * whole batch is hashed first and the resulting coupons are then applied to the sketch in a
+   * tight loop.
+   *
+   * @param values the array containing the double values
+   * @param offset the index of the first value to present
+   * @param length the number of values to present
+   */
+  public void batchUpdate(final double[] values, final int offset, final int length) {
+    UnsafeUtil.checkBounds(offset, length, values.length);
+    final int[] coupons = getCouponBuffer();
+    final long[] hashBuf = getHashOut();
+    for (int start = 0; start < length; start += COUPON_BATCH_SIZE) {
+      final int count = Math.min(COUPON_BATCH_SIZE, length - start);
+      final int base = offset + start;
+      for (int i = 0; i < count; i++) {
+        final double d = values[base + i];
+        final long data = Double.doubleToLongBits((d == 0.0) ? 0.0 : d);
+        coupons[i] = coupon(hash(data, DEFAULT_UPDATE_SEED, hashBuf));
+      }
+      couponBatchUpdate(coupons, count);
+    }
+  }
+
+  /**
+   * Present each of the longs packed in the given Memory region as a separate potential unique
+   * item. The result is identical to calling {@link #update(long)} on each
+   * <i>mem.getLong(offsetBytes + i * 8)</i> in order.
+   *
+   * @param mem the Memory containing the packed long values
+   * @param offsetBytes the offset in bytes of the first value to present
+   * @param length the number of long values to present
+   */
+  public void batchUpdate(final Memory mem, final long offsetBytes, final int length) {
+    UnsafeUtil.checkBounds(offsetBytes, (long) length << 3, mem.getCapacity());
+    final int[] coupons = getCouponBuffer();
+    final long[] hashBuf = getHashOut();
+    for (int start = 0; start < length; start += COUPON_BATCH_SIZE) {
+      final int count = Math.min(COUPON_BATCH_SIZE, length - start);
+      final long base = offsetBytes + ((long) start << 3);
+      for (int i = 0; i < count; i++) {
+        coupons[i] = coupon(hash(mem.getLong(base + ((long) i << 3)), DEFAULT_UPDATE_SEED, hashBuf));
+      }
+      couponBatchUpdate(coupons, count);
+    }
+  }
+
+  //Returns the reusable hash output. Overridden by sketches that are updated concurrently.
+  long[] getHashOut() {
+    return hashOut;
+  }
+
+  //Returns the reusable coupon buffer. Overridden by sketches that are updated concurrently.
+  int[] getCouponBuffer() {
+    if (couponBuf == null) { couponBuf = new int[COUPON_BATCH_SIZE]; }
+    return couponBuf;
   }
 
   private static final int coupon(final long[] hash) {
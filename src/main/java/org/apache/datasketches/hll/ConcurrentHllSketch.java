@@ -0,0 +1,358 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.datasketches.hll;
+
+import static org.apache.datasketches.hll.HllUtil.EMPTY;
+import static org.apache.datasketches.hll.HllUtil.KEY_BITS_26;
+import static org.apache.datasketches.hll.TgtHllType.HLL_8;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.datasketches.memory.Memory;
+import org.apache.datasketches.memory.WritableMemory;
+
+/**
+ * A thread-safe HLL sketch that any number of threads may update concurrently, and that any
+ * thread may query at any time, without external synchronization.
+ *
+ * <p>Like the HllSketch, this sketch starts in the sparse <i>LIST</i> and <i>SET</i> modes. In
+ * these modes the coupons are held by an HLL_8 HllSketch that is guarded by a lock. When that
+ * sketch is promoted to the dense <i>HLL</i> mode, its registers are copied, under the lock, into
+ * a register array in the HLL_8 layout, and every later update is lock-free: a register is raised
+ * with a compare-and-swap of the 64-bit word holding it and seven of its neighbours, which only
+ * fails if another thread changed one of those eight registers in the meantime.</p>
+ *
+ * <p>Because the order in which concurrent updates change the registers is not defined, in HLL
+ * mode this sketch is out of order, as the result of a {@link Union} is: the estimate is the
+ * composite (non-HIP) estimate and the bounds use the non-HIP relative error, which is about 25%
+ * larger than that of a sequentially updated HllSketch of the same lgConfigK. The inputs of the
+ * composite estimator, the sum of 1/2<sup>v</sup> over the register values <i>v</i> and the
+ * number of zero registers, are kept in {@link LongAdder}s in fixed point, so every register
+ * change is counted exactly. Once all updates have returned, the estimate and bounds are identical
+ * to those of an out of order HLL_8 sketch with the same registers, see {@link #copy()}. A query
+ * that runs concurrently with updates reflects all updates that returned before it started, and
+ * may reflect part of the register changes of the updates still in progress, which has the effect
+ * of missing at most one item per thread in progress.</p>
+ *
+ * <p>The update methods inherited from the common HLL API are thread-safe. The {@link #reset()}
+ * method must not be called concurrently with updates.</p>
+ */
+public final class ConcurrentHllSketch extends BaseHllSketch {
+  //fixed point units of the KxQ sums: invPow2(v) is 1 << (32 - v) for v < 32, in kxq0 units of
+  //2^-32, and 1 << (64 - v) for v >= 32, in kxq1 units of 2^-64. Both sums stay below 2^53.
+  private static final double KXQ0_UNIT = 1.0 / (1L << 32);
+  private static final double KXQ1_UNIT = KXQ0_UNIT * KXQ0_UNIT;
+
+  private final int lgConfigK;
+  private final WritableMemory regs; //HLL_8 register array, valid in HLL mode
+  private final LongAdder kxq0Units = new LongAdder();
+  private final LongAdder kxq1Units = new LongAdder();
+  private final LongAdder numZeros = new LongAdder();
+  private final ThreadLocal<long[]> hashOut = new ThreadLocal<long[]>() {
+    @Override
+    protected long[] initialValue() {
+      return new long[2];
+    }
+  };
+  private final ThreadLocal<int[]> couponBuf = new ThreadLocal<int[]>() {
+    @Override
+    protected int[] initialValue() {
+      return new int[COUPON_BATCH_SIZE];
+    }
+  };
+
+  private final Object lock = new Object();
+  private HllSketch sparse; //guarded by lock, null in HLL mode
+  private volatile boolean hllMode;
+
+  /**
+   * Constructs a new concurrent sketch with the default <i>lgConfigK</i>.
+   */
+  public ConcurrentHllSketch() {
+    this(HllSketch.DEFAULT_LG_K);
+  }
+
+  /**
+   * Constructs a new concurrent sketch with the given <i>lgConfigK</i>.
+   * @param lgConfigK The Log2 of K for the target HLL sketch. This value must be
+   * between 4 and 21 inclusively.
+   */
+  public ConcurrentHllSketch(final int lgConfigK) {
+    this.lgConfigK = HllUtil.checkLgK(lgConfigK);
+    regs = WritableMemory.allocate(1 << lgConfigK);
+    sparse = new HllSketch(lgConfigK, HLL_8);
+  }
+
+  /**
+   * Returns a copy of this sketch on the Java heap as an HLL_8 HllSketch. In HLL mode the copy is
+   * out of order, so its estimate and bounds are those of this sketch.
+   * If updates run concurrently, the copy holds all updates that returned before the copy started,
+   * and may hold some of those still in progress.
+   * @return a copy of this sketch on the Java heap
+   */
+  public HllSketch copy() {
+    if (!hllMode) {
+      synchronized (lock) {
+        if (!hllMode) { return sparse.copy(); }
+      }
+    }
+    final HllArray hllArr = HllArray.newHeapHll(lgConfigK, HLL_8);
+    regs.getByteArray(0, hllArr.hllByteArr, 0, 1 << lgConfigK);
+    hllArr.putOutOfOrder(true);
+    final HllSketch sk = new HllSketch(hllArr);
+    hllArr.putRebuildCurMinNumKxQFlag(true);
+    Union.checkRebuildCurMinNumKxQ(sk);
+    return sk;
+  }
+
+  /**
+   * Returns a copy of this sketch on the Java heap with the given TgtHllType.
+   * @param tgtHllType the TgtHllType enum
+   * @return a copy of this sketch on the Java heap with the given TgtHllType
+   */
+  public HllSketch copyAs(final TgtHllType tgtHllType) {
+    return copy().copyAs(tgtHllType);
+  }
+
+  @Override
+  public int getCompactSerializationBytes() {
+    if (!hllMode) {
+      synchronized (lock) {
+        if (!hllMode) { return sparse.getCompactSerializationBytes(); }
+      }
+    }
+    return HllSketch.getMaxUpdatableSerializationBytes(lgConfigK, HLL_8);
+  }
+
+  @Override
+  public double getCompositeEstimate() {
+    return getEstimate();
+  }
+
+  @Override
+  CurMode getCurMode() {
+    if (!hllMode) {
+      synchronized (lock) {
+        if (!hllMode) { return sparse.getCurMode(); }
+      }
+    }
+    return CurMode.HLL;
+  }
+
+  @Override
+  public double getEstimate() {
+    if (!hllMode) {
+      synchronized (lock) {
+        if (!hllMode) { return sparse.getEstimate(); }
+      }
+    }
+    return getHllEstimate();
+  }
+
+  @Override
+  public int getLgConfigK() {
+    return lgConfigK;
+  }
+
+  @Override
+  public double getLowerBound(final int numStdDev) {
+    if (!hllMode) {
+      synchronized (lock) {
+        if (!hllMode) { return sparse.getLowerBound(numStdDev); }
+      }
+    }
+    HllUtil.checkNumStdDev(numStdDev);
+    final int numAtCurMin = (int) numZeros.sum();
+    return HllEstimators.hllLowerBound(lgConfigK, 0, numAtCurMin, true, getHllEstimate(),
+        numStdDev);
+  }
+
+  @Override
+  public TgtHllType getTgtHllType() {
+    return HLL_8;
+  }
+
+  @Override
+  public int getUpdatableSerializationBytes() {
+    if (!hllMode) {
+      synchronized (lock) {
+        if (!hllMode) { return sparse.getUpdatableSerializationBytes(); }
+      }
+    }
+    return HllSketch.getMaxUpdatableSerializationBytes(lgConfigK, HLL_8);
+  }
+
+  @Override
+  public double getUpperBound(final int numStdDev) {
+    if (!hllMode) {
+      synchronized (lock) {
+        if (!hllMode) { return sparse.getUpperBound(numStdDev); }
+      }
+    }
+    HllUtil.checkNumStdDev(numStdDev);
+    return HllEstimators.hllUpperBound(lgConfigK, true, getHllEstimate(), numStdDev);
+  }
+
+  @Override
+  public boolean isCompact() {
+    return false;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    if (!hllMode) {
+      synchronized (lock) {
+        if (!hllMode) { return sparse.isEmpty(); }
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public boolean isMemory() {
+    return false;
+  }
+
+  @Override
+  public boolean isOffHeap() {
+    return false;
+  }
+
+  @Override
+  boolean isOutOfOrder() {
+    return hllMode;
+  }
+
+  @Override
+  public boolean isSameResource(final Memory mem) {
+    return false;
+  }
+
+  /**
+   * Resets to empty, but does not change the configured value of lgConfigK.
+   * This must not be called concurrently with updates.
+   */
+  @Override
+  public void reset() {
+    synchronized (lock) {
+      hllMode = false;
+      sparse = new HllSketch(lgConfigK, HLL_8);
+      regs.clear();
+      kxq0Units.reset();
+      kxq1Units.reset();
+      numZeros.reset();
+    }
+  }
+
+  @Override
+  public byte[] toCompactByteArray() {
+    return copy().toCompactByteArray();
+  }
+
+  @Override
+  public byte[] toUpdatableByteArray() {
+    return copy().toUpdatableByteArray();
+  }
+
+  @Override
+  public String toString(final boolean summary, final boolean detail, final boolean auxDetail,
+      final boolean all) {
+    return copy().toString(summary, detail, auxDetail, all);
+  }
+
+  @Override
+  void couponUpdate(final int coupon) {
+    if ((coupon >>> KEY_BITS_26) == EMPTY) { return; }
+    if (!hllMode) {
+      synchronized (lock) {
+        if (!hllMode) {
+          sparse.couponUpdate(coupon);
+          if (sparse.getCurMode() == CurMode.HLL) { promote(); }
+          return;
+        }
+      }
+    }
+    registerUpdate(coupon);
+  }
+
+  @Override
+  void couponBatchUpdate(final int[] coupons, final int count) {
+    for (int i = 0; i < count; i++) {
+      couponUpdate(coupons[i]);
+    }
+  }
+
+  @Override
+  long[] getHashOut() {
+    return hashOut.get();
+  }
+
+  @Override
+  int[] getCouponBuffer() {
+    return couponBuf.get();
+  }
+
+  //Raises the register of the coupon with a CAS of the word holding it, lock-free
+  private void registerUpdate(final int coupon) {
+    final int slotNo = coupon & ((1 << lgConfigK) - 1);
+    final int newValue = coupon >>> KEY_BITS_26;
+    final long offset = slotNo & ~7;
+    final int shift = (slotNo & 7) << 3;
+    long word;
+    int oldValue;
+    do {
+      word = regs.getLong(offset);
+      oldValue = (int) (word >>> shift) & 0XFF;
+      if (newValue <= oldValue) { return; }
+    } while (!regs.compareAndSwapLong(offset, word, word + ((long) (newValue - oldValue) << shift)));
+    addKxQ(newValue, 1);
+    addKxQ(oldValue, -1);
+    if (oldValue == 0) { numZeros.decrement(); }
+  }
+
+  private void addKxQ(final int value, final long sign) {
+    if (value < 32) {
+      kxq0Units.add(sign << (32 - value));
+    } else {
+      kxq1Units.add(sign << (64 - value));
+    }
+  }
+
+  private double getHllEstimate() {
+    final double kxq = (kxq0Units.sum() * KXQ0_UNIT) + (kxq1Units.sum() * KXQ1_UNIT);
+    return HllEstimators.hllCompositeEstimate(lgConfigK, kxq, 0, (int) numZeros.sum());
+  }
+
+  //Called under the lock, when the sparse sketch has been promoted to HLL mode
+  private void promote() {
+    final byte[] hllByteArr = ((HllArray) sparse.hllSketchImpl).hllByteArr;
+    final int configK = 1 << lgConfigK;
+    for (int slotNo = 0; slotNo < configK; slotNo++) {
+      final int value = hllByteArr[slotNo];
+      addKxQ(value, 1);
+      if (value == 0) { numZeros.increment(); }
+    }
+    regs.putByteArray(0, hllByteArr, 0, configK);
+    sparse = null;
+    hllMode = true;
+  }
+
+}
@@ -50,7 +50,17 @@ class CouponHashSet extends CouponList {
    * @param tgtHllType the new target Hll type
    */
   CouponHashSet(final int lgConfigK, final TgtHllType tgtHllType) {
-    super(lgConfigK, tgtHllType, CurMode.SET);
+    this(lgConfigK, tgtHllType, false);
+  }
+
+  /**
+   * Constructs this sketch with the intent of loading it with data
+   * @param lgConfigK the configured Lg K
+   * @param tgtHllType the new target Hll type
+   * @param sparseHll if true, the promotion to HLL mode produces a SparseHllArray
+   */
+  CouponHashSet(final int lgConfigK, final TgtHllType tgtHllType, final boolean sparseHll) {
+    super(lgConfigK, tgtHllType, CurMode.SET, sparseHll);
     assert lgConfigK > 7;
   }
 
@@ -40,6 +40,7 @@ class CouponList extends AbstractCoupons {
   int lgCouponArrInts;
   int couponCount;
   int[] couponIntArr;
+  final boolean sparseHll; //promote to a SparseHllArray instead of a dense HllArray
 
   /**
    * New instance constructor for LIST or SET.
@@ -48,7 +49,20 @@ class CouponList extends AbstractCoupons {
    * @param curMode LIST or SET
    */
   CouponList(final int lgConfigK, final TgtHllType tgtHllType, final CurMode curMode) {
+    this(lgConfigK, tgtHllType, curMode, false);
+  }
+
+  /**
+   * New instance constructor for LIST or SET.
+   * @param lgConfigK the configured Lg K
+   * @param tgtHllType the configured HLL target
+   * @param curMode LIST or SET
+   * @param sparseHll if true, the promotion to HLL mode produces a SparseHllArray
+   */
+  CouponList(final int lgConfigK, final TgtHllType tgtHllType, final CurMode curMode,
+      final boolean sparseHll) {
     super(lgConfigK, tgtHllType, curMode);
+    this.sparseHll = sparseHll;
     if (curMode == CurMode.LIST) {
       lgCouponArrInts = LG_INIT_LIST_SIZE;
     } else { //SET
@@ -68,6 +82,7 @@ class CouponList extends AbstractCoupons {
     lgCouponArrInts = that.lgCouponArrInts;
     couponCount = that.couponCount;
     couponIntArr = that.couponIntArr.clone();
+    sparseHll = that.sparseHll;
   }
 
   /**
@@ -80,6 +95,7 @@ class CouponList extends AbstractCoupons {
     lgCouponArrInts = that.lgCouponArrInts;
     couponCount = that.couponCount;
     couponIntArr = that.couponIntArr.clone();
+    sparseHll = false;
   }
 
   static final CouponList heapifyList(final Memory mem) {
@@ -211,7 +227,7 @@ class CouponList extends AbstractCoupons {
   static final HllSketchImpl promoteHeapListToSet(final CouponList list) {
     final int couponCount = list.couponCount;
     final int[] arr = list.couponIntArr;
-    final CouponHashSet chSet = new CouponHashSet(list.lgConfigK, list.tgtHllType);
+    final CouponHashSet chSet = new CouponHashSet(list.lgConfigK, list.tgtHllType, list.sparseHll);
     for (int i = 0; i < couponCount; i++) {
       chSet.couponUpdate(arr[i]);
     }
@@ -221,8 +237,12 @@ class CouponList extends AbstractCoupons {
   //Promotional move of coupons to an HllSketch from either List or Set.
   //called by CouponHashSet.couponUpdate()
   //called by CouponList.couponUpdate()
+  //If requested, a SET is promoted to the sparse form, which becomes a dense HllArray when it
+  // grows larger.
   static final HllSketchImpl promoteHeapListOrSetToHll(final CouponList src) {
-    final HllArray tgtHllArr = HllArray.newHeapHll(src.lgConfigK, src.tgtHllType);
+    final AbstractHllArray tgtHllArr = (src.sparseHll && SparseHllArray.isSparseWorthwhile(src.lgConfigK))
+        ? new SparseHllArray(src.lgConfigK, src.tgtHllType, src.couponCount)
+        : HllArray.newHeapHll(src.lgConfigK, src.tgtHllType);
     final PairIterator srcItr = src.iterator();
     tgtHllArr.putKxQ0(1 << src.lgConfigK);
     while (srcItr.nextValid()) {
@@ -0,0 +1,295 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.datasketches.hll;
+
+import static org.apache.datasketches.hll.HllUtil.noWriteAccess;
+import static org.apache.datasketches.hll.PreambleUtil.COMPRESSED_TOTAL_BYTES_INT;
+import static org.apache.datasketches.hll.PreambleUtil.extractCurMin;
+import static org.apache.datasketches.hll.PreambleUtil.extractHipAccum;
+import static org.apache.datasketches.hll.PreambleUtil.extractKxQ0;
+import static org.apache.datasketches.hll.PreambleUtil.extractKxQ1;
+import static org.apache.datasketches.hll.PreambleUtil.extractLgK;
+import static org.apache.datasketches.hll.PreambleUtil.extractNumAtCurMin;
+import static org.apache.datasketches.hll.PreambleUtil.extractOooFlag;
+import static org.apache.datasketches.hll.PreambleUtil.extractTgtHllType;
+
+import org.apache.datasketches.memory.Memory;
+import org.apache.datasketches.memory.WritableMemory;
+
+/**
+ * A read-only HLL array that wraps a compressed image, see HllCompression.
+ *
+ * <p>The estimate, the bounds and the other state held in the preamble are read directly from the
+ * image. The registers are decoded only on first access by an operation that needs them, such as
+ * iteration, conversion, serialization to the standard forms or a union, and are then retained.</p>
+ *
+ * <p>The wrapped image is not in the standard HLL layout, so this array does not present itself
+ * as Memory based: isMemory() is false and getMemory() is null. Code that reads the registers of
+ * a Memory based array in place treats it like a heap array instead.</p>
+ */
+final class DirectCompressedHllArray extends AbstractHllArray {
+  private final Memory mem;
+  private HllArray decoded = null;
+
+  //Memory must have been checked with HllCompression.checkCompressedPreamble
+  DirectCompressedHllArray(final Memory mem) {
+    super(extractLgK(mem), extractTgtHllType(mem), CurMode.HLL);
+    this.mem = mem;
+  }
+
+  /**
+   * Returns the decoded heap array of the wrapped image, which must not be modified.
+   * @return the decoded heap array
+   */
+  HllArray getDecoded() {
+    if (decoded == null) {
+      decoded = HllCompression.uncompress(mem);
+    }
+    return decoded;
+  }
+
+  /**
+   * Returns a copy of the wrapped compressed image.
+   * @return a copy of the wrapped compressed image
+   */
+  byte[] toCompressedByteArray() {
+    final byte[] out = new byte[mem.getInt(COMPRESSED_TOTAL_BYTES_INT)];
+    mem.getByteArray(0, out, 0, out.length);
+    return out;
+  }
+
+  @Override
+  void addToHipAccum(final double delta) {
+    noWriteAccess();
+  }
+
+  @Override
+  HllArray copy() {
+    return HllCompression.uncompress(mem);
+  }
+
+  @Override
+  HllArray copyAs(final TgtHllType tgtHllType) {
+    return getDecoded().copyAs(tgtHllType);
+  }
+
+  @Override
+  HllSketchImpl couponUpdate(final int coupon) {
+    noWriteAccess();
+    return null;
+  }
+
+  @Override
+  void decNumAtCurMin() {
+    noWriteAccess();
+  }
+
+  @Override
+  AuxHashMap getAuxHashMap() {
+    return getDecoded().getAuxHashMap();
+  }
+
+  @Override
+  PairIterator getAuxIterator() {
+    return getDecoded().getAuxIterator();
+  }
+
+  @Override
+  int getCompactSerializationBytes() {
+    return getDecoded().getCompactSerializationBytes();
+  }
+
+  @Override
+  int getCurMin() {
+    return extractCurMin(mem);
+  }
+
+  @Override
+  double getHipAccum() {
+    return extractHipAccum(mem);
+  }
+
+  @Override
+  int getHllByteArrBytes() {
+    return getDecoded().getHllByteArrBytes();
+  }
+
+  @Override
+  double getKxQ0() {
+    return extractKxQ0(mem);
+  }
+
+  @Override
+  double getKxQ1() {
+    return extractKxQ1(mem);
+  }
+
+  @Override
+  Memory getMemory() {
+    return null; //not the standard layout
+  }
+
+  @Override
+  AuxHashMap getNewAuxHashMap() {
+    return getDecoded().getNewAuxHashMap();
+  }
+
+  @Override
+  int getNibble(final int slotNo) {
+    return getDecoded().getNibble(slotNo);
+  }
+
+  @Override
+  int getNumAtCurMin() {
+    return extractNumAtCurMin(mem);
+  }
+
+  @Override
+  int getSlotValue(final int slotNo) {
+    return getDecoded().getSlotValue(slotNo);
+  }
+
+  @Override
+  int getUpdatableSerializationBytes() {
+    return getDecoded().getUpdatableSerializationBytes();
+  }
+
+  @Override
+  WritableMemory getWritableMemory() {
+    return null;
+  }
+
+  @Override
+  boolean isCompact() {
+    return true;
+  }
+
+  @Override
+  boolean isEmpty() {
+    return false;
+  }
+
+  @Override
+  boolean isMemory() {
+    return false; //not the standard layout
+  }
+
+  @Override
+  boolean isOffHeap() {
+    return mem.isDirect();
+  }
+
+  @Override
+  boolean isOutOfOrder() {
+    return extractOooFlag(mem);
+  }
+
+  @Override
+  boolean isRebuildCurMinNumKxQFlag() {
+    return false; //cleared by HllCompression.compress
+  }
+
+  @Override
+  boolean isSameResource(final Memory mem) {
+    return this.mem.isSameResource(mem);
+  }
+
+  @Override
+  PairIterator iterator() {
+    return getDecoded().iterator();
+  }
+
+  @Override
+  void putAuxHashMap(final AuxHashMap auxHashMap, final boolean compact) {
+    noWriteAccess();
+  }
+
+  @Override
+  void putCurMin(final int curMin) {
+    noWriteAccess();
+  }
+
+  @Override
+  void putEmptyFlag(final boolean empty) {
+    noWriteAccess();
+  }
+
+  @Override
+  void putHipAccum(final double hipAccum) {
+    noWriteAccess();
+  }
+
+  @Override
+  void putKxQ0(final double kxq0) {
+    noWriteAccess();
+  }
+
+  @Override
+  void putKxQ1(final double kxq1) {
+    noWriteAccess();
+  }
+
+  @Override
+  void putNibble(final int slotNo, final int nibValue) {
+    noWriteAccess();
+  }
+
+  @Override
+  void putNumAtCurMin(final int numAtCurMin) {
+    noWriteAccess();
+  }
+
+  @Override
+  void putOutOfOrder(final boolean oooFlag) {
+    noWriteAccess();
+  }
+
+  @Override
+  void putRebuildCurMinNumKxQFlag(final boolean rebuild) {
+    noWriteAccess();
+  }
+
+  @Override
+  HllSketchImpl reset() {
+    noWriteAccess();
+    return null;
+  }
+
+  @Override
+  byte[] toCompactByteArray() {
+    return getDecoded().toCompactByteArray();
+  }
+
+  @Override
+  byte[] toUpdatableByteArray() {
+    return getDecoded().toUpdatableByteArray();
+  }
+
+  @Override
+  void updateSlotNoKxQ(final int slotNo, final int value) {
+    noWriteAccess();
+  }
+
+  @Override
+  void updateSlotWithKxQ(final int slotNo, final int value) {
+    noWriteAccess();
+  }
+}
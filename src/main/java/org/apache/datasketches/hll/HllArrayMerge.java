@@ -0,0 +1,222 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.datasketches.hll;
+
+import static org.apache.datasketches.hll.AbstractHllArray.hll4ArrBytes;
+import static org.apache.datasketches.hll.HllUtil.EMPTY;
+import static org.apache.datasketches.hll.HllUtil.getPairLow26;
+import static org.apache.datasketches.hll.HllUtil.getPairValue;
+import static org.apache.datasketches.hll.PreambleUtil.HLL_BYTE_ARR_START;
+import static org.apache.datasketches.hll.PreambleUtil.extractAuxCount;
+import static org.apache.datasketches.hll.PreambleUtil.extractCompactFlag;
+import static org.apache.datasketches.hll.PreambleUtil.extractCurMin;
+import static org.apache.datasketches.hll.PreambleUtil.extractLgArr;
+import static org.apache.datasketches.hll.PreambleUtil.extractTgtHllType;
+
+import org.apache.datasketches.memory.Memory;
+import org.apache.datasketches.memory.WritableMemory;
+
+/**
+ * Merges the registers of an HLL mode sketch into the HLL_8 registers of a union gadget, eight
+ * registers at a time.
+ *
+ * <p>The eight registers are held in the byte lanes of a long (SWAR, SIMD within a register) and
+ * the maximum of two such longs is computed lane-wise with a few arithmetic operations, instead
+ * of reading and comparing each register through the AbstractHllArray accessors. HLL_6 and HLL_4
+ * source registers are first unpacked into byte lanes. The HLL_4 registers whose value is held in
+ * the AuxHashMap are merged in a second pass over the AuxHashMap.</p>
+ *
+ * <p>All register values are at most 63, so the sign bit of each byte lane is free to catch the
+ * borrow of the lane-wise subtraction.</p>
+ */
+final class HllArrayMerge {
+  private static final long LANE_ONES = 0x0101010101010101L;
+  private static final long LANE_SIGNS = 0x8080808080808080L;
+  private static final long LANE_VALUES = 0x3F3F3F3F3F3F3F3FL;
+  private static final long LANE_NIBBLES = 0x0F0F0F0F0F0F0F0FL;
+
+  private HllArrayMerge() {}
+
+  /**
+   * Merges the registers of the given source, which must be in HLL mode, into the given target,
+   * which must be an HLL_8 array in HLL mode. If the source lgK is larger than the target lgK,
+   * the source registers are folded into the target, so register <i>i</i> of the source is merged
+   * into register <i>i mod K</i> of the target.
+   * The caller must rebuild the curMin, numAtCurMin and KxQ registers of the target.
+   *
+   * @param src the source sketch
+   * @param tgt the HLL_8 target sketch
+   * @param srcLgK the lgConfigK of the source
+   * @param tgtLgK the lgConfigK of the target, at most srcLgK
+   */
+  static void merge(final HllSketch src, final HllSketch tgt, final int srcLgK, final int tgtLgK) {
+    final AbstractHllArray srcArr = (AbstractHllArray) src.hllSketchImpl;
+    final WritableMemory tgtMem;
+    final long tgtStart;
+    if (tgt.isMemory()) {
+      tgtMem = tgt.getWritableMemory();
+      tgtStart = HLL_BYTE_ARR_START;
+    } else {
+      tgtMem = WritableMemory.wrap(((HllArray) tgt.hllSketchImpl).hllByteArr);
+      tgtStart = 0;
+    }
+    final Memory srcMem;
+    final long srcStart;
+    if (src.isMemory()) {
+      srcMem = src.getMemory();
+      srcStart = HLL_BYTE_ARR_START;
+    } else if (srcArr instanceof HllArray) {
+      srcMem = Memory.wrap(((HllArray) srcArr).hllByteArr);
+      srcStart = 0;
+    } else { //sparse or compressed, merge only the non-zero registers
+      final int tgtKmask = (1 << tgtLgK) - 1;
+      final PairIterator itr = srcArr.iterator();
+      while (itr.nextValid()) {
+        mergeAuxPair(tgtMem, tgtStart, tgtKmask, itr.getPair());
+      }
+      return;
+    }
+    mergeRegisters(srcMem, srcStart, src.getTgtHllType(), srcLgK, srcArr.getCurMin(),
+        tgtMem, tgtStart, tgtLgK);
+    final PairIterator auxItr = srcArr.getAuxIterator();
+    if (auxItr != null) {
+      final int tgtKmask = (1 << tgtLgK) - 1;
+      while (auxItr.nextValid()) {
+        mergeAuxPair(tgtMem, tgtStart, tgtKmask, auxItr.getPair());
+      }
+    }
+  }
+
+  /**
+   * Merges the registers of the given serialized image of a sketch in HLL mode, which may be in
+   * compact or updatable form, into the given HLL_8 target registers, as {@link #merge(HllSketch,
+   * HllSketch, int, int)} does, but reads the registers and the AuxHashMap directly from the image.
+   *
+   * @param srcMem the image of the source sketch, which has been checked by the caller
+   * @param tgtMem the memory of the HLL_8 target registers
+   * @param tgtStart the offset of the target registers in tgtMem
+   * @param srcLgK the lgConfigK of the source
+   * @param tgtLgK the lgConfigK of the target, at most srcLgK
+   */
+  static void merge(final Memory srcMem, final WritableMemory tgtMem, final long tgtStart,
+      final int srcLgK, final int tgtLgK) {
+    final TgtHllType srcType = extractTgtHllType(srcMem);
+    mergeRegisters(srcMem, HLL_BYTE_ARR_START, srcType, srcLgK, extractCurMin(srcMem),
+        tgtMem, tgtStart, tgtLgK);
+    if (srcType != TgtHllType.HLL_4) { return; }
+    final int auxCount = extractAuxCount(srcMem);
+    if (auxCount == 0) { return; }
+    final long auxStart = HLL_BYTE_ARR_START + hll4ArrBytes(srcLgK);
+    final int auxInts = extractCompactFlag(srcMem) ? auxCount : 1 << extractLgArr(srcMem);
+    final int tgtKmask = (1 << tgtLgK) - 1;
+    for (int i = 0; i < auxInts; i++) {
+      final int pair = srcMem.getInt(auxStart + (i << 2));
+      if (pair == EMPTY) { continue; }
+      mergeAuxPair(tgtMem, tgtStart, tgtKmask, pair);
+    }
+  }
+
+  //The HLL_4 registers held in the AuxHashMap are merged as a lower bound of their value, as
+  //AUX_TOKEN + curMin, and must then be merged again with their value from the AuxHashMap.
+  private static void mergeRegisters(final Memory srcMem, final long srcStart,
+      final TgtHllType srcType, final int srcLgK, final int srcCurMin,
+      final WritableMemory tgtMem, final long tgtStart, final int tgtLgK) {
+    final int srcK = 1 << srcLgK;
+    final int tgtKmask = (1 << tgtLgK) - 1;
+
+    switch (srcType) {
+      case HLL_8: {
+        for (int slot = 0; slot < srcK; slot += 8) {
+          final long srcLanes = srcMem.getLong(srcStart + slot) & LANE_VALUES;
+          mergeLanes(tgtMem, tgtStart + (slot & tgtKmask), srcLanes);
+        }
+        break;
+      }
+      case HLL_6: {
+        for (int slot = 0; slot < srcK; slot += 8) {
+          final long off = srcStart + ((slot >>> 3) * 6); //8 registers in 6 bytes
+          final long bits = (srcMem.getInt(off) & 0XFFFFFFFFL)
+              | ((srcMem.getShort(off + 4) & 0XFFFFL) << 32);
+          mergeLanes(tgtMem, tgtStart + (slot & tgtKmask), spread6(bits));
+        }
+        break;
+      }
+      default: { //HLL_4
+        final long curMinLanes = srcCurMin * LANE_ONES;
+        for (int slot = 0; slot < srcK; slot += 8) {
+          final long off = srcStart + (slot >>> 1); //8 registers in 4 bytes
+          final long nibbles = spread4(srcMem.getInt(off) & 0XFFFFFFFFL);
+          mergeLanes(tgtMem, tgtStart + (slot & tgtKmask), nibbles + curMinLanes);
+        }
+        break;
+      }
+    }
+  }
+
+  /**
+   * Returns the lane-wise maximum of the given longs, each of which holds eight byte lanes with
+   * values in the range [0, 127].
+   * @param a the first eight lanes
+   * @param b the second eight lanes
+   * @return the lane-wise maximum
+   */
+  static long maxLanes(final long a, final long b) {
+    //the sign bit of a lane is set if and only if the lane of a is greater than or equal to b
+    final long aGEb = ((a | LANE_SIGNS) - (b & ~LANE_SIGNS)) & LANE_SIGNS;
+    final long mask = (aGEb >>> 7) * 0XFFL;
+    return (a & mask) | (b & ~mask);
+  }
+
+  private static void mergeLanes(final WritableMemory tgtMem, final long offset,
+      final long srcLanes) {
+    final long tgtLanes = tgtMem.getLong(offset);
+    final long maxLanes = maxLanes(srcLanes, tgtLanes);
+    if (maxLanes != tgtLanes) {
+      tgtMem.putLong(offset, maxLanes);
+    }
+  }
+
+  //Spreads the eight 6-bit values in the low 48 bits into the eight byte lanes, in order
+  static long spread6(final long bits) {
+    long lanes = 0;
+    for (int i = 0; i < 8; i++) {
+      lanes |= ((bits >>> (i * 6)) & 0X3FL) << (i << 3);
+    }
+    return lanes;
+  }
+
+  //Spreads the eight 4-bit values in the low 32 bits into the eight byte lanes, in order
+  static long spread4(final long bits) {
+    long lanes = (bits | (bits << 16)) & 0X0000FFFF0000FFFFL;
+    lanes = (lanes | (lanes << 8)) & 0X00FF00FF00FF00FFL;
+    return (lanes | (lanes << 4)) & LANE_NIBBLES;
+  }
+
+  private static void mergeAuxPair(final WritableMemory tgtMem, final long tgtStart,
+      final int tgtKmask, final int pair) {
+    final long offset = tgtStart + (getPairLow26(pair) & tgtKmask);
+    final int value = getPairValue(pair);
+    if (value > tgtMem.getByte(offset)) {
+      tgtMem.putByte(offset, (byte) value);
+    }
+  }
+
+}
@@ -0,0 +1,386 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.datasketches.hll;
+
+import static org.apache.datasketches.hll.HllUtil.AUX_TOKEN;
+import static org.apache.datasketches.hll.HllUtil.LG_AUX_ARR_INTS;
+import static org.apache.datasketches.hll.PreambleUtil.COMPRESSED_BASE_BYTE;
+import static org.apache.datasketches.hll.PreambleUtil.COMPRESSED_CODE_LENGTHS_START;
+import static org.apache.datasketches.hll.PreambleUtil.COMPRESSED_NUM_SYMBOLS_BYTE;
+import static org.apache.datasketches.hll.PreambleUtil.COMPRESSED_SER_VER;
+import static org.apache.datasketches.hll.PreambleUtil.COMPRESSED_TOTAL_BYTES_INT;
+import static org.apache.datasketches.hll.PreambleUtil.HLL_PREINTS;
+import static org.apache.datasketches.hll.PreambleUtil.extractCompactFlag;
+import static org.apache.datasketches.hll.PreambleUtil.extractCurMin;
+import static org.apache.datasketches.hll.PreambleUtil.extractCurMode;
+import static org.apache.datasketches.hll.PreambleUtil.extractFamilyId;
+import static org.apache.datasketches.hll.PreambleUtil.extractHipAccum;
+import static org.apache.datasketches.hll.PreambleUtil.extractKxQ0;
+import static org.apache.datasketches.hll.PreambleUtil.extractKxQ1;
+import static org.apache.datasketches.hll.PreambleUtil.extractLgK;
+import static org.apache.datasketches.hll.PreambleUtil.extractNumAtCurMin;
+import static org.apache.datasketches.hll.PreambleUtil.extractOooFlag;
+import static org.apache.datasketches.hll.PreambleUtil.extractPreInts;
+import static org.apache.datasketches.hll.PreambleUtil.extractSerVer;
+import static org.apache.datasketches.hll.PreambleUtil.extractTgtHllType;
+import static org.apache.datasketches.hll.PreambleUtil.insertCompactFlag;
+import static org.apache.datasketches.hll.PreambleUtil.insertCompressedSerVer;
+import static org.apache.datasketches.hll.PreambleUtil.insertCurMin;
+import static org.apache.datasketches.hll.PreambleUtil.insertCurMode;
+import static org.apache.datasketches.hll.PreambleUtil.insertEmptyFlag;
+import static org.apache.datasketches.hll.PreambleUtil.insertFamilyId;
+import static org.apache.datasketches.hll.PreambleUtil.insertHipAccum;
+import static org.apache.datasketches.hll.PreambleUtil.insertKxQ0;
+import static org.apache.datasketches.hll.PreambleUtil.insertKxQ1;
+import static org.apache.datasketches.hll.PreambleUtil.insertLgK;
+import static org.apache.datasketches.hll.PreambleUtil.insertNumAtCurMin;
+import static org.apache.datasketches.hll.PreambleUtil.insertOooFlag;
+import static org.apache.datasketches.hll.PreambleUtil.insertPreInts;
+import static org.apache.datasketches.hll.PreambleUtil.insertTgtHllType;
+
+import java.util.Arrays;
+
+import org.apache.datasketches.Family;
+import org.apache.datasketches.SketchesArgumentException;
+import org.apache.datasketches.memory.Memory;
+import org.apache.datasketches.memory.WritableMemory;
+
+/**
+ * Entropy coding of the registers of an HLL mode sketch, see
+ * {@link HllSketch#toCompressedByteArray()}.
+ *
+ * <p>Once a sketch is past warmup almost all of its register values fall within a few values of
+ * the smallest one, with a geometric distribution, so the register entropy is under 3 bits, while
+ * HLL_4 spends 4 bits per register plus the AuxHashMap exceptions. Here each register value, less
+ * the smallest register value (the base), is a symbol of a canonical Huffman code built from the
+ * actual register histogram, so there are no exceptions. The code lengths are limited to
+ * {@link #MAX_CODE_LEN}, which bounds the size of the decoding table.</p>
+ *
+ * <p>The preamble keeps the HIP accumulator, the KxQ registers, curMin and numAtCurMin of the
+ * source, so the estimate and bounds of a compressed image are computed without decoding the
+ * registers, see DirectCompressedHllArray.</p>
+ */
+final class HllCompression {
+  static final int MAX_CODE_LEN = 12;
+
+  private HllCompression() {}
+
+  /**
+   * Returns the compressed image of the given HLL mode array.
+   * @param src the given array, which must be in HLL mode
+   * @return the compressed image
+   */
+  static byte[] compress(final AbstractHllArray src) {
+    AbstractHllArray arr = src;
+    if (arr.isRebuildCurMinNumKxQFlag()) { //a non-finalized union gadget
+      final HllSketch sk = new HllSketch(arr.copy());
+      Union.checkRebuildCurMinNumKxQ(sk);
+      arr = (AbstractHllArray) sk.hllSketchImpl;
+    }
+    final int lgK = arr.getLgConfigK();
+    final int k = 1 << lgK;
+    final byte[] values = new byte[k];
+    int min = Integer.MAX_VALUE;
+    int max = 0;
+    final PairIterator itr = arr.iterator();
+    while (itr.nextAll()) {
+      final int v = itr.getValue();
+      values[itr.getSlot()] = (byte) v;
+      if (v < min) { min = v; }
+      if (v > max) { max = v; }
+    }
+    final int numSymbols = (max - min) + 1;
+    final int[] freq = new int[numSymbols];
+    for (int slot = 0; slot < k; slot++) {
+      freq[values[slot] - min]++;
+    }
+    final int[] lengths = (numSymbols == 1) ? new int[1] : limitedCodeLengths(freq);
+    final int[] codes = canonicalCodes(lengths);
+    long totalBits = 0;
+    for (int s = 0; s < numSymbols; s++) {
+      totalBits += (long) freq[s] * lengths[s];
+    }
+    final int streamStart = COMPRESSED_CODE_LENGTHS_START + ((numSymbols + 1) >>> 1);
+    final int totalBytes = streamStart + (int) ((totalBits + 7) >>> 3);
+    final byte[] out = new byte[totalBytes];
+    final WritableMemory wmem = WritableMemory.wrap(out);
+    insertPreInts(wmem, HLL_PREINTS);
+    insertCompressedSerVer(wmem);
+    insertFamilyId(wmem);
+    insertLgK(wmem, lgK);
+    insertEmptyFlag(wmem, false);
+    insertCompactFlag(wmem, true);
+    insertOooFlag(wmem, arr.isOutOfOrder());
+    insertCurMin(wmem, arr.getCurMin());
+    insertCurMode(wmem, CurMode.HLL);
+    insertTgtHllType(wmem, arr.getTgtHllType());
+    insertHipAccum(wmem, arr.getHipAccum());
+    insertKxQ0(wmem, arr.getKxQ0());
+    insertKxQ1(wmem, arr.getKxQ1());
+    insertNumAtCurMin(wmem, arr.getNumAtCurMin());
+    wmem.putInt(COMPRESSED_TOTAL_BYTES_INT, totalBytes);
+    out[COMPRESSED_BASE_BYTE] = (byte) min;
+    out[COMPRESSED_NUM_SYMBOLS_BYTE] = (byte) numSymbols;
+    for (int s = 0; s < numSymbols; s++) {
+      out[COMPRESSED_CODE_LENGTHS_START + (s >>> 1)] |= (byte) (lengths[s] << ((s & 1) << 2));
+    }
+    if (numSymbols == 1) { return out; }
+
+    //the codes are bit-reversed, so the bit stream is written and read from the low bits up
+    int pos = streamStart;
+    long acc = 0;
+    int accBits = 0;
+    for (int slot = 0; slot < k; slot++) {
+      final int s = values[slot] - min;
+      acc |= (long) codes[s] << accBits;
+      accBits += lengths[s];
+      while (accBits >= 8) {
+        out[pos++] = (byte) acc;
+        acc >>>= 8;
+        accBits -= 8;
+      }
+    }
+    if (accBits > 0) { out[pos++] = (byte) acc; }
+    assert pos == totalBytes;
+    return out;
+  }
+
+  /**
+   * Returns a new heap array of the original TgtHllType decoded from the given compressed image.
+   * @param mem the given compressed image, which has been checked with
+   * {@link #checkCompressedPreamble(Memory)}
+   * @return a new heap array
+   */
+  static HllArray uncompress(final Memory mem) {
+    final int lgK = extractLgK(mem);
+    final TgtHllType tgtHllType = extractTgtHllType(mem);
+    final byte[] values = new byte[1 << lgK];
+    decodeValues(mem, values);
+    final HllArray arr = HllArray.newHeapHll(lgK, tgtHllType);
+    if (tgtHllType == TgtHllType.HLL_8) {
+      System.arraycopy(values, 0, arr.hllByteArr, 0, values.length);
+    } else if (tgtHllType == TgtHllType.HLL_6) {
+      for (int slot = 0; slot < values.length; slot++) {
+        if (values[slot] > 0) { arr.updateSlotWithKxQ(slot, values[slot]); }
+      }
+    } else { //HLL_4
+      final int curMin = extractCurMin(mem);
+      HeapAuxHashMap auxHashMap = null;
+      for (int slot = 0; slot < values.length; slot++) {
+        final int delta = values[slot] - curMin;
+        if (delta < 0) {
+          throw new SketchesArgumentException("Possible Corruption: register value less than curMin");
+        }
+        if (delta < AUX_TOKEN) {
+          arr.putNibble(slot, delta);
+        } else {
+          arr.putNibble(slot, AUX_TOKEN);
+          if (auxHashMap == null) { auxHashMap = new HeapAuxHashMap(LG_AUX_ARR_INTS[lgK], lgK); }
+          auxHashMap.mustAdd(slot, values[slot]);
+        }
+      }
+      arr.putAuxHashMap(auxHashMap, false);
+    }
+    //the KxQ registers and HIP accumulator are restored, not recomputed
+    arr.putOutOfOrder(extractOooFlag(mem));
+    arr.putCurMin(extractCurMin(mem));
+    arr.putHipAccum(extractHipAccum(mem));
+    arr.putKxQ0(extractKxQ0(mem));
+    arr.putKxQ1(extractKxQ1(mem));
+    arr.putNumAtCurMin(extractNumAtCurMin(mem));
+    arr.putRebuildCurMinNumKxQFlag(false);
+    return arr;
+  }
+
+  /**
+   * Decodes the register values of the given compressed image into the given array.
+   * @param mem the given compressed image
+   * @param values the destination, of length K
+   */
+  static void decodeValues(final Memory mem, final byte[] values) {
+    final int base = mem.getByte(COMPRESSED_BASE_BYTE) & 0XFF;
+    final int numSymbols = mem.getByte(COMPRESSED_NUM_SYMBOLS_BYTE) & 0XFF;
+    if (numSymbols == 1) {
+      Arrays.fill(values, (byte) base);
+      return;
+    }
+    final int[] lengths = new int[numSymbols];
+    int maxLen = 0;
+    for (int s = 0; s < numSymbols; s++) {
+      final int b = mem.getByte(COMPRESSED_CODE_LENGTHS_START + (s >>> 1));
+      lengths[s] = (b >>> ((s & 1) << 2)) & 0XF;
+      maxLen = Math.max(maxLen, lengths[s]);
+    }
+    if ((maxLen == 0) || (maxLen > MAX_CODE_LEN)) {
+      throw new SketchesArgumentException("Possible Corruption: invalid code lengths");
+    }
+    //each table entry holds symbol << 4 | code length for every bit pattern with that code prefix
+    final int[] codes = canonicalCodes(lengths);
+    final int tableSize = 1 << maxLen;
+    final short[] table = new short[tableSize];
+    for (int s = 0; s < numSymbols; s++) {
+      final int len = lengths[s];
+      if (len == 0) { continue; }
+      for (int j = codes[s]; j < tableSize; j += 1 << len) {
+        table[j] = (short) ((s << 4) | len);
+      }
+    }
+    final int streamStart = COMPRESSED_CODE_LENGTHS_START + ((numSymbols + 1) >>> 1);
+    final int streamBytes = mem.getInt(COMPRESSED_TOTAL_BYTES_INT) - streamStart;
+    final byte[] stream = new byte[streamBytes];
+    mem.getByteArray(streamStart, stream, 0, streamBytes);
+
+    final int mask = tableSize - 1;
+    long buf = 0;
+    int bufBits = 0;
+    int pos = 0;
+    for (int slot = 0; slot < values.length; slot++) {
+      if (bufBits < maxLen) {
+        while ((bufBits <= 56) && (pos < streamBytes)) {
+          buf |= (stream[pos++] & 0XFFL) << bufBits;
+          bufBits += 8;
+        }
+      }
+      final int entry = table[(int) buf & mask];
+      final int len = entry & 0XF;
+      if (len == 0) {
+        throw new SketchesArgumentException("Possible Corruption: invalid code");
+      }
+      values[slot] = (byte) (base + (entry >>> 4));
+      buf >>>= len;
+      bufBits -= len;
+    }
+    if (bufBits < 0) {
+      throw new SketchesArgumentException("Possible Corruption: bit stream too short");
+    }
+  }
+
+  /**
+   * Returns true if the given image is a compressed image.
+   * @param mem the given image
+   * @return true if the given image is a compressed image.
+   */
+  static boolean isCompressed(final Memory mem) {
+    return extractSerVer(mem) == COMPRESSED_SER_VER;
+  }
+
+  /**
+   * Checks the preamble and the size of the given compressed image.
+   * @param mem the given compressed image
+   */
+  static void checkCompressedPreamble(final Memory mem) {
+    if ((extractFamilyId(mem) != Family.HLL.getID())
+        || (extractSerVer(mem) != COMPRESSED_SER_VER)
+        || (extractPreInts(mem) != HLL_PREINTS)
+        || (extractCurMode(mem) != CurMode.HLL)
+        || !extractCompactFlag(mem)) {
+      throw new SketchesArgumentException("Possible Corruption, Invalid Preamble:"
+          + PreambleUtil.toString(mem));
+    }
+    HllUtil.checkLgK(extractLgK(mem));
+    final long totalBytes = mem.getInt(COMPRESSED_TOTAL_BYTES_INT) & 0XFFFFFFFFL;
+    final int numSymbols = mem.getByte(COMPRESSED_NUM_SYMBOLS_BYTE) & 0XFF;
+    if ((numSymbols == 0)
+        || (totalBytes < (COMPRESSED_CODE_LENGTHS_START + ((numSymbols + 1) >>> 1)))) {
+      throw new SketchesArgumentException("Possible Corruption, Invalid Preamble:"
+          + PreambleUtil.toString(mem));
+    }
+    HllUtil.checkMemSize(totalBytes, mem.getCapacity());
+  }
+
+  //Huffman code construction
+
+  //Huffman code lengths for the given frequencies, limited to MAX_CODE_LEN by repeatedly halving
+  // the frequencies. Symbols with zero frequency get length zero. At least two must be non-zero.
+  static int[] limitedCodeLengths(final int[] freq) {
+    final long[] f = new long[freq.length];
+    for (int s = 0; s < freq.length; s++) { f[s] = freq[s]; }
+    while (true) {
+      final int[] lengths = codeLengths(f);
+      int maxLen = 0;
+      for (int s = 0; s < lengths.length; s++) { maxLen = Math.max(maxLen, lengths[s]); }
+      if (maxLen <= MAX_CODE_LEN) { return lengths; }
+      for (int s = 0; s < f.length; s++) {
+        if (f[s] > 0) { f[s] = (f[s] + 1) >>> 1; } //stays at least one
+      }
+    }
+  }
+
+  //Plain Huffman construction, quadratic in the number of symbols, which is at most 64.
+  private static int[] codeLengths(final long[] f) {
+    final int n = f.length;
+    final long[] weight = new long[2 * n];
+    final int[] parent = new int[2 * n];
+    final boolean[] active = new boolean[2 * n];
+    int numActive = 0;
+    for (int s = 0; s < n; s++) {
+      weight[s] = f[s];
+      active[s] = f[s] > 0;
+      if (active[s]) { numActive++; }
+    }
+    int next = n;
+    while (numActive > 1) {
+      int a = -1;
+      int b = -1;
+      for (int i = 0; i < next; i++) {
+        if (!active[i]) { continue; }
+        if ((a < 0) || (weight[i] < weight[a])) {
+          b = a;
+          a = i;
+        } else if ((b < 0) || (weight[i] < weight[b])) {
+          b = i;
+        }
+      }
+      active[a] = false;
+      active[b] = false;
+      weight[next] = weight[a] + weight[b];
+      parent[a] = next;
+      parent[b] = next;
+      active[next] = true;
+      next++;
+      numActive--;
+    }
+    final int root = next - 1;
+    final int[] lengths = new int[n];
+    for (int s = 0; s < n; s++) {
+      if (f[s] == 0) { continue; }
+      int len = 0;
+      for (int i = s; i != root; i = parent[i]) { len++; }
+      lengths[s] = len;
+    }
+    return lengths;
+  }
+
+  //Canonical codes for the given code lengths, bit-reversed so that they are read low bit first.
+  static int[] canonicalCodes(final int[] lengths) {
+    final int[] codes = new int[lengths.length];
+    int code = 0;
+    for (int len = 1; len <= MAX_CODE_LEN; len++) {
+      for (int s = 0; s < lengths.length; s++) {
+        if (lengths[s] != len) { continue; }
+        codes[s] = Integer.reverse(code) >>> (32 - len);
+        code++;
+      }
+      code <<= 1;
+    }
+    return codes;
+  }
+}
@@ -0,0 +1,183 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.datasketches.hll;
+
+import static org.apache.datasketches.Util.iGoldenU64;
+import static org.apache.datasketches.Util.pwrLawNextDouble;
+
+import java.io.PrintStream;
+import java.io.PrintWriter;
+
+import org.apache.datasketches.SketchesStateException;
+import org.apache.datasketches.memory.Memory;
+
+/**
+ * Characterizes the size versus speed trade-off of the compressed form of
+ * {@link HllSketch#toCompressedByteArray()} against the compact HLL_4 form, over a range of
+ * <i>lgK</i> and of <i>n</i> from <i>K</i> to <i>K</i> times 2<sup>lgMulK</sup>.
+ *
+ * <p>This code is used both by unit tests, for short running tests,
+ * and by the characterization repository for longer running, more exhaustive testing. To be
+ * accessible for both, this code is part of the main hierarchy. It is not used during normal
+ * production runtime.</p>
+ */
+@SuppressWarnings("javadoc")
+public class HllCompressionCharacterization {
+  private String hfmt;
+  private String dfmt;
+  private String[] hStrArr;
+  private long vIn = 0;
+
+  //inputs
+  private final int lgMinK;
+  private final int lgMaxK; //inclusive
+  private final int trials;
+  private final int lgMulK; //multiplier of K to produce maxN
+  private final int uPPO;
+  private final PrintStream ps;
+  private final PrintWriter pw;
+
+  public HllCompressionCharacterization(
+      final int lgMinK,
+      final int lgMaxK,
+      final int trials,
+      final int lgMulK,
+      final int uPPO,
+      final PrintStream pS,
+      final PrintWriter pW) {
+    this.lgMinK = lgMinK;
+    this.lgMaxK = lgMaxK;
+    this.trials = Math.max(trials, 1);
+    this.lgMulK = lgMulK;
+    this.uPPO = Math.max(uPPO, 1);
+    ps = pS;
+    pw = pW;
+    assembleFormats();
+  }
+
+  public void start() {
+    printf(hfmt, (Object[]) hStrArr); //print header
+    for (int lgK = lgMinK; lgK <= lgMaxK; lgK++) {
+      doRangeOfNAtLgK(lgK);
+    }
+  }
+
+  private void doRangeOfNAtLgK(final int lgK) {
+    final long k = 1L << lgK;
+    final long maxN = k << lgMulK;
+    long n = k;
+    while (n <= maxN) {
+      doTrialsAtLgKAtN(lgK, n);
+      n = Math.round(pwrLawNextDouble(uPPO, n, true, 2.0));
+    }
+  }
+
+  private void doTrialsAtLgKAtN(final int lgK, final long n) {
+    final int k = 1 << lgK;
+    long sumHll4Bytes = 0;
+    long sumComBytes = 0;
+    long sumCom_nS = 0;
+    long sumHeapCom_nS = 0;
+    long sumHeapHll4_nS = 0;
+    long sumWrapEst_nS = 0;
+    long nanoStart;
+    for (int t = 0; t < trials; t++) {
+      final HllSketch sketch = new HllSketch(lgK, TgtHllType.HLL_4);
+      for (long i = 0; i < n; i++) {
+        sketch.update(vIn += iGoldenU64);
+      }
+      final byte[] hll4Bytes = sketch.toCompactByteArray();
+
+      nanoStart = System.nanoTime();
+      final byte[] comBytes = sketch.toCompressedByteArray();
+      sumCom_nS += System.nanoTime() - nanoStart;
+
+      nanoStart = System.nanoTime();
+      final HllSketch heapCom = HllSketch.heapify(comBytes);
+      sumHeapCom_nS += System.nanoTime() - nanoStart;
+
+      nanoStart = System.nanoTime();
+      HllSketch.heapify(hll4Bytes);
+      sumHeapHll4_nS += System.nanoTime() - nanoStart;
+
+      nanoStart = System.nanoTime();
+      final double wrapEst = HllSketch.wrap(Memory.wrap(comBytes)).getEstimate();
+      sumWrapEst_nS += System.nanoTime() - nanoStart;
+
+      if ((wrapEst != sketch.getEstimate()) || (heapCom.getEstimate() != sketch.getEstimate())) {
+        throw new SketchesStateException("Compressed estimate differs: lgK=" + lgK + ", n=" + n);
+      }
+      sumHll4Bytes += hll4Bytes.length;
+      sumComBytes += comBytes.length;
+    }
+    final double avgHll4Bytes = (double) sumHll4Bytes / trials;
+    final double avgComBytes = (double) sumComBytes / trials;
+    printf(dfmt,
+        lgK,
+        trials,
+        n,
+        (double) n / k,
+        avgHll4Bytes,
+        avgComBytes,
+        (8.0 * avgComBytes) / k,
+        avgComBytes / avgHll4Bytes,
+        (double) sumCom_nS / trials / k,
+        (double) sumHeapCom_nS / trials / k,
+        (double) sumHeapHll4_nS / trials / k,
+        (double) sumWrapEst_nS / trials);
+  }
+
+  private void printf(final String format, final Object ... args) {
+    if (ps != null) { ps.printf(format, args); }
+    if (pw != null) { pw.printf(format, args); }
+  }
+
+  private void assembleFormats() {
+    final String[][] assy = {
+        {"lgK",             "%3s",  "%3d"},
+        {"Trials",          "%7s",  "%7d"},
+        {"n",               "%12s", "%12d"},
+        {"N/K",             "%9s",  "%9.4g"},
+        {"AvgHll4Bytes",    "%13s", "%13.0f"},
+        {"AvgComBytes",     "%12s", "%12.0f"},
+        {"ComBitsPerSlot",  "%15s", "%15.3f"},
+        {"Com/Hll4",        "%9s",  "%9.3f"},
+        {"Com_nSperK",      "%11s", "%11.2f"},
+        {"HeapCom_nSperK",  "%15s", "%15.2f"},
+        {"HeapHll4_nSperK", "%16s", "%16.2f"},
+        {"WrapEst_nS",      "%11s", "%11.0f"}
+    };
+    final int cols = assy.length;
+    hStrArr = new String[cols];
+    final StringBuilder headerFmt = new StringBuilder();
+    final StringBuilder dataFmt = new StringBuilder();
+    headerFmt.append("\nHLL Compression Characterization\n");
+    for (int i = 0; i < cols; i++) {
+      hStrArr[i] = assy[i][0];
+      headerFmt.append(assy[i][1]);
+      headerFmt.append((i < (cols - 1)) ? "\t" : "\n");
+      dataFmt.append(assy[i][2]);
+      dataFmt.append((i < (cols - 1)) ? "\t" : "\n");
+    }
+    hfmt = headerFmt.toString();
+    dfmt = dataFmt.toString();
+  }
+}
@@ -46,20 +46,18 @@ class HllEstimators {
    */
 
   static final double hllLowerBound(final AbstractHllArray absHllArr, final int numStdDev) {
-    final int lgConfigK = absHllArr.lgConfigK;
-    final int configK = 1 << lgConfigK;
-    final double numNonZeros =
-        (absHllArr.getCurMin() == 0) ? configK - absHllArr.getNumAtCurMin() : configK;
-    final double estimate;
-    final double rseFactor;
     final boolean oooFlag = absHllArr.isOutOfOrder();
-    if (oooFlag) {
-      estimate = absHllArr.getCompositeEstimate();
-      rseFactor = HLL_NON_HIP_RSE_FACTOR;
-    } else {
-      estimate = absHllArr.getHipAccum();
-      rseFactor = HLL_HIP_RSE_FACTOR;
-    }
+    final double estimate = oooFlag ? absHllArr.getCompositeEstimate() : absHllArr.getHipAccum();
+    return hllLowerBound(absHllArr.lgConfigK, absHllArr.getCurMin(), absHllArr.getNumAtCurMin(),
+        oooFlag, estimate, numStdDev);
+  }
+
+  //Also used by ConcurrentHllSketch, which does not hold its state in an AbstractHllArray
+  static final double hllLowerBound(final int lgConfigK, final int curMin, final int numAtCurMin,
+      final boolean oooFlag, final double estimate, final int numStdDev) {
+    final int configK = 1 << lgConfigK;
+    final double numNonZeros = (curMin == 0) ? configK - numAtCurMin : configK;
+    final double rseFactor = oooFlag ? HLL_NON_HIP_RSE_FACTOR : HLL_HIP_RSE_FACTOR;
     final double relErr = (lgConfigK > 12)
         ? (numStdDev * rseFactor) / Math.sqrt(configK)
         : RelativeErrorTables.getRelErr(false, oooFlag, lgConfigK, numStdDev);
@@ -67,19 +65,15 @@ class HllEstimators {
   }
 
   static final double hllUpperBound(final AbstractHllArray absHllArr, final int numStdDev) {
-    final int lgConfigK = absHllArr.lgConfigK;
-    final int configK = 1 << lgConfigK;
-    final double estimate;
-    final double rseFactor;
     final boolean oooFlag = absHllArr.isOutOfOrder();
-    if (oooFlag) {
-      estimate = absHllArr.getCompositeEstimate();
-      rseFactor = HLL_NON_HIP_RSE_FACTOR;
-    } else {
-      estimate = absHllArr.getHipAccum();
-      rseFactor = HLL_HIP_RSE_FACTOR;
-    }
+    final double estimate = oooFlag ? absHllArr.getCompositeEstimate() : absHllArr.getHipAccum();
+    return hllUpperBound(absHllArr.lgConfigK, oooFlag, estimate, numStdDev);
+  }
 
+  static final double hllUpperBound(final int lgConfigK, final boolean oooFlag,
+      final double estimate, final int numStdDev) {
+    final int configK = 1 << lgConfigK;
+    final double rseFactor = oooFlag ? HLL_NON_HIP_RSE_FACTOR : HLL_HIP_RSE_FACTOR;
     final double relErr = (lgConfigK > 12)
         ? ((-1.0) * (numStdDev * rseFactor)) / Math.sqrt(configK)
         : RelativeErrorTables.getRelErr(true, oooFlag, lgConfigK, numStdDev);
@@ -96,8 +90,13 @@ class HllEstimators {
    */
   //In C: again-two-registers.c hhb_get_composite_estimate L1489
   static final double hllCompositeEstimate(final AbstractHllArray absHllArr) {
-    final int lgConfigK = absHllArr.getLgConfigK();
-    final double rawEst = getHllRawEstimate(lgConfigK, absHllArr.getKxQ0() + absHllArr.getKxQ1());
+    return hllCompositeEstimate(absHllArr.getLgConfigK(), absHllArr.getKxQ0() + absHllArr.getKxQ1(),
+        absHllArr.getCurMin(), absHllArr.getNumAtCurMin());
+  }
+
+  static final double hllCompositeEstimate(final int lgConfigK, final double kxqSum,
+      final int curMin, final int numAtCurMin) {
+    final double rawEst = getHllRawEstimate(lgConfigK, kxqSum);
 
     final double[] xArr = CompositeInterpolationXTable.xArrs[lgConfigK - MIN_LOG_K];
     final double yStride = CompositeInterpolationXTable.yStrides[lgConfigK - MIN_LOG_K];
@@ -123,8 +122,7 @@ class HllEstimators {
     //Alternate call
     //if ((adjEst > (3 << lgConfigK)) || ((curMin != 0) || (numAtCurMin == 0)) ) { return adjEst; }
 
-    final double linEst =
-        getHllBitMapEstimate(lgConfigK, absHllArr.getCurMin(), absHllArr.getNumAtCurMin());
+    final double linEst = getHllBitMapEstimate(lgConfigK, curMin, numAtCurMin);
 
     // Bias is created when the value of an estimator is compared with a threshold to decide whether
     // to use that estimator or a different one.
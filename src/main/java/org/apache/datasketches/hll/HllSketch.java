@@ -78,6 +78,7 @@ public class HllSketch extends BaseHllSketch {
 
   private static final String LS = System.getProperty("line.separator");
   HllSketchImpl hllSketchImpl = null;
+  private boolean sparseHll = false; //see HllSketch(int, TgtHllType, boolean)
 
   /**
    * Constructs a new on-heap sketch with the default lgConfigK and tgtHllType.
@@ -102,7 +103,26 @@ public class HllSketch extends BaseHllSketch {
    * @param tgtHllType the desired Hll type.
    */
   public HllSketch(final int lgConfigK, final TgtHllType tgtHllType) {
-    hllSketchImpl = new CouponList(HllUtil.checkLgK(lgConfigK), tgtHllType, CurMode.LIST);
+    this(lgConfigK, tgtHllType, false);
+  }
+
+  /**
+   * Constructs a new on-heap sketch with the type of HLL sketch to configure and the choice of
+   * the sparse HLL form.
+   *
+   * <p>With the sparse form, a sketch that is promoted out of the coupon modes holds only its
+   * non-zero registers, delta encoded, until that encoding is larger than the dense register
+   * array of the target type. This reduces the heap footprint of sketches in that range at some
+   * cost in update and query speed. The estimates and the serialized images are identical to those
+   * of the default form. It has no effect if <i>lgConfigK</i> is less than 8.</p>
+   * @param lgConfigK The Log2 of K for the target HLL sketch. This value must be
+   * between 4 and 21 inclusively.
+   * @param tgtHllType the desired Hll type.
+   * @param sparseHll if true, the sketch uses the sparse form after the coupon modes.
+   */
+  public HllSketch(final int lgConfigK, final TgtHllType tgtHllType, final boolean sparseHll) {
+    hllSketchImpl = new CouponList(HllUtil.checkLgK(lgConfigK), tgtHllType, CurMode.LIST, sparseHll);
+    this.sparseHll = sparseHll;
   }
 
   /**
@@ -132,6 +152,7 @@ public class HllSketch extends BaseHllSketch {
    */
   HllSketch(final HllSketch that) {
     hllSketchImpl = that.hllSketchImpl.copy();
+    sparseHll = that.sparseHll;
   }
 
   /**
@@ -163,6 +184,10 @@ public class HllSketch extends BaseHllSketch {
 
   //used by union and above
   static final HllSketch heapify(final Memory srcMem, final boolean checkRebuild) {
+    if (HllCompression.isCompressed(srcMem)) {
+      HllCompression.checkCompressedPreamble(srcMem);
+      return new HllSketch(HllCompression.uncompress(srcMem));
+    }
     final CurMode curMode = checkPreamble(srcMem);
     final HllSketch heapSketch;
     if (curMode == CurMode.HLL) {
@@ -239,11 +264,19 @@ public class HllSketch extends BaseHllSketch {
    * Wraps the given read-only Memory that must be a image of a valid sketch,
    * which may be in compact or updatable form, and should have data. Any attempt to update the
    * given source Memory will throw an exception.
+   *
+   * <p>If the image is in the compressed form of {@link #toCompressedByteArray()}, the estimate
+   * and bounds are read from the image without decoding the registers. The registers are decoded
+   * onto the heap the first time they are needed, for example by a union or an iterator.</p>
    * @param srcMem a read-only image of a valid source sketch.
    * @return an HllSketch, where the read-only data of the sketch is in the given srcMem.
    *
    */
   public static final HllSketch wrap(final Memory srcMem) {
+    if (HllCompression.isCompressed(srcMem)) {
+      HllCompression.checkCompressedPreamble(srcMem);
+      return new HllSketch(new DirectCompressedHllArray(srcMem));
+    }
     final int lgConfigK = extractLgK(srcMem);
     final TgtHllType tgtHllType = extractTgtHllType(srcMem);
 
@@ -407,7 +440,9 @@ public class HllSketch extends BaseHllSketch {
 
   @Override
   public void reset() {
-    hllSketchImpl = hllSketchImpl.reset();
+    hllSketchImpl = sparseHll
+        ? new CouponList(getLgConfigK(), getTgtHllType(), CurMode.LIST, true)
+        : hllSketchImpl.reset();
   }
 
   @Override
@@ -415,6 +450,29 @@ public class HllSketch extends BaseHllSketch {
     return hllSketchImpl.toCompactByteArray();
   }
 
+  /**
+   * Serializes this sketch in a compressed compact form, in which the registers are entropy coded
+   * with a canonical Huffman code of their values, at about 3 bits per register for a sketch
+   * well past warmup, instead of the 4 bits per register plus exceptions of HLL_4.
+   * The image may be given to {@link #heapify(Memory)}, which restores a sketch of the
+   * same <i>TgtHllType</i>, or to {@link #wrap(Memory)}, which reads the estimate and bounds
+   * without decoding the registers. It cannot be given to {@link #writableWrap(WritableMemory)}.
+   *
+   * <p>This is slower to produce and to decode than {@link #toCompactByteArray()}, see
+   * {@link HllCompressionCharacterization}. If this sketch is not yet in HLL mode the
+   * result is the same as {@link #toCompactByteArray()}.</p>
+   * @return this sketch in a compressed compact form
+   */
+  public byte[] toCompressedByteArray() {
+    if (hllSketchImpl instanceof DirectCompressedHllArray) {
+      return ((DirectCompressedHllArray) hllSketchImpl).toCompressedByteArray();
+    }
+    if (getCurMode() != CurMode.HLL) {
+      return toCompactByteArray();
+    }
+    return HllCompression.compress((AbstractHllArray) hllSketchImpl);
+  }
+
   @Override
   public byte[] toUpdatableByteArray() {
     return hllSketchImpl.toUpdatableByteArray();
@@ -522,4 +580,9 @@ public class HllSketch extends BaseHllSketch {
     hllSketchImpl = hllSketchImpl.couponUpdate(coupon);
   }
 
+  @Override
+  void couponBatchUpdate(final int[] coupons, final int count) {
+    hllSketchImpl = hllSketchImpl.couponBatchUpdate(coupons, 0, count);
+  }
+
 }
@@ -54,6 +54,23 @@ abstract class HllSketchImpl {
 
   abstract HllSketchImpl couponUpdate(int coupon);
 
+  /**
+   * Applies coupons[start, end) in order, exactly as successive calls to couponUpdate() would.
+   * When an update changes the implementation (e.g., promotion from LIST to SET or HLL mode),
+   * the remaining coupons are handed to the new implementation.
+   * @param coupons the coupon array
+   * @param start the index of the first coupon to apply
+   * @param end one past the index of the last coupon to apply
+   * @return the resulting implementation
+   */
+  HllSketchImpl couponBatchUpdate(final int[] coupons, final int start, final int end) {
+    for (int i = start; i < end; i++) {
+      final HllSketchImpl impl = couponUpdate(coupons[i]);
+      if (impl != this) { return impl.couponBatchUpdate(coupons, i + 1, end); }
+    }
+    return this;
+  }
+
   abstract int getCompactSerializationBytes();
 
   abstract double getCompositeEstimate();
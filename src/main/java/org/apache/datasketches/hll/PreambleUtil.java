@@ -84,6 +84,26 @@ import org.apache.datasketches.memory.WritableMemory;
  * </pre>
  * If in compact form exceptions array will be compacted.
  *
+ * <pre>
+ * Compressed HllArray Layout, SerVer = 2, always compact
+ * Long || Start Byte Adr, Big Endian Illustration
+ * Adr:
+ *      ||    7   |    6   |    5   |    4   |    3   |    2   |    1   |    0   |
+ *  0   ||  Mode  | CurMin | Flags  |        |   lgK  | FamID  | SerVer | PI=10  |
+ *
+ *  1-3 ||-----------------------HIP Accum, KxQ0, KxQ1 as above------------------|
+ *
+ *      ||   39   |   38   |   37   |   36   |   35   |   34   |   33   |   32   |
+ *  4   ||-------------Total Bytes-----------|----------Num At Cur Min-----------|
+ *
+ *      ||   47   |   46   |   45   |   44   |   43   |   42   |   41   |   40   |
+ *  5   ||.....................|---Start of 4-bit Code Lengths--| NumSym |  Base  |
+ *
+ *  N   ||----------------Start of Huffman coded register values-----------------|
+ * </pre>
+ * The register values, less Base, are the symbols of a canonical Huffman code. See
+ * HllCompression.
+ *
  * @author Lee Rhodes
  */
 final class PreambleUtil {
@@ -131,6 +151,12 @@ final class PreambleUtil {
   static int AUX_COUNT_INT                  = 36;
   static int HLL_BYTE_ARR_START             = 40;
 
+  //Compressed HLL
+  static int COMPRESSED_TOTAL_BYTES_INT     = 36;
+  static int COMPRESSED_BASE_BYTE           = 40;
+  static int COMPRESSED_NUM_SYMBOLS_BYTE    = 41;
+  static int COMPRESSED_CODE_LENGTHS_START  = 42;
+
   //Flag bit masks
   static final int BIG_ENDIAN_FLAG_MASK     = 1; //Set but not read. Reserved.
   static final int READ_ONLY_FLAG_MASK      = 2; //Set but not read. Reserved.
@@ -145,6 +171,7 @@ final class PreambleUtil {
 
   //Other constants
   static final int SER_VER                  = 1;
+  static final int COMPRESSED_SER_VER       = 2;
   static final int FAMILY_ID                = 7;
   static final int LIST_PREINTS             = 2;
   static final int HASH_SET_PREINTS         = 3;
@@ -268,6 +295,10 @@ final class PreambleUtil {
     wmem.putByte(SER_VER_BYTE, (byte) SER_VER);
   }
 
+  static void insertCompressedSerVer(final WritableMemory wmem) {
+    wmem.putByte(SER_VER_BYTE, (byte) COMPRESSED_SER_VER);
+  }
+
   static int extractFamilyId(final Memory mem) {
     return mem.getByte(FAMILY_BYTE) & 0XFF;
   }
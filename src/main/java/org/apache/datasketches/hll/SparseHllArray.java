@@ -0,0 +1,605 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.datasketches.hll;
+
+import static org.apache.datasketches.hll.HllUtil.AUX_TOKEN;
+import static org.apache.datasketches.hll.HllUtil.KEY_BITS_26;
+import static org.apache.datasketches.hll.HllUtil.LG_AUX_ARR_INTS;
+import static org.apache.datasketches.hll.PreambleUtil.HLL_BYTE_ARR_START;
+import static org.apache.datasketches.hll.TgtHllType.HLL_4;
+import static org.apache.datasketches.hll.TgtHllType.HLL_6;
+
+import java.util.Arrays;
+
+import org.apache.datasketches.SketchesStateException;
+import org.apache.datasketches.memory.Memory;
+import org.apache.datasketches.memory.WritableMemory;
+
+/**
+ * A heap HLL array that holds only its non-zero registers, as a sorted, delta and varint encoded
+ * byte stream, plus a small unsorted buffer of recent coupons that is merged into the stream when
+ * it fills or when the sketch is queried. If the heap sketch was constructed with the sparse
+ * option, this is its HLL mode from the promotion out of SET mode until the encoded size exceeds
+ * the size of the dense array of the target type, when it is replaced by a dense HllArray.
+ * A stride index of every 64th register keeps the single register lookups short.
+ *
+ * <p>The results are identical to those of the dense array. The buffered coupons are applied in
+ * arrival order when they are merged, so the HIP accumulator, the KxQ registers and the number of
+ * zeros go through exactly the same sequence of changes as in the dense array. Since some
+ * registers are still zero, curMin is always zero and numAtCurMin is the number of zeros for all
+ * target types. Serialization produces the dense form, so the sparse form is never seen outside
+ * of the heap.</p>
+ *
+ * <p>Each register is encoded as a varint of <i>(delta - 1) &lt;&lt; 3 | code</i>, where
+ * <i>delta</i> is the distance from the previous non-zero register and <i>code</i> is the value
+ * less one for values up to 7. Otherwise <i>code</i> is 7 and the value follows in one byte.</p>
+ */
+final class SparseHllArray extends AbstractHllArray {
+  private static final int MIN_BUFFER_INTS = 16;
+  private static final int LG_BUFFER_FRACTION = 4; //buffer up to 1/16 of the registers
+  private static final int ESCAPE = 7;
+  private static final int LG_INDEX_STRIDE = 6; //an index entry for every 64 registers
+
+  private boolean oooFlag = false;
+  private boolean rebuildCurMinNumKxQ = false;
+  private int numAtCurMin; //the number of zeros
+  private double hipAccum;
+  private double kxq0;
+  private double kxq1;
+  private final int configKmask;
+
+  private byte[] stream;
+  private int streamBytes;
+  private int numEntries;
+  private int[] buffer; //coupons in arrival order
+  private int bufferCount;
+  private int[] indexSlots; //the slot preceding each stride of entries, -1 for the first
+  private int[] indexPos; //the stream position of each stride of entries
+
+  /**
+   * Standard constructor for new instance
+   * @param lgConfigK the configured Lg K
+   * @param tgtHllType the type of target HLL sketch
+   * @param initialBufferInts the number of coupons that can be buffered before the first merge
+   */
+  SparseHllArray(final int lgConfigK, final TgtHllType tgtHllType, final int initialBufferInts) {
+    super(lgConfigK, tgtHllType, CurMode.HLL);
+    numAtCurMin = 1 << lgConfigK;
+    hipAccum = 0;
+    kxq0 = 1 << lgConfigK;
+    kxq1 = 0;
+    configKmask = (1 << lgConfigK) - 1;
+    stream = new byte[0];
+    indexSlots = new int[0];
+    indexPos = new int[0];
+    buffer = new int[Math.max(initialBufferInts, MIN_BUFFER_INTS)];
+  }
+
+  /**
+   * Copy constructor
+   * @param that another SparseHllArray, which has been merged
+   */
+  private SparseHllArray(final SparseHllArray that) {
+    super(that.lgConfigK, that.tgtHllType, CurMode.HLL);
+    oooFlag = that.oooFlag;
+    rebuildCurMinNumKxQ = that.rebuildCurMinNumKxQ;
+    numAtCurMin = that.numAtCurMin;
+    hipAccum = that.hipAccum;
+    kxq0 = that.kxq0;
+    kxq1 = that.kxq1;
+    configKmask = that.configKmask;
+    stream = Arrays.copyOf(that.stream, that.streamBytes);
+    streamBytes = that.streamBytes;
+    numEntries = that.numEntries;
+    indexSlots = that.indexSlots.clone();
+    indexPos = that.indexPos.clone();
+    buffer = new int[that.buffer.length];
+  }
+
+  /**
+   * Returns true if a heap sketch of the given configuration should use the sparse form after
+   * the promotion out of SET mode.
+   * @param lgConfigK the configured Lg K
+   * @return true if the sparse form should be used
+   */
+  static boolean isSparseWorthwhile(final int lgConfigK) {
+    return lgConfigK > 7; //smaller sketches are promoted directly from LIST mode
+  }
+
+  @Override
+  void addToHipAccum(final double delta) {
+    merge();
+    hipAccum += delta;
+  }
+
+  @Override
+  SparseHllArray copy() {
+    merge();
+    return new SparseHllArray(this);
+  }
+
+  @Override
+  HllArray copyAs(final TgtHllType tgtHllType) {
+    final HllArray dense = toDense();
+    return (tgtHllType == this.tgtHllType) ? dense : dense.copyAs(tgtHllType);
+  }
+
+  @Override
+  HllSketchImpl couponUpdate(final int coupon) {
+    buffer[bufferCount++] = coupon;
+    if (bufferCount < buffer.length) { return this; }
+    merge();
+    return (getFootprintBytes() > getHllByteArrBytes()) ? toDense() : this;
+  }
+
+  @Override
+  HllSketchImpl couponBatchUpdate(final int[] coupons, final int start, final int end) {
+    for (int i = start; i < end; i++) {
+      final HllSketchImpl impl = couponUpdate(coupons[i]);
+      if (impl != this) { return impl.couponBatchUpdate(coupons, i + 1, end); }
+    }
+    return this;
+  }
+
+  @Override
+  void decNumAtCurMin() {
+    merge();
+    numAtCurMin--;
+  }
+
+  @Override
+  int getCompactSerializationBytes() {
+    int auxCount = 0;
+    if (tgtHllType == HLL_4) {
+      final PairIterator itr = iterator();
+      while (itr.nextValid()) {
+        if (itr.getValue() >= AUX_TOKEN) { auxCount++; }
+      }
+    }
+    return HLL_BYTE_ARR_START + getHllByteArrBytes() + (auxCount << 2);
+  }
+
+  @Override
+  int getCurMin() {
+    return 0;
+  }
+
+  /**
+   * Returns the approximate number of bytes of the heap arrays held by this sparse array.
+   * @return the approximate number of bytes of the heap arrays held by this sparse array
+   */
+  int getFootprintBytes() {
+    return stream.length + ((buffer.length + (indexSlots.length << 1)) << 2);
+  }
+
+  @Override
+  double getHipAccum() {
+    merge();
+    return hipAccum;
+  }
+
+  @Override
+  int getHllByteArrBytes() {
+    if (tgtHllType == HLL_4) { return hll4ArrBytes(lgConfigK); }
+    if (tgtHllType == HLL_6) { return hll6ArrBytes(lgConfigK); }
+    return hll8ArrBytes(lgConfigK);
+  }
+
+  @Override
+  double getKxQ0() {
+    merge();
+    return kxq0;
+  }
+
+  @Override
+  double getKxQ1() {
+    merge();
+    return kxq1;
+  }
+
+  @Override
+  Memory getMemory() {
+    return null;
+  }
+
+  @Override
+  AuxHashMap getNewAuxHashMap() {
+    return new HeapAuxHashMap(LG_AUX_ARR_INTS[lgConfigK], lgConfigK);
+  }
+
+  @Override
+  int getNibble(final int slotNo) {
+    if (tgtHllType != HLL_4) {
+      throw new SketchesStateException("Improper access.");
+    }
+    final int value = getSlotValue(slotNo);
+    return (value < AUX_TOKEN) ? value : AUX_TOKEN;
+  }
+
+  @Override
+  int getNumAtCurMin() {
+    merge();
+    return numAtCurMin;
+  }
+
+  @Override
+  int getSlotValue(final int slotNo) {
+    //find the last stride that starts after a slot below slotNo
+    int lo = 0;
+    int hi = indexSlots.length - 1;
+    while (lo < hi) {
+      final int mid = (lo + hi + 1) >>> 1;
+      if (indexSlots[mid] < slotNo) { lo = mid; } else { hi = mid - 1; }
+    }
+    int value = 0;
+    if (indexSlots.length > 0) {
+      int pos = indexPos[lo];
+      int slot = indexSlots[lo];
+      while ((pos < streamBytes) && (slot < slotNo)) {
+        final int code = readVarint(stream, pos);
+        pos += varintBytes(code);
+        slot += (code >>> 3) + 1;
+        final int v = ((code & ESCAPE) < ESCAPE) ? (code & ESCAPE) + 1 : stream[pos++];
+        if (slot == slotNo) { value = v; }
+      }
+    }
+    for (int i = 0; i < bufferCount; i++) { //not yet merged
+      final int coupon = buffer[i];
+      if ((coupon & configKmask) == slotNo) { value = Math.max(value, coupon >>> KEY_BITS_26); }
+    }
+    return value;
+  }
+
+  @Override
+  int getUpdatableSerializationBytes() {
+    if (tgtHllType == HLL_4) {
+      return toDense().getUpdatableSerializationBytes(); //depends on the growth of the AuxHashMap
+    }
+    return HLL_BYTE_ARR_START + getHllByteArrBytes();
+  }
+
+  @Override
+  WritableMemory getWritableMemory() {
+    return null;
+  }
+
+  @Override
+  boolean isCompact() {
+    return false;
+  }
+
+  @Override
+  boolean isEmpty() {
+    return false;
+  }
+
+  @Override
+  boolean isMemory() {
+    return false;
+  }
+
+  @Override
+  boolean isOffHeap() {
+    return false;
+  }
+
+  @Override
+  boolean isOutOfOrder() {
+    return oooFlag;
+  }
+
+  @Override
+  boolean isRebuildCurMinNumKxQFlag() {
+    return rebuildCurMinNumKxQ;
+  }
+
+  @Override
+  boolean isSameResource(final Memory mem) {
+    return false;
+  }
+
+  @Override
+  PairIterator iterator() {
+    merge();
+    return new SparseIterator(1 << lgConfigK);
+  }
+
+  @Override
+  void putAuxHashMap(final AuxHashMap auxHashMap, final boolean compact) {
+    throw new SketchesStateException("Improper access.");
+  }
+
+  @Override
+  void putCurMin(final int curMin) {
+    if (curMin != 0) {
+      throw new SketchesStateException("Improper access.");
+    }
+  }
+
+  @Override
+  void putEmptyFlag(final boolean empty) { }
+
+  @Override
+  void putHipAccum(final double hipAccum) {
+    merge();
+    this.hipAccum = hipAccum;
+  }
+
+  @Override
+  void putKxQ0(final double kxq0) {
+    merge();
+    this.kxq0 = kxq0;
+  }
+
+  @Override
+  void putKxQ1(final double kxq1) {
+    merge();
+    this.kxq1 = kxq1;
+  }
+
+  @Override
+  void putNibble(final int slotNo, final int nibValue) {
+    throw new SketchesStateException("Improper access.");
+  }
+
+  @Override
+  void putNumAtCurMin(final int numAtCurMin) {
+    merge();
+    this.numAtCurMin = numAtCurMin;
+  }
+
+  @Override
+  void putOutOfOrder(final boolean oooFlag) {
+    if (oooFlag) { putHipAccum(0); }
+    this.oooFlag = oooFlag;
+  }
+
+  @Override
+  void putRebuildCurMinNumKxQFlag(final boolean rebuild) {
+    rebuildCurMinNumKxQ = rebuild;
+  }
+
+  @Override
+  HllSketchImpl reset() {
+    return new CouponList(lgConfigK, tgtHllType, CurMode.LIST);
+  }
+
+  @Override
+  byte[] toCompactByteArray() {
+    return toDense().toCompactByteArray();
+  }
+
+  @Override
+  byte[] toUpdatableByteArray() {
+    return toDense().toUpdatableByteArray();
+  }
+
+  @Override
+  void updateSlotNoKxQ(final int slotNo, final int value) {
+    throw new SketchesStateException("Improper access.");
+  }
+
+  @Override
+  void updateSlotWithKxQ(final int slotNo, final int value) {
+    buffer[bufferCount++] = (value << KEY_BITS_26) | slotNo;
+    if (bufferCount == buffer.length) { merge(); }
+  }
+
+  /**
+   * Returns a new dense heap array of the same target type with the same registers and state.
+   * @return a new dense heap array
+   */
+  HllArray toDense() {
+    merge();
+    final HllArray dense = HllArray.newHeapHll(lgConfigK, tgtHllType);
+    HeapAuxHashMap auxHashMap = null;
+    final PairIterator itr = iterator();
+    while (itr.nextValid()) {
+      final int slot = itr.getSlot();
+      final int value = itr.getValue();
+      if (tgtHllType == HLL_4) {
+        if (value < AUX_TOKEN) {
+          dense.putNibble(slot, value);
+        } else {
+          dense.putNibble(slot, AUX_TOKEN);
+          if (auxHashMap == null) { auxHashMap = new HeapAuxHashMap(LG_AUX_ARR_INTS[lgConfigK], lgConfigK); }
+          auxHashMap.mustAdd(slot, value);
+        }
+      } else if (tgtHllType == HLL_6) {
+        dense.updateSlotWithKxQ(slot, value); //the KxQ registers are overwritten below
+      } else {
+        dense.hllByteArr[slot] = (byte) value;
+      }
+    }
+    if (auxHashMap != null) { dense.putAuxHashMap(auxHashMap, false); }
+    dense.putOutOfOrder(oooFlag);
+    dense.putCurMin(0);
+    dense.putNumAtCurMin(numAtCurMin);
+    dense.putHipAccum(hipAccum);
+    dense.putKxQ0(kxq0);
+    dense.putKxQ1(kxq1);
+    dense.putRebuildCurMinNumKxQFlag(rebuildCurMinNumKxQ);
+    return dense;
+  }
+
+  //Merges the buffered coupons into the stream, then applies the register changes to the HIP
+  // accumulator, the KxQ registers and the number of zeros in arrival order.
+  private void merge() {
+    final int count = bufferCount;
+    if (count == 0) { return; }
+    bufferCount = 0; //the accessors below must not merge again
+
+    //sort by slot, then by arrival
+    final long[] keys = new long[count];
+    for (int i = 0; i < count; i++) {
+      keys[i] = ((long) (buffer[i] & configKmask) << 32) | i;
+    }
+    Arrays.sort(keys);
+
+    final int[] oldValues = new int[count]; //-1 if the coupon does not change its register
+    final byte[] out = new byte[streamBytes + (count * 5)]; //5 bytes max per new register
+    final int maxStrides = ((numEntries + count) >>> LG_INDEX_STRIDE) + 1;
+    final int[] outIndexSlots = new int[maxStrides];
+    final int[] outIndexPos = new int[maxStrides];
+    int inPos = 0;
+    int inSlot = -1;
+    int inValue = 0;
+    int outPos = 0;
+    int outSlot = -1;
+    int outEntries = 0;
+    //read the first old register
+    if (inPos < streamBytes) {
+      final int code = readVarint(stream, inPos);
+      inPos += varintBytes(code);
+      inSlot += (code >>> 3) + 1;
+      inValue = ((code & ESCAPE) < ESCAPE) ? (code & ESCAPE) + 1 : stream[inPos++];
+    } else {
+      inSlot = Integer.MAX_VALUE;
+    }
+    int k = 0;
+    while ((k < count) || (inSlot != Integer.MAX_VALUE)) {
+      final int bufSlot = (k < count) ? (int) (keys[k] >>> 32) : Integer.MAX_VALUE;
+      final int slot = Math.min(bufSlot, inSlot);
+      int value = 0;
+      if (inSlot == slot) {
+        value = inValue;
+        if (inPos < streamBytes) {
+          final int code = readVarint(stream, inPos);
+          inPos += varintBytes(code);
+          inSlot += (code >>> 3) + 1;
+          inValue = ((code & ESCAPE) < ESCAPE) ? (code & ESCAPE) + 1 : stream[inPos++];
+        } else {
+          inSlot = Integer.MAX_VALUE;
+        }
+      }
+      while ((k < count) && ((int) (keys[k] >>> 32) == slot)) {
+        final int i = (int) keys[k++];
+        final int newValue = buffer[i] >>> KEY_BITS_26;
+        if (newValue > value) {
+          oldValues[i] = value;
+          value = newValue;
+        } else {
+          oldValues[i] = -1;
+        }
+      }
+      if ((outEntries & ((1 << LG_INDEX_STRIDE) - 1)) == 0) {
+        outIndexSlots[outEntries >>> LG_INDEX_STRIDE] = outSlot;
+        outIndexPos[outEntries >>> LG_INDEX_STRIDE] = outPos;
+      }
+      final int vCode = (value <= ESCAPE) ? value - 1 : ESCAPE;
+      outPos = writeVarint(out, outPos, ((slot - outSlot - 1) << 3) | vCode);
+      if (vCode == ESCAPE) { out[outPos++] = (byte) value; }
+      outSlot = slot;
+      outEntries++;
+    }
+    stream = Arrays.copyOf(out, outPos);
+    streamBytes = outPos;
+    numEntries = outEntries;
+    final int strides = ((outEntries - 1) >>> LG_INDEX_STRIDE) + 1;
+    indexSlots = Arrays.copyOf(outIndexSlots, strides);
+    indexPos = Arrays.copyOf(outIndexPos, strides);
+
+    for (int i = 0; i < count; i++) {
+      final int oldValue = oldValues[i];
+      if (oldValue < 0) { continue; }
+      hipAndKxQIncrementalUpdate(this, oldValue, buffer[i] >>> KEY_BITS_26);
+      if (oldValue == 0) { numAtCurMin--; }
+    }
+
+    final int bufferInts = Math.max(MIN_BUFFER_INTS, numEntries >>> LG_BUFFER_FRACTION);
+    if ((bufferInts > buffer.length) || ((bufferInts << 1) < buffer.length)) {
+      buffer = new int[bufferInts];
+    }
+  }
+
+  private static int readVarint(final byte[] arr, final int pos) {
+    int value = 0;
+    int shift = 0;
+    int p = pos;
+    int b;
+    do {
+      b = arr[p++];
+      value |= (b & 0X7F) << shift;
+      shift += 7;
+    } while (b < 0);
+    return value;
+  }
+
+  private static int varintBytes(final int value) {
+    return ((31 - Integer.numberOfLeadingZeros(value | 1)) / 7) + 1;
+  }
+
+  private static int writeVarint(final byte[] arr, final int pos, final int value) {
+    int p = pos;
+    int v = value;
+    while ((v & ~0X7F) != 0) {
+      arr[p++] = (byte) ((v & 0X7F) | 0X80);
+      v >>>= 7;
+    }
+    arr[p++] = (byte) v;
+    return p;
+  }
+
+  //ITERATOR
+
+  final class SparseIterator extends HllPairIterator {
+    private int pos = 0;
+    private int entrySlot = -1;
+    private int entryValue;
+
+    SparseIterator(final int lengthPairs) {
+      super(lengthPairs);
+      readEntry();
+    }
+
+    private void readEntry() {
+      if (pos >= streamBytes) {
+        entrySlot = Integer.MAX_VALUE;
+        return;
+      }
+      final int code = readVarint(stream, pos);
+      pos += varintBytes(code);
+      entrySlot += (code >>> 3) + 1;
+      entryValue = ((code & ESCAPE) < ESCAPE) ? (code & ESCAPE) + 1 : stream[pos++];
+    }
+
+    @Override
+    int value() {
+      if (index != entrySlot) { return 0; }
+      final int v = entryValue;
+      readEntry();
+      return v;
+    }
+
+    @Override
+    public boolean nextValid() {
+      if (entrySlot >= lengthPairs) {
+        index = lengthPairs;
+        return false;
+      }
+      index = entrySlot;
+      value = entryValue;
+      readEntry();
+      return true;
+    }
+  }
+
+}
@@ -21,7 +21,18 @@ package org.apache.datasketches.hll;
 
 import static org.apache.datasketches.Util.invPow2;
 import static org.apache.datasketches.hll.HllUtil.EMPTY;
+import static org.apache.datasketches.hll.HllUtil.LG_INIT_LIST_SIZE;
+import static org.apache.datasketches.hll.HllUtil.checkPreamble;
+import static org.apache.datasketches.hll.PreambleUtil.HASH_SET_INT_ARR_START;
 import static org.apache.datasketches.hll.PreambleUtil.HLL_BYTE_ARR_START;
+import static org.apache.datasketches.hll.PreambleUtil.LIST_INT_ARR_START;
+import static org.apache.datasketches.hll.PreambleUtil.computeLgArr;
+import static org.apache.datasketches.hll.PreambleUtil.extractCompactFlag;
+import static org.apache.datasketches.hll.PreambleUtil.extractEmptyFlag;
+import static org.apache.datasketches.hll.PreambleUtil.extractHashSetCount;
+import static org.apache.datasketches.hll.PreambleUtil.extractLgArr;
+import static org.apache.datasketches.hll.PreambleUtil.extractLgK;
+import static org.apache.datasketches.hll.PreambleUtil.extractListCount;
 import static org.apache.datasketches.hll.PreambleUtil.extractTgtHllType;
 import static org.apache.datasketches.hll.TgtHllType.HLL_8;
 
@@ -54,6 +65,8 @@ import org.apache.datasketches.memory.WritableMemory;
 public class Union extends BaseHllSketch {
   final int lgMaxK;
   private final HllSketch gadget;
+  //wraps the register array of the heap gadget in HLL mode, see update(Memory)
+  private WritableMemory gadgetArrMem;
 
   /**
    * Construct this Union operator with the default maximum log-base-2 of <i>K</i>.
@@ -303,12 +316,53 @@ public class Union extends BaseHllSketch {
     gadget.hllSketchImpl = unionImpl(sketch, gadget, lgMaxK);
   }
 
+  /**
+   * Update this union operator with the given Memory image of an HllSketch, which may be in
+   * compact or updatable form and of any <i>TgtHllType</i>. This is equivalent to
+   * <code>update(HllSketch.wrap(srcMem))</code>, but, once the union is in HLL mode, the
+   * registers or coupons are read straight from the given image into the union, without
+   * creating a sketch on the heap. This is the fastest way to union serialized sketches, for
+   * example from a memory-mapped file.
+   * @param srcMem the given Memory image of an HllSketch, which is read-only.
+   */
+  public void update(final Memory srcMem) {
+    if (HllCompression.isCompressed(srcMem)) {
+      update(HllSketch.wrap(srcMem));
+      return;
+    }
+    final CurMode srcMode = checkPreamble(srcMem);
+    if (srcMode != CurMode.HLL) {
+      mergeCoupons(srcMem, srcMode);
+      return;
+    }
+    if (extractEmptyFlag(srcMem)) { return; }
+    final int srcLgK = extractLgK(srcMem);
+    final int gadgetLgK = gadget.getLgConfigK();
+    if ((gadget.getCurMode() != CurMode.HLL) || gadget.isEmpty() || (srcLgK < gadgetLgK)) {
+      update(HllSketch.wrap(srcMem)); //the gadget is replaced or downsampled anyway
+      return;
+    }
+    //forward HLL merge w/autofold, ooof=True
+    if (gadget.isMemory()) {
+      HllArrayMerge.merge(srcMem, gadget.getWritableMemory(), HLL_BYTE_ARR_START, srcLgK, gadgetLgK);
+    } else {
+      HllArrayMerge.merge(srcMem, getGadgetArrMemory(), 0, srcLgK, gadgetLgK);
+    }
+    gadget.hllSketchImpl.putRebuildCurMinNumKxQFlag(true);
+    gadget.putOutOfOrderFlag(true);
+  }
+
   @Override
   void couponUpdate(final int coupon) {
     if (coupon == EMPTY) { return; }
     gadget.hllSketchImpl = gadget.hllSketchImpl.couponUpdate(coupon);
   }
 
+  @Override
+  void couponBatchUpdate(final int[] coupons, final int count) {
+    gadget.hllSketchImpl = gadget.hllSketchImpl.couponBatchUpdate(coupons, 0, count);
+  }
+
   // Union operator logic
 
   /**
@@ -414,7 +468,7 @@ public class Union extends BaseHllSketch {
       case 21://src >  max, src >= gdt, gdtHLL, gdtMemory
       { //Action: forward HLL merge w/autofold, ooof=True
         //merge src(Hll4,6,8,heap/mem,Mode=HLL) -> gdt(Hll8,heap,Mode=HLL)
-        mergeHlltoHLLmode(source, gadget, srcLgK, gadgetLgK, srcIsMem, gdtIsMem);
+        mergeHlltoHLLmode(source, gadget, srcLgK, gadgetLgK);
         hllSketchImpl = gadget.putOutOfOrderFlag(true).hllSketchImpl;
         break;
       }
@@ -422,7 +476,7 @@ public class Union extends BaseHllSketch {
       { //Action: downsample gdt to srcLgK, forward HLL merge w/autofold, ooof=True
         final HllSketch gdtHll8Heap = downsample(gadget, srcLgK);
         //merge src(Hll4,6,8;heap/mem,Mode=HLL) -> gdt(Hll8,heap,hll)
-        mergeHlltoHLLmode(source, gdtHll8Heap, srcLgK, gadgetLgK, srcIsMem, false);
+        mergeHlltoHLLmode(source, gdtHll8Heap, srcLgK, gadgetLgK);
         hllSketchImpl = gdtHll8Heap.putOutOfOrderFlag(true).hllSketchImpl;
         break;
       }
@@ -430,7 +484,7 @@ public class Union extends BaseHllSketch {
       { //Action: downsample gdt to srcLgK, forward HLL merge w/autofold, use gdt memory, ooof=True
         final HllSketch gdtHll8Heap = downsample(gadget, srcLgK);
         //merge src(Hll4,6,8;heap/mem;Mode=HLL) -> gdt(Hll8,heap,Mode=HLL)
-        mergeHlltoHLLmode(source, gdtHll8Heap, srcLgK, gadgetLgK, srcIsMem, false);
+        mergeHlltoHLLmode(source, gdtHll8Heap, srcLgK, gadgetLgK);
         hllSketchImpl = useGadgetMemory(gadget, gdtHll8Heap, true).hllSketchImpl;
         break;
       }
@@ -477,135 +531,43 @@ public class Union extends BaseHllSketch {
         : HllSketch.writableWrap(wmem, false);                        //wrap & return
   }
 
+  //Returns the register array of the heap gadget, wrapped only when the array is replaced
+  private WritableMemory getGadgetArrMemory() {
+    final byte[] hllByteArr = ((HllArray) gadget.hllSketchImpl).hllByteArr;
+    if ((gadgetArrMem == null) || (gadgetArrMem.getArray() != hllByteArr)) {
+      gadgetArrMem = WritableMemory.wrap(hllByteArr);
+    }
+    return gadgetArrMem;
+  }
+
+  //Streams the coupons of a LIST or SET mode image into the gadget, as the mergeTo of the
+  //DirectCouponList and DirectCouponHashSet do.
+  private void mergeCoupons(final Memory srcMem, final CurMode srcMode) {
+    final boolean list = srcMode == CurMode.LIST;
+    final int count = list ? extractListCount(srcMem) : extractHashSetCount(srcMem);
+    if (count == 0) { return; }
+    final int dataStart = list ? LIST_INT_ARR_START : HASH_SET_INT_ARR_START;
+    final int lenInts;
+    if (extractCompactFlag(srcMem)) {
+      lenInts = count;
+    } else {
+      final int lgArr = extractLgArr(srcMem);
+      //early versions of compact images did not use this lgArr field
+      lenInts = 1 << ((lgArr >= LG_INIT_LIST_SIZE) ? lgArr
+          : computeLgArr(srcMem, count, extractLgK(srcMem)));
+    }
+    for (int i = 0; i < lenInts; i++) {
+      final int pair = srcMem.getInt(dataStart + (i << 2));
+      if (pair == EMPTY) { continue; }
+      gadget.hllSketchImpl = gadget.hllSketchImpl.couponUpdate(pair);
+    }
+  }
+
+  //Merges the registers eight at a time, see HllArrayMerge
   private static final void mergeHlltoHLLmode(final HllSketch src, final HllSketch tgt,
-      final int srcLgK, final int tgtLgK, final boolean srcIsMem, final boolean tgtIsMem) {
-      final int sw = (tgtIsMem ? 1 : 0) | (srcIsMem ? 2 : 0)
-          | ((srcLgK > tgtLgK) ? 4 : 0) | ((src.getTgtHllType() != HLL_8) ? 8 : 0);
-      switch (sw) {
-        case 0: { //HLL_8, srcLgK=tgtLgK, src=heap, tgt=heap
-          final int srcK = 1 << srcLgK;
-          final byte[] srcArr = ((Hll8Array) src.hllSketchImpl).hllByteArr;
-          final byte[] tgtArr = ((Hll8Array) tgt.hllSketchImpl).hllByteArr;
-          for (int i = 0; i < srcK; i++) {
-            final byte srcV = srcArr[i];
-            final byte tgtV = tgtArr[i];
-            tgtArr[i] = (srcV > tgtV) ? srcV : tgtV;
-          }
-          break;
-        }
-        case 1: { //HLL_8, srcLgK=tgtLgK, src=heap, tgt=mem
-          final int srcK = 1 << srcLgK;
-          final byte[] srcArr = ((Hll8Array) src.hllSketchImpl).hllByteArr;
-          final WritableMemory tgtMem = tgt.getWritableMemory();
-          for (int i = 0; i < srcK; i++) {
-            final byte srcV = srcArr[i];
-            final byte tgtV = tgtMem.getByte(HLL_BYTE_ARR_START + i);
-            tgtMem.putByte(HLL_BYTE_ARR_START + i, (srcV > tgtV) ? srcV : tgtV);
-          }
-          break;
-        }
-        case 2: { //HLL_8, srcLgK=tgtLgK, src=mem,  tgt=heap
-          final int srcK = 1 << srcLgK;
-          final Memory srcMem = src.getMemory();
-          final byte[] tgtArr = ((Hll8Array) tgt.hllSketchImpl).hllByteArr;
-          for (int i = 0; i < srcK; i++) {
-            final byte srcV = srcMem.getByte(HLL_BYTE_ARR_START + i);
-            final byte tgtV = tgtArr[i];
-            tgtArr[i] = (srcV > tgtV) ? srcV : tgtV;
-          }
-          break;
-        }
-        case 3: { //HLL_8, srcLgK=tgtLgK, src=mem,  tgt=mem
-          final int srcK = 1 << srcLgK;
-          final Memory srcMem = src.getMemory();
-          final WritableMemory tgtMem = tgt.getWritableMemory();
-          for (int i = 0; i < srcK; i++) {
-            final byte srcV = srcMem.getByte(HLL_BYTE_ARR_START + i);
-            final byte tgtV = tgtMem.getByte(HLL_BYTE_ARR_START + i);
-            tgtMem.putByte(HLL_BYTE_ARR_START + i, (srcV > tgtV) ? srcV : tgtV);
-          }
-          break;
-        }
-        case 4: { //HLL_8, srcLgK>tgtLgK, src=heap, tgt=heap
-          final int srcK = 1 << srcLgK;
-          final int tgtKmask = (1 << tgtLgK) - 1;
-          final byte[] srcArr = ((Hll8Array) src.hllSketchImpl).hllByteArr;
-          final byte[] tgtArr = ((Hll8Array) tgt.hllSketchImpl).hllByteArr;
-          for (int i = 0; i < srcK; i++) {
-            final byte srcV = srcArr[i];
-            final int j = i & tgtKmask;
-            final byte tgtV = tgtArr[j];
-            tgtArr[j] = (srcV > tgtV) ? srcV : tgtV;
-          }
-          break;
-        }
-        case 5: { //HLL_8, srcLgK>tgtLgK, src=heap, tgt=mem
-          final int srcK = 1 << srcLgK;
-          final int tgtKmask = (1 << tgtLgK) - 1;
-          final byte[] srcArr = ((Hll8Array) src.hllSketchImpl).hllByteArr;
-          final WritableMemory tgtMem = tgt.getWritableMemory();
-          for (int i = 0; i < srcK; i++) {
-            final byte srcV = srcArr[i];
-            final int j = i & tgtKmask;
-            final byte tgtV = tgtMem.getByte(HLL_BYTE_ARR_START + j);
-            tgtMem.putByte(HLL_BYTE_ARR_START + j, (srcV > tgtV) ? srcV : tgtV);
-          }
-          break;
-        }
-        case 6: { //HLL_8, srcLgK>tgtLgK, src=mem,  tgt=heap
-          final int srcK = 1 << srcLgK;
-          final int tgtKmask = (1 << tgtLgK) - 1;
-          final Memory srcMem = src.getMemory();
-          final byte[] tgtArr = ((Hll8Array) tgt.hllSketchImpl).hllByteArr;
-          for (int i = 0; i < srcK; i++) {
-            final byte srcV = srcMem.getByte(HLL_BYTE_ARR_START + i);
-            final int j = i & tgtKmask;
-            final byte tgtV = tgtArr[j];
-            tgtArr[j] = (srcV > tgtV) ? srcV : tgtV;
-          }
-          break;
-        }
-        case 7: { //HLL_8, srcLgK>tgtLgK, src=mem,  tgt=mem
-          final int srcK = 1 << srcLgK;
-          final int tgtKmask = (1 << tgtLgK) - 1;
-          final Memory srcMem = src.getMemory();
-          final WritableMemory tgtMem = tgt.getWritableMemory();
-          for (int i = 0; i < srcK; i++) {
-            final byte srcV = srcMem.getByte(HLL_BYTE_ARR_START + i);
-            final int j = i & tgtKmask;
-            final byte tgtV = tgtMem.getByte(HLL_BYTE_ARR_START + j);
-            tgtMem.putByte(HLL_BYTE_ARR_START + j, (srcV > tgtV) ? srcV : tgtV);
-          }
-          break;
-        }
-        case 8: case 9: case 10: case 11:
-        {
-          //!HLL_8, srcLgK=tgtLgK, src=heap/mem, tgt=heap/mem
-          final int srcK = 1 << srcLgK;
-          final AbstractHllArray srcAbsHllArr = (AbstractHllArray)(src.hllSketchImpl);
-          final AbstractHllArray tgtAbsHllArr = (AbstractHllArray)(tgt.hllSketchImpl);
-          for (int i = 0; i < srcK; i++) {
-            final int srcV = srcAbsHllArr.getSlotValue(i);
-            tgtAbsHllArr.updateSlotNoKxQ(i, srcV);
-          }
-          break;
-        }
-        case 12: case 13: case 14: case 15:
-        {
-          //!HLL_8, srcLgK>tgtLgK, src=heap/mem, tgt=heap/mem
-          final int srcK = 1 << srcLgK;
-          final int tgtKmask = (1 << tgtLgK) - 1;
-          final AbstractHllArray srcAbsHllArr = (AbstractHllArray)(src.hllSketchImpl);
-          final AbstractHllArray tgtAbsHllArr = (AbstractHllArray)(tgt.hllSketchImpl);
-          for (int i = 0; i < srcK; i++) {
-            final int srcV = srcAbsHllArr.getSlotValue(i);
-            final int j = i & tgtKmask;
-            tgtAbsHllArr.updateSlotNoKxQ(j, srcV);
-          }
-          break;
-        }
-      }
-      tgt.hllSketchImpl.putRebuildCurMinNumKxQFlag(true);
+      final int srcLgK, final int tgtLgK) {
+    HllArrayMerge.merge(src, tgt, srcLgK, tgtLgK);
+    tgt.hllSketchImpl.putRebuildCurMinNumKxQFlag(true);
   }
 
   //Used by union operator.  Always copies or downsamples to Heap HLL_8.
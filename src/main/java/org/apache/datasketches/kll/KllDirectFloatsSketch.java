@@ -0,0 +1,517 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.datasketches.kll;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+import java.util.SplittableRandom;
+
+import org.apache.datasketches.QuantilesHelper;
+import org.apache.datasketches.SketchesArgumentException;
+import org.apache.datasketches.SketchesReadOnlyException;
+import org.apache.datasketches.Util;
+import org.apache.datasketches.memory.DefaultMemoryRequestServer;
+import org.apache.datasketches.memory.Memory;
+import org.apache.datasketches.memory.MemoryRequestServer;
+import org.apache.datasketches.memory.UnsafeUtil;
+import org.apache.datasketches.memory.WritableMemory;
+
+/**
+ * A KllFloatsSketch held in Memory, which may be on or off the Java heap.
+ *
+ * <p>A writable sketch holds the updatable form (serial version 3): the levels offsets, min, max
+ * and the whole items array are kept in the Memory, and updates write the new item and the
+ * changed fields in place. Compaction reads only the levels it rewrites, and adding a level
+ * may request a larger Memory from the MemoryRequestServer.</p>
+ *
+ * <p>A read-only sketch wraps either the updatable form or the compact form of toByteArray().
+ * Ranks, quantiles, the PMF and the CDF are computed from the Memory by searching each level,
+ * without copying the retained items onto the heap. Merges into a writable sketch and the
+ * sorted view, iterator and serialization go through a heap copy.</p>
+ */
+final class KllDirectFloatsSketch extends KllFloatsSketch {
+  private Memory mem_;
+  private WritableMemory wmem_; //null if read-only
+  private MemoryRequestServer memReqSvr_; //acquired on the first request for a larger Memory
+  private final boolean compact_; //the compact form of toByteArray(), which is always read-only
+
+  // Header of a compact image, read once because it is not written by this sketch
+  private final long compactN_;
+  private final int compactMinK_;
+  private final int[] compactLevels_; //all numLevels + 1 offsets
+  private final float compactMinValue_;
+  private final float compactMaxValue_;
+  private final long compactItemsBase_; //offset of items[0], which need not be retained
+
+  KllDirectFloatsSketch(final Memory srcMem, final boolean readOnly) {
+    super(srcMem.getShort(K_SHORT) & 0xffff, new SplittableRandom());
+    mem_ = srcMem;
+    wmem_ = readOnly ? null : (WritableMemory) srcMem;
+    compact_ = (srcMem.getByte(SER_VER_BYTE) & 0xff) != serialVersionUID3;
+    if (!compact_) {
+      compactN_ = 0;
+      compactMinK_ = 0;
+      compactLevels_ = null;
+      compactMinValue_ = Float.NaN;
+      compactMaxValue_ = Float.NaN;
+      compactItemsBase_ = 0;
+      return;
+    }
+    final int k = getK();
+    final int flags = srcMem.getByte(FLAGS_BYTE) & 0xff;
+    if ((flags & 1 << Flags.IS_EMPTY.ordinal()) > 0) {
+      compactN_ = 0;
+      compactMinK_ = k;
+      compactLevels_ = new int[] {k, k};
+      compactMinValue_ = Float.NaN;
+      compactMaxValue_ = Float.NaN;
+      compactItemsBase_ = 0;
+    } else if ((flags & 1 << Flags.IS_SINGLE_ITEM.ordinal()) > 0) {
+      final int capacity = KllHelper.computeTotalCapacity(k, DEFAULT_M, 1);
+      compactN_ = 1;
+      compactMinK_ = k;
+      compactLevels_ = new int[] {capacity - 1, capacity};
+      compactMinValue_ = srcMem.getFloat(DATA_START_SINGLE_ITEM);
+      compactMaxValue_ = compactMinValue_;
+      compactItemsBase_ = DATA_START_SINGLE_ITEM - (long) (capacity - 1) * Float.BYTES;
+    } else {
+      compactN_ = srcMem.getLong(N_LONG);
+      compactMinK_ = srcMem.getShort(MIN_K_SHORT) & 0xffff;
+      final int numLevels = srcMem.getByte(NUM_LEVELS_BYTE) & 0xff;
+      compactLevels_ = new int[numLevels + 1];
+      // the last integer of the levels is not serialized because it can be derived
+      srcMem.getIntArray(DATA_START, compactLevels_, 0, numLevels);
+      compactLevels_[numLevels] = KllHelper.computeTotalCapacity(k, DEFAULT_M, numLevels);
+      final long offset = DATA_START + (long) numLevels * Integer.BYTES;
+      compactMinValue_ = srcMem.getFloat(offset);
+      compactMaxValue_ = srcMem.getFloat(offset + Float.BYTES);
+      compactItemsBase_ = offset + 2 * Float.BYTES - (long) compactLevels_[0] * Float.BYTES;
+    }
+  }
+
+  static KllDirectFloatsSketch newInstance(final int k, final WritableMemory dstMem) {
+    final byte[] bytes = new KllFloatsSketch(k).toUpdatableByteArray();
+    if (dstMem.getCapacity() < bytes.length) {
+      throw new SketchesArgumentException("Insufficient capacity for a new sketch: "
+          + dstMem.getCapacity() + " < " + bytes.length);
+    }
+    dstMem.putByteArray(0, bytes, 0, bytes.length);
+    return new KllDirectFloatsSketch(dstMem, false);
+  }
+
+  @Override
+  public double[] getCDF(final float[] splitPoints) {
+    return getPmfOrCdf(splitPoints, true);
+  }
+
+  @Override
+  public float getMaxValue() {
+    return compact_ ? compactMaxValue_ : mem_.getFloat(getMinValueOffset(getNumLevels()) + Float.BYTES);
+  }
+
+  @Override
+  public float getMinValue() {
+    return compact_ ? compactMinValue_ : mem_.getFloat(getMinValueOffset(getNumLevels()));
+  }
+
+  @Override
+  public long getN() {
+    return compact_ ? compactN_ : mem_.getLong(N_LONG);
+  }
+
+  @Override
+  public double getNormalizedRankError(final boolean pmf) {
+    return getNormalizedRankError(compact_ ? compactMinK_ : mem_.getShort(MIN_K_SHORT) & 0xffff, pmf);
+  }
+
+  @Override
+  public int getNumRetained() {
+    final int numLevels = getNumLevels();
+    return getLevel(numLevels) - getLevel(0);
+  }
+
+  @Override
+  public double[] getPMF(final float[] splitPoints) {
+    return getPmfOrCdf(splitPoints, false);
+  }
+
+  @Override
+  public float getQuantile(final double fraction) {
+    if (isEmpty()) { return Float.NaN; }
+    if (fraction == 0.0) { return getMinValue(); }
+    if (fraction == 1.0) { return getMaxValue(); }
+    if (fraction < 0.0 || fraction > 1.0) {
+      throw new SketchesArgumentException("Fraction cannot be less than zero or greater than 1.0");
+    }
+    final long pos = QuantilesHelper.posOfPhi(fraction, getN());
+    // The quantile is the smallest retained item whose inclusive weight exceeds pos. Search for it
+    // over the order-preserving integer keys of the floats between min and max.
+    int lo = toKey(getMinValue());
+    int hi = toKey(getMaxValue());
+    while (lo < hi) {
+      final int mid = (int) (((long) lo + hi) >> 1);
+      if (getWeight(fromKey(mid), true) > pos) { hi = mid; }
+      else { lo = mid + 1; }
+    }
+    return fromKey(lo);
+  }
+
+  @Override
+  public float getQuantileUpperBound(final double fraction) {
+    return getQuantile(min(1.0, fraction + getNormalizedRankError(false)));
+  }
+
+  @Override
+  public float getQuantileLowerBound(final double fraction) {
+    return getQuantile(max(0, fraction - getNormalizedRankError(false)));
+  }
+
+  @Override
+  public float[] getQuantiles(final double[] fractions) {
+    if (isEmpty()) { return null; }
+    final float[] quantiles = new float[fractions.length];
+    for (int i = 0; i < fractions.length; i++) {
+      quantiles[i] = getQuantile(fractions[i]);
+    }
+    return quantiles;
+  }
+
+  @Override
+  public double getRank(final float value) {
+    if (isEmpty()) { return Double.NaN; }
+    return (double) getWeight(value, false) / getN();
+  }
+
+  @Override
+  public KllFloatsSketchSortedView getSortedView() {
+    // never cached, the Memory may be changed through other handles
+    return getHeapSketch().getSortedView();
+  }
+
+  @Override
+  public int getSerializedSizeBytes() {
+    if (isEmpty()) { return N_LONG; }
+    return getSerializedSizeBytes(getNumLevels(), getNumRetained());
+  }
+
+  @Override
+  public boolean isDirect() {
+    return true;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return getN() == 0;
+  }
+
+  @Override
+  public boolean isEstimationMode() {
+    return getNumLevels() > 1;
+  }
+
+  @Override
+  public boolean isReadOnly() {
+    return wmem_ == null;
+  }
+
+  @Override
+  public KllFloatsSketchIterator iterator() {
+    final KllFloatsSketch heap = getHeapSketch();
+    return new KllFloatsSketchIterator(heap.getItems(), heap.getLevels(), heap.getNumLevels());
+  }
+
+  @Override
+  public void merge(final KllFloatsSketch other) {
+    checkWritable("merge()");
+    if (other == null || other.isEmpty()) { return; }
+    final KllFloatsSketch heap = getHeapSketch();
+    heap.merge(other);
+    final byte[] bytes = heap.toUpdatableByteArray();
+    ensureCapacity(bytes.length);
+    wmem_.putByteArray(0, bytes, 0, bytes.length);
+  }
+
+  @Override
+  public byte[] toByteArray() {
+    return getHeapSketch().toByteArray();
+  }
+
+  @Override
+  public byte[] toUpdatableByteArray() {
+    if (compact_) { return getHeapSketch().toUpdatableByteArray(); }
+    final int numLevels = getNumLevels();
+    final byte[] bytes = new byte[getUpdatableSerializedSizeBytes(numLevels, getLevel(numLevels))];
+    mem_.getByteArray(0, bytes, 0, bytes.length);
+    return bytes;
+  }
+
+  @Override
+  public String toString(final boolean withLevels, final boolean withData) {
+    return getHeapSketch().toString(withLevels, withData);
+  }
+
+  @Override
+  public void update(final float value) {
+    if (Float.isNaN(value)) { return; }
+    checkWritable("update()");
+    if (wmem_.getInt(DATA_START) == 0) { // levels[0] == 0, the sketch is full
+      compressWhileUpdating();
+    }
+    final long n = wmem_.getLong(N_LONG);
+    final int numLevels = getNumLevels();
+    final long minOffset = getMinValueOffset(numLevels);
+    if (n == 0) {
+      wmem_.putFloat(minOffset, value);
+      wmem_.putFloat(minOffset + Float.BYTES, value);
+    } else {
+      if (value < wmem_.getFloat(minOffset)) { wmem_.putFloat(minOffset, value); }
+      if (value > wmem_.getFloat(minOffset + Float.BYTES)) { wmem_.putFloat(minOffset + Float.BYTES, value); }
+    }
+    wmem_.putLong(N_LONG, n + 1);
+    clearLevelZeroSorted();
+    final int nextPos = wmem_.getInt(DATA_START) - 1;
+    wmem_.putInt(DATA_START, nextPos);
+    wmem_.putFloat(minOffset + 2 * Float.BYTES + (long) nextPos * Float.BYTES, value);
+  }
+
+  @Override
+  public void update(final float[] values, final int offset, final int length) {
+    UnsafeUtil.checkBounds(offset, length, values.length);
+    checkWritable("update()");
+    final int end = offset + length;
+    int i = offset;
+    while (i < end) {
+      if (Float.isNaN(values[i])) { i++; continue; }
+      if (wmem_.getInt(DATA_START) == 0) { // levels[0] == 0, the sketch is full
+        compressWhileUpdating();
+      }
+      // the header fields are read and written once per run of items
+      final long n = wmem_.getLong(N_LONG);
+      final long minOffset = getMinValueOffset(getNumLevels());
+      final long itemsOffset = minOffset + 2 * Float.BYTES;
+      float minValue = n == 0 ? values[i] : wmem_.getFloat(minOffset);
+      float maxValue = n == 0 ? values[i] : wmem_.getFloat(minOffset + Float.BYTES);
+      int nextPos = wmem_.getInt(DATA_START);
+      final int lim = i + min(end - i, nextPos);
+      int j = i;
+      for ( ; j < lim; j++) {
+        final float value = values[j];
+        if (Float.isNaN(value)) { break; }
+        if (value < minValue) { minValue = value; }
+        if (value > maxValue) { maxValue = value; }
+        wmem_.putFloat(itemsOffset + (long) --nextPos * Float.BYTES, value);
+      }
+      wmem_.putFloat(minOffset, minValue);
+      wmem_.putFloat(minOffset + Float.BYTES, maxValue);
+      wmem_.putLong(N_LONG, n + j - i);
+      wmem_.putInt(DATA_START, nextPos);
+      clearLevelZeroSorted();
+      i = j;
+    }
+  }
+
+  @Override
+  KllFloatsSketch getHeapSketch() {
+    return heapify(mem_, getRandom());
+  }
+
+  // Restricted Methods
+
+  private void checkWritable(final String method) {
+    if (wmem_ == null) {
+      throw new SketchesReadOnlyException("Call to " + method + " on read-only buffer");
+    }
+  }
+
+  @Override
+  int getNumLevels() {
+    return compact_ ? compactLevels_.length - 1 : mem_.getByte(NUM_LEVELS_BYTE) & 0xff;
+  }
+
+  private void clearLevelZeroSorted() {
+    final int flags = wmem_.getByte(FLAGS_BYTE);
+    wmem_.putByte(FLAGS_BYTE, (byte) (flags & ~(1 << Flags.IS_LEVEL_ZERO_SORTED.ordinal())));
+  }
+
+  private int getLevel(final int index) {
+    return compact_ ? compactLevels_[index] : mem_.getInt(DATA_START + (long) index * Integer.BYTES);
+  }
+
+  @Override
+  float[] getItems() {
+    return getHeapSketch().getItems();
+  }
+
+  @Override
+  int[] getLevels() {
+    return readLevels(getNumLevels()).clone();
+  }
+
+  private int[] readLevels(final int numLevels) {
+    if (compact_) { return compactLevels_; }
+    final int[] levels = new int[numLevels + 1];
+    mem_.getIntArray(DATA_START, levels, 0, numLevels + 1);
+    return levels;
+  }
+
+  // offset of min in the updatable form, followed by max and the items
+  private static long getMinValueOffset(final int numLevels) {
+    return DATA_START + (long) (numLevels + 1) * Integer.BYTES;
+  }
+
+  private long getItemsBase(final int numLevels) {
+    return compact_ ? compactItemsBase_ : getMinValueOffset(numLevels) + 2 * Float.BYTES;
+  }
+
+  /**
+   * Returns the total weight of the retained items less than the given value, or less than or
+   * equal to it if inclusive. Each level but level zero is sorted, so it is binary searched.
+   */
+  private long getWeight(final float value, final boolean inclusive) {
+    final int numLevels = getNumLevels();
+    final int[] levels = readLevels(numLevels);
+    final long base = getItemsBase(numLevels);
+    final boolean isLevelZeroSorted =
+        (mem_.getByte(FLAGS_BYTE) & 1 << Flags.IS_LEVEL_ZERO_SORTED.ordinal()) > 0;
+    long total = 0;
+    long weight = 1;
+    for (int level = 0; level < numLevels; level++) {
+      final int fromIndex = levels[level];
+      final int toIndex = levels[level + 1]; // exclusive
+      int count = 0;
+      if (level == 0 && !isLevelZeroSorted) {
+        for (int i = fromIndex; i < toIndex; i++) {
+          final float item = mem_.getFloat(base + (long) i * Float.BYTES);
+          if (item < value || (inclusive && item == value)) { count++; }
+        }
+      } else {
+        int lo = fromIndex;
+        int hi = toIndex;
+        while (lo < hi) {
+          final int mid = (lo + hi) >>> 1;
+          final float item = mem_.getFloat(base + (long) mid * Float.BYTES);
+          if (item < value || (inclusive && item == value)) { lo = mid + 1; }
+          else { hi = mid; }
+        }
+        count = lo - fromIndex;
+      }
+      total += weight * count;
+      weight *= 2;
+    }
+    return total;
+  }
+
+  private double[] getPmfOrCdf(final float[] splitPoints, final boolean isCdf) {
+    if (isEmpty()) { return null; }
+    Util.validateValues(splitPoints);
+    final long n = getN();
+    final double[] buckets = new double[splitPoints.length + 1];
+    long prevWeight = 0;
+    for (int i = 0; i < splitPoints.length; i++) {
+      final long weight = getWeight(splitPoints[i], false);
+      buckets[i] = (double) (isCdf ? weight : weight - prevWeight) / n;
+      prevWeight = weight;
+    }
+    buckets[splitPoints.length] = (double) (isCdf ? n : n - prevWeight) / n;
+    return buckets;
+  }
+
+  // Maps floats to ints of the same order, -0.0 just below 0.0
+  private static int toKey(final float value) {
+    final int bits = Float.floatToRawIntBits(value);
+    return bits ^ ((bits >> 31) & 0x7fffffff);
+  }
+
+  private static float fromKey(final int key) {
+    return Float.intBitsToFloat(key ^ ((key >> 31) & 0x7fffffff));
+  }
+
+  // The following code is only valid in the special case of exactly reaching capacity while updating.
+  private void compressWhileUpdating() {
+    int numLevels = getNumLevels();
+    int[] levels = readLevels(numLevels);
+    final int level = KllHelper.findLevelToCompact(getK(), DEFAULT_M, numLevels, levels);
+    if (level == numLevels - 1) {
+      levels = addEmptyTopLevelToCompletelyFullSketch(numLevels, levels);
+      numLevels++;
+    }
+    // level zero is full, so levels[0] == 0 and the compaction touches items[0, levels[level + 2])
+    final int lim = levels[level + 2];
+    final float[] items = new float[lim];
+    final long base = getItemsBase(numLevels);
+    wmem_.getFloatArray(base, items, 0, lim);
+    KllHelper.compactLevel(items, levels, level, getRandom());
+    wmem_.putFloatArray(base + (long) levels[0] * Float.BYTES, items, levels[0], lim - levels[0]);
+    wmem_.putIntArray(DATA_START, levels, 0, numLevels + 1);
+  }
+
+  private int[] addEmptyTopLevelToCompletelyFullSketch(final int numLevels, final int[] levels) {
+    final int curTotalCap = levels[numLevels];
+    assert levels[0] == 0;
+    final int deltaCap = KllHelper.levelCapacity(getK(), numLevels + 1, 0, DEFAULT_M);
+    final int newTotalCap = curTotalCap + deltaCap;
+
+    final float[] items = new float[curTotalCap];
+    wmem_.getFloatArray(getItemsBase(numLevels), items, 0, curTotalCap);
+    final long minOffset = getMinValueOffset(numLevels);
+    final float minValue = wmem_.getFloat(minOffset);
+    final float maxValue = wmem_.getFloat(minOffset + Float.BYTES);
+
+    final int[] newLevels = new int[numLevels + 2];
+    for (int i = 0; i <= numLevels; i++) {
+      newLevels[i] = levels[i] + deltaCap;
+    }
+    newLevels[numLevels + 1] = newTotalCap;
+
+    // the levels array grows by one, so min, max and the shifted items are all rewritten
+    ensureCapacity(getUpdatableSerializedSizeBytes(numLevels + 1, newTotalCap));
+    wmem_.putByte(NUM_LEVELS_BYTE, (byte) (numLevels + 1));
+    wmem_.putIntArray(DATA_START, newLevels, 0, numLevels + 2);
+    final long newMinOffset = getMinValueOffset(numLevels + 1);
+    wmem_.putFloat(newMinOffset, minValue);
+    wmem_.putFloat(newMinOffset + Float.BYTES, maxValue);
+    wmem_.putFloatArray(newMinOffset + 2 * Float.BYTES + (long) deltaCap * Float.BYTES, items, 0,
+        curTotalCap);
+    return newLevels;
+  }
+
+  /**
+   * Makes sure that the Memory has at least the given capacity, requesting a larger Memory from
+   * the MemoryRequestServer if needed. A Memory without a MemoryRequestServer, such as one
+   * allocated on the heap, grows through the DefaultMemoryRequestServer.
+   * @param requiredBytes the required capacity in bytes
+   */
+  private void ensureCapacity(final long requiredBytes) {
+    final long oldCapBytes = wmem_.getCapacity();
+    if (requiredBytes <= oldCapBytes) { return; }
+    if (memReqSvr_ == null) {
+      memReqSvr_ = wmem_.getMemoryRequestServer();
+      if (memReqSvr_ == null) { memReqSvr_ = new DefaultMemoryRequestServer(); }
+    }
+    final WritableMemory newWmem = memReqSvr_.request(requiredBytes);
+    wmem_.copyTo(0, newWmem, 0, oldCapBytes);
+    memReqSvr_.requestClose(wmem_, newWmem); //old wmem_ is now invalid
+    wmem_ = newWmem;
+    mem_ = newWmem;
+  }
+
+}
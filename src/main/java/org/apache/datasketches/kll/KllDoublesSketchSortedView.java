@@ -0,0 +1,213 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.datasketches.kll;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+import org.apache.datasketches.SketchesArgumentException;
+import org.apache.datasketches.Util;
+
+/**
+ * An immutable sorted view of the items retained by a KllDoublesSketch, which answers the same
+ * quantile, rank, PMF and CDF queries as the sketch it was taken from.
+ *
+ * <p>The retained items are merge-sorted once, when the view is created, and each query is then a
+ * binary search. A KllDoublesSketch keeps its sorted view until the next update or merge, so
+ * repeated queries of an unchanged sketch do not sort again. A view obtained with
+ * {@link KllDoublesSketch#getSortedView()} is a snapshot: it does not change when the sketch does,
+ * and it can be queried by many threads without locking.</p>
+ */
+public final class KllDoublesSketchSortedView {
+  private final long n_;
+  private final double minValue_;
+  private final double maxValue_;
+  private final double rankError_; //for the bounds
+  private final KllDoublesQuantileCalculator calculator_; //null if empty
+
+  // assumes that all levels are sorted including level 0
+  KllDoublesSketchSortedView(final double[] items, final int[] levels, final int numLevels,
+      final long n, final double minValue, final double maxValue, final double rankError) {
+    n_ = n;
+    minValue_ = minValue;
+    maxValue_ = maxValue;
+    rankError_ = rankError;
+    calculator_ = (n == 0) ? null : new KllDoublesQuantileCalculator(items, levels, numLevels, n);
+  }
+
+  /**
+   * Returns the length of the input stream of the sketch when this view was taken.
+   * @return stream length
+   */
+  public long getN() {
+    return n_;
+  }
+
+  /**
+   * Returns true if the sketch was empty when this view was taken.
+   * @return true if the sketch was empty
+   */
+  public boolean isEmpty() {
+    return n_ == 0;
+  }
+
+  /**
+   * Returns the min value of the stream, or NaN if the sketch was empty.
+   * @return the min value of the stream
+   */
+  public double getMinValue() {
+    return minValue_;
+  }
+
+  /**
+   * Returns the max value of the stream, or NaN if the sketch was empty.
+   * @return the max value of the stream
+   */
+  public double getMaxValue() {
+    return maxValue_;
+  }
+
+  /**
+   * Returns the same value as {@link KllDoublesSketch#getQuantile(double)}.
+   *
+   * <p>If the view is empty this returns NaN.
+   *
+   * @param fraction the specified fractional position in the hypothetical sorted stream.
+   * @return the approximation to the value at the given fraction
+   */
+  public double getQuantile(final double fraction) {
+    if (isEmpty()) { return Double.NaN; }
+    if (fraction == 0.0) { return minValue_; }
+    if (fraction == 1.0) { return maxValue_; }
+    if (fraction < 0.0 || fraction > 1.0) {
+      throw new SketchesArgumentException("Fraction cannot be less than zero or greater than 1.0");
+    }
+    return calculator_.getQuantile(fraction);
+  }
+
+  /**
+   * Returns the same value as {@link KllDoublesSketch#getQuantileUpperBound(double)}.
+   * @param fraction the given normalized rank as a fraction
+   * @return the upper bound of the value interval in which the true quantile of the given rank
+   * exists with a confidence of at least 99%. Returns NaN if the view is empty.
+   */
+  public double getQuantileUpperBound(final double fraction) {
+    return getQuantile(min(1.0, fraction + rankError_));
+  }
+
+  /**
+   * Returns the same value as {@link KllDoublesSketch#getQuantileLowerBound(double)}.
+   * @param fraction the given normalized rank as a fraction
+   * @return the lower bound of the value interval in which the true quantile of the given rank
+   * exists with a confidence of at least 99%. Returns NaN if the view is empty.
+   */
+  public double getQuantileLowerBound(final double fraction) {
+    return getQuantile(max(0, fraction - rankError_));
+  }
+
+  /**
+   * Returns the same values as {@link KllDoublesSketch#getQuantiles(double[])}.
+   *
+   * <p>If the view is empty this returns null.
+   *
+   * @param fractions given array of fractional positions in the hypothetical sorted stream.
+   * These fractions must be in the interval [0.0, 1.0], inclusive.
+   * @return array of approximations to the given fractions in the same order as given fractions
+   * array.
+   */
+  public double[] getQuantiles(final double[] fractions) {
+    if (isEmpty()) { return null; }
+    final double[] quantiles = new double[fractions.length];
+    for (int i = 0; i < fractions.length; i++) {
+      quantiles[i] = getQuantile(fractions[i]);
+    }
+    return quantiles;
+  }
+
+  /**
+   * Returns the same values as {@link KllDoublesSketch#getQuantiles(int)}.
+   *
+   * <p>If the view is empty this returns null.
+   *
+   * @param numEvenlySpaced an integer that specifies the number of evenly spaced fractional ranks.
+   * @return array of approximations to the evenly spaced fractions.
+   */
+  public double[] getQuantiles(final int numEvenlySpaced) {
+    if (isEmpty()) { return null; }
+    return getQuantiles(Util.evenlySpaced(0.0, 1.0, numEvenlySpaced));
+  }
+
+  /**
+   * Returns the same value as {@link KllDoublesSketch#getRank(double)}.
+   *
+   * <p>If the view is empty this returns NaN.</p>
+   *
+   * @param value to be ranked
+   * @return an approximate rank of the given value
+   */
+  public double getRank(final double value) {
+    if (isEmpty()) { return Double.NaN; }
+    return (double) calculator_.getWeightBelow(value) / n_;
+  }
+
+  /**
+   * Returns the same values as {@link KllDoublesSketch#getPMF(double[])}.
+   *
+   * <p>If the view is empty this returns null.</p>
+   *
+   * @param splitPoints an array of <i>m</i> unique, monotonically increasing double values
+   * that divide the real number line into <i>m+1</i> consecutive disjoint intervals.
+   * @return an array of m+1 doubles each of which is an approximation
+   * to the fraction of the input stream values (the mass) that fall into one of those intervals.
+   */
+  public double[] getPMF(final double[] splitPoints) {
+    return getPmfOrCdf(splitPoints, false);
+  }
+
+  /**
+   * Returns the same values as {@link KllDoublesSketch#getCDF(double[])}.
+   *
+   * <p>If the view is empty this returns null.</p>
+   *
+   * @param splitPoints an array of <i>m</i> unique, monotonically increasing double values
+   * that divide the real number line into <i>m+1</i> consecutive disjoint intervals.
+   * @return an array of m+1 double values, which are a consecutive approximation to the CDF
+   * of the input stream given the splitPoints.
+   */
+  public double[] getCDF(final double[] splitPoints) {
+    return getPmfOrCdf(splitPoints, true);
+  }
+
+  private double[] getPmfOrCdf(final double[] splitPoints, final boolean isCdf) {
+    if (isEmpty()) { return null; }
+    Util.validateValues(splitPoints);
+    final double[] buckets = new double[splitPoints.length + 1];
+    long prevWeight = 0;
+    for (int i = 0; i < splitPoints.length; i++) {
+      final long weight = calculator_.getWeightBelow(splitPoints[i]);
+      buckets[i] = (double) (isCdf ? weight : weight - prevWeight) / n_;
+      prevWeight = weight;
+    }
+    buckets[splitPoints.length] = (double) (isCdf ? n_ : n_ - prevWeight) / n_;
+    return buckets;
+  }
+
+}
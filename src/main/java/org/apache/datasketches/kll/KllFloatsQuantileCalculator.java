@@ -63,6 +63,23 @@ final class KllFloatsQuantileCalculator {
     return approximatelyAnswerPositonalQuery(pos);
   }
 
+  /**
+   * Returns the total weight of the retained items that are less than the given value.
+   * @param value the given value
+   * @return the total weight of the retained items that are less than the given value
+   */
+  long getWeightBelow(final float value) {
+    // binary search for the first item that is not less than the value
+    int lo = 0;
+    int hi = items_.length;
+    while (lo < hi) {
+      final int mid = (lo + hi) >>> 1;
+      if (items_[mid] < value) { lo = mid + 1; }
+      else { hi = mid; }
+    }
+    return weights_[lo];
+  }
+
   private float approximatelyAnswerPositonalQuery(final long pos) {
     assert pos >= 0;
     assert pos < n_;
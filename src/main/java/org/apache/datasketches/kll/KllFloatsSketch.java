@@ -29,12 +29,15 @@ import static java.lang.Math.pow;
 import static java.lang.Math.round;
 
 import java.util.Arrays;
+import java.util.SplittableRandom;
 
 import org.apache.datasketches.ByteArrayUtil;
 import org.apache.datasketches.Family;
 import org.apache.datasketches.SketchesArgumentException;
 import org.apache.datasketches.Util;
 import org.apache.datasketches.memory.Memory;
+import org.apache.datasketches.memory.UnsafeUtil;
+import org.apache.datasketches.memory.WritableMemory;
 
 /**
  * Implementation of a very compact quantiles sketch with lazy compaction scheme
@@ -176,7 +179,7 @@ public class KllFloatsSketch {
    * The default value of K.
    */
   public static final int DEFAULT_K = 200;
-  private static final int DEFAULT_M = 8;
+  static final int DEFAULT_M = 8;
   static final int MIN_K = DEFAULT_M;
   static final int MAX_K = (1 << 16) - 1; // serialized as an unsigned short
 
@@ -195,30 +198,36 @@ public class KllFloatsSketch {
    *  0   || unused  |   M   |--------K--------|  Flags |  FamID  | SerVer | PreambleInts |
    *      ||   15    |   14  |   13   |   12   |   11   |   10    |    9   |      8       |
    *  1   ||                                   |-------------------data-------------------|
+   *
+   * Updatable layout (serial version 3), used by sketches held in WritableMemory:
+   *  the preamble of the layout with more than one item, followed by all numLevels + 1 levels
+   *  offsets, min and max, and the whole items array of levels[numLevels] floats, including the
+   *  free space below level zero. See KllDirectFloatsSketch.
    */
 
   // Preamble byte addresses
-  private static final int PREAMBLE_INTS_BYTE = 0;
-  private static final int SER_VER_BYTE       = 1;
-  private static final int FAMILY_BYTE        = 2;
-  private static final int FLAGS_BYTE         = 3;
-  private static final int K_SHORT            = 4;  // to 5
-  private static final int M_BYTE             = 6;
-  //                                            7 is reserved for future use
-  private static final int N_LONG             = 8;  // to 15
-  private static final int MIN_K_SHORT        = 16; // to 17
-  private static final int NUM_LEVELS_BYTE    = 18;
-  //                                            19 is reserved for future use
-  private static final int DATA_START         = 20; // if using items larger than 4 bytes, use 24
-  private static final int DATA_START_SINGLE_ITEM = 8;
+  static final int PREAMBLE_INTS_BYTE = 0;
+  static final int SER_VER_BYTE       = 1;
+  static final int FAMILY_BYTE        = 2;
+  static final int FLAGS_BYTE         = 3;
+  static final int K_SHORT            = 4;  // to 5
+  static final int M_BYTE             = 6;
+  //                                    7 is reserved for future use
+  static final int N_LONG             = 8;  // to 15
+  static final int MIN_K_SHORT        = 16; // to 17
+  static final int NUM_LEVELS_BYTE    = 18;
+  //                                    19 is reserved for future use
+  static final int DATA_START         = 20; // if using items larger than 4 bytes, use 24
+  static final int DATA_START_SINGLE_ITEM = 8;
 
   // Other static values
-  private static final byte serialVersionUID1  = 1;
-  private static final byte serialVersionUID2  = 2;
-  private static final int PREAMBLE_INTS_SMALL = 2; // for empty and single item
-  private static final int PREAMBLE_INTS_FULL  = 5; // if using items larger than 4 bytes, use 6
+  static final byte serialVersionUID1  = 1;
+  static final byte serialVersionUID2  = 2;
+  static final byte serialVersionUID3  = 3; // updatable
+  static final int PREAMBLE_INTS_SMALL = 2; // for empty and single item
+  static final int PREAMBLE_INTS_FULL  = 5; // if using items larger than 4 bytes, use 6
 
-  private enum Flags { IS_EMPTY, IS_LEVEL_ZERO_SORTED, IS_SINGLE_ITEM }
+  enum Flags { IS_EMPTY, IS_LEVEL_ZERO_SORTED, IS_SINGLE_ITEM, IS_DOUBLES }
 
   /*
    * Data is stored in items_.
@@ -249,6 +258,9 @@ public class KllFloatsSketch {
   private float minValue_;
   private float maxValue_;
   private final boolean compatible; //compatible with quantiles sketch
+  private final SplittableRandom random_; //owned by this sketch, so compaction shares no state
+
+  private KllFloatsSketchSortedView sortedView_ = null; //cached until the next update or merge
 
   /**
    * Heap constructor with the default <em>k = 200</em>, which has a rank error of about 1.65%.
@@ -264,7 +276,19 @@ public class KllFloatsSketch {
    * @param k parameter that controls size of the sketch and accuracy of estimates
    */
   public KllFloatsSketch(final int k) {
-    this(k, DEFAULT_M, true);
+    this(k, DEFAULT_M, true, new SplittableRandom());
+  }
+
+  /**
+   * Heap constructor with a given parameter <em>k</em> and a seed for the random number generator
+   * that decides which half of the items survives each compaction. Sketches built with the same
+   * <em>k</em> and seed from the same sequence of updates and merges are identical, which is
+   * useful for reproducible tests.
+   * @param k parameter that controls size of the sketch and accuracy of estimates
+   * @param seed the seed of the random number generator used for compaction
+   */
+  public KllFloatsSketch(final int k, final long seed) {
+    this(k, DEFAULT_M, true, new SplittableRandom(seed));
   }
 
   /**
@@ -273,15 +297,18 @@ public class KllFloatsSketch {
    * @param compatible if true, compatible with quantiles sketch.
    */
   KllFloatsSketch(final int k, final boolean compatible) {
-    this(k, DEFAULT_M, compatible);
+    this(k, DEFAULT_M, compatible, new SplittableRandom());
   }
 
   /**
    * Heap constructor.
    * @param k configured size of sketch. Range [m, 2^16]
    * @param m minimum level size. Default is 8.
+   * @param compatible if true, compatible with quantiles sketch.
+   * @param random the random number generator used for compaction
    */
-  private KllFloatsSketch(final int k, final int m, final boolean compatible) {
+  private KllFloatsSketch(final int k, final int m, final boolean compatible,
+      final SplittableRandom random) {
     checkK(k);
     k_ = k;
     minK_ = k;
@@ -293,21 +320,50 @@ public class KllFloatsSketch {
     maxValue_ = Float.NaN;
     isLevelZeroSorted_ = false;
     this.compatible = compatible;
+    random_ = random;
+  }
 
+  /**
+   * Constructor for KllDirectFloatsSketch, which holds its state in Memory and uses none of the
+   * heap state of this class.
+   * @param k configured size of sketch. Range [m, 2^16]
+   * @param random the random number generator used for compaction
+   */
+  KllFloatsSketch(final int k, final SplittableRandom random) {
+    k_ = k;
+    minK_ = k;
+    m_ = DEFAULT_M;
+    compatible = true;
+    random_ = random;
   }
 
   /**
    * Off-heap constructor.
    * @param mem Memory object that contains data serilized by this sketch.
    */
-  private KllFloatsSketch(final Memory mem) {
+  private KllFloatsSketch(final Memory mem, final SplittableRandom random) {
     m_ = DEFAULT_M;
     k_ = mem.getShort(K_SHORT) & 0xffff;
     final int flags = mem.getByte(FLAGS_BYTE) & 0xff;
     final boolean isEmpty = (flags & 1 << Flags.IS_EMPTY.ordinal()) > 0;
     final boolean isSingleItem = (flags & 1 << Flags.IS_SINGLE_ITEM.ordinal()) > 0;
     compatible = true;
-    if (isEmpty) {
+    random_ = random;
+    if ((mem.getByte(SER_VER_BYTE) & 0xff) == serialVersionUID3) {
+      n_ = mem.getLong(N_LONG);
+      minK_ = mem.getShort(MIN_K_SHORT) & 0xffff;
+      numLevels_ = mem.getByte(NUM_LEVELS_BYTE) & 0xff;
+      levels_ = new int[numLevels_ + 1];
+      mem.getIntArray(DATA_START, levels_, 0, numLevels_ + 1);
+      int offset = DATA_START + (numLevels_ + 1) * Integer.BYTES;
+      minValue_ = mem.getFloat(offset);
+      offset += Float.BYTES;
+      maxValue_ = mem.getFloat(offset);
+      offset += Float.BYTES;
+      items_ = new float[levels_[numLevels_]];
+      mem.getFloatArray(offset + levels_[0] * Float.BYTES, items_, levels_[0], getNumRetained());
+      isLevelZeroSorted_ = (flags & 1 << Flags.IS_LEVEL_ZERO_SORTED.ordinal()) > 0;
+    } else if (isEmpty) {
       numLevels_ = 1;
       levels_ = new int[] {k_, k_};
       isLevelZeroSorted_ = false;
@@ -360,6 +416,70 @@ public class KllFloatsSketch {
    * @return a heap-based sketch based on the given Memory.
    */
   public static KllFloatsSketch heapify(final Memory mem) {
+    checkPreamble(mem);
+    return new KllFloatsSketch(mem, new SplittableRandom());
+  }
+
+  /**
+   * Heapifies the given Memory image with the given random number generator for compaction.
+   * @param mem a Memory image of a sketch, which has passed checkPreamble()
+   * @param random the random number generator used for compaction
+   * @return a heap-based sketch based on the given Memory.
+   */
+  static KllFloatsSketch heapify(final Memory mem, final SplittableRandom random) {
+    return new KllFloatsSketch(mem, random);
+  }
+
+  /**
+   * Creates a new empty sketch with the given <em>k</em> held in the given WritableMemory.
+   * Updates and merges are applied to the Memory in place. If the sketch outgrows the Memory,
+   * a larger one is requested from the MemoryRequestServer of the given Memory.
+   * @param k parameter that controls size of the sketch and accuracy of estimates
+   * @param dstMem the destination WritableMemory, which must have at least
+   * <i>getMaxSerializedSizeBytes(k, 0, true)</i> bytes.
+   * <a href="{@docRoot}/resources/dictionary.html#mem">See Memory</a>
+   * @return a new sketch held in the given WritableMemory
+   */
+  public static KllFloatsSketch newDirectInstance(final int k, final WritableMemory dstMem) {
+    checkK(k);
+    return KllDirectFloatsSketch.newInstance(k, dstMem);
+  }
+
+  /**
+   * Wraps the given WritableMemory, which must hold an updatable image created by
+   * {@link #newDirectInstance(int, WritableMemory)} or {@link #toUpdatableByteArray()}.
+   * Updates and merges of the returned sketch are applied to the Memory in place.
+   * @param srcMem the given WritableMemory
+   * <a href="{@docRoot}/resources/dictionary.html#mem">See Memory</a>
+   * @return a sketch held in the given WritableMemory
+   */
+  public static KllFloatsSketch writableWrap(final WritableMemory srcMem) {
+    checkPreamble(srcMem);
+    if ((srcMem.getByte(SER_VER_BYTE) & 0xff) != serialVersionUID3) {
+      throw new SketchesArgumentException(
+          "Only an updatable image can be wrapped as writable, use wrap() or heapify() instead");
+    }
+    return new KllDirectFloatsSketch(srcMem, false);
+  }
+
+  /**
+   * Wraps the given Memory, which holds either the compact image of {@link #toByteArray()} or an
+   * updatable image, as a read-only sketch. Ranks, quantiles, the PMF and the CDF are computed
+   * directly from the Memory without copying the retained items onto the heap.
+   * @param srcMem the given Memory
+   * <a href="{@docRoot}/resources/dictionary.html#mem">See Memory</a>
+   * @return a read-only sketch backed by the given Memory
+   */
+  public static KllFloatsSketch wrap(final Memory srcMem) {
+    checkPreamble(srcMem);
+    return new KllDirectFloatsSketch(srcMem, true);
+  }
+
+  /**
+   * Checks the preamble of the given Memory image of a KllFloatsSketch.
+   * @param mem the given Memory
+   */
+  static void checkPreamble(final Memory mem) {
     final int preambleInts = mem.getByte(PREAMBLE_INTS_BYTE) & 0xff;
     final int serialVersion = mem.getByte(SER_VER_BYTE) & 0xff;
     final int family = mem.getByte(FAMILY_BYTE) & 0xff;
@@ -371,7 +491,7 @@ public class KllFloatsSketch {
     }
     final boolean isEmpty = (flags & 1 << Flags.IS_EMPTY.ordinal()) > 0;
     final boolean isSingleItem = (flags & 1 << Flags.IS_SINGLE_ITEM.ordinal()) > 0;
-    if (isEmpty || isSingleItem) {
+    if ((isEmpty || isSingleItem) && serialVersion != serialVersionUID3) {
       if (preambleInts != PREAMBLE_INTS_SMALL) {
         throw new SketchesArgumentException("Possible corruption: preambleInts must be "
             + PREAMBLE_INTS_SMALL + " for an empty or single item sketch: " + preambleInts);
@@ -382,16 +502,19 @@ public class KllFloatsSketch {
             + PREAMBLE_INTS_FULL + " for a sketch with more than one item: " + preambleInts);
       }
     }
-    if (serialVersion != serialVersionUID1 && serialVersion != serialVersionUID2) {
+    if (serialVersion != serialVersionUID1 && serialVersion != serialVersionUID2
+        && serialVersion != serialVersionUID3) {
       throw new SketchesArgumentException(
-          "Possible corruption: serial version mismatch: expected " + serialVersionUID1 + " or "
-              + serialVersionUID2 + ", got " + serialVersion);
+          "Possible corruption: serial version mismatch: expected " + serialVersionUID1 + ", "
+              + serialVersionUID2 + " or " + serialVersionUID3 + ", got " + serialVersion);
     }
     if (family != Family.KLL.getID()) {
       throw new SketchesArgumentException(
       "Possible corruption: family mismatch: expected " + Family.KLL.getID() + ", got " + family);
     }
-    return new KllFloatsSketch(mem);
+    if ((flags & 1 << Flags.IS_DOUBLES.ordinal()) != 0) {
+      throw new SketchesArgumentException("Memory contains a KllDoublesSketch image");
+    }
   }
 
   // public functions
@@ -418,7 +541,7 @@ public class KllFloatsSketch {
    * array.
    */
   public double[] getCDF(final float[] splitPoints) {
-    return getPmfOrCdf(splitPoints, true);
+    return getSortedView().getCDF(splitPoints);
   }
 
   /**
@@ -560,6 +683,22 @@ public class KllFloatsSketch {
     return getSerializedSizeBytes(numLevels, maxNumItems);
   }
 
+  /**
+   * Returns upper bound on the size of the compact or the updatable serialized form of a sketch
+   * given a parameter <em>k</em> and stream length. The updatable form is the one held in
+   * WritableMemory by {@link #newDirectInstance(int, WritableMemory)}.
+   * @param k parameter that controls size of the sketch and accuracy of estimates
+   * @param n stream length
+   * @param updatable if true, returns the size of the updatable form
+   * @return upper bound on the serialized size
+   */
+  public static int getMaxSerializedSizeBytes(final int k, final long n, final boolean updatable) {
+    if (!updatable) { return getMaxSerializedSizeBytes(k, n); }
+    final int numLevels = KllHelper.ubOnNumLevels(n);
+    return getUpdatableSerializedSizeBytes(numLevels,
+        KllHelper.computeTotalCapacity(k, DEFAULT_M, numLevels));
+  }
+
   /**
    * Returns an approximation to the Probability Mass Function (PMF) of the input stream
    * given a set of splitPoints (values).
@@ -582,7 +721,7 @@ public class KllFloatsSketch {
    * splitPoint, with the exception that the last interval will include maximum value.
    */
   public double[] getPMF(final float[] splitPoints) {
-    return getPmfOrCdf(splitPoints, false);
+    return getSortedView().getPMF(splitPoints);
   }
 
   /**
@@ -590,9 +729,9 @@ public class KllFloatsSketch {
    * that would be preceded by the given fraction of a hypothetical sorted
    * version of the input stream so far.
    *
-   * <p>We note that this method has a fairly large overhead (microseconds instead of nanoseconds)
-   * so it should not be called multiple times to get different quantiles from the same
-   * sketch. Instead use getQuantiles(), which pays the overhead only once.
+   * <p>The first query after an update or merge sorts the retained items, which takes
+   * microseconds rather than nanoseconds. The sorted items are kept until the next update or
+   * merge, so further queries of the unchanged sketch are binary searches.
    *
    * <p>If the sketch is empty this returns NaN.
    *
@@ -604,16 +743,7 @@ public class KllFloatsSketch {
    * @return the approximation to the value at the given fraction
    */
   public float getQuantile(final double fraction) {
-    if (isEmpty()) { return Float.NaN; }
-    if (compatible) {
-      if (fraction == 0.0) { return minValue_; }
-      if (fraction == 1.0) { return maxValue_; }
-    }
-    if (fraction < 0.0 || fraction > 1.0) {
-      throw new SketchesArgumentException("Fraction cannot be less than zero or greater than 1.0");
-    }
-    final KllFloatsQuantileCalculator quant = getQuantileCalculator();
-    return quant.getQuantile(fraction);
+    return getSortedView().getQuantile(fraction);
   }
 
   /**
@@ -624,7 +754,7 @@ public class KllFloatsSketch {
    * exists with a confidence of at least 99%. Returns NaN if the sketch is empty.
    */
   public float getQuantileUpperBound(final double fraction) {
-    return getQuantile(min(1.0, fraction + getNormalizedRankError(minK_, false)));
+    return getSortedView().getQuantileUpperBound(fraction);
   }
 
   /**
@@ -635,7 +765,7 @@ public class KllFloatsSketch {
    * exists with a confidence of at least 99%. Returns NaN if the sketch is empty.
    */
   public float getQuantileLowerBound(final double fraction) {
-    return getQuantile(max(0, fraction - getNormalizedRankError(minK_, false)));
+    return getSortedView().getQuantileLowerBound(fraction);
   }
 
   /**
@@ -657,24 +787,7 @@ public class KllFloatsSketch {
    * array.
    */
   public float[] getQuantiles(final double[] fractions) {
-    if (isEmpty()) { return null; }
-    KllFloatsQuantileCalculator quant = null;
-    final float[] quantiles = new float[fractions.length];
-    for (int i = 0; i < fractions.length; i++) {
-      final double fraction = fractions[i];
-      if (fraction < 0.0 || fraction > 1.0) {
-        throw new SketchesArgumentException("Fraction cannot be less than zero or greater than 1.0");
-      }
-      if      (fraction == 0.0 && compatible) { quantiles[i] = minValue_; }
-      else if (fraction == 1.0 && compatible) { quantiles[i] = maxValue_; }
-      else {
-        if (quant == null) {
-          quant = getQuantileCalculator();
-        }
-        quantiles[i] = quant.getQuantile(fraction);
-      }
-    }
-    return quantiles;
+    return getSortedView().getQuantiles(fractions);
   }
 
   /**
@@ -709,24 +822,23 @@ public class KllFloatsSketch {
    * @return an approximate rank of the given value
    */
   public double getRank(final float value) {
-    if (isEmpty()) { return Double.NaN; }
-    int level = 0;
-    int weight = 1;
-    long total = 0;
-    while (level < numLevels_) {
-      final int fromIndex = levels_[level];
-      final int toIndex = levels_[level + 1]; // exclusive
-      for (int i = fromIndex; i < toIndex; i++) {
-        if (items_[i] < value) {
-          total += weight;
-        } else if (level > 0 || isLevelZeroSorted_) {
-          break; // levels above 0 are sorted, no point comparing further
-        }
-      }
-      level++;
-      weight *= 2;
+    return getSortedView().getRank(value);
+  }
+
+  /**
+   * Returns an immutable sorted view of the items retained by this sketch, which answers the
+   * same quantile, rank, PMF and CDF queries as this sketch. The view is created by the first
+   * query after an update or merge and shared by the queries that follow. It does not change
+   * when this sketch changes, and it can be queried by many threads without locking.
+   * @return an immutable sorted view of this sketch
+   */
+  public KllFloatsSketchSortedView getSortedView() {
+    if (sortedView_ == null) {
+      sortLevelZero(); // sort in the sketch to reuse if possible
+      sortedView_ = new KllFloatsSketchSortedView(items_, levels_, numLevels_, n_, minValue_,
+          maxValue_, compatible, getNormalizedRankError(minK_, false));
     }
-    return (double) total / n_;
+    return sortedView_;
   }
 
   /**
@@ -738,6 +850,14 @@ public class KllFloatsSketch {
     return getSerializedSizeBytes(numLevels_, getNumRetained());
   }
 
+  /**
+   * Returns true if this sketch is held in Memory, which may be on or off the Java heap.
+   * @return true if this sketch is held in Memory
+   */
+  public boolean isDirect() {
+    return false;
+  }
+
   /**
    * Returns true if this sketch is empty.
    * @return empty flag
@@ -754,6 +874,14 @@ public class KllFloatsSketch {
     return numLevels_ > 1;
   }
 
+  /**
+   * Returns true if this sketch is a read-only wrap of a Memory image.
+   * @return true if this sketch cannot be updated
+   */
+  public boolean isReadOnly() {
+    return false;
+  }
+
   /**
    * @return the iterator for this class
    */
@@ -763,13 +891,15 @@ public class KllFloatsSketch {
 
   /**
    * Merges another sketch into this one.
-   * @param other sketch to merge into this one
+   * @param sketch sketch to merge into this one
    */
-  public void merge(final KllFloatsSketch other) {
-    if (other == null || other.isEmpty()) { return; }
+  public void merge(final KllFloatsSketch sketch) {
+    if (sketch == null || sketch.isEmpty()) { return; }
+    final KllFloatsSketch other = sketch.getHeapSketch();
     if (m_ != other.m_) {
       throw new SketchesArgumentException("incompatible M: " + m_ + " and " + other.m_);
     }
+    sortedView_ = null;
     final long finalN = n_ + other.n_;
     //update this sketch with level0 items from the other sketch
     for (int i = other.levels_[0]; i < other.levels_[1]; i++) {
@@ -831,6 +961,39 @@ public class KllFloatsSketch {
     return bytes;
   }
 
+  /**
+   * Returns the sketch in the updatable serialized form, which can be given to
+   * {@link #writableWrap(WritableMemory)} to continue updating it in place.
+   * @return the sketch in the updatable serialized form
+   */
+  public byte[] toUpdatableByteArray() {
+    final int capacity = levels_[numLevels_];
+    final byte[] bytes = new byte[getUpdatableSerializedSizeBytes(numLevels_, capacity)];
+    bytes[PREAMBLE_INTS_BYTE] = (byte) PREAMBLE_INTS_FULL;
+    bytes[SER_VER_BYTE] = serialVersionUID3;
+    bytes[FAMILY_BYTE] = (byte) Family.KLL.getID();
+    bytes[FLAGS_BYTE] = (byte) (isLevelZeroSorted_ ? 1 << Flags.IS_LEVEL_ZERO_SORTED.ordinal() : 0);
+    ByteArrayUtil.putShortLE(bytes, K_SHORT, (short) k_);
+    bytes[M_BYTE] = (byte) m_;
+    ByteArrayUtil.putLongLE(bytes, N_LONG, n_);
+    ByteArrayUtil.putShortLE(bytes, MIN_K_SHORT, (short) minK_);
+    bytes[NUM_LEVELS_BYTE] = (byte) numLevels_;
+    int offset = DATA_START;
+    for (int i = 0; i <= numLevels_; i++) {
+      ByteArrayUtil.putIntLE(bytes, offset, levels_[i]);
+      offset += Integer.BYTES;
+    }
+    ByteArrayUtil.putFloatLE(bytes, offset, minValue_);
+    offset += Float.BYTES;
+    ByteArrayUtil.putFloatLE(bytes, offset, maxValue_);
+    offset += Float.BYTES;
+    for (int i = 0; i < capacity; i++) {
+      ByteArrayUtil.putFloatLE(bytes, offset, items_[i]);
+      offset += Float.BYTES;
+    }
+    return bytes;
+  }
+
   @Override
   public String toString() {
     return toString(false, false);
@@ -902,6 +1065,7 @@ public class KllFloatsSketch {
    */
   public void update(final float value) {
     if (Float.isNaN(value)) { return; }
+    sortedView_ = null;
     if (isEmpty()) {
       minValue_ = value;
       maxValue_ = value;
@@ -920,6 +1084,52 @@ public class KllFloatsSketch {
     items_[nextPos] = value;
   }
 
+  /**
+   * Updates this sketch with the given items.
+   * The result is identical to calling {@link #update(float)} on each item in order, but the
+   * items are stored into level zero in runs that end only where level zero is full, so the
+   * compaction check and the bookkeeping are done once per run rather than once per item.
+   *
+   * @param values the array containing the items. NaNs are ignored.
+   * @param offset the index of the first item
+   * @param length the number of items
+   */
+  public void update(final float[] values, final int offset, final int length) {
+    UnsafeUtil.checkBounds(offset, length, values.length);
+    sortedView_ = null;
+    final int end = offset + length;
+    int i = offset;
+    while (i < end) {
+      if (Float.isNaN(values[i])) { i++; continue; }
+      if (isEmpty()) {
+        minValue_ = values[i];
+        maxValue_ = values[i];
+      }
+      if (levels_[0] == 0) {
+        compressWhileUpdating();
+      }
+      // fill level zero downwards, the same slots that single updates would use
+      int nextPos = levels_[0];
+      final int lim = i + min(end - i, nextPos);
+      float minValue = minValue_;
+      float maxValue = maxValue_;
+      int j = i;
+      for ( ; j < lim; j++) {
+        final float value = values[j];
+        if (Float.isNaN(value)) { break; }
+        if (value < minValue) { minValue = value; }
+        if (value > maxValue) { maxValue = value; }
+        items_[--nextPos] = value;
+      }
+      minValue_ = minValue;
+      maxValue_ = maxValue;
+      n_ += j - i;
+      levels_[0] = nextPos;
+      isLevelZeroSorted_ = false;
+      i = j;
+    }
+  }
+
   // Restricted Methods
 
   /**
@@ -933,80 +1143,10 @@ public class KllFloatsSketch {
     }
   }
 
-  private KllFloatsQuantileCalculator getQuantileCalculator() {
-    sortLevelZero(); // sort in the sketch to reuse if possible
-    return new KllFloatsQuantileCalculator(items_, levels_, numLevels_, n_);
-  }
-
-  private double[] getPmfOrCdf(final float[] splitPoints, final boolean isCdf) {
-    if (isEmpty()) { return null; }
-    Util.validateValues(splitPoints);
-    final double[] buckets = new double[splitPoints.length + 1];
-    int level = 0;
-    int weight = 1;
-    while (level < numLevels_) {
-      final int fromIndex = levels_[level];
-      final int toIndex = levels_[level + 1]; // exclusive
-      if (level == 0 && !isLevelZeroSorted_) {
-        incrementBucketsUnsortedLevel(fromIndex, toIndex, weight, splitPoints, buckets);
-      } else {
-        incrementBucketsSortedLevel(fromIndex, toIndex, weight, splitPoints, buckets);
-      }
-      level++;
-      weight *= 2;
-    }
-    // normalize and, if CDF, convert to cumulative
-    if (isCdf) {
-      double subtotal = 0;
-      for (int i = 0; i < buckets.length; i++) {
-        subtotal += buckets[i];
-        buckets[i] = subtotal / n_;
-      }
-    } else {
-      for (int i = 0; i < buckets.length; i++) {
-        buckets[i] /= n_;
-      }
-    }
-    return buckets;
-  }
-
-  private void incrementBucketsUnsortedLevel(final int fromIndex, final int toIndex,
-      final int weight, final float[] splitPoints, final double[] buckets) {
-    for (int i = fromIndex; i < toIndex; i++) {
-      int j;
-      for (j = 0; j < splitPoints.length; j++) {
-        if (items_[i] < splitPoints[j]) {
-          break;
-        }
-      }
-      buckets[j] += weight;
-    }
-  }
-
-  private void incrementBucketsSortedLevel(final int fromIndex, final int toIndex,
-      final int weight, final float[] splitPoints, final double[] buckets) {
-    int i = fromIndex;
-    int j = 0;
-    while (i <  toIndex && j < splitPoints.length) {
-      if (items_[i] < splitPoints[j]) {
-        buckets[j] += weight; // this sample goes into this bucket
-        i++; // move on to next sample and see whether it also goes into this bucket
-      } else {
-        j++; // no more samples for this bucket
-      }
-    }
-    // now either i == toIndex (we are out of samples), or
-    // j == numSplitPoints (we are out of buckets, but there are more samples remaining)
-    // we only need to do something in the latter case
-    if (j == splitPoints.length) {
-      buckets[j] += weight * (toIndex - i);
-    }
-  }
-
   // The following code is only valid in the special case of exactly reaching capacity while updating.
   // It cannot be used while merging, while reducing k, or anything else.
   private void compressWhileUpdating() {
-    final int level = findLevelToCompact();
+    final int level = KllHelper.findLevelToCompact(k_, m_, numLevels_, levels_);
 
     // It is important to do add the new top level right here. Be aware that this operation
     // grows the buffer and shifts the data and also the boundaries of the data and grows the
@@ -1015,60 +1155,7 @@ public class KllFloatsSketch {
       addEmptyTopLevelToCompletelyFullSketch();
     }
 
-    final int rawBeg = levels_[level];
-    final int rawLim = levels_[level + 1];
-    // +2 is OK because we already added a new top level if necessary
-    final int popAbove = levels_[level + 2] - rawLim;
-    final int rawPop = rawLim - rawBeg;
-    final boolean oddPop = KllHelper.isOdd(rawPop);
-    final int adjBeg = oddPop ? rawBeg + 1 : rawBeg;
-    final int adjPop = oddPop ? rawPop - 1 : rawPop;
-    final int halfAdjPop = adjPop / 2;
-
-    // level zero might not be sorted, so we must sort it if we wish to compact it
-    if (level == 0) {
-      Arrays.sort(items_, adjBeg, adjBeg + adjPop);
-    }
-    if (popAbove == 0) {
-      KllHelper.randomlyHalveUp(items_, adjBeg, adjPop);
-    } else {
-      KllHelper.randomlyHalveDown(items_, adjBeg, adjPop);
-      KllHelper.mergeSortedArrays(items_, adjBeg, halfAdjPop, items_, rawLim, popAbove,
-          items_, adjBeg + halfAdjPop);
-    }
-    levels_[level + 1] -= halfAdjPop;          // adjust boundaries of the level above
-    if (oddPop) {
-      levels_[level] = levels_[level + 1] - 1; // the current level now contains one item
-      items_[levels_[level]] = items_[rawBeg]; // namely this leftover guy
-    } else {
-      levels_[level] = levels_[level + 1];     // the current level is now empty
-    }
-
-    // verify that we freed up halfAdjPop array slots just below the current level
-    assert levels_[level] == rawBeg + halfAdjPop;
-
-    // finally, we need to shift up the data in the levels below
-    // so that the freed-up space can be used by level zero
-    if (level > 0) {
-      final int amount = rawBeg - levels_[0];
-      System.arraycopy(items_, levels_[0], items_, levels_[0] + halfAdjPop, amount);
-      for (int lvl = 0; lvl < level; lvl++) {
-        levels_[lvl] += halfAdjPop;
-      }
-    }
-  }
-
-  private int findLevelToCompact() {
-    int level = 0;
-    while (true) {
-      assert level < numLevels_;
-      final int pop = levels_[level + 1] - levels_[level];
-      final int cap = KllHelper.levelCapacity(k_, numLevels_, level, m_);
-      if (pop >= cap) {
-        return level;
-      }
-      level++;
-    }
+    KllHelper.compactLevel(items_, levels_, level, random_);
   }
 
   private void addEmptyTopLevelToCompletelyFullSketch() {
@@ -1123,7 +1210,7 @@ public class KllFloatsSketch {
 
     // notice that workbuf is being used as both the input and output here
     final int[] result = KllHelper.generalCompress(k_, m_, provisionalNumLevels, workbuf,
-        worklevels, workbuf, outlevels, isLevelZeroSorted_);
+        worklevels, workbuf, outlevels, isLevelZeroSorted_, random_);
     final int finalNumLevels = result[0];
     final int finalCapacity = result[1];
     final int finalPop = result[2];
@@ -1188,7 +1275,7 @@ public class KllFloatsSketch {
     assert total == n_;
   }
 
-  private static int getSerializedSizeBytes(final int numLevels, final int numRetained) {
+  static int getSerializedSizeBytes(final int numLevels, final int numRetained) {
     if (numLevels == 1 && numRetained == 1) {
       return DATA_START_SINGLE_ITEM + Float.BYTES;
     }
@@ -1197,6 +1284,23 @@ public class KllFloatsSketch {
     return DATA_START + numLevels * Integer.BYTES + (numRetained + 2) * Float.BYTES;
   }
 
+  static int getUpdatableSerializedSizeBytes(final int numLevels, final int capacity) {
+    // all numLevels + 1 levels offsets, min and max, and the whole items array
+    return DATA_START + (numLevels + 1) * Integer.BYTES + (capacity + 2) * Float.BYTES;
+  }
+
+  /**
+   * Returns this sketch if it is on the heap, otherwise a heap copy of it.
+   * @return this sketch or a heap copy of it
+   */
+  KllFloatsSketch getHeapSketch() {
+    return this;
+  }
+
+  SplittableRandom getRandom() {
+    return random_;
+  }
+
   // for testing
 
   float[] getItems() {
@@ -22,7 +22,7 @@ package org.apache.datasketches.kll;
 import static org.apache.datasketches.Util.floorPowerOf2;
 
 import java.util.Arrays;
-import java.util.Random;
+import java.util.SplittableRandom;
 
 /**
  * Static methods to support KllSketch
@@ -31,8 +31,6 @@ import java.util.Random;
  */
 class KllHelper {
 
-  private static final Random random = new Random();
-
   static boolean isEven(final int value) {
     return (value & 1) == 0;
   }
@@ -139,6 +137,83 @@ class KllHelper {
   847288609443L, 2541865828329L, 7625597484987L, 22876792454961L, 68630377364883L,
   205891132094649L};
 
+  /**
+   * Returns the lowest level that is at or over its capacity.
+   * @param k the parameter k of the sketch
+   * @param m the parameter m of the sketch
+   * @param numLevels the number of levels of the sketch
+   * @param levels the levels array of the sketch
+   * @return the level to compact
+   */
+  static int findLevelToCompact(final int k, final int m, final int numLevels, final int[] levels) {
+    int level = 0;
+    while (true) {
+      assert level < numLevels;
+      final int pop = levels[level + 1] - levels[level];
+      final int cap = levelCapacity(k, numLevels, level, m);
+      if (pop >= cap) {
+        return level;
+      }
+      level++;
+    }
+  }
+
+  /**
+   * Compacts the given level of a sketch that has exactly reached its capacity while updating.
+   * It cannot be used while merging, while reducing k, or anything else.
+   * The level above must exist, so the caller adds an empty top level first if needed.
+   * This modifies items and levels, and it only touches the items from levels[0] up to
+   * levels[level + 2].
+   * @param items the items array of the sketch
+   * @param levels the levels array of the sketch
+   * @param level the level to compact
+   * @param random the random number generator of the sketch
+   */
+  static void compactLevel(final float[] items, final int[] levels, final int level,
+      final SplittableRandom random) {
+    final int rawBeg = levels[level];
+    final int rawLim = levels[level + 1];
+    // +2 is OK because we already added a new top level if necessary
+    final int popAbove = levels[level + 2] - rawLim;
+    final int rawPop = rawLim - rawBeg;
+    final boolean oddPop = isOdd(rawPop);
+    final int adjBeg = oddPop ? rawBeg + 1 : rawBeg;
+    final int adjPop = oddPop ? rawPop - 1 : rawPop;
+    final int halfAdjPop = adjPop / 2;
+
+    // level zero might not be sorted, so we must sort it if we wish to compact it
+    if (level == 0) {
+      Arrays.sort(items, adjBeg, adjBeg + adjPop);
+    }
+    if (popAbove == 0) {
+      randomlyHalveUp(items, adjBeg, adjPop, random);
+    } else {
+      randomlyHalveDown(items, adjBeg, adjPop, random);
+      mergeSortedArrays(items, adjBeg, halfAdjPop, items, rawLim, popAbove,
+          items, adjBeg + halfAdjPop);
+    }
+    levels[level + 1] -= halfAdjPop;         // adjust boundaries of the level above
+    if (oddPop) {
+      levels[level] = levels[level + 1] - 1; // the current level now contains one item
+      items[levels[level]] = items[rawBeg];  // namely this leftover guy
+    } else {
+      levels[level] = levels[level + 1];     // the current level is now empty
+    }
+
+    // verify that we freed up halfAdjPop array slots just below the current level
+    assert levels[level] == rawBeg + halfAdjPop;
+
+    // finally, we need to shift up the data in the levels below
+    // so that the freed-up space can be used by level zero
+    if (level > 0) {
+      final int amount = rawBeg - levels[0];
+      System.arraycopy(items, levels[0], items, levels[0] + halfAdjPop, amount);
+      for (int lvl = 0; lvl < level; lvl++) {
+        levels[lvl] += halfAdjPop;
+      }
+    }
+  }
+
   static long sumTheSampleWeights(final int num_levels, final int[] levels) {
     long total = 0;
     long weight = 1;
@@ -178,6 +253,35 @@ class KllHelper {
     assert b == limB;
   }
 
+  static void mergeSortedArrays(final double[] bufA, final int startA, final int lenA,
+      final double[] bufB, final int startB, final int lenB, final double[] bufC, final int startC) {
+    final int lenC = lenA + lenB;
+    final int limA = startA + lenA;
+    final int limB = startB + lenB;
+    final int limC = startC + lenC;
+
+    int a = startA;
+    int b = startB;
+
+    for (int c = startC; c < limC; c++) {
+      if (a == limA) {
+        bufC[c] = bufB[b];
+        b++;
+      } else if (b == limB) {
+        bufC[c] = bufA[a];
+        a++;
+      } else if (bufA[a] < bufB[b]) {
+        bufC[c] = bufA[a];
+        a++;
+      } else {
+        bufC[c] = bufB[b];
+        b++;
+      }
+    }
+    assert a == limA;
+    assert b == limB;
+  }
+
   /**
    * Compression algorithm used to merge higher levels.
    * <p>Here is what we do for each level:</p>
@@ -199,6 +303,9 @@ class KllHelper {
    *
    * <p>This trashes inBuf and inLevels and modifies outBuf and outLevels.</p>
    *
+   * <p>The version for the double items of KllDoublesSketch below follows this one line for line,
+   * so a fix to either must be applied to both.</p>
+   *
    * @param k The sketch parameter k
    * @param m The minimum level size
    * @param numLevelsIn provisional number of number of levels = max(this.numLevels, other.numLevels)
@@ -208,6 +315,7 @@ class KllHelper {
    * @param outBuf the same array as inBuf
    * @param outLevels the same size as inLevels
    * @param isLevelZeroSorted true if this.level 0 is sorted
+   * @param random the random number generator of this sketch
    * @return int array of: {numLevels, targetItemCount, currentItemCount)
    */
   static int[] generalCompress(
@@ -218,7 +326,102 @@ class KllHelper {
       final int[] inLevels,
       final float[] outBuf,
       final int[] outLevels,
-      final boolean isLevelZeroSorted) {
+      final boolean isLevelZeroSorted,
+      final SplittableRandom random) {
+    assert numLevelsIn > 0; // things are too weird if zero levels are allowed
+    int numLevels = numLevelsIn;
+    int currentItemCount = inLevels[numLevels] - inLevels[0]; // decreases with each compaction
+    int targetItemCount = computeTotalCapacity(k, m, numLevels); // increases if we add levels
+    boolean doneYet = false;
+    outLevels[0] = 0;
+    int curLevel = -1;
+    while (!doneYet) {
+      curLevel++; // start out at level 0
+
+      // If we are at the current top level, add an empty level above it for convenience,
+      // but do not increment numLevels until later
+      if (curLevel == (numLevels - 1)) {
+        inLevels[curLevel + 2] = inLevels[curLevel + 1];
+      }
+
+      final int rawBeg = inLevels[curLevel];
+      final int rawLim = inLevels[curLevel + 1];
+      final int rawPop = rawLim - rawBeg;
+
+      if ((currentItemCount < targetItemCount) || (rawPop < levelCapacity(k, numLevels, curLevel, m))) {
+        // copy level over as is
+        // because inBuf and outBuf could be the same, make sure we are not moving data upwards!
+        assert (rawBeg >= outLevels[curLevel]);
+        System.arraycopy(inBuf, rawBeg, outBuf, outLevels[curLevel], rawPop);
+        outLevels[curLevel + 1] = outLevels[curLevel] + rawPop;
+      }
+      else {
+        // The sketch is too full AND this level is too full, so we compact it
+        // Note: this can add a level and thus change the sketch's capacity
+
+        final int popAbove = inLevels[curLevel + 2] - rawLim;
+        final boolean oddPop = isOdd(rawPop);
+        final int adjBeg = oddPop ? 1 + rawBeg : rawBeg;
+        final int adjPop = oddPop ? rawPop - 1 : rawPop;
+        final int halfAdjPop = adjPop / 2;
+
+        if (oddPop) { // copy one guy over
+          outBuf[outLevels[curLevel]] = inBuf[rawBeg];
+          outLevels[curLevel + 1] = outLevels[curLevel] + 1;
+        } else { // copy zero guys over
+          outLevels[curLevel + 1] = outLevels[curLevel];
+        }
+
+        // level zero might not be sorted, so we must sort it if we wish to compact it
+        if ((curLevel == 0) && !isLevelZeroSorted) {
+          Arrays.sort(inBuf, adjBeg, adjBeg + adjPop);
+        }
+
+        if (popAbove == 0) { // Level above is empty, so halve up
+          randomlyHalveUp(inBuf, adjBeg, adjPop, random);
+        } else { // Level above is nonempty, so halve down, then merge up
+          randomlyHalveDown(inBuf, adjBeg, adjPop, random);
+          mergeSortedArrays(inBuf, adjBeg, halfAdjPop, inBuf, rawLim, popAbove, inBuf, adjBeg + halfAdjPop);
+        }
+
+        // track the fact that we just eliminated some data
+        currentItemCount -= halfAdjPop;
+
+        // Adjust the boundaries of the level above
+        inLevels[curLevel + 1] = inLevels[curLevel + 1] - halfAdjPop;
+
+        // Increment numLevels if we just compacted the old top level
+        // This creates some more capacity (the size of the new bottom level)
+        if (curLevel == (numLevels - 1)) {
+          numLevels++;
+          targetItemCount += levelCapacity(k, numLevels, 0, m);
+        }
+
+      } // end of code for compacting a level
+
+      // determine whether we have processed all levels yet (including any new levels that we created)
+
+      if (curLevel == (numLevels - 1)) { doneYet = true; }
+
+    } // end of loop over levels
+
+    assert (outLevels[numLevels] - outLevels[0]) == currentItemCount;
+
+    return new int[] {numLevels, targetItemCount, currentItemCount};
+  }
+
+  // generalCompress() for the double items of KllDoublesSketch. It follows the float version
+  // above line for line, so a fix to either must be applied to both.
+  static int[] generalCompress(
+      final int k,
+      final int m,
+      final int numLevelsIn,
+      final double[] inBuf,
+      final int[] inLevels,
+      final double[] outBuf,
+      final int[] outLevels,
+      final boolean isLevelZeroSorted,
+      final SplittableRandom random) {
     assert numLevelsIn > 0; // things are too weird if zero levels are allowed
     int numLevels = numLevelsIn;
     int currentItemCount = inLevels[numLevels] - inLevels[0]; // decreases with each compaction
@@ -269,9 +472,9 @@ class KllHelper {
         }
 
         if (popAbove == 0) { // Level above is empty, so halve up
-          randomlyHalveUp(inBuf, adjBeg, adjPop);
+          randomlyHalveUp(inBuf, adjBeg, adjPop, random);
         } else { // Level above is nonempty, so halve down, then merge up
-          randomlyHalveDown(inBuf, adjBeg, adjPop);
+          randomlyHalveDown(inBuf, adjBeg, adjPop, random);
           mergeSortedArrays(inBuf, adjBeg, halfAdjPop, inBuf, rawLim, popAbove, inBuf, adjBeg + halfAdjPop);
         }
 
@@ -301,7 +504,8 @@ class KllHelper {
     return new int[] {numLevels, targetItemCount, currentItemCount};
   }
 
-  static void randomlyHalveDown(final float[] buf, final int start, final int length) {
+  static void randomlyHalveDown(final float[] buf, final int start, final int length,
+      final SplittableRandom random) {
     assert isEven(length);
     final int half_length = length / 2;
     final int offset = random.nextInt(2);
@@ -313,7 +517,20 @@ class KllHelper {
     }
   }
 
-  static void randomlyHalveUp(final float[] buf, final int start, final int length) {
+  static void randomlyHalveDown(final double[] buf, final int start, final int length,
+      final SplittableRandom random) {
+    assert isEven(length);
+    final int half_length = length / 2;
+    final int offset = random.nextInt(2);
+    int j = start + offset;
+    for (int i = start; i < (start + half_length); i++) {
+      buf[i] = buf[j];
+      j += 2;
+    }
+  }
+
+  static void randomlyHalveUp(final float[] buf, final int start, final int length,
+      final SplittableRandom random) {
     assert isEven(length);
     final int half_length = length / 2;
     final int offset = random.nextInt(2);
@@ -325,6 +542,18 @@ class KllHelper {
     }
   }
 
+  static void randomlyHalveUp(final double[] buf, final int start, final int length,
+      final SplittableRandom random) {
+    assert isEven(length);
+    final int half_length = length / 2;
+    final int offset = random.nextInt(2);
+    int j = (start + length) - 1 - offset;
+    for (int i = (start + length) - 1; i >= (start + half_length); i--) {
+      buf[i] = buf[j];
+      j -= 2;
+    }
+  }
+
   // Enable the following to use KllValidationTest
 
   //  static int nextOffset = 0;
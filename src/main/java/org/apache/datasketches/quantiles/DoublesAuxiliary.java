@@ -79,6 +79,23 @@ final class DoublesAuxiliary {
     return approximatelyAnswerPositionalQuery(pos);
   }
 
+  /**
+   * Returns the total weight of the retained items that are less than the given value.
+   * @param value the given value
+   * @return the total weight of the retained items that are less than the given value
+   */
+  long getWeightBelow(final double value) {
+    // binary search for the first item that is not less than the value
+    int lo = 0;
+    int hi = auxSamplesArr_.length;
+    while (lo < hi) {
+      final int mid = (lo + hi) >>> 1;
+      if (auxSamplesArr_[mid] < value) { lo = mid + 1; }
+      else { hi = mid; }
+    }
+    return auxCumWtsArr_[lo];
+  }
+
   /**
    * Assuming that there are n items in the true stream, this asks what
    * item would appear in position 0 &le; pos &lt; n of a hypothetical sorted
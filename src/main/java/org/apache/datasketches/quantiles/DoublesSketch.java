@@ -19,8 +19,6 @@
 
 package org.apache.datasketches.quantiles;
 
-import static java.lang.Math.max;
-import static java.lang.Math.min;
 import static org.apache.datasketches.Util.ceilingPowerOf2;
 import static org.apache.datasketches.quantiles.Util.checkIsCompactMemory;
 
@@ -153,6 +151,12 @@ public abstract class DoublesSketch {
    */
   final int k_;
 
+  /**
+   * The sorted view of a sketch on the Java heap, cached until the next update, merge or reset.
+   * A sketch held in Memory does not cache it, because the Memory may be changed by others.
+   */
+  DoublesSketchSortedView sortedView_ = null;
+
   DoublesSketch(final int k) {
     Util.checkK(k);
     k_ = k;
@@ -202,9 +206,11 @@ public abstract class DoublesSketch {
    * that would be preceded by the given fraction of a hypothetical sorted
    * version of the input stream so far.
    *
-   * <p>We note that this method has a fairly large overhead (microseconds instead of nanoseconds)
-   * so it should not be called multiple times to get different quantiles from the same
-   * sketch. Instead use getQuantiles(), which pays the overhead only once.
+   * <p>The first query after an update or merge sorts the retained items, which takes
+   * microseconds rather than nanoseconds. A sketch on the Java heap keeps the sorted items until
+   * the next update, merge or reset, so further queries of the unchanged sketch are binary searches.
+   * A sketch held in Memory sorts them for every call, so it should use getQuantiles() or
+   * getSortedView() for multiple quantiles.
    *
    * <p>If the sketch is empty this returns Double.NaN.
    *
@@ -217,13 +223,7 @@ public abstract class DoublesSketch {
    */
   public double getQuantile(final double fraction) {
     if (isEmpty()) { return Double.NaN; }
-    if (fraction < 0.0 || fraction > 1.0) {
-      throw new SketchesArgumentException("Fraction cannot be less than zero or greater than 1.0");
-    }
-    if      (fraction == 0.0) { return getMinValue(); }
-    if (fraction == 1.0) { return getMaxValue(); }
-    final DoublesAuxiliary aux = new DoublesAuxiliary(this);
-    return aux.getQuantile(fraction);
+    return getSortedView().getQuantile(fraction);
   }
 
   /**
@@ -234,7 +234,8 @@ public abstract class DoublesSketch {
    * exists with a confidence of at least 99%. Returns NaN if the sketch is empty.
    */
   public double getQuantileUpperBound(final double fraction) {
-    return getQuantile(min(1.0, fraction + Util.getNormalizedRankError(k_, false)));
+    if (isEmpty()) { return Double.NaN; }
+    return getSortedView().getQuantileUpperBound(fraction);
   }
 
   /**
@@ -245,7 +246,8 @@ public abstract class DoublesSketch {
    * exists with a confidence of at least 99%. Returns NaN if the sketch is empty.
    */
   public double getQuantileLowerBound(final double fraction) {
-    return getQuantile(max(0, fraction - Util.getNormalizedRankError(k_, false)));
+    if (isEmpty()) { return Double.NaN; }
+    return getSortedView().getQuantileLowerBound(fraction);
   }
 
   /**
@@ -268,20 +270,7 @@ public abstract class DoublesSketch {
    */
   public double[] getQuantiles(final double[] fRanks) {
     if (isEmpty()) { return null; }
-    DoublesAuxiliary aux = null;
-    final double[] quantiles = new double[fRanks.length];
-    for (int i = 0; i < fRanks.length; i++) {
-      final double fRank = fRanks[i];
-      if      (fRank == 0.0) { quantiles[i] = getMinValue(); }
-      else if (fRank == 1.0) { quantiles[i] = getMaxValue(); }
-      else {
-        if (aux == null) {
-          aux = new DoublesAuxiliary(this);
-        }
-        quantiles[i] = aux.getQuantile(fRank);
-      }
-    }
-    return quantiles;
+    return getSortedView().getQuantiles(fRanks);
   }
 
   /**
@@ -317,6 +306,8 @@ public abstract class DoublesSketch {
    */
   public double getRank(final double value) {
     if (isEmpty()) { return Double.NaN; }
+    if (getMemory() == null) { return getSortedView().getRank(value); }
+    //a single scan is cheaper than sorting for every call
     final DoublesSketchAccessor samples = DoublesSketchAccessor.wrap(this);
     long total = 0;
     int weight = 1;
@@ -366,6 +357,7 @@ public abstract class DoublesSketch {
    */
   public double[] getPMF(final double[] splitPoints) {
     if (isEmpty()) { return null; }
+    if (getMemory() == null) { return getSortedView().getPMF(splitPoints); }
     return DoublesPmfCdfImpl.getPMFOrCDF(this, splitPoints, false);
   }
 
@@ -392,9 +384,25 @@ public abstract class DoublesSketch {
    */
   public double[] getCDF(final double[] splitPoints) {
     if (isEmpty()) { return null; }
+    if (getMemory() == null) { return getSortedView().getCDF(splitPoints); }
     return DoublesPmfCdfImpl.getPMFOrCDF(this, splitPoints, true);
   }
 
+  /**
+   * Returns an immutable sorted view of the items retained by this sketch, which answers the
+   * same quantile, rank, PMF and CDF queries as this sketch. For a sketch on the Java heap the
+   * view is created by the first query after an update, merge or reset and shared by the queries
+   * that follow. For a sketch held in Memory a new view is created for every call.
+   * The view does not change when this sketch changes, and it can be queried by many threads
+   * without locking.
+   * @return an immutable sorted view of this sketch
+   */
+  public DoublesSketchSortedView getSortedView() {
+    if (getMemory() != null) { return new DoublesSketchSortedView(this); }
+    if (sortedView_ == null) { sortedView_ = new DoublesSketchSortedView(this); }
+    return sortedView_;
+  }
+
   /**
    * Returns the configured value of K
    * @return the configured value of K
@@ -0,0 +1,214 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.datasketches.quantiles;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+import org.apache.datasketches.SketchesArgumentException;
+
+/**
+ * An immutable sorted view of the items retained by a DoublesSketch, which answers the same
+ * quantile, rank, PMF and CDF queries as the sketch it was taken from.
+ *
+ * <p>The retained items are merge-sorted once, when the view is created, and each query is then a
+ * binary search. A DoublesSketch on the Java heap keeps its sorted view until the next update,
+ * merge or reset, so repeated queries of an unchanged sketch do not sort again. A view obtained
+ * with {@link DoublesSketch#getSortedView()} is a snapshot: it does not change when the sketch
+ * does, and it can be queried by many threads without locking.</p>
+ */
+public final class DoublesSketchSortedView {
+  private final long n_;
+  private final double minValue_;
+  private final double maxValue_;
+  private final double rankError_; //for the bounds
+  private final DoublesAuxiliary aux_; //null if empty
+
+  DoublesSketchSortedView(final DoublesSketch sketch) {
+    n_ = sketch.getN();
+    minValue_ = sketch.getMinValue();
+    maxValue_ = sketch.getMaxValue();
+    rankError_ = Util.getNormalizedRankError(sketch.getK(), false);
+    aux_ = (n_ == 0) ? null : new DoublesAuxiliary(sketch);
+  }
+
+  /**
+   * Returns the length of the input stream of the sketch when this view was taken.
+   * @return stream length
+   */
+  public long getN() {
+    return n_;
+  }
+
+  /**
+   * Returns true if the sketch was empty when this view was taken.
+   * @return true if the sketch was empty
+   */
+  public boolean isEmpty() {
+    return n_ == 0;
+  }
+
+  /**
+   * Returns the min value of the stream, or NaN if the sketch was empty.
+   * @return the min value of the stream
+   */
+  public double getMinValue() {
+    return minValue_;
+  }
+
+  /**
+   * Returns the max value of the stream, or NaN if the sketch was empty.
+   * @return the max value of the stream
+   */
+  public double getMaxValue() {
+    return maxValue_;
+  }
+
+  /**
+   * Returns the same value as {@link DoublesSketch#getQuantile(double)}.
+   *
+   * <p>If the view is empty this returns Double.NaN.
+   *
+   * @param fraction the specified fractional position in the hypothetical sorted stream.
+   * @return the approximation to the value at the above fraction
+   */
+  public double getQuantile(final double fraction) {
+    if (isEmpty()) { return Double.NaN; }
+    if (fraction < 0.0 || fraction > 1.0) {
+      throw new SketchesArgumentException("Fraction cannot be less than zero or greater than 1.0");
+    }
+    if (fraction == 0.0) { return minValue_; }
+    if (fraction == 1.0) { return maxValue_; }
+    return aux_.getQuantile(fraction);
+  }
+
+  /**
+   * Returns the same value as {@link DoublesSketch#getQuantileUpperBound(double)}.
+   * @param fraction the given normalized rank as a fraction
+   * @return the upper bound of the value interval in which the true quantile of the given rank
+   * exists with a confidence of at least 99%. Returns NaN if the view is empty.
+   */
+  public double getQuantileUpperBound(final double fraction) {
+    return getQuantile(min(1.0, fraction + rankError_));
+  }
+
+  /**
+   * Returns the same value as {@link DoublesSketch#getQuantileLowerBound(double)}.
+   * @param fraction the given normalized rank as a fraction
+   * @return the lower bound of the value interval in which the true quantile of the given rank
+   * exists with a confidence of at least 99%. Returns NaN if the view is empty.
+   */
+  public double getQuantileLowerBound(final double fraction) {
+    return getQuantile(max(0, fraction - rankError_));
+  }
+
+  /**
+   * Returns the same values as {@link DoublesSketch#getQuantiles(double[])}.
+   *
+   * <p>If the view is empty this returns null.
+   *
+   * @param fRanks the given array of fractional (or normalized) ranks in the hypothetical
+   * sorted stream of all the input values seen so far.
+   * These fRanks must all be in the interval [0.0, 1.0] inclusively.
+   * @return array of approximate quantiles of the given fRanks in the same order as in the given
+   * fRanks array.
+   */
+  public double[] getQuantiles(final double[] fRanks) {
+    if (isEmpty()) { return null; }
+    final double[] quantiles = new double[fRanks.length];
+    for (int i = 0; i < fRanks.length; i++) {
+      final double fRank = fRanks[i];
+      if      (fRank == 0.0) { quantiles[i] = minValue_; }
+      else if (fRank == 1.0) { quantiles[i] = maxValue_; }
+      else { quantiles[i] = aux_.getQuantile(fRank); }
+    }
+    return quantiles;
+  }
+
+  /**
+   * Returns the same values as {@link DoublesSketch#getQuantiles(int)}.
+   *
+   * <p>If the view is empty this returns null.
+   *
+   * @param evenlySpaced an integer that specifies the number of evenly spaced fractional ranks.
+   * @return array of approximations to the evenly spaced fractions.
+   */
+  public double[] getQuantiles(final int evenlySpaced) {
+    if (isEmpty()) { return null; }
+    return getQuantiles(org.apache.datasketches.Util.evenlySpaced(0.0, 1.0, evenlySpaced));
+  }
+
+  /**
+   * Returns the same value as {@link DoublesSketch#getRank(double)}.
+   *
+   * <p>If the view is empty this returns NaN.</p>
+   *
+   * @param value to be ranked
+   * @return an approximate rank of the given value
+   */
+  public double getRank(final double value) {
+    if (isEmpty()) { return Double.NaN; }
+    return (double) aux_.getWeightBelow(value) / n_;
+  }
+
+  /**
+   * Returns the same values as {@link DoublesSketch#getPMF(double[])}.
+   *
+   * <p>If the view is empty this returns null.</p>
+   *
+   * @param splitPoints an array of <i>m</i> unique, monotonically increasing double values
+   * that divide the real number line into <i>m+1</i> consecutive disjoint intervals.
+   * @return an array of m+1 doubles each of which is an approximation
+   * to the fraction of the input stream values (the mass) that fall into one of those intervals.
+   */
+  public double[] getPMF(final double[] splitPoints) {
+    return getPmfOrCdf(splitPoints, false);
+  }
+
+  /**
+   * Returns the same values as {@link DoublesSketch#getCDF(double[])}.
+   *
+   * <p>If the view is empty this returns null.</p>
+   *
+   * @param splitPoints an array of <i>m</i> unique, monotonically increasing double values
+   * that divide the real number line into <i>m+1</i> consecutive disjoint intervals.
+   * @return an array of m+1 double values, which are a consecutive approximation to the CDF
+   * of the input stream given the splitPoints.
+   */
+  public double[] getCDF(final double[] splitPoints) {
+    return getPmfOrCdf(splitPoints, true);
+  }
+
+  private double[] getPmfOrCdf(final double[] splitPoints, final boolean isCdf) {
+    if (isEmpty()) { return null; }
+    Util.checkSplitPointsOrder(splitPoints);
+    final double[] buckets = new double[splitPoints.length + 1];
+    long prevWeight = 0;
+    for (int i = 0; i < splitPoints.length; i++) {
+      final long weight = aux_.getWeightBelow(splitPoints[i]);
+      buckets[i] = (double) (isCdf ? weight : weight - prevWeight) / n_;
+      prevWeight = weight;
+    }
+    buckets[splitPoints.length] = (double) (isCdf ? n_ : n_ - prevWeight) / n_;
+    return buckets;
+  }
+
+}
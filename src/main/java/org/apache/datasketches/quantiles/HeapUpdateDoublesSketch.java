@@ -184,6 +184,7 @@ final class HeapUpdateDoublesSketch extends UpdateDoublesSketch {
 
   @Override
   public void reset() {
+    sortedView_ = null;
     n_ = 0;
     final int combinedBufferItemCapacity = 2 * Math.min(DoublesSketch.MIN_K, k_); //min is important
     combinedBuffer_ = new double[combinedBufferItemCapacity];
@@ -196,6 +197,7 @@ final class HeapUpdateDoublesSketch extends UpdateDoublesSketch {
   @Override
   public void update(final double dataItem) {
     if (Double.isNaN(dataItem)) { return; }
+    sortedView_ = null;
 
     if (n_ == 0) {
       putMaxValue(dataItem);
@@ -335,36 +337,43 @@ final class HeapUpdateDoublesSketch extends UpdateDoublesSketch {
 
   @Override
   void putMinValue(final double minValue) {
+    sortedView_ = null;
     minValue_ = minValue;
   }
 
   @Override
   void putMaxValue(final double maxValue) {
+    sortedView_ = null;
     maxValue_ = maxValue;
   }
 
   @Override
   void putN(final long n) {
+    sortedView_ = null;
     n_ = n;
   }
 
   @Override
   void putCombinedBuffer(final double[] combinedBuffer) {
+    sortedView_ = null;
     combinedBuffer_ = combinedBuffer;
   }
 
   @Override
   void putBaseBufferCount(final int baseBufferCount) {
+    sortedView_ = null;
     baseBufferCount_ = baseBufferCount;
   }
 
   @Override
   void putBitPattern(final long bitPattern) {
+    sortedView_ = null;
     bitPattern_ = bitPattern;
   }
 
   @Override //the return value is not always used
   double[] growCombinedBuffer(final int currentSpace, final int spaceNeeded) {
+    sortedView_ = null;
     combinedBuffer_ = Arrays.copyOf(combinedBuffer_, spaceNeeded);
     return combinedBuffer_;
   }
@@ -243,6 +243,15 @@ abstract class BaseReqSketch {
    */
   public abstract void update(final float item);
 
+  /**
+   * Updates this sketch with the given items.
+   * The result is the same as calling {@link #update(float)} on each item in order.
+   * @param items the array containing the items. NaNs are ignored.
+   * @param offset the index of the first item
+   * @param length the number of items
+   */
+  public abstract void update(final float[] items, final int offset, final int length);
+
   /**
    * A detailed, human readable view of the sketch compactors and their data.
    * Each compactor string is prepended by the compactor lgWeight, the current number of retained
@@ -149,6 +149,28 @@ class FloatBuffer {
     return this;
   }
 
+  /**
+   * Appends the given items to the active array and increases the active count.
+   * The items take the same places as if each were appended in turn.
+   * This will expand the array if necessary.
+   * @param items the array containing the items
+   * @param offset the index of the first item
+   * @param length the number of items
+   * @return this
+   */
+  FloatBuffer append(final float[] items, final int offset, final int length) {
+    ensureSpace(length);
+    if (spaceAtBottom_) {
+      int index = capacity_ - count_;
+      for (int i = 0; i < length; i++) { arr_[--index] = items[offset + i]; }
+    } else {
+      System.arraycopy(items, offset, arr_, count_, length);
+    }
+    count_ += length;
+    sorted_ = false;
+    return this;
+  }
+
   /**
    * Ensures that the capacity of this FloatBuffer is at least newCapacity.
    * If newCapacity &lt; capacity(), no action is taken.
@@ -25,6 +25,7 @@ import java.util.List;
 
 import org.apache.datasketches.SketchesArgumentException;
 import org.apache.datasketches.memory.Memory;
+import org.apache.datasketches.memory.UnsafeUtil;
 
 
 /**
@@ -522,6 +523,43 @@ public class ReqSketch extends BaseReqSketch {
     aux = null;
   }
 
+  @Override
+  public void update(final float[] items, final int offset, final int length) {
+    UnsafeUtil.checkBounds(offset, length, items.length);
+    //items are copied into level zero in runs that end only where the sketch must compress
+    final int end = offset + length;
+    int i = offset;
+    while (i < end) {
+      if (Float.isNaN(items[i])) { i++; continue; }
+      if (isEmpty()) {
+        minValue = items[i];
+        maxValue = items[i];
+      }
+      final int lim = i + Math.min(end - i, maxNomSize - retItems);
+      float runMin = minValue;
+      float runMax = maxValue;
+      int j = i;
+      for ( ; j < lim; j++) {
+        final float item = items[j];
+        if (Float.isNaN(item)) { break; }
+        if (item < runMin) { runMin = item; }
+        if (item > runMax) { runMax = item; }
+      }
+      minValue = runMin;
+      maxValue = runMax;
+      final FloatBuffer buf = compactors.get(0).getBuffer();
+      buf.append(items, i, j - i);
+      retItems += j - i;
+      totalN += j - i;
+      if (retItems >= maxNomSize) {
+        buf.sort();
+        compress();
+      }
+      i = j;
+    }
+    aux = null;
+  }
+
   /**
    * Computes a new bound for determining when to compress the sketch.
    */
@@ -0,0 +1,224 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.datasketches.store;
+
+import static org.apache.datasketches.store.StoreLayout.ENTRY_KEY_LONG;
+import static org.apache.datasketches.store.StoreLayout.ENTRY_LENGTH_LONG;
+import static org.apache.datasketches.store.StoreLayout.ENTRY_OFFSET_LONG;
+import static org.apache.datasketches.store.StoreLayout.FAMILY_BYTE;
+import static org.apache.datasketches.store.StoreLayout.INDEX_ENTRY_BYTES;
+import static org.apache.datasketches.store.StoreLayout.INDEX_OFFSET_LONG;
+import static org.apache.datasketches.store.StoreLayout.NUM_SKETCHES_LONG;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.datasketches.Family;
+import org.apache.datasketches.SketchesArgumentException;
+import org.apache.datasketches.cpc.CpcSketch;
+import org.apache.datasketches.hll.HllSketch;
+import org.apache.datasketches.memory.MapHandle;
+import org.apache.datasketches.memory.Memory;
+import org.apache.datasketches.theta.Sketch;
+
+/**
+ * A read-only store of serialized sketches, looked up by a long key.
+ *
+ * <p>A store is either opened from a file, which is memory-mapped, see {@link #open(File)}, or
+ * wrapped around a store image in a given Memory, see {@link #wrap(Memory)}. Opening does not
+ * read the sketches or the index, so it takes constant time. Each lookup binary searches the
+ * index in place and returns a read-only region of the store, so only the pages of the
+ * index entries visited and of the image of the sketch are touched.</p>
+ *
+ * <p>Theta and HLL sketches are returned as wrapped, zero-copy views of the store, which remain
+ * valid until the store is closed. Stores are written by a {@link SketchStoreWriter}.</p>
+ *
+ * <p>A store may be read by multiple threads concurrently.</p>
+ */
+public final class SketchStore implements AutoCloseable {
+  private final Memory mem;
+  private final MapHandle mapHandle; //null if wrapped
+  private final long numSketches;
+  private final long indexOffsetBytes;
+
+  private SketchStore(final Memory mem, final MapHandle mapHandle) {
+    StoreLayout.checkHeader(mem);
+    this.mem = mem;
+    this.mapHandle = mapHandle;
+    numSketches = mem.getLong(NUM_SKETCHES_LONG);
+    indexOffsetBytes = mem.getLong(INDEX_OFFSET_LONG);
+  }
+
+  /**
+   * Opens the given store file by memory-mapping it read-only.
+   * The mapping is released when the store is closed.
+   * @param file the store file
+   * @return the store
+   * @throws IOException if the file cannot be mapped
+   */
+  public static SketchStore open(final File file) throws IOException {
+    final MapHandle mapHandle = Memory.map(file);
+    try {
+      return new SketchStore(mapHandle.get(), mapHandle);
+    } catch (final RuntimeException e) {
+      mapHandle.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Wraps the given store image. The Memory remains owned by the caller.
+   * @param mem the store image
+   * @return the store
+   */
+  public static SketchStore wrap(final Memory mem) {
+    return new SketchStore(mem, null);
+  }
+
+  /**
+   * Returns the number of sketches in this store.
+   * @return the number of sketches in this store
+   */
+  public long getNumSketches() {
+    return numSketches;
+  }
+
+  /**
+   * Returns the key at the given position of the index, in ascending order of the keys.
+   * This allows all of the sketches of a store to be visited.
+   * @param index the position in the index, from 0 to getNumSketches() - 1
+   * @return the key at the given position of the index
+   */
+  public long getKey(final long index) {
+    if ((index < 0) || (index >= numSketches)) {
+      throw new SketchesArgumentException("Index out of range: " + index);
+    }
+    return mem.getLong(entryOffset(index) + ENTRY_KEY_LONG);
+  }
+
+  /**
+   * Returns true if this store has a sketch for the given key.
+   * @param key the given key
+   * @return true if this store has a sketch for the given key
+   */
+  public boolean contains(final long key) {
+    return find(key) >= 0;
+  }
+
+  /**
+   * Returns a read-only view of the serialized image of the sketch with the given key.
+   * @param key the given key
+   * @return a read-only view of the image of the sketch, or null if there is none
+   */
+  public Memory getMemory(final long key) {
+    final long index = find(key);
+    if (index < 0) { return null; }
+    final long entryOffset = entryOffset(index);
+    return mem.region(mem.getLong(entryOffset + ENTRY_OFFSET_LONG),
+        mem.getLong(entryOffset + ENTRY_LENGTH_LONG));
+  }
+
+  /**
+   * Returns the family of the sketch with the given key, as recorded in its image.
+   * @param key the given key
+   * @return the family of the sketch, or null if there is none
+   */
+  public Family getFamily(final long key) {
+    final Memory skMem = getMemory(key);
+    return (skMem == null) ? null : Family.idToFamily(skMem.getByte(FAMILY_BYTE));
+  }
+
+  /**
+   * Returns the theta sketch with the given key, wrapped in place by
+   * {@link Sketch#wrap(Memory, long)}.
+   * @param key the given key
+   * @param seed <a href="{@docRoot}/resources/dictionary.html#seed">See Update Hash Seed</a>.
+   * @return the wrapped theta sketch, or null if there is none
+   */
+  public Sketch getThetaSketch(final long key, final long seed) {
+    final Memory skMem = getMemory(key);
+    return (skMem == null) ? null : Sketch.wrap(skMem, seed);
+  }
+
+  /**
+   * Returns the theta sketch with the given key, wrapped in place by {@link Sketch#wrap(Memory)}.
+   * @param key the given key
+   * @return the wrapped theta sketch, or null if there is none
+   */
+  public Sketch getThetaSketch(final long key) {
+    final Memory skMem = getMemory(key);
+    return (skMem == null) ? null : Sketch.wrap(skMem);
+  }
+
+  /**
+   * Returns the HLL sketch with the given key, wrapped in place by {@link HllSketch#wrap(Memory)}.
+   * @param key the given key
+   * @return the wrapped HLL sketch, or null if there is none
+   */
+  public HllSketch getHllSketch(final long key) {
+    final Memory skMem = getMemory(key);
+    return (skMem == null) ? null : HllSketch.wrap(skMem);
+  }
+
+  /**
+   * Returns the CPC sketch with the given key, heapified by {@link CpcSketch#heapify(Memory)}.
+   * @param key the given key
+   * @return the CPC sketch, or null if there is none
+   */
+  public CpcSketch getCpcSketch(final long key) {
+    final Memory skMem = getMemory(key);
+    return (skMem == null) ? null : CpcSketch.heapify(skMem);
+  }
+
+  /**
+   * Closes this store. If the store was opened from a file the mapping is released, after which
+   * neither the store nor the sketches obtained from it may be used.
+   */
+  @Override
+  public void close() {
+    if (mapHandle != null) {
+      mapHandle.close();
+    }
+  }
+
+  //Returns the position of the key in the index, or -1 if it is not found
+  private long find(final long key) {
+    long lo = 0;
+    long hi = numSketches - 1;
+    while (lo <= hi) {
+      final long mid = (lo + hi) >>> 1;
+      final long midKey = mem.getLong(entryOffset(mid) + ENTRY_KEY_LONG);
+      if (midKey < key) {
+        lo = mid + 1;
+      } else if (midKey > key) {
+        hi = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+    return -1;
+  }
+
+  private long entryOffset(final long index) {
+    return indexOffsetBytes + (index * INDEX_ENTRY_BYTES);
+  }
+
+}
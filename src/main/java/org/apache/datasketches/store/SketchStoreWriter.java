@@ -0,0 +1,215 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.datasketches.store;
+
+import static org.apache.datasketches.store.StoreLayout.ENTRY_KEY_LONG;
+import static org.apache.datasketches.store.StoreLayout.ENTRY_LENGTH_LONG;
+import static org.apache.datasketches.store.StoreLayout.ENTRY_OFFSET_LONG;
+import static org.apache.datasketches.store.StoreLayout.HEADER_BYTES;
+import static org.apache.datasketches.store.StoreLayout.INDEX_ENTRY_BYTES;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import org.apache.datasketches.SketchesArgumentException;
+import org.apache.datasketches.SketchesStateException;
+import org.apache.datasketches.cpc.CpcSketch;
+import org.apache.datasketches.hll.HllSketch;
+import org.apache.datasketches.memory.WritableMemory;
+import org.apache.datasketches.theta.Sketch;
+
+/**
+ * An append-only writer that bulk loads sketches into a new store file, which can then be
+ * opened by {@link SketchStore#open(File)}.
+ *
+ * <p>The sketch images are written sequentially through a buffer as they are appended. Only the
+ * key, offset and length of each image are retained in memory, and the index is sorted and
+ * written when the writer is closed. Keys may be appended in any order, but must be unique.</p>
+ *
+ * <p>A writer is not thread safe.</p>
+ */
+public final class SketchStoreWriter implements AutoCloseable {
+  private static final int BUFFER_BYTES = 1 << 16;
+  private static final int INIT_ENTRIES = 64;
+
+  private final FileChannel channel;
+  private final byte[] buf = new byte[BUFFER_BYTES];
+  private int bufBytes = 0;
+  private long fileBytes = HEADER_BYTES; //the header is written at close
+  private long[] keys = new long[INIT_ENTRIES];
+  private long[] offsets = new long[INIT_ENTRIES];
+  private long[] lengths = new long[INIT_ENTRIES];
+  private int numSketches = 0;
+  private boolean closed = false;
+
+  private SketchStoreWriter(final FileChannel channel) {
+    this.channel = channel;
+  }
+
+  /**
+   * Creates a writer of a new store file. An existing file is replaced.
+   * @param file the store file
+   * @return a writer of the store file
+   * @throws IOException if the file cannot be created
+   */
+  public static SketchStoreWriter create(final File file) throws IOException {
+    final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+    return new SketchStoreWriter(channel);
+  }
+
+  /**
+   * Appends the given serialized sketch image with the given key.
+   * @param key the key of the sketch
+   * @param image the serialized image of the sketch
+   * @throws IOException if the image cannot be written
+   */
+  public void append(final long key, final byte[] image) throws IOException {
+    if (closed) { throw new SketchesStateException("This writer is closed."); }
+    if (image == null) { throw new SketchesArgumentException("The image must not be null."); }
+    if (numSketches == keys.length) {
+      final int newLength = 2 * keys.length;
+      keys = Arrays.copyOf(keys, newLength);
+      offsets = Arrays.copyOf(offsets, newLength);
+      lengths = Arrays.copyOf(lengths, newLength);
+    }
+    keys[numSketches] = key;
+    offsets[numSketches] = fileBytes;
+    lengths[numSketches] = image.length;
+    numSketches++;
+    write(image, image.length);
+  }
+
+  /**
+   * Appends the given theta sketch with the given key, in compact ordered form, so that it can be
+   * wrapped by {@link SketchStore#getThetaSketch(long)}.
+   * @param key the key of the sketch
+   * @param sketch the theta sketch
+   * @throws IOException if the sketch cannot be written
+   */
+  public void append(final long key, final Sketch sketch) throws IOException {
+    append(key, sketch.compact().toByteArray());
+  }
+
+  /**
+   * Appends the given HLL sketch with the given key, in compact form, so that it can be wrapped
+   * by {@link SketchStore#getHllSketch(long)}.
+   * @param key the key of the sketch
+   * @param sketch the HLL sketch
+   * @throws IOException if the sketch cannot be written
+   */
+  public void append(final long key, final HllSketch sketch) throws IOException {
+    append(key, sketch.toCompactByteArray());
+  }
+
+  /**
+   * Appends the given CPC sketch with the given key.
+   * @param key the key of the sketch
+   * @param sketch the CPC sketch
+   * @throws IOException if the sketch cannot be written
+   */
+  public void append(final long key, final CpcSketch sketch) throws IOException {
+    append(key, sketch.toByteArray());
+  }
+
+  /**
+   * Returns the number of sketches appended so far.
+   * @return the number of sketches appended so far
+   */
+  public int getNumSketches() {
+    return numSketches;
+  }
+
+  /**
+   * Writes the index and the header and closes the file. The file is a valid store only if this
+   * completes without an exception.
+   * @throws IOException if the index or the header cannot be written
+   */
+  @Override
+  public void close() throws IOException {
+    if (closed) { return; }
+    closed = true;
+    try {
+      final long[] sortedKeys = Arrays.copyOf(keys, numSketches);
+      Arrays.sort(sortedKeys);
+      for (int i = 1; i < numSketches; i++) {
+        if (sortedKeys[i] == sortedKeys[i - 1]) {
+          throw new SketchesArgumentException("Duplicate key: " + sortedKeys[i]);
+        }
+      }
+      final byte[] entry = new byte[INDEX_ENTRY_BYTES];
+      final WritableMemory entryMem = WritableMemory.wrap(entry);
+      write(entry, (int) (-fileBytes & 7L)); //zero padding to 8 byte alignment
+      final long indexOffsetBytes = fileBytes;
+      final long[] sortedOffsets = new long[numSketches];
+      final long[] sortedLengths = new long[numSketches];
+      for (int i = 0; i < numSketches; i++) {
+        final int j = Arrays.binarySearch(sortedKeys, keys[i]);
+        sortedOffsets[j] = offsets[i];
+        sortedLengths[j] = lengths[i];
+      }
+      for (int j = 0; j < numSketches; j++) {
+        entryMem.putLong(ENTRY_KEY_LONG, sortedKeys[j]);
+        entryMem.putLong(ENTRY_OFFSET_LONG, sortedOffsets[j]);
+        entryMem.putLong(ENTRY_LENGTH_LONG, sortedLengths[j]);
+        write(entry, INDEX_ENTRY_BYTES);
+      }
+      flush();
+      final byte[] header = new byte[HEADER_BYTES];
+      StoreLayout.insertHeader(WritableMemory.wrap(header), numSketches, indexOffsetBytes);
+      writeFully(ByteBuffer.wrap(header), 0);
+      channel.force(false);
+    } finally {
+      channel.close();
+    }
+  }
+
+  private void write(final byte[] bytes, final int len) throws IOException {
+    if ((bufBytes + len) > BUFFER_BYTES) {
+      flush();
+      if (len > BUFFER_BYTES) {
+        writeFully(ByteBuffer.wrap(bytes, 0, len), fileBytes);
+        fileBytes += len;
+        return;
+      }
+    }
+    System.arraycopy(bytes, 0, buf, bufBytes, len);
+    bufBytes += len;
+    fileBytes += len;
+  }
+
+  private void flush() throws IOException {
+    writeFully(ByteBuffer.wrap(buf, 0, bufBytes), fileBytes - bufBytes);
+    bufBytes = 0;
+  }
+
+  private void writeFully(final ByteBuffer bb, final long position) throws IOException {
+    long pos = position;
+    while (bb.hasRemaining()) {
+      pos += channel.write(bb, pos);
+    }
+  }
+
+}
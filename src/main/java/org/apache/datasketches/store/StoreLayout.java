@@ -0,0 +1,123 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.datasketches.store;
+
+import org.apache.datasketches.SketchesArgumentException;
+import org.apache.datasketches.memory.Memory;
+import org.apache.datasketches.memory.WritableMemory;
+
+//@formatter:off
+
+/**
+ * This class defines the layout of a sketch store file.
+ *
+ * <p>A store file has a 32 byte header, followed by the concatenated serialized sketch images
+ * in the order in which they were appended, followed by the index. The index is an array of
+ * entries sorted by key, each of which holds the key and the offset and length in bytes of the
+ * image of its sketch. All multi-byte values are stored in little-endian byte order.</p>
+ *
+ * <pre>
+ * Long || Start Byte Adr:
+ * Adr:
+ *      ||    7   |    6   |    5   |    4   |    3   |    2   |    1   |     0              |
+ *  0   ||------------------------------Magic: "DSSTORE\0"-----------------------------------|
+ *
+ *      ||   15   |   14   |   13   |   12   |   11   |   10   |    9   |     8              |
+ *  1   ||-------------Reserved--------------|-------------Serialization Version------------|
+ *
+ *      ||   23   |   22   |   21   |   20   |   19   |   18   |   17   |    16              |
+ *  2   ||------------------------------Number of Sketches-----------------------------------|
+ *
+ *      ||   31   |   30   |   29   |   28   |   27   |   26   |   25   |    24              |
+ *  3   ||------------------------------Index Offset Bytes-----------------------------------|
+ *
+ *      ||   39   |   38   |   37   |   36   |   35   |   34   |   33   |    32              |
+ *  4   ||--------------------------Start of the Sketch Images-------------------------------|
+ * </pre>
+ *
+ * <p>Each index entry is 24 bytes: the key, the offset of the image from the start of the file
+ * and the length of the image. The index starts at an 8 byte aligned offset.</p>
+ *
+ * <p>The header is written last, when the writer is closed, so a file that was not completely
+ * written does not have a valid magic number and cannot be opened.</p>
+ */
+final class StoreLayout {
+
+  private StoreLayout() {}
+
+  static final long MAGIC                  = 0X0045524F54535344L; //"DSSTORE\0", little-endian
+  static final int SER_VER                 = 1;
+
+  // Header byte addresses
+  static final int MAGIC_LONG              = 0;
+  static final int SER_VER_INT             = 8;
+  static final int NUM_SKETCHES_LONG       = 16;
+  static final int INDEX_OFFSET_LONG       = 24;
+  static final int HEADER_BYTES            = 32;
+
+  // Index entry byte offsets
+  static final int ENTRY_KEY_LONG          = 0;
+  static final int ENTRY_OFFSET_LONG       = 8;
+  static final int ENTRY_LENGTH_LONG       = 16;
+  static final int INDEX_ENTRY_BYTES       = 24;
+
+  // Byte address of the family ID in a sketch image, common to all sketch preambles
+  static final int FAMILY_BYTE             = 2;
+
+  //@formatter:on
+
+  static void insertHeader(final WritableMemory wmem, final long numSketches,
+      final long indexOffsetBytes) {
+    wmem.putLong(MAGIC_LONG, MAGIC);
+    wmem.putInt(SER_VER_INT, SER_VER);
+    wmem.putInt(SER_VER_INT + 4, 0);
+    wmem.putLong(NUM_SKETCHES_LONG, numSketches);
+    wmem.putLong(INDEX_OFFSET_LONG, indexOffsetBytes);
+  }
+
+  /**
+   * Checks the header of the given store image and its consistency with the capacity.
+   * @param mem the store image
+   */
+  static void checkHeader(final Memory mem) {
+    final long cap = mem.getCapacity();
+    if (cap < HEADER_BYTES) {
+      throw new SketchesArgumentException(
+          "Possible Corruption: store must be at least " + HEADER_BYTES + " bytes: " + cap);
+    }
+    if (mem.getLong(MAGIC_LONG) != MAGIC) {
+      throw new SketchesArgumentException(
+          "Possible Corruption: not a sketch store or not completely written.");
+    }
+    final int serVer = mem.getInt(SER_VER_INT);
+    if (serVer != SER_VER) {
+      throw new SketchesArgumentException("Unknown store Serialization Version: " + serVer);
+    }
+    final long numSketches = mem.getLong(NUM_SKETCHES_LONG);
+    final long indexOffset = mem.getLong(INDEX_OFFSET_LONG);
+    if ((numSketches < 0) || (indexOffset < HEADER_BYTES) || (indexOffset > cap)
+        || ((cap - indexOffset) / INDEX_ENTRY_BYTES < numSketches)) {
+      throw new SketchesArgumentException("Possible Corruption: index of " + numSketches
+          + " sketches at offset " + indexOffset + " does not fit in capacity " + cap);
+    }
+  }
+
+}
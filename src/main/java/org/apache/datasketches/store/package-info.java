@@ -0,0 +1,32 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+/**
+ * The store package contains a file format for large collections of serialized sketches,
+ * a reader that memory-maps a store file and wraps its sketches in place, and an append-only
+ * writer for bulk loading.
+ *
+ * <p>Opening a store maps the file without reading it. A lookup binary searches the key index
+ * in the mapped file and returns a read-only view of the image of the sketch, so a query only
+ * touches the pages of the index and of the sketches it uses. Theta and HLL sketches are wrapped
+ * without copying.</p>
+ */
+
+package org.apache.datasketches.store;
@@ -25,6 +25,7 @@ import static org.apache.datasketches.theta.PreambleUtil.LG_NOM_LONGS_BYTE;
 import static org.apache.datasketches.theta.PreambleUtil.ORDERED_FLAG_MASK;
 import static org.apache.datasketches.theta.PreambleUtil.READ_ONLY_FLAG_MASK;
 import static org.apache.datasketches.theta.PreambleUtil.SER_VER;
+import static org.apache.datasketches.theta.PreambleUtil.SER_VER_COMPRESSED;
 import static org.apache.datasketches.theta.PreambleUtil.SINGLEITEM_FLAG_MASK;
 import static org.apache.datasketches.theta.PreambleUtil.extractCurCount;
 import static org.apache.datasketches.theta.PreambleUtil.extractFamilyID;
@@ -35,13 +36,16 @@ import static org.apache.datasketches.theta.PreambleUtil.extractSeedHash;
 import static org.apache.datasketches.theta.PreambleUtil.extractSerVer;
 import static org.apache.datasketches.theta.PreambleUtil.extractThetaLong;
 import static org.apache.datasketches.theta.PreambleUtil.insertCurCount;
+import static org.apache.datasketches.theta.PreambleUtil.insertEntryBitsV4;
 import static org.apache.datasketches.theta.PreambleUtil.insertFamilyID;
 import static org.apache.datasketches.theta.PreambleUtil.insertFlags;
+import static org.apache.datasketches.theta.PreambleUtil.insertNumEntriesBytesV4;
 import static org.apache.datasketches.theta.PreambleUtil.insertP;
 import static org.apache.datasketches.theta.PreambleUtil.insertPreLongs;
 import static org.apache.datasketches.theta.PreambleUtil.insertSeedHash;
 import static org.apache.datasketches.theta.PreambleUtil.insertSerVer;
 import static org.apache.datasketches.theta.PreambleUtil.insertThetaLong;
+import static org.apache.datasketches.theta.PreambleUtil.insertThetaLongV4;
 
 import java.util.Arrays;
 
@@ -213,6 +217,75 @@ final class CompactOperations {
             + ", ReadOnly Flag: " + srcReadOnlyFlag);
   }
 
+  /**
+   * Serializes the given ordered compact sketch into the compressed (SerVer 4) form: the deltas
+   * between successive hashes bit-packed with the number of bits of the largest delta.
+   * The sketch must have at least one retained entry and must not be a single item sketch.
+   * @param sketch the given ordered compact sketch
+   * @return the compressed image
+   */
+  static byte[] toByteArrayCompressed(final CompactSketch sketch) {
+    final int curCount = sketch.getRetainedEntries(true);
+    final long thetaLong = sketch.getThetaLong();
+    assert sketch.isOrdered() && (curCount > 0);
+    long deltaBits = 0;
+    long prev = 0;
+    HashIterator it = sketch.iterator();
+    while (it.next()) {
+      deltaBits |= it.get() - prev;
+      prev = it.get();
+    }
+    final int entryBits = 64 - Long.numberOfLeadingZeros(deltaBits);
+    final int numEntriesBytes = (32 - Integer.numberOfLeadingZeros(curCount) + 7) >>> 3;
+    final int preLongs = (thetaLong < Long.MAX_VALUE) ? 2 : 1;
+    final int dataOffsetBytes = (preLongs << 3) + numEntriesBytes;
+    final long dataBytes = (((long) curCount * entryBits) + 7) >>> 3;
+    final byte[] byteArrOut = new byte[(int) (dataOffsetBytes + dataBytes)];
+    final WritableMemory wmem = WritableMemory.wrap(byteArrOut);
+
+    insertPreLongs(wmem, preLongs);
+    insertSerVer(wmem, SER_VER_COMPRESSED);
+    insertFamilyID(wmem, Family.COMPACT.getID());
+    insertEntryBitsV4(wmem, entryBits);
+    insertNumEntriesBytesV4(wmem, numEntriesBytes);
+    insertFlags(wmem, READ_ONLY_FLAG_MASK | COMPACT_FLAG_MASK | ORDERED_FLAG_MASK);
+    insertSeedHash(wmem, sketch.getSeedHash());
+    if (preLongs > 1) { insertThetaLongV4(wmem, thetaLong); }
+    for (int i = 0; i < numEntriesBytes; i++) {
+      wmem.putByte((preLongs << 3) + i, (byte) (curCount >>> (i << 3)));
+    }
+
+    //pack the deltas, least significant bit first, in chunks of at most 32 bits
+    long offsetBytes = dataOffsetBytes;
+    long bitBuf = 0;
+    int bitsInBuf = 0;
+    prev = 0;
+    it = sketch.iterator();
+    while (it.next()) {
+      long delta = it.get() - prev;
+      prev = it.get();
+      for (int bits = entryBits; bits > 0; ) {
+        final int n = Math.min(bits, 32);
+        bitBuf |= (delta & ((1L << n) - 1)) << bitsInBuf;
+        bitsInBuf += n;
+        delta >>>= n;
+        bits -= n;
+        if (bitsInBuf >= 32) {
+          wmem.putInt(offsetBytes, (int) bitBuf);
+          offsetBytes += 4;
+          bitBuf >>>= 32;
+          bitsInBuf -= 32;
+        }
+      }
+    }
+    while (bitsInBuf > 0) {
+      wmem.putByte(offsetBytes++, (byte) bitBuf);
+      bitBuf >>>= 8;
+      bitsInBuf -= 8;
+    }
+    return byteArrOut;
+  }
+
   //All arguments must be valid and correct including flags.
   // Used as helper to create byte arrays as well as loading Memory for direct compact sketches
   static final Memory loadCompactMemory(
@@ -52,6 +52,32 @@ public abstract class CompactSketch extends Sketch {
     return getRetainedEntries(true);
   }
 
+  /**
+   * Returns this sketch serialized in the compressed form, SerVer 4, in which the differences
+   * between the ordered hashes are bit-packed. The compressed image can be heapified or wrapped
+   * like any other image of a CompactSketch. A wrapped compressed image decodes its hashes on
+   * the fly when iterated, but it is not backed by Memory in the SerVer 3 layout, so
+   * {@link #hasMemory()} is false and a Union or Intersection decodes it into an array.
+   *
+   * <p>The differences between the k ordered hashes below theta take about
+   * log2(theta * 2<sup>63</sup> / k) + 4 bits each instead of 64, so the saving grows with the
+   * number of retained entries relative to theta. An unordered sketch is ordered first.
+   * Empty and single item sketches are always returned in their normal form,
+   * see {@link #toByteArray()}.</p>
+   *
+   * @return this sketch serialized in the compressed form
+   */
+  public byte[] toByteArrayCompressed() {
+    final int curCount = getRetainedEntries(true);
+    if ((curCount == 0) || ((curCount == 1) && (getThetaLong() == Long.MAX_VALUE))) {
+      return toByteArray();
+    }
+    if (!isOrdered()) {
+      return compact(true, null).toByteArrayCompressed();
+    }
+    return CompactOperations.toByteArrayCompressed(this);
+  }
+
   @Override
   public Family getFamily() {
     return Family.COMPACT;
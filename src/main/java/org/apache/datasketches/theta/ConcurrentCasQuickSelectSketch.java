@@ -0,0 +1,315 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.datasketches.theta;
+
+import static org.apache.datasketches.theta.PreambleUtil.EMPTY_FLAG_MASK;
+import static org.apache.datasketches.theta.PreambleUtil.FLAGS_BYTE;
+import static org.apache.datasketches.theta.PreambleUtil.PREAMBLE_LONGS_BYTE;
+import static org.apache.datasketches.theta.PreambleUtil.RETAINED_ENTRIES_INT;
+import static org.apache.datasketches.theta.PreambleUtil.extractCurCount;
+import static org.apache.datasketches.theta.Rebuilder.quickSelectAndRebuild;
+import static org.apache.datasketches.theta.UpdateReturnState.InsertedCountIncremented;
+import static org.apache.datasketches.theta.UpdateReturnState.InsertedCountIncrementedRebuilt;
+import static org.apache.datasketches.theta.UpdateReturnState.RejectedDuplicate;
+import static org.apache.datasketches.theta.UpdateReturnState.RejectedOverTheta;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.StampedLock;
+
+import org.apache.datasketches.HashOperations;
+import org.apache.datasketches.ResizeFactor;
+import org.apache.datasketches.memory.WritableMemory;
+
+/**
+ * A concurrent shared sketch based on DirectQuickSelectSketch that any number of threads may
+ * update directly, without local buffers or background propagation.
+ *
+ * <p>The hash table in the WritableMemory is allocated at its full size up front. Hashes below
+ * theta claim their slot with a compare-and-swap, so concurrent inserts never block each other.
+ * Theta is only lowered when the table reaches its rebuild threshold. The quick select rebuild
+ * moves entries, so it runs while holding the table exclusively. Once the sketch is in estimation
+ * mode almost every hash is rejected by the volatile theta before the table is touched, and
+ * rebuilds become rare.</p>
+ *
+ * <p>Inserts take no lock. Each one registers itself as in flight, then validates an optimistic
+ * stamp of the table lock. A thread that holds the table exclusively waits until the inserts in
+ * flight have finished before it reads or moves entries. Those inserts validated their stamps
+ * before the table was taken, and every later insert fails to validate, so the wait is short.</p>
+ *
+ * <p>Serialization, compaction, iteration, rebuild and reset also hold the table exclusively. The
+ * retained entry count in the WritableMemory is brought up to date by these operations, not by
+ * each insert.</p>
+ */
+class ConcurrentCasQuickSelectSketch extends DirectQuickSelectSketch {
+
+  //Many threads update this sketch at once, so the hash scratch arrays are per thread.
+  private static final ThreadLocal<long[]> HASH_OUT = new ThreadLocal<long[]>() {
+    @Override
+    protected long[] initialValue() {
+      return new long[2];
+    }
+  };
+  private static final ThreadLocal<long[]> HASH_BUFFER = new ThreadLocal<long[]>() {
+    @Override
+    protected long[] initialValue() {
+      return new long[HASH_BATCH_SIZE];
+    }
+  };
+
+  // Held exclusively while entries may move. Inserts only validate an optimistic stamp of it.
+  private final StampedLock tableLock_ = new StampedLock();
+
+  // The number of inserts that have validated their stamp and not yet finished.
+  private final AtomicInteger inFlight_ = new AtomicInteger(0);
+
+  // The number of entries in the table plus the slots reserved by the inserts in flight, which
+  // bounds the number of entries admitted before a rebuild.
+  private final AtomicInteger reserved_ = new AtomicInteger(0);
+
+  // The number of entries in the table.
+  private final AtomicInteger entries_ = new AtomicInteger(0);
+
+  // Theta value read by the inserting threads. Written only while the table is held exclusively.
+  private volatile long volatileThetaLong_;
+
+  private final int lgArrLongs_;
+  private final int preambleBytes_;
+
+  /**
+   * Construct a new sketch instance and initialize the given Memory as its backing store.
+   *
+   * @param lgNomLongs <a href="{@docRoot}/resources/dictionary.html#lgNomLongs">See lgNomLongs</a>.
+   * @param seed <a href="{@docRoot}/resources/dictionary.html#seed">See Update Hash Seed</a>.
+   * @param p <a href="{@docRoot}/resources/dictionary.html#p">See Sampling Probability, <i>p</i></a>
+   * @param dstMem the given Memory object destination. It must be large enough for the full size
+   * hash table, and it will be cleared prior to use.
+   */
+  ConcurrentCasQuickSelectSketch(final int lgNomLongs, final long seed, final float p,
+      final WritableMemory dstMem) {
+    super(lgNomLongs, seed, p,
+        ResizeFactor.X1, //the table starts at full size and is never resized
+        null, dstMem, false); //unionGadget
+    lgArrLongs_ = getLgArrLongs();
+    preambleBytes_ = (wmem_.getByte(PREAMBLE_LONGS_BYTE) & 0X3F) << 3;
+    volatileThetaLong_ = getThetaLong();
+  }
+
+  //Sketch overrides
+
+  @Override
+  public double getEstimate() {
+    return Sketch.estimate(volatileThetaLong_, entries_.get());
+  }
+
+  @Override
+  public int getRetainedEntries(final boolean valid) {
+    return entries_.get();
+  }
+
+  @Override
+  public HashIterator iterator() {
+    final int arrLongs = 1 << lgArrLongs_;
+    final long[] snapshot = new long[arrLongs];
+    final long thetaLong;
+    final long stamp = tableLock_.writeLock();
+    try {
+      awaitInsertsInFlight();
+      wmem_.getLongArray(preambleBytes_, snapshot, 0, arrLongs);
+      thetaLong = getThetaLong();
+    } finally {
+      tableLock_.unlockWrite(stamp);
+    }
+    return new HeapHashIterator(snapshot, arrLongs, thetaLong);
+  }
+
+  @Override
+  public byte[] toByteArray() {
+    final long stamp = tableLock_.writeLock();
+    try {
+      awaitInsertsInFlight();
+      syncCurCount();
+      return super.toByteArray();
+    } finally {
+      tableLock_.unlockWrite(stamp);
+    }
+  }
+
+  //UpdateSketch overrides
+
+  @Override
+  public CompactSketch compact(final boolean dstOrdered, final WritableMemory dstMem) {
+    final long stamp = tableLock_.writeLock();
+    try {
+      awaitInsertsInFlight();
+      syncCurCount();
+      return super.compact(dstOrdered, dstMem);
+    } finally {
+      tableLock_.unlockWrite(stamp);
+    }
+  }
+
+  @Override
+  public UpdateSketch rebuild() {
+    final long stamp = tableLock_.writeLock();
+    try {
+      awaitInsertsInFlight();
+      syncCurCount();
+      super.rebuild();
+      setCounts(extractCurCount(wmem_));
+      volatileThetaLong_ = getThetaLong();
+    } finally {
+      tableLock_.unlockWrite(stamp);
+    }
+    return this;
+  }
+
+  @Override
+  public void reset() {
+    final long stamp = tableLock_.writeLock();
+    try {
+      awaitInsertsInFlight();
+      super.reset();
+      setCounts(0);
+      volatileThetaLong_ = getThetaLong();
+    } finally {
+      tableLock_.unlockWrite(stamp);
+    }
+  }
+
+  //restricted methods
+
+  @Override
+  long[] getHashOut() {
+    return HASH_OUT.get();
+  }
+
+  @Override
+  long[] getHashBuffer() {
+    return HASH_BUFFER.get();
+  }
+
+  @Override
+  UpdateReturnState hashUpdate(final long hash) {
+    HashOperations.checkHashCorruption(hash);
+
+    while (true) {
+      //The over-theta test, without touching the table. An empty sketch still clears its flag.
+      if (HashOperations.continueCondition(volatileThetaLong_, hash) && !isEmpty()) {
+        return RejectedOverTheta;
+      }
+      final long stamp = tableLock_.tryOptimisticRead();
+      if (stamp == 0L) { //a rebuild or reset holds the table
+        Thread.yield();
+        continue;
+      }
+      //Register first, then validate. If the stamp is still valid, a thread that takes the table
+      // exclusively from here on waits for this insert to finish.
+      inFlight_.incrementAndGet();
+      if (!tableLock_.validate(stamp)) {
+        inFlight_.decrementAndGet();
+        continue;
+      }
+      final UpdateReturnState state;
+      try {
+        state = insertInFlight(hash);
+      } finally {
+        inFlight_.decrementAndGet();
+      }
+      if (state == null) { //the table is waiting for a rebuild
+        rebuildIfOutOfSpace();
+        continue;
+      }
+      if (state == InsertedCountIncrementedRebuilt) { //this insert reached the rebuild point
+        rebuildIfOutOfSpace();
+      }
+      return state;
+    }
+  }
+
+  //Must be registered as in flight. Returns null if the table must be rebuilt first.
+  private UpdateReturnState insertInFlight(final long hash) {
+    if (isEmpty()) { clearEmptyFlag(); }
+    //theta may have been lowered by a rebuild since the first test
+    if (HashOperations.continueCondition(volatileThetaLong_, hash)) {
+      return RejectedOverTheta;
+    }
+    //At most one entry past the threshold is admitted, which leaves at least one empty slot,
+    // so the table never fills up.
+    final int count = reserved_.incrementAndGet();
+    if (count > (hashTableThreshold_ + 1)) {
+      reserved_.decrementAndGet();
+      return null;
+    }
+    final int index = HashOperations.hashSearchOrInsertMemoryAtomic(wmem_, lgArrLongs_, hash,
+        preambleBytes_);
+    if (index >= 0) {
+      reserved_.decrementAndGet();
+      return RejectedDuplicate;
+    }
+    entries_.incrementAndGet();
+    return isOutOfSpace(count) ? InsertedCountIncrementedRebuilt : InsertedCountIncremented;
+  }
+
+  //Rebuilds unless another thread has already done so.
+  private void rebuildIfOutOfSpace() {
+    final long stamp = tableLock_.writeLock();
+    try {
+      awaitInsertsInFlight();
+      if (isOutOfSpace(entries_.get())) {
+        syncCurCount();
+        quickSelectAndRebuild(wmem_, preambleBytes_ >>> 3, getLgNomLongs());
+        setCounts(extractCurCount(wmem_));
+        volatileThetaLong_ = getThetaLong(); //only ever lowered by a rebuild
+      }
+    } finally {
+      tableLock_.unlockWrite(stamp);
+    }
+  }
+
+  //Only called by an insert in flight, so reset() waits for it
+  private void clearEmptyFlag() {
+    wmem_.putByte(FLAGS_BYTE, (byte) (wmem_.getByte(FLAGS_BYTE) & ~EMPTY_FLAG_MASK));
+  }
+
+  /**
+   * Waits until the inserts in flight have finished. They validated their stamps before the table
+   * was taken exclusively, and every later insert fails to validate and backs out without
+   * touching the table, so afterwards the reserved count equals the number of entries. Must hold
+   * the table exclusively.
+   */
+  private void awaitInsertsInFlight() {
+    while (inFlight_.get() != 0) {
+      Thread.yield();
+    }
+  }
+
+  //Must hold the table exclusively, with no inserts in flight
+  private void setCounts(final int count) {
+    reserved_.set(count);
+    entries_.set(count);
+  }
+
+  //Must hold the table exclusively, with no inserts in flight
+  private void syncCurCount() {
+    wmem_.putInt(RETAINED_ENTRIES_INT, entries_.get());
+  }
+
+}
@@ -19,51 +19,250 @@
 
 package org.apache.datasketches.theta;
 
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.datasketches.SketchesArgumentException;
 
 /**
- * Pool of threads to serve <i>all</i> propagation tasks in the system.
+ * Runs the background propagation tasks of concurrent shared theta sketches on an
+ * {@link Executor}.
+ *
+ * <p>A service either wraps a caller-supplied Executor, see {@link #create(Executor)}, or owns a
+ * pool of daemon threads, see {@link #create(int)}. Any Executor may be used, including a bounded
+ * pool shared with the application or a virtual-thread-per-task executor: the propagation tasks
+ * of each shared sketch are serialized by the service, so they never run concurrently with each
+ * other even if the Executor runs tasks in parallel.</p>
+ *
+ * <p>A service is attached to shared sketches with
+ * {@link UpdateSketchBuilder#setPropagationService(ConcurrentPropagationService)}. Shared sketches
+ * built without one use the {@link #getDefaultService() default service}.</p>
+ *
+ * <p>Closing a service shuts down the threads it owns, but never a caller-supplied Executor.
+ * Propagation tasks submitted after the service is closed, or rejected by the Executor, are run
+ * on the submitting thread, so sketches that are still in use continue to work.</p>
  *
  * @author eshcar
  */
-final class ConcurrentPropagationService {
+public final class ConcurrentPropagationService implements AutoCloseable {
 
   static int NUM_POOL_THREADS = 3; // Default: 3 threads
-  private static volatile ConcurrentPropagationService instance = null; // Singleton
-  private static ExecutorService[] propagationExecutorService = null;
+  private static ConcurrentPropagationService defaultService = null;
+
+  private final Executor executor;
+  private final boolean ownsExecutor;
+  private volatile boolean closed;
 
+  //Metrics
+  private final LongAdder submitted = new LongAdder();
+  private final LongAdder completed = new LongAdder();
+  private final LongAdder totalLatencyNanos = new LongAdder();
+  private final AtomicLong maxLatencyNanos = new AtomicLong();
 
-  private ConcurrentPropagationService() {
-    propagationExecutorService = new ExecutorService[NUM_POOL_THREADS];
+  private ConcurrentPropagationService(final Executor executor, final boolean ownsExecutor) {
+    this.executor = executor;
+    this.ownsExecutor = ownsExecutor;
   }
 
-  //Factory: Get the singleton
-  private static ConcurrentPropagationService getInstance() {
-    if (instance == null) {
-      synchronized (ConcurrentPropagationService.class) {
-        if (instance == null) {
-          instance = new ConcurrentPropagationService();
-        }
+  /**
+   * Returns a service that runs propagation tasks on the given Executor.
+   * The Executor remains owned by the caller and is not shut down when the service is closed.
+   * @param executor the Executor that runs the propagation tasks
+   * @return a service that runs propagation tasks on the given Executor
+   */
+  public static ConcurrentPropagationService create(final Executor executor) {
+    if (executor == null) {
+      throw new SketchesArgumentException("The Executor must not be null.");
+    }
+    return new ConcurrentPropagationService(executor, false);
+  }
+
+  /**
+   * Returns a service that owns a fixed pool of the given number of daemon threads.
+   * The threads are shut down when the service is closed.
+   * @param numThreads the number of propagation threads
+   * @return a service that owns a fixed pool of daemon threads
+   */
+  public static ConcurrentPropagationService create(final int numThreads) {
+    if (numThreads < 1) {
+      throw new SketchesArgumentException("numThreads must be > 0: " + numThreads);
+    }
+    final ExecutorService pool = Executors.newFixedThreadPool(numThreads, new DaemonThreadFactory());
+    return new ConcurrentPropagationService(pool, true);
+  }
+
+  /**
+   * Returns the service used by shared sketches that were built without one. It owns a pool of
+   * daemon threads, sized by {@link UpdateSketchBuilder#setNumPoolThreads(int)} when it is first
+   * created. If it has been closed, a new default service is created.
+   * @return the default service
+   */
+  public static synchronized ConcurrentPropagationService getDefaultService() {
+    if ((defaultService == null) || defaultService.isClosed()) {
+      defaultService = create(NUM_POOL_THREADS);
+    }
+    return defaultService;
+  }
+
+  /**
+   * Returns true if this service has been closed.
+   * @return true if this service has been closed
+   */
+  public boolean isClosed() {
+    return closed;
+  }
+
+  /**
+   * Closes this service. Threads owned by this service finish their queued tasks and then
+   * terminate. Later propagation tasks run on the submitting thread.
+   */
+  @Override
+  public void close() {
+    closed = true;
+    if (ownsExecutor) {
+      ((ExecutorService) executor).shutdown();
+    }
+  }
+
+  /**
+   * Returns the number of propagation tasks submitted but not yet completed.
+   * @return the propagation queue depth
+   */
+  public long getQueueDepth() {
+    return submitted.sum() - completed.sum();
+  }
+
+  /**
+   * Returns the number of propagation tasks completed.
+   * @return the number of propagation tasks completed
+   */
+  public long getCompletedCount() {
+    return completed.sum();
+  }
+
+  /**
+   * Returns the mean time from submission to completion of the completed propagation tasks.
+   * @return the mean propagation latency in nanoseconds, or zero if no task has completed
+   */
+  public double getMeanLatencyNanos() {
+    final long count = completed.sum();
+    return (count == 0) ? 0.0 : (double) totalLatencyNanos.sum() / count;
+  }
+
+  /**
+   * Returns the maximum time from submission to completion of the completed propagation tasks.
+   * @return the maximum propagation latency in nanoseconds
+   */
+  public long getMaxLatencyNanos() {
+    return maxLatencyNanos.get();
+  }
+
+  /**
+   * Returns a new channel through which a single shared sketch submits its propagation tasks.
+   * @return a new channel
+   */
+  Channel newChannel() {
+    return new Channel();
+  }
+
+  private void dispatch(final Runnable drain) {
+    if (!closed) {
+      try {
+        executor.execute(drain);
+        return;
+      } catch (final RejectedExecutionException e) {
+        //fall through and run on this thread
       }
     }
-    return instance;
+    drain.run();
+  }
+
+  private void recordCompletion(final long enqueuedNanos) {
+    final long latency = System.nanoTime() - enqueuedNanos;
+    totalLatencyNanos.add(latency);
+    long max;
+    while ((latency > (max = maxLatencyNanos.get()))
+        && !maxLatencyNanos.compareAndSet(max, latency)) { } //retry
+    completed.increment();
   }
 
-  public static ExecutorService getExecutorService(final long id) {
-    return getInstance().initExecutorService((int) id % NUM_POOL_THREADS);
+  /**
+   * A serial queue of propagation tasks of one shared sketch. At most one task of a channel runs
+   * at any time, and tasks run in submission order.
+   */
+  final class Channel implements Runnable {
+    private final Queue<Task> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pending = new AtomicInteger(); //queued or running
+    private final AtomicBoolean draining = new AtomicBoolean();
+
+    void execute(final Runnable job) {
+      pending.incrementAndGet();
+      submitted.increment();
+      queue.add(new Task(job, System.nanoTime()));
+      if (draining.compareAndSet(false, true)) {
+        dispatch(this);
+      }
+    }
+
+    /**
+     * Waits until all tasks submitted to this channel have completed.
+     */
+    void awaitQuiescence() {
+      try {
+        while (pending.get() > 0) {
+          Thread.sleep(1);
+        }
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    //Drains the queue. Runs on the Executor, or on the submitting thread if it is unavailable.
+    @Override
+    public void run() {
+      do {
+        Task task;
+        while ((task = queue.poll()) != null) {
+          try {
+            task.job.run();
+          } finally {
+            recordCompletion(task.enqueuedNanos);
+            pending.decrementAndGet();
+          }
+        }
+        draining.set(false);
+        //a task may have been queued after the last poll but before the flag was cleared
+      } while (!queue.isEmpty() && draining.compareAndSet(false, true));
+    }
   }
 
-  @SuppressWarnings("static-access")
-  public static ExecutorService resetExecutorService(final long id) {
-    return getInstance().propagationExecutorService[(int) id % NUM_POOL_THREADS] = null;
+  private static final class DaemonThreadFactory implements ThreadFactory {
+    private static final AtomicInteger threadCount = new AtomicInteger();
+
+    @Override
+    public Thread newThread(final Runnable r) {
+      final Thread t = new Thread(r, "theta-propagation-" + threadCount.incrementAndGet());
+      t.setDaemon(true);
+      return t;
+    }
   }
 
-  @SuppressWarnings("static-method")
-  private ExecutorService initExecutorService(final int i) {
-    if (propagationExecutorService[i] == null) {
-      propagationExecutorService[i] = Executors.newSingleThreadExecutor();
+  private static final class Task {
+    final Runnable job;
+    final long enqueuedNanos;
+
+    Task(final Runnable job, final long enqueuedNanos) {
+      this.job = job;
+      this.enqueuedNanos = enqueuedNanos;
     }
-    return propagationExecutorService[i];
   }
 }
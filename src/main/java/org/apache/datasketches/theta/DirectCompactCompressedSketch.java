@@ -0,0 +1,181 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.datasketches.theta;
+
+import static org.apache.datasketches.theta.CompactOperations.componentsToCompact;
+import static org.apache.datasketches.theta.CompactOperations.computeCompactPreLongs;
+import static org.apache.datasketches.theta.PreambleUtil.checkMemorySeedHash;
+import static org.apache.datasketches.theta.PreambleUtil.extractEntryBitsV4;
+import static org.apache.datasketches.theta.PreambleUtil.extractNumEntriesBytesV4;
+import static org.apache.datasketches.theta.PreambleUtil.extractNumEntriesV4;
+import static org.apache.datasketches.theta.PreambleUtil.extractPreLongs;
+import static org.apache.datasketches.theta.PreambleUtil.extractSeedHash;
+import static org.apache.datasketches.theta.PreambleUtil.extractThetaLongV4;
+
+import org.apache.datasketches.memory.Memory;
+import org.apache.datasketches.memory.WritableMemory;
+
+/**
+ * A compact, ordered, read-only sketch that wraps a compressed (SerVer 4) image. The hashes are
+ * decoded on the fly by its iterator.
+ *
+ * <p>The wrapped image is not in the SerVer 3 layout that the Memory based paths of union and
+ * intersection read in place, so this sketch does not present itself as having Memory. Those
+ * paths treat it like a heap compact sketch and decode its hashes with {@link #getCache()}.</p>
+ *
+ * <p>See {@link CompactSketch#toByteArrayCompressed()}.</p>
+ */
+class DirectCompactCompressedSketch extends CompactSketch {
+  private final Memory mem_;
+
+  /**
+   * Construct this sketch with the given memory.
+   * @param mem Read-only Memory object of a compressed compact sketch image.
+   */
+  DirectCompactCompressedSketch(final Memory mem) {
+    mem_ = mem;
+  }
+
+  /**
+   * Wraps the given Memory, which must be a SerVer 4 compressed CompactSketch image.
+   * @param srcMem <a href="{@docRoot}/resources/dictionary.html#mem">See Memory</a>
+   * @param seed The update seed.
+   * <a href="{@docRoot}/resources/dictionary.html#seed">See Update Hash Seed</a>.
+   * @return this sketch
+   */
+  static DirectCompactCompressedSketch wrapInstance(final Memory srcMem, final long seed) {
+    checkMemorySeedHash(srcMem, seed);
+    return new DirectCompactCompressedSketch(srcMem);
+  }
+
+  //Sketch
+
+  @Override
+  public CompactSketch compact(final boolean dstOrdered, final WritableMemory dstMem) {
+    final int curCount = getRetainedEntries(true);
+    return componentsToCompact(getThetaLong(), curCount, getSeedHash(), false, true, true,
+        dstOrdered, dstMem, getCache());
+  }
+
+  @Override
+  public int getCompactBytes() {
+    return (getCompactPreambleLongs() + getRetainedEntries(true)) << 3;
+  }
+
+  @Override
+  public int getCurrentBytes() {
+    final int preLongs = extractPreLongs(mem_);
+    final int numEntriesBytes = extractNumEntriesBytesV4(mem_);
+    final long dataBits = (long) getRetainedEntries(true) * extractEntryBitsV4(mem_);
+    return (int) ((preLongs << 3) + numEntriesBytes + ((dataBits + 7) >>> 3));
+  }
+
+  @Override
+  public double getEstimate() {
+    return Sketch.estimate(getThetaLong(), getRetainedEntries(true));
+  }
+
+  @Override
+  public int getRetainedEntries(final boolean valid) {
+    return extractNumEntriesV4(mem_, extractPreLongs(mem_), extractNumEntriesBytesV4(mem_));
+  }
+
+  @Override
+  public long getThetaLong() {
+    return (extractPreLongs(mem_) > 1) ? extractThetaLongV4(mem_) : Long.MAX_VALUE;
+  }
+
+  @Override
+  public boolean hasMemory() {
+    return false; //not a SerVer 3 image
+  }
+
+  @Override
+  public boolean isDirect() {
+    return mem_.isDirect();
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return false;
+  }
+
+  @Override
+  public boolean isOrdered() {
+    return true;
+  }
+
+  @Override
+  public boolean isSameResource(final Memory that) {
+    return mem_.isSameResource(that);
+  }
+
+  @Override
+  public HashIterator iterator() {
+    return new MemoryCompressedHashIterator(mem_);
+  }
+
+  @Override
+  public byte[] toByteArray() {
+    final int outBytes = getCurrentBytes();
+    final byte[] byteArrOut = new byte[outBytes];
+    mem_.getByteArray(0, byteArrOut, 0, outBytes);
+    return byteArrOut;
+  }
+
+  @Override
+  public byte[] toByteArrayCompressed() {
+    return toByteArray();
+  }
+
+  //restricted methods
+
+  @Override
+  long[] getCache() {
+    final long[] cache = new long[getRetainedEntries(true)];
+    final HashIterator it = iterator();
+    for (int i = 0; it.next(); i++) {
+      cache[i] = it.get();
+    }
+    return cache;
+  }
+
+  @Override
+  int getCompactPreambleLongs() {
+    return computeCompactPreLongs(false, getRetainedEntries(true), getThetaLong());
+  }
+
+  @Override
+  int getCurrentPreambleLongs() {
+    return extractPreLongs(mem_);
+  }
+
+  @Override
+  Memory getMemory() {
+    return null; //not a SerVer 3 image
+  }
+
+  @Override
+  short getSeedHash() {
+    return (short) extractSeedHash(mem_);
+  }
+
+}
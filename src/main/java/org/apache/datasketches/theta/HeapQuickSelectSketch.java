@@ -21,6 +21,7 @@ package org.apache.datasketches.theta;
 
 import static java.lang.Math.max;
 import static java.lang.Math.min;
+import static org.apache.datasketches.QuickSelect.select;
 import static org.apache.datasketches.QuickSelect.selectExcludingZeros;
 import static org.apache.datasketches.Util.LONG_MAX_VALUE_AS_DOUBLE;
 import static org.apache.datasketches.Util.MIN_LG_ARR_LONGS;
@@ -52,9 +53,17 @@ import org.apache.datasketches.memory.WritableMemory;
  * @author Kevin Lang
  */
 class HeapQuickSelectSketch extends HeapUpdateSketch {
+  //Number of slots sampled to choose theta at the start of an incremental rebuild
+  private static final int REBUILD_SAMPLE_SLOTS = 1024;
+  //Number of slots of the old hash table migrated by each update during an incremental rebuild
+  private static final int REBUILD_CHUNK_SLOTS = 16;
+  //Smaller hash tables are always rebuilt in one step
+  private static final int MIN_LG_ARR_LONGS_INCREMENTAL = 12;
+
   private final Family MY_FAMILY;
 
   private final int preambleLongs_;
+  private final boolean incrementalRebuild_;
   private int lgArrLongs_;
   private int hashTableThreshold_;  //never serialized
   int curCount_;
@@ -62,12 +71,17 @@ class HeapQuickSelectSketch extends HeapUpdateSketch {
   boolean empty_;
 
   private long[] cache_;
+  //During an incremental rebuild: the old hash table, which is not modified, and the index of its
+  // next slot to migrate. Otherwise null and zero.
+  private long[] srcCache_;
+  private int srcIndex_;
 
   private HeapQuickSelectSketch(final int lgNomLongs, final long seed, final float p,
       final ResizeFactor rf, final int preambleLongs, final Family family) {
     super(lgNomLongs, seed, p, rf);
     preambleLongs_ = preambleLongs;
     MY_FAMILY = family;
+    incrementalRebuild_ = false;
   }
 
   /**
@@ -82,7 +96,25 @@ class HeapQuickSelectSketch extends HeapUpdateSketch {
    */
   HeapQuickSelectSketch(final int lgNomLongs, final long seed, final float p,
       final ResizeFactor rf, final boolean unionGadget) {
+    this(lgNomLongs, seed, p, rf, unionGadget, false);
+  }
+
+  /**
+   * Construct a new sketch instance on the java heap.
+   *
+   * @param lgNomLongs <a href="{@docRoot}/resources/dictionary.html#lgNomLogs">See lgNomLongs</a>.
+   * @param seed <a href="{@docRoot}/resources/dictionary.html#seed">See seed</a>
+   * @param p <a href="{@docRoot}/resources/dictionary.html#p">See Sampling Probability, <i>p</i></a>
+   * @param rf <a href="{@docRoot}/resources/dictionary.html#resizeFactor">See Resize Factor</a>
+   * @param unionGadget true if this sketch is implementing the Union gadget function.
+   * Otherwise, it is behaving as a normal QuickSelectSketch.
+   * @param incrementalRebuild true if the rebuilds of the full hash table are spread across the
+   * subsequent updates instead of being done in one step.
+   */
+  HeapQuickSelectSketch(final int lgNomLongs, final long seed, final float p,
+      final ResizeFactor rf, final boolean unionGadget, final boolean incrementalRebuild) {
     super(lgNomLongs, seed, p, rf);
+    incrementalRebuild_ = incrementalRebuild;
 
     //Choose family, preambleLongs
     if (unionGadget) {
@@ -144,6 +176,7 @@ class HeapQuickSelectSketch extends HeapUpdateSketch {
 
   @Override
   public double getEstimate() {
+    completeIncrementalRebuild();
     return Sketch.estimate(thetaLong_, curCount_);
   }
 
@@ -154,6 +187,7 @@ class HeapQuickSelectSketch extends HeapUpdateSketch {
 
   @Override
   public int getRetainedEntries(final boolean valid) {
+    completeIncrementalRebuild();
     return curCount_;
   }
 
@@ -169,6 +203,7 @@ class HeapQuickSelectSketch extends HeapUpdateSketch {
 
   @Override
   public HashIterator iterator() {
+    completeIncrementalRebuild();
     return new HeapHashIterator(cache_, 1 << lgArrLongs_, thetaLong_);
   }
 
@@ -181,6 +216,7 @@ class HeapQuickSelectSketch extends HeapUpdateSketch {
 
   @Override
   public UpdateSketch rebuild() {
+    completeIncrementalRebuild();
     if (getRetainedEntries(true) > (1 << getLgNomLongs())) {
       quickSelectAndRebuild();
     }
@@ -204,17 +240,21 @@ class HeapQuickSelectSketch extends HeapUpdateSketch {
     empty_ = true;
     curCount_ = 0;
     thetaLong_ =  (long)(getP() * LONG_MAX_VALUE_AS_DOUBLE);
+    srcCache_ = null;
+    srcIndex_ = 0;
   }
 
   //restricted methods
 
   @Override
   long[] getCache() {
+    completeIncrementalRebuild();
     return cache_;
   }
 
   @Override
   int getCompactPreambleLongs() {
+    completeIncrementalRebuild();
     return CompactOperations.computeCompactPreLongs(empty_, curCount_, thetaLong_);
   }
 
@@ -242,13 +282,19 @@ class HeapQuickSelectSketch extends HeapUpdateSketch {
   UpdateReturnState hashUpdate(final long hash) {
     HashOperations.checkHashCorruption(hash);
     empty_ = false;
+    if (srcCache_ != null) {
+      migrate(REBUILD_CHUNK_SLOTS);
+    }
 
     //The over-theta test
     if (HashOperations.continueCondition(thetaLong_, hash)) {
       return RejectedOverTheta; //signal that hash was rejected due to theta.
     }
 
-    //The duplicate test
+    //The duplicate test, which must include the old hash table during an incremental rebuild
+    if ((srcCache_ != null) && (HashOperations.hashSearch(srcCache_, lgArrLongs_, hash) >= 0)) {
+      return RejectedDuplicate;
+    }
     if (HashOperations.hashSearchOrInsert(cache_, lgArrLongs_, hash) >= 0) {
       return RejectedDuplicate; //Duplicate, not inserted
     }
@@ -263,7 +309,12 @@ class HeapQuickSelectSketch extends HeapUpdateSketch {
       }
       //Already at tgt size, must rebuild
       assert (lgArrLongs_ == (lgNomLongs_ + 1)) : "lgArr: " + lgArrLongs_ + ", lgNom: " + lgNomLongs_;
-      quickSelectAndRebuild(); //Changes thetaLong_, curCount_, reassigns cache
+      if (incrementalRebuild_ && (lgArrLongs_ >= MIN_LG_ARR_LONGS_INCREMENTAL)) {
+        completeIncrementalRebuild(); //only if the previous one has not finished, which is rare
+        startIncrementalRebuild(); //Changes thetaLong_, curCount_, reassigns cache
+      } else {
+        quickSelectAndRebuild(); //Changes thetaLong_, curCount_, reassigns cache
+      }
       return InsertedCountIncrementedRebuilt;
     }
     return InsertedCountIncremented;
@@ -271,7 +322,7 @@ class HeapQuickSelectSketch extends HeapUpdateSketch {
 
   @Override
   boolean isDirty() {
-    return false;
+    return false; //an incremental rebuild is completed by any access to the cache
   }
 
   @Override
@@ -314,6 +365,61 @@ class HeapQuickSelectSketch extends HeapUpdateSketch {
     //hashTableThreshold stays the same
   }
 
+  //Starts an incremental rebuild, which is completed by the subsequent updates or queries.
+  // Theta is lowered at once to the order statistic of a sample of the hash table that is expected
+  // to retain k entries. As in quickSelectAndRebuild() theta is one of the hash values, so the
+  // estimator keeps the same form, but the number of retained entries is only close to k.
+  // The hash table becomes the read-only source of the migration into a new table.
+  private final void startIncrementalRebuild() {
+    final int arrLongs = 1 << lgArrLongs_;
+    final int stride = arrLongs / REBUILD_SAMPLE_SLOTS;
+    final long[] sample = new long[REBUILD_SAMPLE_SLOTS];
+    int n = 0;
+    for (int i = 0; i < arrLongs; i += stride) {
+      final long hash = cache_[i];
+      if (hash != 0) { sample[n++] = hash; }
+    }
+    if (n == 0) {
+      quickSelectAndRebuild();
+      return;
+    }
+    final int pivot = (int) (((long) n << lgNomLongs_) / curCount_); //0-based
+    thetaLong_ = select(sample, 0, n - 1, pivot);
+    srcCache_ = cache_;
+    srcIndex_ = 0;
+    cache_ = new long[arrLongs];
+    curCount_ = 0;
+  }
+
+  //Migrates the hash values below theta from up to the given number of slots of the old hash table
+  // into the new one. Updates that are inserted during the migration only go into the new table,
+  // so the two never hold the same hash value. The new table cannot fill up before the migration
+  // is complete, as it receives about k migrated values plus at most one value per
+  // REBUILD_CHUNK_SLOTS migrated slots.
+  private final void migrate(final int maxSlots) {
+    final long[] srcCache = srcCache_;
+    final int end = srcIndex_ + min(maxSlots, srcCache.length - srcIndex_);
+    for (int i = srcIndex_; i < end; i++) {
+      final long hash = srcCache[i];
+      if ((hash != 0) && (hash < thetaLong_)) {
+        HashOperations.hashInsertOnly(cache_, lgArrLongs_, hash);
+        curCount_++;
+      }
+    }
+    srcIndex_ = end;
+    if (end == srcCache.length) {
+      srcCache_ = null;
+      srcIndex_ = 0;
+    }
+  }
+
+  //Completes an incremental rebuild, if any, so that curCount_ and cache_ are exact
+  private final void completeIncrementalRebuild() {
+    if (srcCache_ != null) {
+      migrate(srcCache_.length);
+    }
+  }
+
   /**
    * Returns the cardinality limit given the current size of the hash table array.
    *
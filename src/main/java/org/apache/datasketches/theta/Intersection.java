@@ -30,6 +30,7 @@ import static org.apache.datasketches.theta.PreambleUtil.extractPreLongs;
 import static org.apache.datasketches.theta.PreambleUtil.extractSerVer;
 
 import java.util.Arrays;
+import java.util.Collection;
 
 import org.apache.datasketches.Family;
 import org.apache.datasketches.SketchesArgumentException;
@@ -151,6 +152,42 @@ public abstract class Intersection extends SetOperation {
   public abstract CompactSketch intersect(Sketch a, Sketch b, boolean dstOrdered,
       WritableMemory dstMem);
 
+  /**
+   * Perform intersect set operation on all of the given sketches and return the result as an
+   * ordered CompactSketch on the heap.
+   * @param sketches the sketch arguments
+   * @return an ordered CompactSketch on the heap
+   * @see #intersectAll(Collection, boolean, WritableMemory)
+   */
+  public CompactSketch intersectAll(final Collection<? extends Sketch> sketches) {
+    return intersectAll(sketches, true, null);
+  }
+
+  /**
+   * Perform intersect set operation on all of the given sketches and return the result as a
+   * CompactSketch. The result is the same as that of {@link #intersect(Sketch)} called with each
+   * of the sketches in turn followed by {@link #getResult(boolean, WritableMemory)}.
+   *
+   * <p>If all of the sketches are ordered CompactSketches their sorted hash arrays are merged
+   * with galloping search, starting from the sketch with the fewest retained entries. The cost is
+   * then about proportional to the size of the smallest sketch times the log of the sizes of
+   * the others, which is much less than the cost of probing a hash table with every entry when
+   * the sizes are very different. Sketches backed by Memory are read in place.
+   * Otherwise the sketches are intersected in turn.</p>
+   *
+   * <p>Like {@link #intersect(Sketch, Sketch, boolean, WritableMemory)}, this is a stateless
+   * operation that resets the internal state of this intersection.</p>
+   *
+   * @param sketches the sketch arguments, none of which may be null
+   * @param dstOrdered
+   * <a href="{@docRoot}/resources/dictionary.html#dstOrdered">See Destination Ordered</a>.
+   * @param dstMem
+   * <a href="{@docRoot}/resources/dictionary.html#dstMem">See Destination Memory</a>.
+   * @return the result as a CompactSketch.
+   */
+  public abstract CompactSketch intersectAll(Collection<? extends Sketch> sketches,
+      boolean dstOrdered, WritableMemory dstMem);
+
   // Restricted
 
   /**
@@ -55,6 +55,7 @@ import static org.apache.datasketches.theta.PreambleUtil.insertThetaLong;
 import static org.apache.datasketches.theta.PreambleUtil.setEmpty;
 
 import java.util.Arrays;
+import java.util.Collection;
 
 import org.apache.datasketches.Family;
 import org.apache.datasketches.SketchesArgumentException;
@@ -305,6 +306,33 @@ class IntersectionImpl extends Intersection {
     }
   }
 
+  @Override
+  public CompactSketch intersectAll(final Collection<? extends Sketch> sketches,
+      final boolean dstOrdered, final WritableMemory dstMem) {
+    if (wmem_ != null && readOnly_) { throw new SketchesReadOnlyException(); }
+    if (sketches == null || sketches.isEmpty()) {
+      throw new SketchesArgumentException("Intersection arguments must not be null or empty.");
+    }
+    final Sketch[] sketchesIn = sketches.toArray(new Sketch[0]);
+    boolean allOrdered = true;
+    for (final Sketch sk : sketchesIn) {
+      if (sk == null) {
+        throw new SketchesArgumentException("Intersection argument must not be null.");
+      }
+      allOrdered &= sk.isOrdered();
+    }
+    hardReset();
+    final CompactSketch csk;
+    if (allOrdered) {
+      csk = OrderedIntersection.intersect(sketchesIn, seedHash_, dstOrdered, dstMem);
+    } else {
+      for (final Sketch sk : sketchesIn) { intersect(sk); }
+      csk = getResult(dstOrdered, dstMem);
+      hardReset();
+    }
+    return csk;
+  }
+
   @Override
   public CompactSketch getResult(final boolean dstOrdered, final WritableMemory dstMem) {
     if (curCount_ < 0) {
@@ -0,0 +1,95 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.datasketches.theta;
+
+import static org.apache.datasketches.theta.PreambleUtil.extractEntryBitsV4;
+import static org.apache.datasketches.theta.PreambleUtil.extractNumEntriesBytesV4;
+import static org.apache.datasketches.theta.PreambleUtil.extractNumEntriesV4;
+import static org.apache.datasketches.theta.PreambleUtil.extractPreLongs;
+
+import org.apache.datasketches.memory.Memory;
+
+/**
+ * Iterates over the hashes of a compressed (SerVer 4) compact sketch image in ascending order,
+ * decoding the bit-packed deltas on the fly.
+ */
+class MemoryCompressedHashIterator implements HashIterator {
+  private final Memory mem;
+  private final int entryBits;
+  private final int numEntries;
+  private final long endBytes;
+  private long offsetBytes;
+  private long bitBuf;
+  private int bitsInBuf;
+  private int index;
+  private long hash;
+
+  MemoryCompressedHashIterator(final Memory mem) {
+    this.mem = mem;
+    final int preLongs = extractPreLongs(mem);
+    final int numEntriesBytes = extractNumEntriesBytesV4(mem);
+    entryBits = extractEntryBitsV4(mem);
+    numEntries = extractNumEntriesV4(mem, preLongs, numEntriesBytes);
+    offsetBytes = (preLongs << 3) + numEntriesBytes;
+    endBytes = offsetBytes + ((((long) numEntries * entryBits) + 7) >>> 3);
+    index = 0;
+    hash = 0;
+  }
+
+  @Override
+  public long get() {
+    return hash;
+  }
+
+  @Override
+  public boolean next() {
+    if (index >= numEntries) { return false; }
+    index++;
+    if (entryBits <= 32) {
+      hash += readBits(entryBits);
+    } else {
+      final long low = readBits(32);
+      hash += low | (readBits(entryBits - 32) << 32);
+    }
+    return true;
+  }
+
+  //Reads the next n <= 32 bits of the packed stream, least significant bit first
+  private long readBits(final int n) {
+    if (bitsInBuf < n) {
+      if ((offsetBytes + 4) <= endBytes) {
+        bitBuf |= (mem.getInt(offsetBytes) & 0XFFFFFFFFL) << bitsInBuf;
+        offsetBytes += 4;
+        bitsInBuf += 32;
+      } else {
+        while (bitsInBuf < n) {
+          bitBuf |= (mem.getByte(offsetBytes++) & 0XFFL) << bitsInBuf;
+          bitsInBuf += 8;
+        }
+      }
+    }
+    final long bits = bitBuf & ((1L << n) - 1);
+    bitBuf >>>= n;
+    bitsInBuf -= n;
+    return bits;
+  }
+
+}
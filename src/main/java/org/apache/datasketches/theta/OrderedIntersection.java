@@ -0,0 +1,220 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.datasketches.theta;
+
+import static java.lang.Math.min;
+import static org.apache.datasketches.theta.PreambleUtil.extractPreLongs;
+
+import java.util.Arrays;
+
+import org.apache.datasketches.Util;
+import org.apache.datasketches.memory.Memory;
+import org.apache.datasketches.memory.WritableMemory;
+
+/**
+ * A stateless k-way intersection of ordered compact sketches.
+ *
+ * <p>The sorted hash arrays of the inputs are merged with exponential (galloping) search,
+ * driven by the input with the fewest entries below the minimum theta. Each candidate hash of
+ * the smallest input is searched for in the other inputs starting at their previous positions,
+ * and a miss advances the candidate directly to the next larger hash of the input that missed.
+ * The cost is therefore roughly proportional to the size of the smallest input times the log of
+ * the sizes of the others, rather than to the sum of the sizes of all inputs.</p>
+ *
+ * <p>Inputs backed by Memory are read in place, without heapifying their hash arrays.
+ * Compressed inputs are decoded first, because galloping requires random access.</p>
+ */
+final class OrderedIntersection {
+
+  private OrderedIntersection() {}
+
+  /**
+   * Intersects the given ordered compact sketches. The result is the same as that of an
+   * Intersection that was presented with each of the sketches in turn.
+   *
+   * @param sketchesIn the non-null, ordered compact sketches
+   * @param seedHash the seed hash of the intersection
+   * @param dstOrdered
+   * <a href="{@docRoot}/resources/dictionary.html#dstOrdered">See Destination Ordered</a>
+   * @param dstMem
+   * <a href="{@docRoot}/resources/dictionary.html#dstMem">See Destination Memory</a>.
+   * @return the result of the intersection
+   */
+  static CompactSketch intersect(final Sketch[] sketchesIn, final short seedHash,
+      final boolean dstOrdered, final WritableMemory dstMem) {
+    final int numIn = sketchesIn.length;
+    long thetaLong = Long.MAX_VALUE;
+    for (int i = 0; i < numIn; i++) {
+      final Sketch sk = sketchesIn[i];
+      if (sk.isEmpty()) { //empty rule
+        return CompactOperations.componentsToCompact(Long.MAX_VALUE, 0, seedHash, true, true, false,
+            dstOrdered, dstMem, new long[0]);
+      }
+      Util.checkSeedHashes(seedHash, sk.getSeedHash());
+      thetaLong = min(thetaLong, sk.getThetaLong()); //theta rule
+    }
+
+    final long[] matches = intersectHashes(wrapInputs(sketchesIn, numIn, thetaLong),
+        Integer.MAX_VALUE);
+    if ((matches.length == 0) && isEmptyExactPrefix(sketchesIn)) {
+      return CompactOperations.componentsToCompact(Long.MAX_VALUE, 0, seedHash, true, true, false,
+          dstOrdered, dstMem, new long[0]);
+    }
+    return CompactOperations.componentsToCompact(thetaLong, matches.length, seedHash, false, true,
+        true, dstOrdered, dstMem, matches);
+  }
+
+  /**
+   * An intersection of exact sketches that becomes empty stays empty, even if sketches with
+   * theta &lt; 1.0 follow. Returns true if this happens, which is if at least two leading sketches
+   * have theta = 1.0 and retained entries, and these have no hashes in common.
+   * @param sketchesIn the non-empty, ordered compact sketches
+   * @return true if the leading exact sketches have an empty intersection
+   */
+  private static boolean isEmptyExactPrefix(final Sketch[] sketchesIn) {
+    int numExact = 0;
+    while ((numExact < sketchesIn.length)
+        && (sketchesIn[numExact].getThetaLong() == Long.MAX_VALUE)
+        && (sketchesIn[numExact].getRetainedEntries(true) > 0)) {
+      numExact++;
+    }
+    if (numExact < 2) { return false; }
+    if (numExact == sketchesIn.length) { return true; } //the caller found no common hashes
+    return intersectHashes(wrapInputs(sketchesIn, numExact, Long.MAX_VALUE), 1).length == 0;
+  }
+
+  /**
+   * Returns the hashes below theta of the first numIn sketches, ordered by ascending count.
+   * @param sketchesIn the ordered compact sketches
+   * @param numIn the number of leading sketches to wrap
+   * @param thetaLong only hashes below this value are considered
+   * @return the ordered hash arrays of the sketches
+   */
+  private static OrderedHashes[] wrapInputs(final Sketch[] sketchesIn, final int numIn,
+      final long thetaLong) {
+    final OrderedHashes[] inputs = new OrderedHashes[numIn];
+    for (int i = 0; i < numIn; i++) {
+      inputs[i] = new OrderedHashes(sketchesIn[i], thetaLong);
+    }
+    Arrays.sort(inputs);
+    return inputs;
+  }
+
+  /**
+   * Returns the ordered hashes that are common to all of the given inputs.
+   * @param inputs the inputs, ordered by ascending count
+   * @param maxMatches the search stops after this many matches
+   * @return the ordered common hashes
+   */
+  private static long[] intersectHashes(final OrderedHashes[] inputs, final int maxMatches) {
+    final OrderedHashes smallest = inputs[0];
+    final int numIn = inputs.length;
+    final int[] pos = new int[numIn];
+    final long[] matches = new long[min(smallest.count, maxMatches)];
+    int numMatches = 0;
+    outer:
+    while ((pos[0] < smallest.count) && (numMatches < matches.length)) {
+      long candidate = smallest.get(pos[0]);
+      int i = 1;
+      while (i < numIn) {
+        final OrderedHashes in = inputs[i];
+        pos[i] = in.gallop(pos[i], candidate);
+        if (pos[i] >= in.count) { break outer; }
+        final long hash = in.get(pos[i]);
+        if (hash != candidate) { //hash > candidate: skip ahead in the smallest input
+          pos[0] = smallest.gallop(pos[0] + 1, hash);
+          if (pos[0] >= smallest.count) { break outer; }
+          candidate = smallest.get(pos[0]);
+          i = 1;
+          continue;
+        }
+        i++;
+      }
+      matches[numMatches++] = candidate;
+      pos[0]++;
+    }
+    return (numMatches == matches.length) ? matches : Arrays.copyOf(matches, numMatches);
+  }
+
+  /**
+   * The ordered hash array of a compact sketch, either on the heap or read in place from Memory,
+   * truncated to the hashes below a given theta.
+   */
+  private static final class OrderedHashes implements Comparable<OrderedHashes> {
+    private final long[] cache;
+    private final Memory mem;
+    private final long offsetBytes;
+    final int count;
+
+    OrderedHashes(final Sketch sketch, final long thetaLong) {
+      final int retained = sketch.getRetainedEntries(true);
+      if (sketch.hasMemory()) {
+        cache = null;
+        mem = ((CompactSketch) sketch).getMemory();
+        offsetBytes = extractPreLongs(mem) << 3;
+      } else {
+        cache = sketch.getCache(); //not a copy for heap compact sketches, decoded if compressed
+        mem = null;
+        offsetBytes = 0;
+      }
+      count = (thetaLong == Long.MAX_VALUE) ? retained : gallop(0, retained, thetaLong);
+    }
+
+    long get(final int index) {
+      return (cache != null) ? cache[index] : mem.getLong(offsetBytes + ((long) index << 3));
+    }
+
+    /**
+     * Returns the index of the first hash at or after the given start index that is greater than
+     * or equal to the given target, or count if there is none.
+     * @param start the index to start the search at
+     * @param target the hash to search for
+     * @return the index of the first hash greater than or equal to target
+     */
+    int gallop(final int start, final long target) {
+      return gallop(start, count, target);
+    }
+
+    private int gallop(final int start, final int end, final long target) {
+      if ((start >= end) || (get(start) >= target)) { return start; }
+      //get(lo) < target
+      int lo = start;
+      int step = 1;
+      int hi = start + 1;
+      while ((hi < end) && (get(hi) < target)) {
+        lo = hi;
+        step <<= 1;
+        hi = min(start + step, end);
+      }
+      //get(lo) < target <= get(hi), where get(end) is taken as infinity
+      while ((hi - lo) > 1) {
+        final int mid = (lo + hi) >>> 1;
+        if (get(mid) < target) { lo = mid; } else { hi = mid; }
+      }
+      return hi;
+    }
+
+    @Override
+    public int compareTo(final OrderedHashes that) {
+      return Integer.compare(count, that.count);
+    }
+  }
+}
@@ -126,6 +126,26 @@ import org.apache.datasketches.memory.WritableMemory;
  *  3   ||----------------------Start of Hash Table of longs---------------------------------|
  *  </pre>
  *
+ * <p>A compressed CompactSketch (SerVer 4) is always ordered and holds at least one hash; empty
+ * and single item sketches are always serialized as SerVer 3. The preamble is 8 bytes if the
+ * sketch is exact and 16 bytes if it is estimating. It is followed by the number of retained
+ * entries, stored in the fewest whole bytes (1 to 4) that can hold it, and then by the
+ * differences between successive hashes (the first hash taken as the difference to zero),
+ * bit-packed with EntryBits bits each, least significant bit first. The last byte is padded with
+ * zero bits. Flags: notSI, Ordered, Compact, notEmpty, ReadOnly, LE.</p>
+ *
+ * <pre>
+ * Long || Start Byte Adr:
+ * Adr:
+ *      ||    7   |    6   |    5   |    4   |    3   |    2   |    1   |     0              |
+ *  0   ||    Seed Hash    | Flags  |EntrsByt|EntryBit| FamID  | SerVer |  PreLongs = 1, 2   |
+ *
+ *      ||   15   |   14   |   13   |   12   |   11   |   10   |    9   |     8              |
+ *  1   ||------------------------THETA_LONG (estimating only)-------------------------------|
+ *
+ *  PreLongs * 8: Retained Entries Count (EntrsByt bytes), followed by the packed deltas.
+ * </pre>
+ *
  * <p> Union objects require 32 bytes of preamble plus a non-compact array of longs representing a
  * hash table.</p>
  *
@@ -185,8 +205,14 @@ final class PreambleUtil {
   static final int LG_RESIZE_RATIO_BYTE_V1    = 5; //used by SerVer 1
   static final int FLAGS_BYTE_V1              = 6; //used by SerVer 1
 
+  //Compressed compact sketch (SerVer 4) byte addresses
+  static final int ENTRY_BITS_BYTE_V4         = 3; //the bits per packed delta
+  static final int NUM_ENTRIES_BYTES_BYTE_V4  = 4; //the number of bytes of the retained entries
+  static final int THETA_LONG_V4              = 8; //only if preLongs = 2
+
   //Other constants
   static final int SER_VER                    = 3;
+  static final int SER_VER_COMPRESSED         = 4;
 
   static final boolean NATIVE_ORDER_IS_BIG_ENDIAN  =
       (ByteOrder.nativeOrder() == ByteOrder.BIG_ENDIAN);
@@ -228,6 +254,9 @@ final class PreambleUtil {
    */
   static String preambleToString(final Memory mem) {
     final int preLongs = getAndCheckPreLongs(mem);
+    if (extractSerVer(mem) == SER_VER_COMPRESSED) {
+      return compressedPreambleToString(mem, preLongs);
+    }
     final int rfId = extractLgResizeFactor(mem);
     final ResizeFactor rf = ResizeFactor.getRF(rfId);
     final int serVer = extractSerVer(mem);
@@ -339,6 +368,35 @@ final class PreambleUtil {
     return sb.toString();
   }
 
+  private static String compressedPreambleToString(final Memory mem, final int preLongs) {
+    final int flags = extractFlags(mem);
+    final int entryBits = extractEntryBitsV4(mem);
+    final int numEntriesBytes = extractNumEntriesBytesV4(mem);
+    final long thetaLong = (preLongs > 1) ? extractThetaLongV4(mem) : Long.MAX_VALUE;
+    final int curCount = extractNumEntriesV4(mem, preLongs, numEntriesBytes);
+    final long dataBytes = ((long) curCount * entryBits + 7) >>> 3;
+    final StringBuilder sb = new StringBuilder();
+    sb.append(LS);
+    sb.append("### COMPRESSED SKETCH PREAMBLE SUMMARY:").append(LS);
+    sb.append("Byte  0: Preamble Longs       : ").append(preLongs).append(LS);
+    sb.append("Byte  1: Serialization Version: ").append(extractSerVer(mem)).append(LS);
+    sb.append("Byte  2: Family               : ")
+      .append(Family.idToFamily(extractFamilyID(mem)).toString()).append(LS);
+    sb.append("Byte  3: Entry Bits           : ").append(entryBits).append(LS);
+    sb.append("Byte  4: Num Entries Bytes    : ").append(numEntriesBytes).append(LS);
+    sb.append("Byte  5: Flags Field          : ").append(flags + ", 0x")
+      .append(Integer.toHexString(flags)).append(LS);
+    sb.append("Bytes 6-7  : Seed Hash Hex    : ")
+      .append(Integer.toHexString(extractSeedHash(mem))).append(LS);
+    sb.append("Theta (long)                  : ").append(thetaLong).append(LS);
+    sb.append("Retained Entries              : ").append(curCount).append(LS);
+    sb.append("TOTAL Sketch Bytes            : ")
+      .append((preLongs << 3) + numEntriesBytes + dataBytes).append(LS);
+    sb.append("TOTAL Capacity Bytes          : ").append(mem.getCapacity()).append(LS);
+    sb.append("### END COMPRESSED SKETCH PREAMBLE SUMMARY").append(LS);
+    return sb.toString();
+  }
+
   //@formatter:on
 
   static int extractPreLongs(final Memory mem) {
@@ -397,6 +455,34 @@ final class PreambleUtil {
     return mem.getLong(UNION_THETA_LONG);
   }
 
+  static int extractEntryBitsV4(final Memory mem) {
+    return mem.getByte(ENTRY_BITS_BYTE_V4) & 0XFF;
+  }
+
+  static int extractNumEntriesBytesV4(final Memory mem) {
+    return mem.getByte(NUM_ENTRIES_BYTES_BYTE_V4) & 0XFF;
+  }
+
+  static long extractThetaLongV4(final Memory mem) {
+    return mem.getLong(THETA_LONG_V4);
+  }
+
+  /**
+   * Returns the number of retained entries of a compressed (SerVer 4) sketch.
+   * @param mem the given Memory
+   * @param preLongs the preamble longs
+   * @param numEntriesBytes the number of bytes of the retained entries
+   * @return the number of retained entries
+   */
+  static int extractNumEntriesV4(final Memory mem, final int preLongs, final int numEntriesBytes) {
+    final int offsetBytes = preLongs << 3;
+    int numEntries = 0;
+    for (int i = 0; i < numEntriesBytes; i++) {
+      numEntries |= (mem.getByte(offsetBytes + i) & 0XFF) << (i << 3);
+    }
+    return numEntries;
+  }
+
   /**
    * Sets PreLongs in the low 6 bits and sets LgRF in the upper 2 bits = 0.
    * @param wmem the target WritableMemory
@@ -440,6 +526,18 @@ final class PreambleUtil {
     wmem.putByte(FLAGS_BYTE, (byte) flags);
   }
 
+  static void insertEntryBitsV4(final WritableMemory wmem, final int entryBits) {
+    wmem.putByte(ENTRY_BITS_BYTE_V4, (byte) entryBits);
+  }
+
+  static void insertNumEntriesBytesV4(final WritableMemory wmem, final int numEntriesBytes) {
+    wmem.putByte(NUM_ENTRIES_BYTES_BYTE_V4, (byte) numEntriesBytes);
+  }
+
+  static void insertThetaLongV4(final WritableMemory wmem, final long thetaLong) {
+    wmem.putLong(THETA_LONG_V4, thetaLong);
+  }
+
   static void insertSeedHash(final WritableMemory wmem, final int seedHash) {
     wmem.putShort(SEED_HASH_SHORT, (short) seedHash);
   }
@@ -19,7 +19,6 @@
 
 package org.apache.datasketches.theta;
 
-import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.apache.datasketches.ByteArrayUtil.putLongLE;
 import static org.apache.datasketches.Util.DEFAULT_UPDATE_SEED;
 import static org.apache.datasketches.Util.computeSeedHash;
@@ -140,7 +139,7 @@ final class SingleItemSketch extends CompactSketch {
 
   /**
    * Create this sketch with the given String.
-   * The string is converted to a byte array using UTF8 encoding.
+   * The string is hashed as its UTF-8 encoding.
    * If the string is null or empty no create attempt is made and the method returns null.
    *
    * <p>Note: this will not produce the same hash values as the {@link #create(char[])}
@@ -152,8 +151,7 @@ final class SingleItemSketch extends CompactSketch {
    */
   static SingleItemSketch create(final String datum) {
     if ((datum == null) || datum.isEmpty()) { return null; }
-    final byte[] data = datum.getBytes(UTF_8);
-    return new SingleItemSketch(hash(data, DEFAULT_UPDATE_SEED)[0] >>> 1);
+    return new SingleItemSketch(hash(datum, DEFAULT_UPDATE_SEED, new long[2])[0] >>> 1);
   }
 
   /**
@@ -240,7 +238,7 @@ final class SingleItemSketch extends CompactSketch {
 
   /**
    * Create this sketch with the given String and a seed.
-   * The string is converted to a byte array using UTF8 encoding.
+   * The string is hashed as its UTF-8 encoding.
    * If the string is null or empty no create attempt is made and the method returns null.
    *
    * <p>Note: this will not produce the same output hash values as the {@link #create(char[])}
@@ -253,8 +251,7 @@ final class SingleItemSketch extends CompactSketch {
    */
   static SingleItemSketch create(final String datum, final long seed) {
     if ((datum == null) || datum.isEmpty()) { return null; }
-    final byte[] data = datum.getBytes(UTF_8);
-    return new SingleItemSketch(hash(data, seed)[0] >>> 1, seed);
+    return new SingleItemSketch(hash(datum, seed, new long[2])[0] >>> 1, seed);
   }
 
   /**
@@ -34,6 +34,7 @@ import static org.apache.datasketches.theta.PreambleUtil.ORDERED_FLAG_MASK;
 import static org.apache.datasketches.theta.PreambleUtil.PREAMBLE_LONGS_BYTE;
 import static org.apache.datasketches.theta.PreambleUtil.READ_ONLY_FLAG_MASK;
 import static org.apache.datasketches.theta.PreambleUtil.SER_VER_BYTE;
+import static org.apache.datasketches.theta.PreambleUtil.SER_VER_COMPRESSED;
 import static org.apache.datasketches.theta.SingleItemSketch.otherCheckForSingleItem;
 
 import org.apache.datasketches.BinomialBoundsN;
@@ -90,6 +91,10 @@ public abstract class Sketch {
     if (serVer == 2) {
       return ForwardCompatibility.heapify2to3(srcMem, seed);
     }
+    if (serVer == SER_VER_COMPRESSED) {
+      Family.COMPACT.checkFamilyID(srcMem.getByte(FAMILY_BYTE));
+      return DirectCompactCompressedSketch.wrapInstance(srcMem, seed).compact(true, null);
+    }
     throw new SketchesArgumentException("Unknown Serialization Version: " + serVer);
   }
 
@@ -122,6 +127,9 @@ public abstract class Sketch {
    * result in on-heap equivalent forms of empty and single item sketch respectively.
    * This is actually faster and consumes less overall memory.</p>
    *
+   * <p>Compressed compact sketch images (Serialization Version 4), see
+   * {@link CompactSketch#toByteArrayCompressed()}, are wrapped and decoded on the fly.</p>
+   *
    * @param srcMem an image of a Sketch where the image seed hash matches the given seed hash.
    * <a href="{@docRoot}/resources/dictionary.html#mem">See Memory</a>
    * @param seed <a href="{@docRoot}/resources/dictionary.html#seed">See Update Hash Seed</a>.
@@ -170,6 +178,9 @@ public abstract class Sketch {
         else if (serVer == 2) {
           return ForwardCompatibility.heapify2to3(srcMem, seed);
         }
+        else if (serVer == SER_VER_COMPRESSED) {
+          return DirectCompactCompressedSketch.wrapInstance(srcMem, seed);
+        }
         throw new SketchesArgumentException(
             "Corrupted: Serialization Version " + serVer + " not recognized.");
       }
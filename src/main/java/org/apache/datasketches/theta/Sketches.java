@@ -26,7 +26,11 @@ import static org.apache.datasketches.theta.PreambleUtil.FLAGS_BYTE;
 import static org.apache.datasketches.theta.PreambleUtil.PREAMBLE_LONGS_BYTE;
 import static org.apache.datasketches.theta.PreambleUtil.RETAINED_ENTRIES_INT;
 import static org.apache.datasketches.theta.PreambleUtil.SER_VER_BYTE;
+import static org.apache.datasketches.theta.PreambleUtil.SER_VER_COMPRESSED;
 import static org.apache.datasketches.theta.PreambleUtil.THETA_LONG;
+import static org.apache.datasketches.theta.PreambleUtil.extractNumEntriesBytesV4;
+import static org.apache.datasketches.theta.PreambleUtil.extractNumEntriesV4;
+import static org.apache.datasketches.theta.PreambleUtil.extractThetaLongV4;
 
 import org.apache.datasketches.Family;
 import org.apache.datasketches.SketchesArgumentException;
@@ -352,8 +356,11 @@ public final class Sketches {
       }
       return entries;
     }
-    //SerVer 2 or 3
     final int preLongs = getPreambleLongs(srcMem);
+    if (serVer == SER_VER_COMPRESSED) {
+      return extractNumEntriesV4(srcMem, preLongs, extractNumEntriesBytesV4(srcMem));
+    }
+    //SerVer 2 or 3
     final boolean empty = (srcMem.getByte(FLAGS_BYTE) & EMPTY_FLAG_MASK) != 0; //for SerVer 2 & 3
     if (preLongs == 1) {
       return empty ? 0 : 1;
@@ -364,6 +371,9 @@ public final class Sketches {
 
   static long getThetaLong(final Memory srcMem) {
     final int preLongs = getPreambleLongs(srcMem);
+    if (srcMem.getByte(SER_VER_BYTE) == SER_VER_COMPRESSED) {
+      return (preLongs > 1) ? extractThetaLongV4(srcMem) : Long.MAX_VALUE;
+    }
     return (preLongs < 3) ? Long.MAX_VALUE : srcMem.getLong(THETA_LONG); //for SerVer 1,2,3
   }
 
@@ -372,6 +382,9 @@ public final class Sketches {
     if (serVer == 1) {
       return ((getThetaLong(srcMem) == Long.MAX_VALUE) && (getRetainedEntries(srcMem) == 0));
     }
+    if (serVer == SER_VER_COMPRESSED) {
+      return false; //empty sketches are never compressed
+    }
     return (srcMem.getByte(FLAGS_BYTE) & EMPTY_FLAG_MASK) != 0; //for SerVer 2 & 3
   }
 
@@ -19,6 +19,9 @@
 
 package org.apache.datasketches.theta;
 
+import java.util.Collection;
+import java.util.concurrent.ForkJoinPool;
+
 import org.apache.datasketches.Family;
 import org.apache.datasketches.memory.Memory;
 import org.apache.datasketches.memory.WritableMemory;
@@ -112,6 +115,26 @@ public abstract class Union extends SetOperation {
    */
   public abstract void union(Sketch sketchIn);
 
+  /**
+   * Perform a Union operation with <i>this</i> union and all of the given sketches of the Theta
+   * Family, in parallel on the given ForkJoinPool.
+   *
+   * <p>The sketches are partitioned across fork-join tasks, each of which unions its share into a
+   * private union on the heap. The partial results are then reduced and merged into <i>this</i>
+   * union. The tasks share a running minimum theta, so the scan of each ordered compact sketch
+   * stops at the smallest theta seen by any task so far. The result is the same as calling
+   * {@link #union(Sketch)} with each of the sketches in turn.</p>
+   *
+   * <p>Small collections are unioned on the calling thread.
+   * The sketches must not be modified while this method is running.</p>
+   *
+   * <p>Nulls and empty sketches are ignored.</p>
+   *
+   * @param sketches the incoming sketches
+   * @param pool the ForkJoinPool that runs the tasks. If null, the common pool is used.
+   */
+  public abstract void unionAll(Collection<? extends Sketch> sketches, ForkJoinPool pool);
+
 
   /**
    * Perform a Union operation with <i>this</i> union and the given on-heap sketch of the Theta Family.
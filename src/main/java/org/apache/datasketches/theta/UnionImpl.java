@@ -26,6 +26,7 @@ import static org.apache.datasketches.Util.computeSeedHash;
 import static org.apache.datasketches.theta.PreambleUtil.COMPACT_FLAG_MASK;
 import static org.apache.datasketches.theta.PreambleUtil.ORDERED_FLAG_MASK;
 import static org.apache.datasketches.theta.PreambleUtil.PREAMBLE_LONGS_BYTE;
+import static org.apache.datasketches.theta.PreambleUtil.SER_VER_COMPRESSED;
 import static org.apache.datasketches.theta.PreambleUtil.UNION_THETA_LONG;
 import static org.apache.datasketches.theta.PreambleUtil.clearEmpty;
 import static org.apache.datasketches.theta.PreambleUtil.extractCurCount;
@@ -40,6 +41,11 @@ import static org.apache.datasketches.theta.PreambleUtil.extractUnionThetaLong;
 import static org.apache.datasketches.theta.PreambleUtil.insertUnionThetaLong;
 import static org.apache.datasketches.theta.SingleItemSketch.otherCheckForSingleItem;
 
+import java.util.Collection;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
+
 import org.apache.datasketches.Family;
 import org.apache.datasketches.HashOperations;
 import org.apache.datasketches.ResizeFactor;
@@ -57,6 +63,11 @@ import org.apache.datasketches.memory.WritableMemory;
  */
 final class UnionImpl extends Union {
 
+  //The minimum number of sketches unioned by one task of unionAll(...)
+  static final int MIN_PARALLEL_LEAF_SIZE = 64;
+  //The number of leaf tasks of unionAll(...) per worker thread, for load balancing
+  private static final int LEAVES_PER_THREAD = 4;
+
   /**
    * Although the gadget object is initially an UpdateSketch, in the context of a Union it is used
    * as a specialized buffer that happens to leverage much of the machinery of an UpdateSketch.
@@ -346,6 +357,24 @@ final class UnionImpl extends Union {
     }
   }
 
+  @Override
+  public void unionAll(final Collection<? extends Sketch> sketches, final ForkJoinPool pool) {
+    if ((sketches == null) || sketches.isEmpty()) { return; }
+    final Sketch[] sketchesIn = sketches.toArray(new Sketch[0]);
+    final int numIn = sketchesIn.length;
+    final ForkJoinPool fjPool = (pool == null) ? ForkJoinPool.commonPool() : pool;
+    final int numLeaves = fjPool.getParallelism() * LEAVES_PER_THREAD;
+    final int leafSize = Math.max(MIN_PARALLEL_LEAF_SIZE, ((numIn + numLeaves) - 1) / numLeaves);
+    if (numIn <= leafSize) {
+      for (int i = 0; i < numIn; i++) { union(sketchesIn[i]); }
+      return;
+    }
+    final AtomicLong runningThetaLong = new AtomicLong(getThetaLong());
+    final UnionTask task = new UnionTask(sketchesIn, 0, numIn, leafSize,
+        gadget_.getLgNomLongs(), gadget_.getSeed(), gadget_.getP(), runningThetaLong);
+    union(fjPool.invoke(task));
+  }
+
   @Deprecated
   @Override
   public void update(final Memory skMem) {
@@ -369,6 +398,12 @@ final class UnionImpl extends Union {
       return;
     }
 
+    if (serVer == SER_VER_COMPRESSED) { //compressed compact and ordered
+      Family.COMPACT.checkFamilyID(fam);
+      union(new DirectCompactCompressedSketch(skMem)); //checks the seed hash
+      return;
+    }
+
     if (serVer == 2) { //older Sketch, which is compact and ordered
       Util.checkSeedHashes(seedHash_, (short)extractSeedHash(skMem));
       final CompactSketch csk = ForwardCompatibility.heapify2to3(skMem, DEFAULT_UPDATE_SEED);
@@ -512,4 +547,77 @@ final class UnionImpl extends Union {
     return gadget_.isEmpty() && unionEmpty_;
   }
 
+  /**
+   * Lowers the given running theta to the given thetaLong, if it is smaller.
+   * @param runningThetaLong the running minimum theta shared by the tasks of unionAll(...)
+   * @param thetaLong the theta of one of the tasks
+   */
+  private static void lowerRunningTheta(final AtomicLong runningThetaLong, final long thetaLong) {
+    long cur;
+    while ((thetaLong < (cur = runningThetaLong.get()))
+        && !runningThetaLong.compareAndSet(cur, thetaLong)) { } //retry
+  }
+
+  /**
+   * Unions a range of the input sketches of unionAll(...) into a private heap union and returns
+   * its result. Ranges larger than the leaf size are split in two halves, which are reduced by
+   * a union of their two results.
+   *
+   * <p>Before each sketch is unioned the private union theta is lowered to the running minimum
+   * theta of all tasks, which is never less than the theta of the final result. All hashes
+   * that can appear in the final result are therefore retained, while the scan of an ordered
+   * sketch stops as early as the union theta of any task allows.</p>
+   */
+  private static final class UnionTask extends RecursiveTask<CompactSketch> {
+    private static final long serialVersionUID = 1L;
+    private final Sketch[] sketchesIn;
+    private final int lo;
+    private final int hi;
+    private final int leafSize;
+    private final int lgNomLongs;
+    private final long seed;
+    private final float p;
+    private final AtomicLong runningThetaLong;
+
+    UnionTask(final Sketch[] sketchesIn, final int lo, final int hi, final int leafSize,
+        final int lgNomLongs, final long seed, final float p, final AtomicLong runningThetaLong) {
+      this.sketchesIn = sketchesIn;
+      this.lo = lo;
+      this.hi = hi;
+      this.leafSize = leafSize;
+      this.lgNomLongs = lgNomLongs;
+      this.seed = seed;
+      this.p = p;
+      this.runningThetaLong = runningThetaLong;
+    }
+
+    @Override
+    protected CompactSketch compute() {
+      final UnionImpl union = initNewHeapInstance(lgNomLongs, seed, p, ResizeFactor.X8);
+      if ((hi - lo) <= leafSize) {
+        for (int i = lo; i < hi; i++) {
+          unionWithRunningTheta(union, sketchesIn[i]);
+        }
+      } else {
+        final int mid = (lo + hi) >>> 1;
+        final UnionTask left =
+            new UnionTask(sketchesIn, lo, mid, leafSize, lgNomLongs, seed, p, runningThetaLong);
+        final UnionTask right =
+            new UnionTask(sketchesIn, mid, hi, leafSize, lgNomLongs, seed, p, runningThetaLong);
+        left.fork();
+        final CompactSketch rightResult = right.compute();
+        unionWithRunningTheta(union, left.join());
+        unionWithRunningTheta(union, rightResult);
+      }
+      return union.getResult(true, null);
+    }
+
+    private void unionWithRunningTheta(final UnionImpl union, final Sketch sketchIn) {
+      if ((sketchIn == null) || sketchIn.isEmpty()) { return; }
+      union.unionThetaLong_ = min(union.unionThetaLong_, runningThetaLong.get());
+      union.union(sketchIn);
+      lowerRunningTheta(runningThetaLong, union.unionThetaLong_);
+    }
+  }
+
 }
@@ -19,7 +19,6 @@
 
 package org.apache.datasketches.theta;
 
-import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.apache.datasketches.Util.DEFAULT_UPDATE_SEED;
 import static org.apache.datasketches.Util.LONG_MAX_VALUE_AS_DOUBLE;
 import static org.apache.datasketches.Util.MIN_LG_NOM_LONGS;
@@ -43,12 +42,17 @@ import static org.apache.datasketches.theta.PreambleUtil.extractP;
 import static org.apache.datasketches.theta.PreambleUtil.extractSerVer;
 import static org.apache.datasketches.theta.PreambleUtil.extractThetaLong;
 import static org.apache.datasketches.theta.PreambleUtil.getMemBytes;
+import static org.apache.datasketches.theta.UpdateReturnState.RejectedDuplicate;
 import static org.apache.datasketches.theta.UpdateReturnState.RejectedNullOrEmpty;
+import static org.apache.datasketches.theta.UpdateReturnState.RejectedOverTheta;
+
+import java.nio.ByteBuffer;
 
 import org.apache.datasketches.Family;
 import org.apache.datasketches.ResizeFactor;
 import org.apache.datasketches.SketchesArgumentException;
 import org.apache.datasketches.memory.Memory;
+import org.apache.datasketches.memory.UnsafeUtil;
 import org.apache.datasketches.memory.WritableMemory;
 
 /**
@@ -59,6 +63,14 @@ import org.apache.datasketches.memory.WritableMemory;
  * @author Lee Rhodes
  */
 public abstract class UpdateSketch extends Sketch {
+  //Reusable output of the update hash, so that the update path does not allocate.
+  private final long[] hashOut = new long[2];
+
+  //Number of hashes computed ahead of being filtered and inserted by the batch update methods.
+  static final int HASH_BATCH_SIZE = 1024;
+
+  //Reusable hash buffer of the batch update methods, allocated on first use.
+  private long[] hashBuf;
 
   UpdateSketch() {}
 
@@ -208,8 +220,7 @@ public abstract class UpdateSketch extends Sketch {
    * <a href="{@docRoot}/resources/dictionary.html#updateReturnState">See Update Return State</a>
    */
   public UpdateReturnState update(final long datum) {
-    final long[] data = { datum };
-    return hashUpdate(hash(data, getSeed())[0] >>> 1);
+    return hashUpdate(hash(datum, getSeed(), getHashOut())[0] >>> 1);
   }
 
   /**
@@ -225,13 +236,13 @@ public abstract class UpdateSketch extends Sketch {
    */
   public UpdateReturnState update(final double datum) {
     final double d = (datum == 0.0) ? 0.0 : datum; // canonicalize -0.0, 0.0
-    final long[] data = { Double.doubleToLongBits(d) };// canonicalize all NaN forms
-    return hashUpdate(hash(data, getSeed())[0] >>> 1);
+    final long data = Double.doubleToLongBits(d);// canonicalize all NaN forms
+    return hashUpdate(hash(data, getSeed(), getHashOut())[0] >>> 1);
   }
 
   /**
    * Present this sketch with the given String.
-   * The string is converted to a byte array using UTF8 encoding.
+   * The string is hashed as its UTF-8 encoding, see {@link #update(CharSequence)}.
    * If the string is null or empty no update attempt is made and the method returns.
    *
    * <p>Note: this will not produce the same output hash values as the {@link #update(char[])}
@@ -243,11 +254,25 @@ public abstract class UpdateSketch extends Sketch {
    * <a href="{@docRoot}/resources/dictionary.html#updateReturnState">See Update Return State</a>
    */
   public UpdateReturnState update(final String datum) {
-    if ((datum == null) || datum.isEmpty()) {
+    return update((CharSequence) datum);
+  }
+
+  /**
+   * Present this sketch with the given CharSequence, such as a String or a StringBuilder.
+   * The UTF-8 encoding of the characters is streamed into the hash without creating a byte array,
+   * and produces the same result as {@link #update(byte[])} given the UTF-8 bytes of the
+   * CharSequence. So updating with a StringBuilder is the same as updating with its String.
+   * If the CharSequence is null or empty no update attempt is made and the method returns.
+   *
+   * @param datum The given CharSequence.
+   * @return
+   * <a href="{@docRoot}/resources/dictionary.html#updateReturnState">See Update Return State</a>
+   */
+  public UpdateReturnState update(final CharSequence datum) {
+    if ((datum == null) || (datum.length() == 0)) {
       return RejectedNullOrEmpty;
     }
-    final byte[] data = datum.getBytes(UTF_8);
-    return hashUpdate(hash(data, getSeed())[0] >>> 1);
+    return hashUpdate(hash(datum, getSeed(), getHashOut())[0] >>> 1);
   }
 
   /**
@@ -262,7 +287,7 @@ public abstract class UpdateSketch extends Sketch {
     if ((data == null) || (data.length == 0)) {
       return RejectedNullOrEmpty;
     }
-    return hashUpdate(hash(data, getSeed())[0] >>> 1);
+    return hashUpdate(hash(data, getSeed(), getHashOut())[0] >>> 1);
   }
 
   /**
@@ -280,7 +305,7 @@ public abstract class UpdateSketch extends Sketch {
     if ((data == null) || (data.length == 0)) {
       return RejectedNullOrEmpty;
     }
-    return hashUpdate(hash(data, getSeed())[0] >>> 1);
+    return hashUpdate(hash(data, getSeed(), getHashOut())[0] >>> 1);
   }
 
   /**
@@ -295,7 +320,7 @@ public abstract class UpdateSketch extends Sketch {
     if ((data == null) || (data.length == 0)) {
       return RejectedNullOrEmpty;
     }
-    return hashUpdate(hash(data, getSeed())[0] >>> 1);
+    return hashUpdate(hash(data, getSeed(), getHashOut())[0] >>> 1);
   }
 
   /**
@@ -310,11 +335,211 @@ public abstract class UpdateSketch extends Sketch {
     if ((data == null) || (data.length == 0)) {
       return RejectedNullOrEmpty;
     }
-    return hashUpdate(hash(data, getSeed())[0] >>> 1);
+    return hashUpdate(hash(data, getSeed(), getHashOut())[0] >>> 1);
+  }
+
+  /**
+   * Present this sketch with the given region of Memory as a single datum.
+   * The region is hashed in place, without copying or allocation, and produces the same result as
+   * {@link #update(byte[])} given a byte array with the same contents.
+   * If the Memory is null or the length is zero no update attempt is made and the method returns.
+   *
+   * @param mem the given Memory
+   * @param offsetBytes the offset in bytes of the region within the Memory
+   * @param lengthBytes the length in bytes of the region
+   * @return
+   * <a href="{@docRoot}/resources/dictionary.html#updateReturnState">See Update Return State</a>
+   */
+  public UpdateReturnState update(final Memory mem, final long offsetBytes, final long lengthBytes) {
+    if ((mem == null) || (lengthBytes == 0)) {
+      return RejectedNullOrEmpty;
+    }
+    return hashUpdate(hash(mem, offsetBytes, lengthBytes, getSeed(), getHashOut())[0] >>> 1);
+  }
+
+  /**
+   * Present this sketch with the given region of a ByteBuffer as a single datum.
+   * The region is hashed in place, without copying or allocation, and produces the same result as
+   * {@link #update(byte[])} given a byte array with the same contents, regardless of the byte
+   * order of the ByteBuffer. The position and limit of the ByteBuffer are not changed.
+   * If the ByteBuffer is null or the length is zero no update attempt is made and the method
+   * returns.
+   *
+   * @param buf the given ByteBuffer
+   * @param offset the absolute index of the first byte of the region within the ByteBuffer
+   * @param length the length in bytes of the region
+   * @return
+   * <a href="{@docRoot}/resources/dictionary.html#updateReturnState">See Update Return State</a>
+   */
+  public UpdateReturnState update(final ByteBuffer buf, final int offset, final int length) {
+    if ((buf == null) || (length == 0)) {
+      return RejectedNullOrEmpty;
+    }
+    return hashUpdate(hash(buf, offset, length, getSeed(), getHashOut())[0] >>> 1);
+  }
+
+  /**
+   * Present this sketch with each of the given longs as a separate datum.
+   * The resulting sketch is identical to calling {@link #update(long)} on each value in order,
+   * but the batch is hashed first and the hashes rejected by theta are dropped in a single pass
+   * before the hash table is touched.
+   *
+   * <p>Note: this is different from {@link #update(long[])}, which presents the entire array as
+   * a single datum.</p>
+   *
+   * @param values the array containing the long values
+   * @param offset the index of the first value to present
+   * @param length the number of values to present
+   * @return the number of values inserted into the sketch. The remaining
+   * <i>length</i> minus this number were rejected either by theta or as duplicates.
+   */
+  public int batchUpdate(final long[] values, final int offset, final int length) {
+    UnsafeUtil.checkBounds(offset, length, values.length);
+    final long seed = getSeed();
+    final long[] hashes = getHashBuffer();
+    final long[] hashScratch = getHashOut();
+    int inserted = 0;
+    for (int start = 0; start < length; start += HASH_BATCH_SIZE) {
+      final int count = Math.min(HASH_BATCH_SIZE, length - start);
+      final int base = offset + start;
+      for (int i = 0; i < count; i++) {
+        hashes[i] = hash(values[base + i], seed, hashScratch)[0] >>> 1;
+      }
+      inserted += hashBatchUpdate(hashes, count);
+    }
+    return inserted;
+  }
+
+  /**
+   * Present this sketch with each of the given ints as a separate datum.
+   * The resulting sketch is identical to calling {@link #update(long)} on each value, widened to a
+   * long, in order. See {@link #batchUpdate(long[], int, int)}.
+   *
+   * @param values the array containing the int values
+   * @param offset the index of the first value to present
+   * @param length the number of values to present
+   * @return the number of values inserted into the sketch
+   */
+  public int batchUpdate(final int[] values, final int offset, final int length) {
+    UnsafeUtil.checkBounds(offset, length, values.length);
+    final long seed = getSeed();
+    final long[] hashes = getHashBuffer();
+    final long[] hashScratch = getHashOut();
+    int inserted = 0;
+    for (int start = 0; start < length; start += HASH_BATCH_SIZE) {
+      final int count = Math.min(HASH_BATCH_SIZE, length - start);
+      final int base = offset + start;
+      for (int i = 0; i < count; i++) {
+        hashes[i] = hash(values[base + i], seed, hashScratch)[0] >>> 1;
+      }
+      inserted += hashBatchUpdate(hashes, count);
+    }
+    return inserted;
+  }
+
+  /**
+   * Present this sketch with each of the given doubles as a separate datum.
+   * The resulting sketch is identical to calling {@link #update(double)} on each value in order.
+   * See {@link #batchUpdate(long[], int, int)}.
+   *
+   * @param values the array containing the double values
+   * @param offset the index of the first value to present
+   * @param length the number of values to present
+   * @return the number of values inserted into the sketch
+   */
+  public int batchUpdate(final double[] values, final int offset, final int length) {
+    UnsafeUtil.checkBounds(offset, length, values.length);
+    final long seed = getSeed();
+    final long[] hashes = getHashBuffer();
+    final long[] hashScratch = getHashOut();
+    int inserted = 0;
+    for (int start = 0; start < length; start += HASH_BATCH_SIZE) {
+      final int count = Math.min(HASH_BATCH_SIZE, length - start);
+      final int base = offset + start;
+      for (int i = 0; i < count; i++) {
+        final double d = values[base + i];
+        final long data = Double.doubleToLongBits((d == 0.0) ? 0.0 : d);
+        hashes[i] = hash(data, seed, hashScratch)[0] >>> 1;
+      }
+      inserted += hashBatchUpdate(hashes, count);
+    }
+    return inserted;
+  }
+
+  /**
+   * Present this sketch with each of the longs packed in the given Memory region as a separate
+   * datum. The resulting sketch is identical to calling {@link #update(long)} on each
+   * <i>mem.getLong(offsetBytes + i * 8)</i> in order. See {@link #batchUpdate(long[], int, int)}.
+   *
+   * @param mem the Memory containing the packed long values
+   * @param offsetBytes the offset in bytes of the first value to present
+   * @param length the number of long values to present
+   * @return the number of values inserted into the sketch
+   */
+  public int batchUpdate(final Memory mem, final long offsetBytes, final int length) {
+    UnsafeUtil.checkBounds(offsetBytes, (long) length << 3, mem.getCapacity());
+    final long seed = getSeed();
+    final long[] hashes = getHashBuffer();
+    final long[] hashScratch = getHashOut();
+    int inserted = 0;
+    for (int start = 0; start < length; start += HASH_BATCH_SIZE) {
+      final int count = Math.min(HASH_BATCH_SIZE, length - start);
+      final long base = offsetBytes + ((long) start << 3);
+      for (int i = 0; i < count; i++) {
+        hashes[i] = hash(mem.getLong(base + ((long) i << 3)), seed, hashScratch)[0] >>> 1;
+      }
+      inserted += hashBatchUpdate(hashes, count);
+    }
+    return inserted;
   }
 
   //restricted methods
 
+  /**
+   * Inserts hashes[0, count) in order with the same result as calling hashUpdate() on each.
+   * The first hash always goes through hashUpdate(), which clears the empty state and enforces
+   * read-only or shared access. The rest are first compacted, without branching, to those below
+   * the current theta. Theta only decreases, so this never drops a hash that hashUpdate() would
+   * have accepted.
+   *
+   * @param hashes the hash buffer, which is overwritten
+   * @param count the number of hashes in the buffer, which must be at least one
+   * @return the number of hashes inserted
+   */
+  int hashBatchUpdate(final long[] hashes, final int count) {
+    int inserted = isRejected(hashUpdate(hashes[0])) ? 0 : 1;
+    final long thetaLong = getThetaLong();
+    int kept = 0;
+    for (int i = 1; i < count; i++) {
+      final long hash = hashes[i];
+      hashes[kept] = hash;
+      //advance only if 0 < hash < thetaLong, the complement of HashOperations.continueCondition()
+      kept += (int) ((((hash - 1L) | (thetaLong - hash - 1L)) >>> 63) ^ 1L);
+    }
+    for (int i = 0; i < kept; i++) {
+      if (!isRejected(hashUpdate(hashes[i]))) { inserted++; }
+    }
+    return inserted;
+  }
+
+  //Returns the scratch output array of the update hash.
+  //Sketches that are updated by several threads at once must override this.
+  long[] getHashOut() {
+    return hashOut;
+  }
+
+  //Returns the hash buffer of the batch update methods.
+  //Sketches that are updated by several threads at once must override this.
+  long[] getHashBuffer() {
+    if (hashBuf == null) { hashBuf = new long[HASH_BATCH_SIZE]; }
+    return hashBuf;
+  }
+
+  private static boolean isRejected(final UpdateReturnState state) {
+    return (state == RejectedDuplicate) || (state == RejectedOverTheta)
+        || (state == RejectedNullOrEmpty);
+  }
+
   /**
    * All potential updates converge here.
    * <p>Don't ever call this unless you really know what you are doing!</p>
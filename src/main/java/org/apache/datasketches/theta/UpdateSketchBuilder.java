@@ -28,6 +28,8 @@ import static org.apache.datasketches.Util.TAB;
 import static org.apache.datasketches.Util.ceilingPowerOf2;
 import static org.apache.datasketches.Util.checkNomLongs;
 
+import java.util.concurrent.Executor;
+
 import org.apache.datasketches.Family;
 import org.apache.datasketches.ResizeFactor;
 import org.apache.datasketches.SketchesArgumentException;
@@ -48,6 +50,7 @@ public class UpdateSketchBuilder {
   private Family bFam;
   private float bP;
   private MemoryRequestServer bMemReqSvr;
+  private boolean bIncrementalRebuild;
 
   //Fields for concurrent theta sketch
   private int bNumPoolThreads;
@@ -55,6 +58,7 @@ public class UpdateSketchBuilder {
   private boolean bPropagateOrderedCompact;
   private double bMaxConcurrencyError;
   private int bMaxNumLocalThreads;
+  private ConcurrentPropagationService bPropagationService;
 
   /**
    * Constructor for building a new UpdateSketch. The default configuration is
@@ -68,6 +72,7 @@ public class UpdateSketchBuilder {
    * be fixed at either {@link ResizeFactor#X1} or {@link ResizeFactor#X2}.</li>
    * <li>MemoryRequestServer (Direct only):
    * {@link org.apache.datasketches.memory.DefaultMemoryRequestServer}.</li>
+   * <li>Incremental Rebuild (QuickSelect on the Java heap only): false</li>
    * </ul>
    * Parameters unique to the concurrent sketches only:
    * <ul>
@@ -75,6 +80,7 @@ public class UpdateSketchBuilder {
    * <li>Concurrent NumPoolThreads: 3</li>
    * <li>Concurrent PropagateOrderedCompact: true</li>
    * <li>Concurrent MaxConcurrencyError: 0</li>
+   * <li>Concurrent PropagationService: {@link ConcurrentPropagationService#getDefaultService()}</li>
    * </ul>
    */
   public UpdateSketchBuilder() {
@@ -84,12 +90,14 @@ public class UpdateSketchBuilder {
     bRF = ResizeFactor.X8;
     bFam = Family.QUICKSELECT;
     bMemReqSvr = new DefaultMemoryRequestServer();
+    bIncrementalRebuild = false;
     // Default values for concurrent sketch
     bNumPoolThreads = ConcurrentPropagationService.NUM_POOL_THREADS;
     bLocalLgNomLongs = 4; //default is smallest legal QS sketch
     bPropagateOrderedCompact = true;
     bMaxConcurrencyError = 0;
     bMaxNumLocalThreads = 1;
+    bPropagationService = null; //the default service, resolved when a shared sketch is built
   }
 
   /**
@@ -270,6 +278,36 @@ public class UpdateSketchBuilder {
     return bMemReqSvr;
   }
 
+  /**
+   * Sets the incremental rebuild mode of QuickSelect sketches on the Java heap.
+   *
+   * <p>When the hash table of a QuickSelect sketch fills up, theta is lowered and the table is
+   * rebuilt, which by default is done in one step by the update that fills it. With large sketches
+   * this can take long enough to be visible in the tail latency of updates. In the incremental
+   * mode theta is lowered at once, using a sample of the hash table, and the retained entries are
+   * then moved into the rebuilt table a few at a time by the subsequent updates. Queries and
+   * serialization complete any pending rebuild first, so they always see a consistent sketch.
+   * Because theta is chosen from a sample, the number of retained entries after a rebuild is close
+   * to, but not exactly, the nominal entries.</p>
+   *
+   * <p>This mode is not available for direct sketches or for the Alpha family.</p>
+   *
+   * @param incrementalRebuild true to spread rebuilds across subsequent updates
+   * @return this UpdateSketchBuilder
+   */
+  public UpdateSketchBuilder setIncrementalRebuild(final boolean incrementalRebuild) {
+    bIncrementalRebuild = incrementalRebuild;
+    return this;
+  }
+
+  /**
+   * Returns true if the incremental rebuild mode is set.
+   * @return true if the incremental rebuild mode is set
+   */
+  public boolean getIncrementalRebuild() {
+    return bIncrementalRebuild;
+  }
+
   /**
    * Sets the number of pool threads used for background propagation in the concurrent sketches.
    * @param numPoolThreads the given number of pool threads
@@ -286,6 +324,40 @@ public class UpdateSketchBuilder {
     return bNumPoolThreads;
   }
 
+  /**
+   * Sets the service that runs the background propagation tasks of the concurrent shared sketches
+   * built from now on. If not set, or set to null, the
+   * {@link ConcurrentPropagationService#getDefaultService() default service} is used.
+   * @param propagationService the given ConcurrentPropagationService
+   * @return this UpdateSketchBuilder
+   */
+  public UpdateSketchBuilder setPropagationService(
+      final ConcurrentPropagationService propagationService) {
+    bPropagationService = propagationService;
+    return this;
+  }
+
+  /**
+   * Sets the caller-owned Executor that runs the background propagation tasks of the concurrent
+   * shared sketches built from now on. This is the same as
+   * <i>setPropagationService(ConcurrentPropagationService.create(executor))</i>.
+   * @param executor the given Executor
+   * @return this UpdateSketchBuilder
+   */
+  public UpdateSketchBuilder setPropagationExecutor(final Executor executor) {
+    bPropagationService = ConcurrentPropagationService.create(executor);
+    return this;
+  }
+
+  /**
+   * Gets the service that runs the background propagation tasks of the concurrent shared sketches,
+   * or null if the default service is used.
+   * @return the ConcurrentPropagationService, or null
+   */
+  public ConcurrentPropagationService getPropagationService() {
+    return bPropagationService;
+  }
+
   /**
    * Sets the Propagate Ordered Compact flag to the given value. Used with concurrent sketches.
    *
@@ -359,6 +431,10 @@ public class UpdateSketchBuilder {
     UpdateSketch sketch = null;
     switch (bFam) {
       case ALPHA: {
+        if (bIncrementalRebuild) {
+          throw new SketchesArgumentException(
+              "Incremental rebuild is not supported by the Alpha family.");
+        }
         if (dstMem == null) {
           sketch = HeapAlphaSketch.newHeapInstance(bLgNomLongs, bSeed, bP, bRF);
         }
@@ -369,9 +445,14 @@ public class UpdateSketchBuilder {
       }
       case QUICKSELECT: {
         if (dstMem == null) {
-          sketch =  new HeapQuickSelectSketch(bLgNomLongs, bSeed, bP, bRF, false);
+          sketch =  new HeapQuickSelectSketch(bLgNomLongs, bSeed, bP, bRF, false,
+              bIncrementalRebuild);
         }
         else {
+          if (bIncrementalRebuild) {
+            throw new SketchesArgumentException(
+                "Incremental rebuild is only supported by sketches on the Java heap.");
+          }
           sketch = new DirectQuickSelectSketch(
               bLgNomLongs, bSeed, bP, bRF, bMemReqSvr, dstMem, false);
         }
@@ -393,6 +474,7 @@ public class UpdateSketchBuilder {
    * <ul>
    * <li>Number of Pool Threads (default is 3)</li>
    * <li>Maximum Concurrency Error</li>
+   * <li>Propagation Service (default is the default service)</li>
    * </ul>
    *
    * <p>Key parameters that are in common with other <i>Theta</i> sketches:
@@ -415,6 +497,7 @@ public class UpdateSketchBuilder {
    * <ul>
    * <li>Number of Pool Threads (default is 3)</li>
    * <li>Maximum Concurrency Error</li>
+   * <li>Propagation Service (default is the default service)</li>
    * </ul>
    *
    * <p>Key parameters that are in common with other <i>Theta</i> sketches:
@@ -428,11 +511,12 @@ public class UpdateSketchBuilder {
    * and the given destination WritableMemory.
    */
   public UpdateSketch buildShared(final WritableMemory dstMem) {
-    ConcurrentPropagationService.NUM_POOL_THREADS = bNumPoolThreads;
+    final ConcurrentPropagationService service = getSharedPropagationService();
     if (dstMem == null) {
-      return new ConcurrentHeapQuickSelectSketch(bLgNomLongs, bSeed, bMaxConcurrencyError);
+      return new ConcurrentHeapQuickSelectSketch(bLgNomLongs, bSeed, bMaxConcurrencyError, service);
     } else {
-      return new ConcurrentDirectQuickSelectSketch(bLgNomLongs, bSeed, bMaxConcurrencyError, dstMem);
+      return new ConcurrentDirectQuickSelectSketch(bLgNomLongs, bSeed, bMaxConcurrencyError, service,
+          dstMem);
     }
   }
 
@@ -446,6 +530,7 @@ public class UpdateSketchBuilder {
    * <ul>
    * <li>Number of Pool Threads (default is 3)</li>
    * <li>Maximum Concurrency Error</li>
+   * <li>Propagation Service (default is the default service)</li>
    * </ul>
    *
    * <p>Key parameters that are in common with other <i>Theta</i> sketches:
@@ -461,14 +546,45 @@ public class UpdateSketchBuilder {
    * and the given destination WritableMemory.
    */
   public UpdateSketch buildSharedFromSketch(final UpdateSketch sketch, final WritableMemory dstMem) {
-    ConcurrentPropagationService.NUM_POOL_THREADS = bNumPoolThreads;
+    final ConcurrentPropagationService service = getSharedPropagationService();
     if (dstMem == null) {
-      return new ConcurrentHeapQuickSelectSketch(sketch, bSeed, bMaxConcurrencyError);
+      return new ConcurrentHeapQuickSelectSketch(sketch, bSeed, bMaxConcurrencyError, service);
     } else {
-      return new ConcurrentDirectQuickSelectSketch(sketch, bSeed, bMaxConcurrencyError, dstMem);
+      return new ConcurrentDirectQuickSelectSketch(sketch, bSeed, bMaxConcurrencyError, service,
+          dstMem);
     }
   }
 
+  /**
+   * Returns a concurrent shared UpdateSketch that any number of threads may update directly,
+   * with the current configuration of the Builder. No local buffers or propagation threads are
+   * used: hashes below theta are inserted into the hash table in the WritableMemory with
+   * compare-and-swap, and theta is lowered only when the table must be rebuilt.
+   *
+   * <p>Key parameters that are in common with other <i>Theta</i> sketches:
+   * <ul>
+   * <li>Nominal Entries or Log Nominal Entries</li>
+   * <li>Seed</li>
+   * <li>Input Sampling Probability</li>
+   * </ul>
+   *
+   * @param dstMem the given WritableMemory for the full size hash table, or <i>null</i>, in which
+   * case it is allocated on the Java heap.
+   * @return a concurrent UpdateSketch that may be updated by many threads at once.
+   */
+  public UpdateSketch buildSharedCas(final WritableMemory dstMem) {
+    final WritableMemory wmem = (dstMem == null)
+        ? WritableMemory.allocate(Sketch.getMaxUpdateSketchBytes(1 << bLgNomLongs))
+        : dstMem;
+    return new ConcurrentCasQuickSelectSketch(bLgNomLongs, bSeed, bP, wmem);
+  }
+
+  private ConcurrentPropagationService getSharedPropagationService() {
+    if (bPropagationService != null) { return bPropagationService; }
+    ConcurrentPropagationService.NUM_POOL_THREADS = bNumPoolThreads;
+    return ConcurrentPropagationService.getDefaultService();
+  }
+
   /**
    * Returns a local, on-heap, concurrent UpdateSketch to be used as a per-thread local buffer
    * along with the given concurrent shared UpdateSketch and the current configuration of this
@@ -505,10 +621,13 @@ public class UpdateSketchBuilder {
     sb.append("Family:").append(TAB).append(bFam).append(LS);
     final String mrsStr = bMemReqSvr.getClass().getSimpleName();
     sb.append("MemoryRequestServer:").append(TAB).append(mrsStr).append(LS);
+    sb.append("IncrementalRebuild:").append(TAB).append(bIncrementalRebuild).append(LS);
     sb.append("Propagate Ordered Compact").append(TAB).append(bPropagateOrderedCompact).append(LS);
     sb.append("NumPoolThreads").append(TAB).append(bNumPoolThreads).append(LS);
     sb.append("MaxConcurrencyError").append(TAB).append(bMaxConcurrencyError).append(LS);
     sb.append("MaxNumLocalThreads").append(TAB).append(bMaxNumLocalThreads).append(LS);
+    final String psStr = (bPropagationService == null) ? "default" : "custom";
+    sb.append("PropagationService").append(TAB).append(psStr).append(LS);
     return sb.toString();
   }
 
@@ -21,6 +21,8 @@ package org.apache.datasketches.tuple;
 
 import static org.apache.datasketches.Util.DEFAULT_UPDATE_SEED;
 
+import java.nio.ByteBuffer;
+
 import org.apache.datasketches.hash.MurmurHash3;
 import org.apache.datasketches.memory.Memory;
 
@@ -39,6 +41,9 @@ import org.apache.datasketches.memory.Memory;
  * @param <S> Type of the UpdatableSummary&lt;U&gt;
  */
 public class UpdatableSketch<U, S extends UpdatableSummary<U>> extends QuickSelectSketch<S> {
+  //Reusable output of the hash of the CharSequence, Memory and ByteBuffer keys, so that they do
+  // not allocate.
+  private final long[] hashOut = new long[2];
 
   /**
    * This is to create a new instance of an UpdatableQuickSelectSketch.
@@ -101,7 +106,21 @@ public class UpdatableSketch<U, S extends UpdatableSummary<U>> extends QuickSele
    * @param value The given U value
    */
   public void update(final String key, final U value) {
-    update(Util.stringToByteArray(key), value);
+    update((CharSequence) key, value);
+  }
+
+  /**
+   * Updates this sketch with a CharSequence key, such as a String or a StringBuilder, and U value.
+   * The key is hashed as its UTF-8 encoding without creating a byte array, so it is equivalent to
+   * a String key with the same characters.
+   * The value is passed to update() method of the Summary object associated with the key
+   *
+   * @param key The given CharSequence key
+   * @param value The given U value
+   */
+  public void update(final CharSequence key, final U value) {
+    if ((key == null) || (key.length() == 0)) { return; }
+    insertOrIgnore(MurmurHash3.hash(key, DEFAULT_UPDATE_SEED, hashOut)[0] >>> 1, value);
   }
 
   /**
@@ -140,6 +159,40 @@ public class UpdatableSketch<U, S extends UpdatableSummary<U>> extends QuickSele
     insertOrIgnore(MurmurHash3.hash(key, DEFAULT_UPDATE_SEED)[0] >>> 1, value);
   }
 
+  /**
+   * Updates this sketch with a key in the given region of Memory and U value.
+   * The key is hashed in place, without copying, and is equivalent to a byte[] key with the same
+   * contents. The value is passed to update() method of the Summary object associated with the key
+   *
+   * @param mem The given Memory
+   * @param offsetBytes the offset in bytes of the key within the Memory
+   * @param lengthBytes the length in bytes of the key
+   * @param value The given U value
+   */
+  public void update(final Memory mem, final long offsetBytes, final long lengthBytes,
+      final U value) {
+    if ((mem == null) || (lengthBytes == 0)) { return; }
+    insertOrIgnore(MurmurHash3.hash(mem, offsetBytes, lengthBytes, DEFAULT_UPDATE_SEED, hashOut)[0]
+        >>> 1, value);
+  }
+
+  /**
+   * Updates this sketch with a key in the given region of a ByteBuffer and U value.
+   * The key is hashed in place, without copying, and is equivalent to a byte[] key with the same
+   * contents, regardless of the byte order of the ByteBuffer. The value is passed to update()
+   * method of the Summary object associated with the key
+   *
+   * @param buf The given ByteBuffer
+   * @param offset the absolute index of the first byte of the key within the ByteBuffer
+   * @param length the length in bytes of the key
+   * @param value The given U value
+   */
+  public void update(final ByteBuffer buf, final int offset, final int length, final U value) {
+    if ((buf == null) || (length == 0)) { return; }
+    insertOrIgnore(MurmurHash3.hash(buf, offset, length, DEFAULT_UPDATE_SEED, hashOut)[0] >>> 1,
+        value);
+  }
+
   void insertOrIgnore(final long hash, final U value) {
     setEmpty(false);
     if (hash >= getThetaLong()) { return; }
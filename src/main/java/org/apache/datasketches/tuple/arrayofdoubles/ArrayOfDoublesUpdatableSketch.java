@@ -33,6 +33,8 @@ import org.apache.datasketches.tuple.Util;
 public abstract class ArrayOfDoublesUpdatableSketch extends ArrayOfDoublesSketch {
 
   final long seed_;
+  //Reusable output of the hash of the CharSequence keys, so that they do not allocate.
+  private final long[] hashOut = new long[2];
 
   ArrayOfDoublesUpdatableSketch(final int numValues, final long seed) {
     super(numValues);
@@ -107,7 +109,21 @@ public abstract class ArrayOfDoublesUpdatableSketch extends ArrayOfDoublesSketch
    * @param values The given values
    */
   public void update(final String key, final double[] values) {
-    update(Util.stringToByteArray(key), values);
+    update((CharSequence) key, values);
+  }
+
+  /**
+   * Updates this sketch with a CharSequence key, such as a String or a StringBuilder, and double
+   * values. The key is hashed as its UTF-8 encoding without creating a byte array, so it is
+   * equivalent to a String key with the same characters.
+   * The values will be stored or added to the ones associated with the key
+   *
+   * @param key The given CharSequence key
+   * @param values The given values
+   */
+  public void update(final CharSequence key, final double[] values) {
+    if ((key == null) || (key.length() == 0)) { return; }
+    insertOrIgnore(MurmurHash3.hash(key, seed_, hashOut)[0] >>> 1, values);
   }
 
   /**
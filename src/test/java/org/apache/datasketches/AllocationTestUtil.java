@@ -0,0 +1,125 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.datasketches;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+
+import org.apache.datasketches.memory.Memory;
+import org.testng.SkipException;
+
+import com.sun.management.ThreadMXBean;
+
+/**
+ * Support for tests that check that the update paths of a sketch do not allocate.
+ */
+public final class AllocationTestUtil {
+  private static final int PASSES = 3;
+
+  private AllocationTestUtil() {}
+
+  /**
+   * Runs the task once to warm it up, then returns the fewest bytes allocated by the current
+   * thread in any of the following passes. The JIT may allocate while it compiles early passes.
+   * The calling test is skipped if the JVM cannot count the bytes allocated by a thread.
+   * @param task the work to measure
+   * @return the fewest bytes allocated in one pass of the task
+   */
+  public static long minAllocatedBytes(final Runnable task) {
+    final ThreadMXBean bean = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+    if (!bean.isThreadAllocatedMemorySupported()) {
+      throw new SkipException("Thread allocated memory is not supported by this JVM");
+    }
+    bean.setThreadAllocatedMemoryEnabled(true);
+    final long tid = Thread.currentThread().getId();
+    task.run(); //grows the sketch to its final structure
+    long bytes = Long.MAX_VALUE;
+    for (int pass = 0; pass < PASSES; pass++) {
+      final long before = bean.getThreadAllocatedBytes(tid);
+      task.run();
+      bytes = Math.min(bytes, bean.getThreadAllocatedBytes(tid) - before);
+    }
+    return bytes;
+  }
+
+  /**
+   * Presents the same items through every update method of a sketch. A test supplies only the
+   * calls of its own sketch. The reused arrays, Memory and buffer are allocated once.
+   */
+  public abstract static class AllTypesUpdater implements Runnable {
+    private final int n;
+    private final long[] longArr = new long[2];
+    private final int[] intArr = new int[3];
+    private final char[] charArr = new char[3];
+    private final byte[] byteArr = new byte[5];
+    private final Memory mem = Memory.wrap(byteArr);
+    private final ByteBuffer buf = ByteBuffer.wrap(byteArr);
+    private final StringBuilder sb = new StringBuilder("k\u00e9y\u4e16");
+
+    /**
+     * @param n the number of items presented through each update method in one run
+     */
+    protected AllTypesUpdater(final int n) {
+      this.n = n;
+    }
+
+    @Override
+    public final void run() {
+      for (int i = 0; i < n; i++) {
+        update((long) i);
+        update((double) i);
+        longArr[0] = i;
+        update(longArr);
+        intArr[0] = i;
+        update(intArr);
+        charArr[0] = (char) i;
+        update(charArr);
+        byteArr[0] = (byte) i;
+        byteArr[1] = (byte) (i >>> 8);
+        update(byteArr);
+        byteArr[2] = (byte) i;
+        update(mem, 1, 4);
+        update(buf, 1, 4);
+        sb.setCharAt(0, (char) i);
+        update(sb);
+      }
+    }
+
+    protected abstract void update(long datum);
+
+    protected abstract void update(double datum);
+
+    protected abstract void update(long[] data);
+
+    protected abstract void update(int[] data);
+
+    protected abstract void update(char[] data);
+
+    protected abstract void update(byte[] data);
+
+    protected abstract void update(Memory region, long offsetBytes, long lengthBytes);
+
+    protected abstract void update(ByteBuffer region, int offset, int length);
+
+    protected abstract void update(CharSequence datum);
+  }
+
+}
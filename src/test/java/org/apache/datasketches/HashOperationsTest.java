@@ -24,6 +24,7 @@ import static org.apache.datasketches.HashOperations.checkThetaCorruption;
 import static org.apache.datasketches.HashOperations.continueCondition;
 import static org.apache.datasketches.HashOperations.hashInsertOnlyMemory;
 import static org.apache.datasketches.HashOperations.hashSearchOrInsertMemory;
+import static org.apache.datasketches.HashOperations.hashSearchOrInsertMemoryAtomic;
 import static org.apache.datasketches.HashOperations.hashArrayInsert;
 import static org.apache.datasketches.HashOperations.hashInsertOnly;
 import static org.apache.datasketches.HashOperations.hashSearch;
@@ -198,6 +199,24 @@ public class HashOperationsTest {
     } catch (final SketchesArgumentException e) {
       // expected
     }
+
+    try {
+      hashSearchOrInsertMemoryAtomic(wmem, 5, 33, 0);
+      fail();
+    } catch (final SketchesArgumentException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void checkAtomicInsertMatchesInsert() {
+    final WritableMemory wmem1 = WritableMemory.allocate(8 + (8 << 6));
+    final WritableMemory wmem2 = WritableMemory.allocate(8 + (8 << 6));
+    for (int i = 1; i <= 48; i++) {
+      final long h = hash(new long[] { i % 40 }, 0)[0] >>> 1;
+      assertEquals(hashSearchOrInsertMemoryAtomic(wmem2, 6, h, 8), hashSearchOrInsertMemory(wmem1, 6, h, 8));
+    }
+    assertTrue(wmem1.equals(wmem2));
   }
 
 
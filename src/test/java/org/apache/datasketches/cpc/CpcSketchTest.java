@@ -19,6 +19,7 @@
 
 package org.apache.datasketches.cpc;
 
+import static org.apache.datasketches.AllocationTestUtil.minAllocatedBytes;
 import static org.apache.datasketches.Util.DEFAULT_UPDATE_SEED;
 import static org.apache.datasketches.cpc.TestUtil.specialEquals;
 import static org.testng.Assert.assertEquals;
@@ -26,10 +27,15 @@ import static org.testng.Assert.assertTrue;
 import static org.testng.Assert.fail;
 
 import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.util.Random;
 
+import org.apache.datasketches.AllocationTestUtil.AllTypesUpdater;
 import org.apache.datasketches.Family;
 import org.apache.datasketches.SketchesArgumentException;
 import org.apache.datasketches.memory.Memory;
+import org.apache.datasketches.memory.WritableDirectHandle;
+import org.apache.datasketches.memory.WritableMemory;
 import org.testng.annotations.Test;
 
 /**
@@ -235,6 +241,129 @@ public class CpcSketchTest {
     //org.apache.datasketches.tuple.TestUtil.writeBytesToFile(sketch.toByteArray(), "cpc-negative-one.sk");
   }
 
+  @Test
+  public void checkUpdateMemoryAndByteBufferRegions() {
+    final byte[] bytes = new byte[1000];
+    new Random(1).nextBytes(bytes);
+    final Memory mem = Memory.wrap(bytes);
+    final ByteBuffer buf = ByteBuffer.allocateDirect(bytes.length);
+    buf.put(bytes);
+    final CpcSketch sk1 = new CpcSketch(10);
+    final CpcSketch sk2 = new CpcSketch(10);
+    final CpcSketch sk3 = new CpcSketch(10);
+    for (int offset = 0; offset < 900; offset++) {
+      final int length = 1 + (offset % 40);
+      final byte[] key = new byte[length];
+      System.arraycopy(bytes, offset, key, 0, length);
+      sk1.update(key);
+      sk2.update(mem, offset, length);
+      sk3.update(buf, offset, length);
+    }
+    sk2.update(mem, 0, 0); //empty regions are ignored
+    sk3.update(buf, 0, 0);
+    assertEquals(sk2.toByteArray(), sk1.toByteArray());
+    assertEquals(sk3.toByteArray(), sk1.toByteArray());
+  }
+
+  @Test
+  public void checkUpdateDoesNotAllocate() {
+    final CpcSketch sk = new CpcSketch(10);
+    final long bytes = minAllocatedBytes(allTypesUpdater(sk));
+    assertTrue(bytes < 1024, "allocated " + bytes + " bytes");
+    //the passes after the first only repeat coupons, so the sketch matches one updated once
+    final CpcSketch once = new CpcSketch(10);
+    allTypesUpdater(once).run();
+    assertEquals(sk.getFlavor(), once.getFlavor());
+    assertEquals(sk.numCoupons, once.numCoupons);
+  }
+
+  private static AllTypesUpdater allTypesUpdater(final CpcSketch sk) {
+    return new AllTypesUpdater(10_000) {
+      @Override protected void update(final long datum) { sk.update(datum); }
+      @Override protected void update(final double datum) { sk.update(datum); }
+      @Override protected void update(final long[] data) { sk.update(data); }
+      @Override protected void update(final int[] data) { sk.update(data); }
+      @Override protected void update(final char[] data) { sk.update(data); }
+      @Override protected void update(final byte[] data) { sk.update(data); }
+      @Override protected void update(final Memory mem, final long offsetBytes, final long lengthBytes) {
+        sk.update(mem, offsetBytes, lengthBytes);
+      }
+      @Override protected void update(final ByteBuffer buf, final int offset, final int length) {
+        sk.update(buf, offset, length);
+      }
+      @Override protected void update(final CharSequence datum) { sk.update(datum); }
+    };
+  }
+
+  @Test
+  public void checkMemoryBackedMatchesHeap() {
+    for (int lgK = 4; lgK <= 12; lgK += 2) {
+      final CpcSketch heapSk = new CpcSketch(lgK, DEFAULT_UPDATE_SEED);
+      //start with the smallest Memory so that the PairTable has to request more
+      try (WritableDirectHandle wdh =
+          WritableMemory.allocateDirect(CpcSketch.getMinUpdatableBytes(lgK))) {
+        CpcSketch memSk = new CpcSketch(lgK, DEFAULT_UPDATE_SEED, wdh.get());
+        assertTrue(memSk.hasMemory());
+        assertTrue(memSk.isDirect());
+        assertTrue(memSk.isEmpty());
+        long n = 0;
+        for (long target = 1; target < (100L << lgK); target += (target / 3) + 1) {
+          for ( ; n < target; n++) {
+            heapSk.update(n);
+            memSk.update(n);
+          }
+          assertEquals(memSk.getFlavor(), heapSk.getFlavor());
+          assertEquals(memSk.getEstimate(), heapSk.getEstimate());
+          assertEquals(memSk.toByteArray(), heapSk.toByteArray());
+          assertTrue(specialEquals(memSk.copy(), heapSk, false, false));
+          assertTrue(memSk.validate());
+          //the state in the Memory is complete, so wrapping it again resumes where it left off
+          memSk = CpcSketch.writableWrap(memSk.wmem);
+        }
+        assertTrue(memSk.wmem.getCapacity() <= CpcSketch.getUpdatableStorageBytes(lgK));
+        final CpcSketch heapified = CpcSketch.heapify(memSk.wmem);
+        assertEquals(heapified.toByteArray(), heapSk.toByteArray());
+        println(CpcSketch.toString(memSk.wmem, false));
+      }
+    }
+  }
+
+  @Test
+  public void checkMemoryBackedReset() {
+    final int lgK = 8;
+    final WritableMemory wmem = WritableMemory.allocate(CpcSketch.getUpdatableStorageBytes(lgK));
+    final CpcSketch sk = new CpcSketch(lgK, DEFAULT_UPDATE_SEED, wmem);
+    for (int i = 0; i < 10_000; i++) { sk.update(i); }
+    sk.reset();
+    assertTrue(sk.isEmpty());
+    final CpcSketch wrapped = CpcSketch.writableWrap(wmem);
+    assertTrue(wrapped.isEmpty());
+    wrapped.update(1);
+    assertEquals(wrapped.getEstimate(), 1.0, 0.01);
+  }
+
+  @Test
+  public void checkMemoryBackedExceptions() {
+    final int lgK = 10;
+    try {
+      new CpcSketch(lgK, DEFAULT_UPDATE_SEED,
+          WritableMemory.allocate(CpcSketch.getMinUpdatableBytes(lgK) - 1));
+      fail();
+    } catch (SketchesArgumentException e) {}
+    final CpcSketch sk = new CpcSketch(lgK);
+    sk.update(1);
+    try {
+      CpcSketch.writableWrap(WritableMemory.wrap(sk.toByteArray()));
+      fail();
+    } catch (SketchesArgumentException e) {}
+    final WritableMemory wmem = WritableMemory.allocate(CpcSketch.getMinUpdatableBytes(lgK));
+    new CpcSketch(lgK, DEFAULT_UPDATE_SEED, wmem);
+    try {
+      CpcSketch.writableWrap(wmem, 123);
+      fail();
+    } catch (SketchesArgumentException e) {}
+  }
+
   /**
    * @param s the string to print
    */
@@ -19,15 +19,22 @@
 
 package org.apache.datasketches.cpc;
 
+import static org.apache.datasketches.Util.DEFAULT_UPDATE_SEED;
+import static org.apache.datasketches.cpc.TestUtil.specialEquals;
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertTrue;
 import static org.testng.Assert.fail;
 
+import java.util.Random;
+
 import org.testng.annotations.Test;
 
 import org.apache.datasketches.Family;
 import org.apache.datasketches.SketchesArgumentException;
 import org.apache.datasketches.SketchesStateException;
+import org.apache.datasketches.memory.Memory;
+import org.apache.datasketches.memory.WritableDirectHandle;
+import org.apache.datasketches.memory.WritableMemory;
 
 /**
  * @author Lee Rhodes
@@ -87,4 +94,110 @@ public class CpcUnionTest {
     union.update(sk4);
   }
 
+  @Test
+  public void checkMemoryBackedMatchesHeap() {
+    final Random rand = new Random(1);
+    for (int trial = 0; trial < 40; trial++) {
+      final int lgK = 4 + rand.nextInt(9);
+      final CpcUnion heapUnion = new CpcUnion(lgK, DEFAULT_UPDATE_SEED);
+      final WritableMemory wmem = WritableMemory.allocate(CpcUnion.getMaxUnionBytes(lgK));
+      CpcUnion memUnion = new CpcUnion(lgK, DEFAULT_UPDATE_SEED, wmem);
+      assertTrue(memUnion.hasMemory());
+      long v = 0;
+      final int numSketches = 1 + rand.nextInt(6);
+      for (int s = 0; s < numSketches; s++) {
+        //sources of a lower lgK reduce the lgK of the union
+        final int srcLgK = Math.max(4, (lgK - 2) + rand.nextInt(4));
+        final long n = (long) Math.pow(2, rand.nextDouble() * (srcLgK + 5));
+        //a source held in Memory starts small, so it has to request more
+        try (WritableDirectHandle wdh =
+            WritableMemory.allocateDirect(CpcSketch.getMinUpdatableBytes(srcLgK))) {
+          final CpcSketch sk = rand.nextBoolean() ? new CpcSketch(srcLgK)
+              : new CpcSketch(srcLgK, DEFAULT_UPDATE_SEED, wdh.get());
+          for (long i = 0; i < n; i++) { sk.update(v++); }
+          heapUnion.update(sk);
+          memUnion.update(sk);
+        }
+        assertEquals(memUnion.getNumCoupons(), heapUnion.getNumCoupons());
+        memUnion = CpcUnion.writableWrap(wmem);
+      }
+      assertEquals(memUnion.getLgK(), heapUnion.getLgK());
+      final CpcSketch heapResult = heapUnion.getResult();
+      final CpcSketch memResult = memUnion.getResult();
+      assertTrue(specialEquals(memResult, heapResult, true, true));
+      assertEquals(memResult.getEstimate(), heapResult.getEstimate());
+    }
+  }
+
+  @Test
+  public void checkUpdateMemoryMatchesHeapify() {
+    final Random rand = new Random(2);
+    for (int trial = 0; trial < 100; trial++) {
+      final int lgK = 4 + rand.nextInt(9);
+      final CpcUnion sketchUnion = new CpcUnion(lgK);
+      final CpcUnion memUnion = new CpcUnion(lgK);
+      final CpcUnion directUnion = new CpcUnion(lgK, DEFAULT_UPDATE_SEED,
+          WritableMemory.allocate(CpcUnion.getMaxUnionBytes(lgK)));
+      long v = 0;
+      final int numSketches = 1 + rand.nextInt(6);
+      for (int s = 0; s < numSketches; s++) {
+        final int srcLgK = Math.max(4, (lgK - 2) + rand.nextInt(4));
+        //up to 32K covers every flavor of the source
+        final long n = (long) Math.pow(2, rand.nextDouble() * (srcLgK + 5));
+        CpcSketch sk = new CpcSketch(srcLgK);
+        for (long i = 0; i < n; i++) { sk.update(v++); }
+        if (rand.nextInt(4) == 0) { //a merged source has no HIP
+          final CpcUnion srcUnion = new CpcUnion(srcLgK);
+          srcUnion.update(sk);
+          sk = srcUnion.getResult();
+        }
+        final Memory mem = Memory.wrap(sk.toByteArray());
+        sketchUnion.update(sk);
+        memUnion.update(mem);
+        directUnion.update(mem);
+      }
+      final CpcSketch result = sketchUnion.getResult();
+      assertTrue(specialEquals(memUnion.getResult(), result, true, true));
+      assertTrue(specialEquals(directUnion.getResult(), result, true, true));
+      assertEquals(memUnion.getResult().getEstimate(), result.getEstimate());
+    }
+  }
+
+  @Test
+  public void checkUpdateMemoryEmptyAndUpdatable() {
+    final int lgK = 10;
+    final CpcUnion union = new CpcUnion(lgK);
+    union.update(Memory.wrap(new CpcSketch(lgK).toByteArray()));
+    assertEquals(union.getNumCoupons(), 0L);
+    final WritableMemory wmem = WritableMemory.allocate(CpcSketch.getUpdatableStorageBytes(lgK));
+    final CpcSketch sk = new CpcSketch(lgK, DEFAULT_UPDATE_SEED, wmem);
+    for (int i = 0; i < 1000; i++) { sk.update(i); }
+    union.update(wmem); //an updatable image
+    assertEquals(union.getNumCoupons(), sk.numCoupons);
+    try {
+      union.update(Memory.wrap(new CpcSketch(lgK, 123).toByteArray()));
+      fail();
+    } catch (SketchesArgumentException e) {}
+  }
+
+  @Test
+  public void checkMemoryBackedExceptions() {
+    final int lgK = 10;
+    try {
+      new CpcUnion(lgK, DEFAULT_UPDATE_SEED,
+          WritableMemory.allocate(CpcUnion.getMaxUnionBytes(lgK) - 1));
+      fail();
+    } catch (SketchesArgumentException e) {}
+    final WritableMemory wmem = WritableMemory.allocate(CpcUnion.getMaxUnionBytes(lgK));
+    new CpcUnion(lgK, DEFAULT_UPDATE_SEED, wmem);
+    try {
+      CpcUnion.writableWrap(wmem, 123);
+      fail();
+    } catch (SketchesArgumentException e) {}
+    try { //not the image of a sketch
+      CpcSketch.writableWrap(wmem);
+      fail();
+    } catch (SketchesArgumentException e) {}
+  }
+
 }
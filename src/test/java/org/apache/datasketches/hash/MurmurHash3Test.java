@@ -22,6 +22,11 @@ package org.apache.datasketches.hash;
 import static org.apache.datasketches.hash.MurmurHash3.hash;
 import static java.nio.charset.StandardCharsets.UTF_8;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import org.apache.datasketches.memory.Memory;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
@@ -267,6 +272,86 @@ public class MurmurHash3Test {
     return out;
   }
 
+  @Test
+  public void checkHashOutMatchesAllocatingHash() {
+    final long seed = 9001L;
+    final long[] hashOut = new long[2];
+    for (int len = 0; len <= 33; len++) {
+      final long[] longArr = new long[len];
+      final int[] intArr = new int[len];
+      final char[] charArr = new char[len];
+      final byte[] byteArr = new byte[len];
+      for (int i = 0; i < len; i++) {
+        longArr[i] = (i * 0x9E3779B97F4A7C15L) + len;
+        intArr[i] = (int) longArr[i];
+        charArr[i] = (char) longArr[i];
+        byteArr[i] = (byte) longArr[i];
+      }
+      Assert.assertEquals(hash(longArr, seed, hashOut), hash(longArr, seed));
+      Assert.assertEquals(hash(intArr, seed, hashOut), hash(intArr, seed));
+      Assert.assertEquals(hash(charArr, seed, hashOut), hash(charArr, seed));
+      Assert.assertEquals(hash(byteArr, seed, hashOut), hash(byteArr, seed));
+    }
+    final long key = -1234567890123L;
+    final long[] out = hash(key, seed, hashOut);
+    Assert.assertSame(out, hashOut);
+    Assert.assertEquals(out, hash(new long[] { key }, seed));
+  }
+
+  @Test
+  public void checkCharSequenceUtf8() {
+    final long seed = 12345;
+    final long[] hashOut = new long[2];
+    final Random rand = new Random(1);
+    final char[] special = { 'a', '\u00e9', '\u07ff', '\u0800', '\u4e16', '\uffff',
+        '\ud83d', '\ude00' }; //the last two are a high and a low surrogate
+    for (int trial = 0; trial < 2000; trial++) {
+      final int len = 1 + rand.nextInt(40);
+      final StringBuilder sb = new StringBuilder();
+      for (int i = 0; i < len; i++) {
+        sb.append(rand.nextBoolean() ? special[rand.nextInt(special.length)]
+            : (char) rand.nextInt(0x10000));
+      }
+      final String str = sb.toString();
+      final long[] expected = hash(str.getBytes(UTF_8), seed);
+      Assert.assertEquals(hash(str, seed, hashOut), expected, str);
+      Assert.assertEquals(hash(sb, seed, hashOut), expected, str);
+    }
+    //paired and unpaired surrogates, including at the ends
+    final String[] edge = { "\ud83d\ude00", "\ud83d", "\ude00", "x\ud83d", "\ude00\ud83dx",
+        "\ud83d\ud83d\ude00" };
+    for (String str : edge) {
+      Assert.assertEquals(hash(str, seed, hashOut), hash(str.getBytes(UTF_8), seed), str);
+    }
+  }
+
+  @Test
+  public void checkMemoryAndByteBufferRegions() {
+    final long seed = 12345;
+    final long[] hashOut = new long[2];
+    final Random rand = new Random(1);
+    final byte[] bytes = new byte[64];
+    rand.nextBytes(bytes);
+    final Memory mem = Memory.wrap(bytes);
+    final ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+    direct.put(bytes);
+    final ByteBuffer[] bufs = { ByteBuffer.wrap(bytes), direct,
+        ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN) };
+    for (int offset = 0; offset < 8; offset++) {
+      for (int length = 1; length <= 48; length++) {
+        final byte[] key = new byte[length];
+        System.arraycopy(bytes, offset, key, 0, length);
+        final long[] expected = hash(key, seed);
+        Assert.assertEquals(hash(mem, offset, length, seed, hashOut), expected);
+        Assert.assertEquals(hash(mem.region(offset, length), 0, length, seed, hashOut), expected);
+        for (ByteBuffer buf : bufs) {
+          Assert.assertEquals(hash(buf, offset, length, seed, hashOut), expected);
+          Assert.assertEquals(buf.position(), (buf == direct) ? bytes.length : 0);
+        }
+      }
+    }
+  }
+
   @Test
   public void printlnTest() {
     println("PRINTING: "+this.getClass().getName());
@@ -21,6 +21,7 @@ package org.apache.datasketches.hll;
 
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
 
 import org.testng.annotations.Test;
 
@@ -98,6 +99,61 @@ public class BaseHllSketchTest {
     assertEquals(BaseHllSketch.getSerializationVersion(wmem), PreambleUtil.SER_VER);
   }
 
+  @Test
+  public void checkBatchUpdateMatchesItemUpdates() {
+    final int lgK = 8;
+    final int[] lengths = {0, 1, 7, 200, 1024, 3000, 20_000};
+    for (TgtHllType tgtHllType : TgtHllType.values()) {
+      for (int len : lengths) {
+        final int offset = 3;
+        final long[] longs = new long[offset + len];
+        final double[] doubles = new double[offset + len];
+        for (int i = 0; i < longs.length; i++) {
+          longs[i] = i * 0x9E3779B97F4A7C15L;
+          doubles[i] = (i % 5 == 0) ? -0.0 : i / 3.0;
+        }
+        final WritableMemory mem = WritableMemory.allocate(longs.length << 3);
+        mem.putLongArray(0, longs, 0, longs.length);
+
+        final HllSketch itemSk = new HllSketch(lgK, tgtHllType);
+        for (int i = offset; i < longs.length; i++) { itemSk.update(longs[i]); }
+        for (int i = offset; i < longs.length; i++) { itemSk.update(doubles[i]); }
+
+        final HllSketch heapSk = new HllSketch(lgK, tgtHllType);
+        heapSk.batchUpdate(longs, offset, len);
+        heapSk.batchUpdate(doubles, offset, len);
+        assertEquals(heapSk.toUpdatableByteArray(), itemSk.toUpdatableByteArray());
+
+        final WritableMemory wmem =
+            WritableMemory.allocate(HllSketch.getMaxUpdatableSerializationBytes(lgK, tgtHllType));
+        final HllSketch directSk = new HllSketch(lgK, tgtHllType, wmem);
+        directSk.batchUpdate(mem, (long) offset << 3, len);
+        directSk.batchUpdate(doubles, offset, len);
+        assertEquals(directSk.toUpdatableByteArray(), itemSk.toUpdatableByteArray());
+
+        final Union itemUnion = new Union(lgK);
+        final Union batchUnion = new Union(lgK);
+        for (int i = offset; i < longs.length; i++) { itemUnion.update(longs[i]); }
+        batchUnion.batchUpdate(longs, offset, len);
+        assertEquals(batchUnion.toUpdatableByteArray(), itemUnion.toUpdatableByteArray());
+      }
+    }
+  }
+
+  @Test
+  public void checkBatchUpdateBounds() {
+    final HllSketch sk = new HllSketch(10);
+    try {
+      sk.batchUpdate(new long[4], 2, 3);
+      fail();
+    } catch (final IllegalArgumentException e) { } //expected
+    try {
+      sk.batchUpdate(WritableMemory.allocate(16), 8, 2);
+      fail();
+    } catch (final IllegalArgumentException e) { } //expected
+    assertTrue(sk.isEmpty());
+  }
+
   @Test
   public void printlnTest() {
     println("PRINTING: " + this.getClass().getName());
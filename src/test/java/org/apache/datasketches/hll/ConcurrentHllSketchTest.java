@@ -0,0 +1,185 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.datasketches.hll;
+
+import static org.apache.datasketches.hll.TgtHllType.HLL_8;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.testng.annotations.Test;
+
+@SuppressWarnings("javadoc")
+public class ConcurrentHllSketchTest {
+
+  @Test
+  public void checkSequentialMatchesHllSketch() {
+    final int[] ns = {0, 1, 7, 100, 1000, 10000, 1000000};
+    for (int lgK = 4; lgK <= 16; lgK += 4) {
+      for (final int n : ns) {
+        final ConcurrentHllSketch csk = new ConcurrentHllSketch(lgK);
+        final HllSketch sk = new HllSketch(lgK, HLL_8);
+        for (int i = 0; i < n; i++) {
+          csk.update(i);
+          sk.update(i);
+        }
+        assertEquals(csk.getCurMode(), sk.getCurMode());
+        assertEquals(csk.isEmpty(), sk.isEmpty());
+        if (sk.getCurMode() == CurMode.HLL) {
+          sk.hllSketchImpl.putOutOfOrder(true); //the estimate of the concurrent sketch is composite
+          assertTrue(csk.isOutOfOrder());
+          checkSameRegisters(csk.copy(), sk);
+        } else {
+          assertEquals(csk.toCompactByteArray(), sk.toCompactByteArray());
+        }
+        checkSameEstimates(csk, sk);
+        checkSameEstimates(csk, csk.copy());
+        assertEquals(csk.getCompactSerializationBytes(), sk.getCompactSerializationBytes());
+        assertEquals(csk.getUpdatableSerializationBytes(), sk.getUpdatableSerializationBytes());
+      }
+    }
+  }
+
+  @Test
+  public void checkConcurrentUpdates() throws Exception {
+    final int lgK = 12;
+    final int numThreads = 4;
+    final int n = 200000;
+    final ConcurrentHllSketch csk = new ConcurrentHllSketch(lgK);
+    final CountDownLatch start = new CountDownLatch(1);
+    final AtomicReference<Throwable> failure = new AtomicReference<>();
+    final Thread[] threads = new Thread[numThreads];
+    for (int t = 0; t < numThreads; t++) {
+      final int id = t;
+      threads[t] = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            start.await();
+            //the threads overlap, so every item is presented by two threads
+            for (int i = 0; i < n; i++) {
+              final long v = (((long) id * n) / 2) + i;
+              if ((i & 1) == 0) { csk.update(v); } else { csk.update(Long.toString(v)); }
+              if ((i % 10000) == 0) { assertTrue(csk.getEstimate() >= 0); }
+            }
+          } catch (final Throwable e) {
+            failure.compareAndSet(null, e);
+          }
+        }
+      });
+      threads[t].start();
+    }
+    start.countDown();
+    for (final Thread thread : threads) { thread.join(); }
+    assertEquals(failure.get(), null);
+
+    final HllSketch sk = new HllSketch(lgK, HLL_8);
+    for (int id = 0; id < numThreads; id++) {
+      for (int i = 0; i < n; i++) {
+        final long v = (((long) id * n) / 2) + i;
+        if ((i & 1) == 0) { sk.update(v); } else { sk.update(Long.toString(v)); }
+      }
+    }
+    sk.hllSketchImpl.putOutOfOrder(true);
+    assertEquals(csk.toCompactByteArray(), csk.copy().toCompactByteArray());
+    checkSameRegisters(csk.copy(), sk);
+    checkSameEstimates(csk, sk);
+  }
+
+  @Test
+  public void checkConcurrentBatchUpdates() throws Exception {
+    final int lgK = 10;
+    final int numThreads = 4;
+    final long[] values = new long[100000];
+    for (int i = 0; i < values.length; i++) { values[i] = i; }
+    final ConcurrentHllSketch csk = new ConcurrentHllSketch(lgK);
+    final Thread[] threads = new Thread[numThreads];
+    for (int t = 0; t < numThreads; t++) {
+      threads[t] = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          csk.batchUpdate(values, 0, values.length);
+        }
+      });
+      threads[t].start();
+    }
+    for (final Thread thread : threads) { thread.join(); }
+    final HllSketch sk = new HllSketch(lgK, HLL_8);
+    sk.batchUpdate(values, 0, values.length);
+    sk.hllSketchImpl.putOutOfOrder(true);
+    checkSameRegisters(csk.copy(), sk);
+    checkSameEstimates(csk, sk);
+  }
+
+  @Test
+  public void checkReset() {
+    final ConcurrentHllSketch csk = new ConcurrentHllSketch(8);
+    for (int i = 0; i < 10000; i++) { csk.update(i); }
+    assertEquals(csk.getCurMode(), CurMode.HLL);
+    csk.reset();
+    assertTrue(csk.isEmpty());
+    assertFalse(csk.isOutOfOrder());
+    assertEquals(csk.getEstimate(), 0.0);
+    final HllSketch sk = new HllSketch(8, HLL_8);
+    for (int i = 0; i < 10000; i++) {
+      csk.update(-i);
+      sk.update(-i);
+    }
+    sk.hllSketchImpl.putOutOfOrder(true);
+    checkSameEstimates(csk, sk);
+  }
+
+  @Test
+  public void checkMisc() {
+    final ConcurrentHllSketch csk = new ConcurrentHllSketch();
+    assertEquals(csk.getLgConfigK(), HllSketch.DEFAULT_LG_K);
+    assertEquals(csk.getTgtHllType(), HLL_8);
+    assertFalse(csk.isCompact());
+    assertFalse(csk.isMemory());
+    assertFalse(csk.isOffHeap());
+    assertFalse(csk.isSameResource(null));
+    for (int i = 0; i < 100000; i++) { csk.update(i); }
+    assertEquals(csk.copyAs(TgtHllType.HLL_4).getEstimate(), csk.getEstimate(), 1e-9);
+    assertEquals(csk.getCompositeEstimate(), csk.getEstimate());
+    assertTrue(csk.toString(true, false, false, false).length() > 0);
+    assertEquals(HllSketch.heapify(csk.toUpdatableByteArray()).getEstimate(), csk.getEstimate());
+  }
+
+  private static void checkSameEstimates(final BaseHllSketch a, final BaseHllSketch b) {
+    assertEquals(a.getEstimate(), b.getEstimate());
+    for (int numStdDev = 1; numStdDev <= 3; numStdDev++) {
+      assertEquals(a.getLowerBound(numStdDev), b.getLowerBound(numStdDev));
+      assertEquals(a.getUpperBound(numStdDev), b.getUpperBound(numStdDev));
+    }
+  }
+
+  private static void checkSameRegisters(final HllSketch a, final HllSketch b) {
+    final AbstractHllArray aArr = (AbstractHllArray) a.hllSketchImpl;
+    final AbstractHllArray bArr = (AbstractHllArray) b.hllSketchImpl;
+    for (int slotNo = 0; slotNo < (1 << a.getLgConfigK()); slotNo++) {
+      assertEquals(aArr.getSlotValue(slotNo), bArr.getSlotValue(slotNo));
+    }
+  }
+
+}
@@ -0,0 +1,148 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.datasketches.hll;
+
+import static org.apache.datasketches.hll.TgtHllType.HLL_4;
+import static org.apache.datasketches.hll.TgtHllType.HLL_8;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.apache.datasketches.memory.WritableMemory;
+import org.testng.annotations.Test;
+
+@SuppressWarnings("javadoc")
+public class HllArrayMergeTest {
+
+  @Test
+  public void checkMaxLanes() {
+    final Random rand = new Random(1);
+    for (int t = 0; t < 10000; t++) {
+      long a = 0;
+      long b = 0;
+      for (int i = 0; i < 8; i++) {
+        a |= (long) rand.nextInt(64) << (i << 3);
+        b |= (long) rand.nextInt(64) << (i << 3);
+      }
+      final long max = HllArrayMerge.maxLanes(a, b);
+      for (int i = 0; i < 8; i++) {
+        final int aV = (int) (a >>> (i << 3)) & 0XFF;
+        final int bV = (int) (b >>> (i << 3)) & 0XFF;
+        assertEquals((int) (max >>> (i << 3)) & 0XFF, Math.max(aV, bV));
+      }
+    }
+    assertEquals(HllArrayMerge.maxLanes(0, 0X3F3F3F3F3F3F3F3FL), 0X3F3F3F3F3F3F3F3FL);
+    assertEquals(HllArrayMerge.maxLanes(0X3F00003F00003F00L, 0X003F3F003F3F003FL),
+        0X3F3F3F3F3F3F3F3FL);
+  }
+
+  @Test
+  public void checkSpread() {
+    final Random rand = new Random(2);
+    for (int t = 0; t < 1000; t++) {
+      final long bits = rand.nextLong();
+      final long lanes6 = HllArrayMerge.spread6(bits & 0XFFFFFFFFFFFFL);
+      final long lanes4 = HllArrayMerge.spread4(bits & 0XFFFFFFFFL);
+      for (int i = 0; i < 8; i++) {
+        assertEquals((lanes6 >>> (i << 3)) & 0XFF, (bits >>> (i * 6)) & 0X3F);
+        assertEquals((lanes4 >>> (i << 3)) & 0XFF, (bits >>> (i * 4)) & 0XF);
+      }
+    }
+  }
+
+  @Test
+  public void checkMergeMatchesSlotwise() {
+    for (final TgtHllType type : TgtHllType.values()) {
+      for (int srcLgK = 4; srcLgK <= 10; srcLgK += 3) {
+        for (int tgtLgK = 4; tgtLgK <= srcLgK; tgtLgK += 3) {
+          for (int mode = 0; mode < 4; mode++) {
+            checkMerge(type, srcLgK, tgtLgK, (mode & 1) != 0, (mode & 2) != 0);
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  public void checkHll4AuxExceptions() {
+    //while some registers are still empty, values of 15 or more go into the AuxHashMap
+    final int lgK = 16;
+    final HllSketch src = new HllSketch(lgK, HLL_4);
+    for (int i = 0; i < 300000; i++) { src.update(i); }
+    assertTrue(((AbstractHllArray) src.hllSketchImpl).getAuxHashMap().getAuxCount() > 0);
+    for (int tgtLgK = 10; tgtLgK <= lgK; tgtLgK += 6) {
+      final HllSketch tgt = newTarget(tgtLgK, 0, false);
+      final int[] expected = slotwise(src, tgt, tgtLgK);
+      HllArrayMerge.merge(src, tgt, lgK, tgtLgK);
+      assertRegisters(tgt, expected);
+    }
+  }
+
+  private static void checkMerge(final TgtHllType type, final int srcLgK, final int tgtLgK,
+      final boolean srcIsMem, final boolean tgtIsMem) {
+    final int n = 100 << srcLgK;
+    final HllSketch src = srcIsMem
+        ? new HllSketch(srcLgK, type, newMemory(srcLgK, type))
+        : new HllSketch(srcLgK, type);
+    for (int i = 0; i < n; i++) { src.update(i); }
+    final HllSketch tgt = newTarget(tgtLgK, n, tgtIsMem);
+    final int[] expected = slotwise(src, tgt, tgtLgK);
+    HllArrayMerge.merge(src, tgt, srcLgK, tgtLgK);
+    assertRegisters(tgt, expected);
+  }
+
+  //An HLL_8 target in HLL mode, holding a different stream than the source
+  private static HllSketch newTarget(final int lgK, final int n, final boolean isMem) {
+    final HllSketch tgt = isMem
+        ? new HllSketch(lgK, HLL_8, newMemory(lgK, HLL_8))
+        : new HllSketch(lgK, HLL_8);
+    for (int i = 0; i < (n + (100 << lgK)); i++) { tgt.update(-1L - i); }
+    return tgt;
+  }
+
+  //The expected target registers, computed one register at a time
+  private static int[] slotwise(final HllSketch src, final HllSketch tgt, final int tgtLgK) {
+    final AbstractHllArray srcArr = (AbstractHllArray) src.hllSketchImpl;
+    final AbstractHllArray tgtArr = (AbstractHllArray) tgt.hllSketchImpl;
+    final int tgtK = 1 << tgtLgK;
+    final int[] expected = new int[tgtK];
+    for (int j = 0; j < tgtK; j++) { expected[j] = tgtArr.getSlotValue(j); }
+    final int srcK = 1 << src.getLgConfigK();
+    for (int i = 0; i < srcK; i++) {
+      final int j = i & (tgtK - 1);
+      expected[j] = Math.max(expected[j], srcArr.getSlotValue(i));
+    }
+    return expected;
+  }
+
+  private static WritableMemory newMemory(final int lgK, final TgtHllType type) {
+    return WritableMemory.allocate(HllSketch.getMaxUpdatableSerializationBytes(lgK, type));
+  }
+
+  private static void assertRegisters(final HllSketch tgt, final int[] expected) {
+    final AbstractHllArray tgtArr = (AbstractHllArray) tgt.hllSketchImpl;
+    for (int j = 0; j < expected.length; j++) {
+      assertEquals(tgtArr.getSlotValue(j), expected[j]);
+    }
+  }
+
+}
@@ -0,0 +1,239 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.datasketches.hll;
+
+import static org.apache.datasketches.hll.TgtHllType.HLL_4;
+import static org.apache.datasketches.hll.TgtHllType.HLL_6;
+import static org.apache.datasketches.hll.TgtHllType.HLL_8;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import org.testng.annotations.Test;
+
+import org.apache.datasketches.SketchesArgumentException;
+import org.apache.datasketches.SketchesReadOnlyException;
+import org.apache.datasketches.memory.Memory;
+import org.apache.datasketches.memory.WritableMemory;
+
+@SuppressWarnings("javadoc")
+public class HllCompressionTest {
+
+  @Test
+  public void checkRoundTrip() {
+    final TgtHllType[] types = {HLL_4, HLL_6, HLL_8};
+    final int[] ns = {0, 1, 100, 1000, 10000, 300000};
+    for (final TgtHllType type : types) {
+      for (int lgK = 4; lgK <= 16; lgK += 3) {
+        for (final int n : ns) {
+          final HllSketch sk = newSketch(lgK, type, n, 0);
+          final byte[] comBytes = sk.toCompressedByteArray();
+          final HllSketch heap = HllSketch.heapify(comBytes);
+          assertEquals(heap.getTgtHllType(), type);
+          assertEquals(heap.getCurMode(), sk.getCurMode());
+          if (sk.getCurMode() != CurMode.HLL) {
+            assertEquals(comBytes, sk.toCompactByteArray());
+            continue;
+          }
+          checkSameState(heap, sk);
+          if (type != HLL_4) {
+            assertEquals(heap.toCompactByteArray(), sk.toCompactByteArray());
+          }
+          final HllSketch wrapped = HllSketch.wrap(Memory.wrap(comBytes));
+          checkSameEstimates(wrapped, sk);
+          checkSameState(wrapped, sk);
+          assertEquals(wrapped.toCompressedByteArray(), comBytes);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void checkHll4AuxRoundTrip() {
+    //empty registers keep curMin at zero, so the largest registers go to the AuxHashMap
+    final HllSketch sk = newSketch(16, HLL_4, 300000, 0);
+    final AbstractHllArray arr = (AbstractHllArray) sk.hllSketchImpl;
+    assertTrue(arr.getAuxHashMap().getAuxCount() > 0);
+    final HllSketch heap = HllSketch.heapify(sk.toCompressedByteArray());
+    final AbstractHllArray heapArr = (AbstractHllArray) heap.hllSketchImpl;
+    assertEquals(heapArr.getAuxHashMap().getAuxCount(), arr.getAuxHashMap().getAuxCount());
+    checkSameState(heap, sk);
+    heap.update(-1L); //the heapified sketch is updatable
+    assertEquals(heap.getCompactSerializationBytes(), heap.toCompactByteArray().length);
+  }
+
+  @Test
+  public void checkOutOfOrderAndRebuild() {
+    //the state of a union gadget that has not been finalized
+    final HllSketch gadget = newSketch(12, HLL_8, 20000, 0);
+    gadget.putOutOfOrderFlag(true);
+    gadget.hllSketchImpl.putRebuildCurMinNumKxQFlag(true);
+    ((AbstractHllArray) gadget.hllSketchImpl).putKxQ0(0); //stale
+    final byte[] comBytes = gadget.toCompressedByteArray();
+    assertTrue(gadget.hllSketchImpl.isRebuildCurMinNumKxQFlag()); //the source is not modified
+    final HllSketch result = gadget.copy();
+    Union.checkRebuildCurMinNumKxQ(result);
+    final HllSketch heap = HllSketch.heapify(comBytes);
+    assertFalse(heap.hllSketchImpl.isRebuildCurMinNumKxQFlag());
+    checkSameState(heap, result);
+    checkSameEstimates(HllSketch.wrap(Memory.wrap(comBytes)), result);
+  }
+
+  @Test
+  public void checkSmallerThanHll4() {
+    for (int lgK = 12; lgK <= 14; lgK++) {
+      for (int m = 1; m <= 64; m *= 4) {
+        final HllSketch sk = newSketch(lgK, HLL_4, m << lgK, 0);
+        final int comBytes = sk.toCompressedByteArray().length;
+        final int hll4Bytes = sk.toCompactByteArray().length;
+        assertTrue(comBytes < hll4Bytes, "lgK=" + lgK + ", m=" + m);
+        assertTrue((8.0 * comBytes) / (1 << lgK) < 3.2);
+      }
+    }
+  }
+
+  @Test
+  public void checkUnionWithCompressed() {
+    final TgtHllType[] types = {HLL_4, HLL_6, HLL_8};
+    for (final TgtHllType type : types) {
+      final HllSketch sk1 = newSketch(11, type, 50000, 0);
+      final HllSketch sk2 = newSketch(11, type, 50000, 1L << 40);
+      final Union u1 = new Union(11);
+      u1.update(sk1);
+      u1.update(sk2);
+      final Union u2 = new Union(11);
+      u2.update(HllSketch.wrap(Memory.wrap(sk1.toCompressedByteArray())));
+      u2.update(Memory.wrap(sk2.toCompressedByteArray()));
+      assertEquals(u2.toCompactByteArray(), u1.toCompactByteArray());
+      //a wrapped source merged into a gadget in HLL mode, on the heap and in Memory
+      final Union u3 = new Union(11);
+      final Union u4 = new Union(11, WritableMemory.allocate(
+          HllSketch.getMaxUpdatableSerializationBytes(11, HLL_8)));
+      u3.update(sk1);
+      u4.update(sk1);
+      u3.update(HllSketch.wrap(Memory.wrap(sk2.toCompressedByteArray())));
+      u4.update(HllSketch.wrap(Memory.wrap(sk2.toCompressedByteArray())));
+      assertEquals(u3.toCompactByteArray(), u1.toCompactByteArray());
+      assertEquals(u4.toCompactByteArray(), u1.toCompactByteArray());
+    }
+  }
+
+  @Test
+  public void checkLongCodesAreLimited() {
+    final int[] freq = new int[40];
+    for (int s = 0; s < freq.length; s++) {
+      freq[s] = 1 << Math.max(0, 30 - s); //a geometric histogram needs codes longer than the limit
+    }
+    final int[] lengths = HllCompression.limitedCodeLengths(freq);
+    double kraft = 0;
+    for (int s = 0; s < lengths.length; s++) {
+      assertTrue((lengths[s] >= 1) && (lengths[s] <= HllCompression.MAX_CODE_LEN));
+      kraft += 1.0 / (1 << lengths[s]);
+    }
+    assertEquals(kraft, 1.0);
+  }
+
+  @Test
+  public void checkWrappedIsReadOnly() {
+    final HllSketch wrapped =
+        HllSketch.wrap(Memory.wrap(newSketch(10, HLL_6, 10000, 0).toCompressedByteArray()));
+    assertFalse(wrapped.isMemory()); //not the standard layout
+    assertNull(wrapped.getMemory());
+    assertTrue(wrapped.isCompact());
+    assertNull(wrapped.getWritableMemory());
+    try {
+      wrapped.update(-1L);
+      fail();
+    } catch (final SketchesReadOnlyException e) {
+      //expected
+    }
+    try {
+      wrapped.reset();
+      fail();
+    } catch (final SketchesReadOnlyException e) {
+      //expected
+    }
+    final HllSketch copy = wrapped.copy();
+    assertFalse(copy.isMemory());
+    copy.update(-1L);
+  }
+
+  @Test
+  public void checkCorruptImage() {
+    final byte[] comBytes = newSketch(10, HLL_4, 10000, 0).toCompressedByteArray();
+    final byte[] truncated = new byte[comBytes.length - 1];
+    System.arraycopy(comBytes, 0, truncated, 0, truncated.length);
+    try {
+      HllSketch.heapify(truncated);
+      fail();
+    } catch (final SketchesArgumentException e) {
+      //expected
+    }
+    comBytes[PreambleUtil.COMPRESSED_NUM_SYMBOLS_BYTE] = 0;
+    try {
+      HllSketch.wrap(Memory.wrap(comBytes));
+      fail();
+    } catch (final SketchesArgumentException e) {
+      //expected
+    }
+  }
+
+  @Test
+  public void checkCharacterization() {
+    new HllCompressionCharacterization(10, 11, 2, 4, 1, null, null).start();
+  }
+
+  private static HllSketch newSketch(final int lgK, final TgtHllType type, final int n,
+      final long offset) {
+    final HllSketch sk = new HllSketch(lgK, type);
+    for (int i = 0; i < n; i++) {
+      sk.update(offset + i);
+    }
+    return sk;
+  }
+
+  private static void checkSameState(final HllSketch sk1, final HllSketch sk2) {
+    final AbstractHllArray arr1 = (AbstractHllArray) sk1.hllSketchImpl;
+    final AbstractHllArray arr2 = (AbstractHllArray) sk2.hllSketchImpl;
+    final int k = 1 << sk2.getLgConfigK();
+    for (int slot = 0; slot < k; slot++) {
+      assertEquals(arr1.getSlotValue(slot), arr2.getSlotValue(slot));
+    }
+    assertEquals(arr1.getCurMin(), arr2.getCurMin());
+    assertEquals(arr1.getNumAtCurMin(), arr2.getNumAtCurMin());
+    assertEquals(arr1.getKxQ0(), arr2.getKxQ0());
+    assertEquals(arr1.getKxQ1(), arr2.getKxQ1());
+    assertEquals(arr1.getHipAccum(), arr2.getHipAccum());
+    assertEquals(arr1.isOutOfOrder(), arr2.isOutOfOrder());
+    checkSameEstimates(sk1, sk2);
+  }
+
+  private static void checkSameEstimates(final HllSketch sk1, final HllSketch sk2) {
+    assertEquals(sk1.getEstimate(), sk2.getEstimate());
+    assertEquals(sk1.getCompositeEstimate(), sk2.getCompositeEstimate());
+    for (int numStdDev = 1; numStdDev <= 3; numStdDev++) {
+      assertEquals(sk1.getLowerBound(numStdDev), sk2.getLowerBound(numStdDev));
+      assertEquals(sk1.getUpperBound(numStdDev), sk2.getUpperBound(numStdDev));
+    }
+  }
+}
@@ -19,6 +19,7 @@
 
 package org.apache.datasketches.hll;
 
+import static org.apache.datasketches.AllocationTestUtil.minAllocatedBytes;
 import static org.apache.datasketches.hll.HllSketch.getMaxUpdatableSerializationBytes;
 import static org.apache.datasketches.hll.HllUtil.LG_AUX_ARR_INTS;
 import static org.apache.datasketches.hll.HllUtil.LG_INIT_LIST_SIZE;
@@ -35,6 +36,10 @@ import static org.testng.Assert.assertNull;
 import static org.testng.Assert.assertTrue;
 import static org.testng.Assert.fail;
 
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.apache.datasketches.AllocationTestUtil.AllTypesUpdater;
 import org.apache.datasketches.SketchesArgumentException;
 import org.apache.datasketches.memory.Memory;
 import org.apache.datasketches.memory.WritableMemory;
@@ -438,6 +443,59 @@ public class HllSketchTest {
     sk2 = HllSketch.heapify(Memory.wrap(arr));
   }
 
+  @Test
+  public void checkUpdateMemoryAndByteBufferRegions() {
+    final byte[] bytes = new byte[1000];
+    new Random(1).nextBytes(bytes);
+    final Memory mem = Memory.wrap(bytes);
+    final ByteBuffer buf = ByteBuffer.allocateDirect(bytes.length);
+    buf.put(bytes);
+    final HllSketch sk1 = new HllSketch(12);
+    final HllSketch sk2 = new HllSketch(12);
+    final HllSketch sk3 = new HllSketch(12);
+    for (int offset = 0; offset < 900; offset++) {
+      final int length = 1 + (offset % 40);
+      final byte[] key = new byte[length];
+      System.arraycopy(bytes, offset, key, 0, length);
+      sk1.update(key);
+      sk2.update(mem, offset, length);
+      sk3.update(buf, offset, length);
+    }
+    sk2.update(mem, 0, 0); //empty regions are ignored
+    sk3.update(buf, 0, 0);
+    assertEquals(sk2.toCompactByteArray(), sk1.toCompactByteArray());
+    assertEquals(sk3.toCompactByteArray(), sk1.toCompactByteArray());
+  }
+
+  @Test
+  public void checkUpdateDoesNotAllocate() {
+    for (TgtHllType tgtHllType : TgtHllType.values()) {
+      final HllSketch sk = new HllSketch(10, tgtHllType);
+      final long bytes = minAllocatedBytes(allTypesUpdater(sk));
+      assertTrue(bytes < 1024, tgtHllType + " allocated " + bytes + " bytes");
+      //the warm-up pass promoted the sketch from LIST and SET, so the passes measured HLL mode
+      assertEquals(sk.getCurMode(), CurMode.HLL);
+    }
+  }
+
+  private static AllTypesUpdater allTypesUpdater(final HllSketch sk) {
+    return new AllTypesUpdater(10_000) {
+      @Override protected void update(final long datum) { sk.update(datum); }
+      @Override protected void update(final double datum) { sk.update(datum); }
+      @Override protected void update(final long[] data) { sk.update(data); }
+      @Override protected void update(final int[] data) { sk.update(data); }
+      @Override protected void update(final char[] data) { sk.update(data); }
+      @Override protected void update(final byte[] data) { sk.update(data); }
+      @Override protected void update(final Memory mem, final long offsetBytes, final long lengthBytes) {
+        sk.update(mem, offsetBytes, lengthBytes);
+      }
+      @Override protected void update(final ByteBuffer buf, final int offset, final int length) {
+        sk.update(buf, offset, length);
+      }
+      @Override protected void update(final CharSequence datum) { sk.update(datum); }
+    };
+  }
+
   @Test
   public void printlnTest() {
     println("PRINTING: "+this.getClass().getName());
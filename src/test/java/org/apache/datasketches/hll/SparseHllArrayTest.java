@@ -0,0 +1,169 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.datasketches.hll;
+
+import static org.apache.datasketches.hll.TgtHllType.HLL_4;
+import static org.apache.datasketches.hll.TgtHllType.HLL_6;
+import static org.apache.datasketches.hll.TgtHllType.HLL_8;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import org.testng.annotations.Test;
+
+import org.apache.datasketches.memory.WritableMemory;
+
+@SuppressWarnings("javadoc")
+public class SparseHllArrayTest {
+  private static final TgtHllType[] TYPES = {HLL_4, HLL_6, HLL_8};
+
+  @Test
+  public void checkIdenticalToDense() {
+    for (final TgtHllType type : TYPES) {
+      for (int lgK = 8; lgK <= 14; lgK += 3) {
+        final HllSketch heap = new HllSketch(lgK, type, true);
+        final HllSketch direct = newDirectSketch(lgK, type);
+        boolean sawSparse = false;
+        long n = 0;
+        for (long target = 1; target <= (4L << lgK); target += (target >>> 3) + 1) {
+          for (; n < target; n++) {
+            heap.update(n);
+            direct.update(n);
+          }
+          sawSparse |= heap.hllSketchImpl instanceof SparseHllArray;
+          checkSame(heap, direct);
+        }
+        assertTrue(sawSparse);
+        assertTrue(heap.hllSketchImpl instanceof HllArray); //eventually dense
+      }
+    }
+  }
+
+  @Test
+  public void checkBatchUpdate() {
+    for (final TgtHllType type : TYPES) {
+      final HllSketch single = new HllSketch(12, type, true);
+      final HllSketch batch = new HllSketch(12, type, true);
+      final long[] values = new long[5000];
+      for (int i = 0; i < values.length; i++) {
+        values[i] = i;
+        single.update(i);
+      }
+      for (int off = 0; off < values.length; off += 333) {
+        batch.batchUpdate(values, off, Math.min(333, values.length - off));
+      }
+      assertEquals(batch.toUpdatableByteArray(), single.toUpdatableByteArray());
+      assertEquals(batch.getEstimate(), single.getEstimate());
+    }
+  }
+
+  @Test
+  public void checkFootprint() {
+    final HllSketch sk = new HllSketch(14, HLL_8, true);
+    for (int i = 0; i < 4000; i++) { sk.update(i); }
+    final SparseHllArray sparse = (SparseHllArray) sk.hllSketchImpl;
+    assertTrue(sparse.getFootprintBytes() < (1 << 14) / 3);
+  }
+
+  @Test
+  public void checkAccessorsMatchDense() {
+    for (final TgtHllType type : TYPES) {
+      final HllSketch sk = new HllSketch(10, type, true);
+      for (int i = 0; i < 200; i++) { sk.update(i); }
+      sk.couponUpdate(HllUtil.pair(3, 20)); //an HLL_4 exception
+      final SparseHllArray sparse = (SparseHllArray) sk.hllSketchImpl;
+      final HllSketch denseSk = new HllSketch(10, type);
+      for (int i = 0; i < 200; i++) { denseSk.update(i); }
+      denseSk.couponUpdate(HllUtil.pair(3, 20));
+      for (int slot = 0; slot < (1 << 10); slot++) { //the last coupon is still buffered
+        assertEquals(sparse.getSlotValue(slot), ((HllArray) denseSk.hllSketchImpl).getSlotValue(slot));
+      }
+      final HllArray dense = sparse.toDense();
+      final PairIterator sItr = sparse.iterator();
+      final PairIterator dItr = dense.iterator();
+      while (dItr.nextAll()) {
+        assertTrue(sItr.nextAll());
+        assertEquals(sItr.getPair(), dItr.getPair());
+        assertEquals(sparse.getSlotValue(dItr.getSlot()), dItr.getValue());
+        if (type == HLL_4) {
+          assertEquals(sparse.getNibble(dItr.getSlot()), dense.getNibble(dItr.getSlot()));
+        }
+      }
+      assertEquals(sparse.getCompactSerializationBytes(), dense.getCompactSerializationBytes());
+      assertEquals(sparse.getUpdatableSerializationBytes(), dense.getUpdatableSerializationBytes());
+      assertEquals(sk.copy().toCompactByteArray(), dense.toCompactByteArray());
+      assertEquals(sk.copyAs(HLL_8).toCompactByteArray(), dense.copyAs(HLL_8).toCompactByteArray());
+      sk.reset();
+      assertTrue(sk.isEmpty());
+    }
+  }
+
+  @Test
+  public void checkUnionOfSparseSources() {
+    for (final TgtHllType type : TYPES) {
+      final Union union = new Union(12);
+      final Union denseUnion = new Union(12);
+      for (int s = 0; s < 8; s++) {
+        final HllSketch sk = new HllSketch(12, type, true);
+        for (int i = 0; i < (300 * (s + 1)); i++) { sk.update((s << 20) + i); }
+        union.update(sk);
+        //heapify restores a dense array from an HLL mode image
+        denseUnion.update((sk.getCurMode() == CurMode.HLL)
+            ? HllSketch.heapify(sk.toUpdatableByteArray()) : sk);
+        assertEquals(union.getEstimate(), denseUnion.getEstimate());
+      }
+      assertEquals(union.toCompactByteArray(), denseUnion.toCompactByteArray());
+    }
+  }
+
+  @Test
+  public void checkOptIn() {
+    final HllSketch def = new HllSketch(12, HLL_8);
+    final HllSketch sk = new HllSketch(12, HLL_8, true);
+    for (int i = 0; i < 1000; i++) {
+      def.update(i);
+      sk.update(i);
+    }
+    assertTrue(def.hllSketchImpl instanceof HllArray);
+    assertTrue(sk.hllSketchImpl instanceof SparseHllArray);
+    assertTrue(sk.copy().hllSketchImpl instanceof SparseHllArray);
+    for (int i = 1000; i < 20000; i++) { sk.update(i); }
+    assertTrue(sk.hllSketchImpl instanceof HllArray);
+    sk.reset(); //the sparse form survives the densification
+    for (int i = 0; i < 1000; i++) { sk.update(i); }
+    assertTrue(sk.hllSketchImpl instanceof SparseHllArray);
+    assertEquals(sk.toCompactByteArray(), def.toCompactByteArray());
+  }
+
+  private static HllSketch newDirectSketch(final int lgK, final TgtHllType type) {
+    final int bytes = HllSketch.getMaxUpdatableSerializationBytes(lgK, type);
+    return new HllSketch(lgK, type, WritableMemory.allocate(bytes));
+  }
+
+  private static void checkSame(final HllSketch sk1, final HllSketch sk2) {
+    assertEquals(sk1.getCurMode(), sk2.getCurMode());
+    assertEquals(sk1.getEstimate(), sk2.getEstimate());
+    assertEquals(sk1.getCompositeEstimate(), sk2.getCompositeEstimate());
+    assertEquals(sk1.getLowerBound(2), sk2.getLowerBound(2));
+    assertEquals(sk1.getUpperBound(2), sk2.getUpperBound(2));
+    assertEquals(sk1.getCompactSerializationBytes(), sk2.getCompactSerializationBytes());
+    assertEquals(sk1.toCompactByteArray(), sk2.toCompactByteArray());
+  }
+}
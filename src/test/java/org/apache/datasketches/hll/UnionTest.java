@@ -20,6 +20,7 @@
 package org.apache.datasketches.hll;
 
 import static java.lang.Math.min;
+import static org.apache.datasketches.AllocationTestUtil.minAllocatedBytes;
 import static org.apache.datasketches.hll.TgtHllType.HLL_4;
 import static org.apache.datasketches.hll.TgtHllType.HLL_6;
 import static org.apache.datasketches.hll.TgtHllType.HLL_8;
@@ -495,6 +496,87 @@ public class UnionTest {
    return sketch;
   }
 
+  @Test
+  public void checkUpdateFromMemory() {
+    final int[] lgKs = {6, 10, 12};
+    final int[] ns = {0, 7, 300, 5000, 100000};
+    for (int lgMaxK = 8; lgMaxK <= 12; lgMaxK += 4) {
+      for (final TgtHllType type : TgtHllType.values()) {
+        for (final boolean compact : new boolean[] {false, true}) {
+          for (final boolean direct : new boolean[] {false, true}) {
+            final Union union1 = newUnion(lgMaxK, direct);
+            final Union union2 = newUnion(lgMaxK, direct);
+            long v = 0;
+            for (final int lgK : lgKs) {
+              for (final int n : ns) {
+                final HllSketch sk = new HllSketch(lgK, type);
+                for (int i = 0; i < n; i++) { sk.update(v++); }
+                final Memory mem = Memory.wrap(compact ? sk.toCompactByteArray()
+                    : sk.toUpdatableByteArray());
+                union1.update(HllSketch.wrap(mem));
+                union2.update(mem);
+                assertEquals(union2.getLgConfigK(), union1.getLgConfigK());
+                assertEquals(union2.getResult(HLL_8).toCompactByteArray(),
+                    union1.getResult(HLL_8).toCompactByteArray());
+              }
+            }
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  public void checkUpdateFromMemoryHll4Aux() {
+    //while some registers are still empty, values of 15 or more go into the AuxHashMap
+    final HllSketch sk = new HllSketch(16, HLL_4);
+    for (int i = 0; i < 300000; i++) { sk.update(i); }
+    for (final boolean compact : new boolean[] {false, true}) {
+      final Memory mem = Memory.wrap(compact ? sk.toCompactByteArray() : sk.toUpdatableByteArray());
+      assertTrue(PreambleUtil.extractAuxCount(mem) > 0);
+      for (int lgMaxK = 10; lgMaxK <= 16; lgMaxK += 6) {
+        final Union union1 = newUnion(lgMaxK);
+        final Union union2 = newUnion(lgMaxK);
+        final HllSketch other = new HllSketch(16, HLL_8);
+        for (int i = 0; i < 100000; i++) { other.update(-1L - i); }
+        union1.update(other);
+        union2.update(other);
+        union1.update(sk);
+        union2.update(mem);
+        assertEquals(union2.getResult(HLL_8).toCompactByteArray(),
+            union1.getResult(HLL_8).toCompactByteArray());
+      }
+    }
+  }
+
+  @Test
+  public void checkUpdateFromMemoryDoesNotAllocate() {
+    final Memory[] mems = new Memory[6];
+    int j = 0;
+    for (final TgtHllType type : TgtHllType.values()) {
+      final HllSketch sk = new HllSketch(12, type);
+      for (int i = 0; i < 100000; i++) { sk.update(((long) j << 32) + i); }
+      mems[j++] = Memory.wrap(sk.toCompactByteArray());
+      mems[j++] = Memory.wrap(sk.toUpdatableByteArray());
+    }
+    for (final boolean direct : new boolean[] {false, true}) {
+      final Union union = newUnion(12, direct);
+      final long bytes = minAllocatedBytes(() -> {
+        for (int i = 0; i < 1000; i++) { union.update(mems[i % mems.length]); }
+      });
+      assertTrue(bytes < 1024, "direct=" + direct + " allocated " + bytes + " bytes");
+      //the gadget stays in HLL_8 mode when merging images of every type
+      assertEquals(union.getTgtHllType(), HLL_8);
+      assertEquals(union.getCurMode(), CurMode.HLL);
+    }
+  }
+
+  private static Union newUnion(final int lgMaxK, final boolean direct) {
+    return direct
+        ? new Union(lgMaxK, WritableMemory.allocate(Union.getMaxSerializationBytes(lgMaxK)))
+        : new Union(lgMaxK);
+  }
+
   private static Union newUnion(int lgK) {
     return new Union(lgK);
   }
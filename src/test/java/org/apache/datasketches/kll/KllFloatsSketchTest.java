@@ -25,9 +25,13 @@ import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertNotNull;
 import static org.testng.Assert.assertNull;
 import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
 
 import org.apache.datasketches.SketchesArgumentException;
+import org.apache.datasketches.SketchesReadOnlyException;
 import org.apache.datasketches.memory.Memory;
+import org.apache.datasketches.memory.WritableDirectHandle;
+import org.apache.datasketches.memory.WritableMemory;
 import org.testng.annotations.Test;
 
 @SuppressWarnings("javadoc")
@@ -421,4 +425,277 @@ public class KllFloatsSketchTest {
     assertEquals(quantiles1[2], 3f);
   }
 
+  @Test
+  public void sortedViewMatchesSketch() {
+    final KllFloatsSketch sketch = new KllFloatsSketch();
+    for (int i = 0; i < 10000; i++) {
+      sketch.update(i);
+    }
+    final KllFloatsSketchSortedView view = sketch.getSortedView();
+    assertTrue(view == sketch.getSortedView()); //cached
+    assertEquals(view.getN(), sketch.getN());
+    assertEquals(view.getMinValue(), sketch.getMinValue());
+    assertEquals(view.getMaxValue(), sketch.getMaxValue());
+    final float[] splitPoints = {100, 5000, 9000};
+    assertEquals(view.getCDF(splitPoints), sketch.getCDF(splitPoints));
+    assertEquals(view.getPMF(splitPoints), sketch.getPMF(splitPoints));
+    assertEquals(view.getQuantiles(11), sketch.getQuantiles(11));
+    for (int i = 0; i <= 10; i++) {
+      final double fraction = i / 10.0;
+      assertEquals(view.getQuantile(fraction), sketch.getQuantile(fraction));
+      assertEquals(view.getQuantileUpperBound(fraction), sketch.getQuantileUpperBound(fraction));
+      assertEquals(view.getQuantileLowerBound(fraction), sketch.getQuantileLowerBound(fraction));
+      assertEquals(view.getRank(i * 1000), sketch.getRank(i * 1000));
+    }
+  }
+
+  @Test
+  public void sortedViewInvalidatedByUpdateAndMerge() {
+    final KllFloatsSketch sketch = new KllFloatsSketch();
+    for (int i = 0; i < 1000; i++) {
+      sketch.update(i);
+    }
+    final KllFloatsSketchSortedView view = sketch.getSortedView();
+    sketch.update(5000);
+    assertFalse(view == sketch.getSortedView());
+    assertEquals(view.getN(), 1000);
+    assertEquals(view.getMaxValue(), 999f);
+    assertEquals(sketch.getMaxValue(), 5000f);
+    assertEquals(view.getRank(1000), 1.0);
+    assertTrue(sketch.getRank(1000) < 1.0);
+
+    final KllFloatsSketchSortedView view2 = sketch.getSortedView();
+    final KllFloatsSketch other = new KllFloatsSketch();
+    other.update(-1);
+    sketch.merge(other);
+    assertFalse(view2 == sketch.getSortedView());
+    assertEquals(sketch.getMinValue(), -1f);
+    assertEquals(sketch.getQuantile(0), -1f);
+    assertEquals(view2.getQuantile(0), 0f);
+  }
+
+  @Test
+  public void sortedViewEmpty() {
+    final KllFloatsSketchSortedView view = new KllFloatsSketch().getSortedView();
+    assertTrue(view.isEmpty());
+    assertTrue(Float.isNaN(view.getQuantile(0.5)));
+    assertTrue(Double.isNaN(view.getRank(0)));
+    assertNull(view.getQuantiles(new double[] {0.5}));
+    assertNull(view.getPMF(new float[] {0}));
+    assertNull(view.getCDF(new float[] {0}));
+  }
+
+  @Test
+  public void seededSketchesAreReproducible() {
+    final KllFloatsSketch sketch1 = new KllFloatsSketch(50, 123L);
+    final KllFloatsSketch sketch2 = new KllFloatsSketch(50, 123L);
+    final KllFloatsSketch other1 = new KllFloatsSketch(50, 456L);
+    final KllFloatsSketch other2 = new KllFloatsSketch(50, 456L);
+    for (int i = 0; i < 10000; i++) {
+      sketch1.update(i);
+      sketch2.update(i);
+      other1.update(-i);
+      other2.update(-i);
+    }
+    assertEquals(sketch1.toByteArray(), sketch2.toByteArray());
+    sketch1.merge(other1);
+    sketch2.merge(other2);
+    assertEquals(sketch1.toByteArray(), sketch2.toByteArray());
+    assertEquals(sketch1.getQuantiles(11), sketch2.getQuantiles(11));
+  }
+
+  @Test
+  public void directSketchMatchesHeap() {
+    final KllFloatsSketch heapSketch = new KllFloatsSketch(20);
+    //start with the smallest Memory so that adding levels has to request more
+    try (WritableDirectHandle wdh =
+        WritableMemory.allocateDirect(KllFloatsSketch.getMaxSerializedSizeBytes(20, 0, true))) {
+      KllFloatsSketch directSketch = KllFloatsSketch.newDirectInstance(20, wdh.get());
+      assertTrue(directSketch.isDirect());
+      assertFalse(directSketch.isReadOnly());
+      assertTrue(directSketch.isEmpty());
+      for (int i = 1; i <= 10000; i++) {
+        heapSketch.update(i);
+        directSketch.update(i);
+        assertEquals(directSketch.getN(), heapSketch.getN());
+        assertEquals(directSketch.getNumRetained(), heapSketch.getNumRetained());
+        assertEquals(directSketch.getLevels(), heapSketch.getLevels());
+        if (i % 1000 == 0) {
+          //the state in the Memory is complete, so wrapping it again resumes where it left off
+          directSketch = KllFloatsSketch.writableWrap(
+              WritableMemory.wrap(directSketch.toUpdatableByteArray()));
+        }
+      }
+      assertEquals(directSketch.getMinValue(), 1f);
+      assertEquals(directSketch.getMaxValue(), 10000f);
+      assertTrue(directSketch.isEstimationMode());
+      assertEquals(directSketch.getSerializedSizeBytes(), heapSketch.getSerializedSizeBytes());
+      final KllFloatsSketch heapified =
+          KllFloatsSketch.heapify(Memory.wrap(directSketch.toUpdatableByteArray()));
+      assertFalse(heapified.isDirect());
+      assertEquals(heapified.toByteArray(), directSketch.toByteArray());
+      int count = 0;
+      final KllFloatsSketchIterator it = directSketch.iterator();
+      while (it.next()) { count++; }
+      assertEquals(count, directSketch.getNumRetained());
+    }
+  }
+
+  @Test
+  public void directSketchMerge() {
+    final KllFloatsSketch heapSketch = new KllFloatsSketch();
+    final int k = KllFloatsSketch.DEFAULT_K;
+    try (WritableDirectHandle wdh =
+        WritableMemory.allocateDirect(KllFloatsSketch.getMaxSerializedSizeBytes(k, 0, true))) {
+      final KllFloatsSketch directSketch = KllFloatsSketch.newDirectInstance(k, wdh.get());
+      final KllFloatsSketch other = new KllFloatsSketch();
+      for (int i = 0; i < 10000; i++) {
+        heapSketch.update(i);
+        directSketch.update(i);
+        other.update(-i);
+      }
+      heapSketch.merge(other);
+      directSketch.merge(other);
+      assertEquals(directSketch.getN(), 20000);
+      assertEquals(directSketch.getMinValue(), -9999f);
+      assertEquals(directSketch.getMaxValue(), 9999f);
+      assertEquals(directSketch.getLevels(), heapSketch.getLevels());
+      assertEquals(directSketch.getRank(0), 0.5, directSketch.getNormalizedRankError(false));
+
+      // a direct sketch can be merged into a heap sketch
+      final KllFloatsSketch target = new KllFloatsSketch();
+      target.merge(directSketch);
+      assertEquals(target.getN(), 20000);
+      assertEquals(target.getMinValue(), -9999f);
+    }
+  }
+
+  @Test
+  public void wrapAnswersQueriesLikeHeapify() {
+    final KllFloatsSketch sketch = new KllFloatsSketch();
+    for (int i = 0; i < 100000; i++) {
+      sketch.update(i % 7 == 0 ? -i : i);
+    }
+    final byte[] compactBytes = sketch.toByteArray();
+    final KllFloatsSketch heapified = KllFloatsSketch.heapify(Memory.wrap(compactBytes));
+    final KllFloatsSketch[] wrapped = {
+        KllFloatsSketch.wrap(Memory.wrap(compactBytes)),
+        KllFloatsSketch.wrap(Memory.wrap(sketch.toUpdatableByteArray()))
+    };
+    final float[] splitPoints = {-50000, 0, 25000, 75000};
+    for (final KllFloatsSketch wrap : wrapped) {
+      assertTrue(wrap.isDirect());
+      assertTrue(wrap.isReadOnly());
+      assertEquals(wrap.getN(), heapified.getN());
+      assertEquals(wrap.getMinValue(), heapified.getMinValue());
+      assertEquals(wrap.getMaxValue(), heapified.getMaxValue());
+      assertEquals(wrap.getNumRetained(), heapified.getNumRetained());
+      for (int i = 0; i <= 100; i++) {
+        final double fraction = i / 100.0;
+        assertEquals(wrap.getQuantile(fraction), heapified.getQuantile(fraction));
+        final float value = i * 1000 - 10000;
+        assertEquals(wrap.getRank(value), heapified.getRank(value));
+      }
+      assertEquals(wrap.getQuantiles(11), heapified.getQuantiles(11));
+      assertEquals(wrap.getPMF(splitPoints), heapified.getPMF(splitPoints));
+      assertEquals(wrap.getCDF(splitPoints), heapified.getCDF(splitPoints));
+      assertEquals(wrap.toByteArray(), compactBytes);
+    }
+  }
+
+  @Test
+  public void wrapSmallSketches() {
+    final KllFloatsSketch sketch = new KllFloatsSketch();
+    KllFloatsSketch wrap = KllFloatsSketch.wrap(Memory.wrap(sketch.toByteArray()));
+    assertTrue(wrap.isEmpty());
+    assertEquals(wrap.getN(), 0);
+    assertTrue(Float.isNaN(wrap.getQuantile(0.5)));
+    assertTrue(Double.isNaN(wrap.getRank(0)));
+    assertNull(wrap.getPMF(new float[] {0}));
+    sketch.update(1);
+    wrap = KllFloatsSketch.wrap(Memory.wrap(sketch.toByteArray()));
+    assertEquals(wrap.getN(), 1);
+    assertEquals(wrap.getMinValue(), 1f);
+    assertEquals(wrap.getMaxValue(), 1f);
+    assertEquals(wrap.getQuantile(0.5), 1f);
+    assertEquals(wrap.getRank(1), 0.0);
+    assertEquals(wrap.getRank(2), 1.0);
+  }
+
+  @Test
+  public void wrappedSketchIsReadOnly() {
+    final KllFloatsSketch sketch = new KllFloatsSketch();
+    sketch.update(1);
+    final KllFloatsSketch wrap = KllFloatsSketch.wrap(Memory.wrap(sketch.toUpdatableByteArray()));
+    try {
+      wrap.update(2);
+      fail();
+    } catch (final SketchesReadOnlyException e) {
+      //expected
+    }
+    try {
+      wrap.merge(sketch);
+      fail();
+    } catch (final SketchesReadOnlyException e) {
+      //expected
+    }
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void writableWrapRejectsCompactImage() {
+    final KllFloatsSketch sketch = new KllFloatsSketch();
+    sketch.update(1);
+    KllFloatsSketch.writableWrap(WritableMemory.wrap(sketch.toByteArray()));
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void newDirectInstanceTooSmall() {
+    KllFloatsSketch.newDirectInstance(KllFloatsSketch.DEFAULT_K, WritableMemory.allocate(100));
+  }
+
+  @Test
+  public void bulkUpdateMatchesSingleUpdates() {
+    final float[] values = new float[100000];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = i % 101 == 0 ? Float.NaN : (i * 7919) % values.length;
+    }
+    final KllFloatsSketch sketch1 = new KllFloatsSketch(50, 123L);
+    final KllFloatsSketch sketch2 = new KllFloatsSketch(50, 123L);
+    for (int i = 0; i < values.length; i++) {
+      sketch1.update(values[i]);
+    }
+    for (int offset = 0; offset < values.length; offset += 777) {
+      sketch2.update(values, offset, Math.min(777, values.length - offset));
+    }
+    assertEquals(sketch2.getN(), sketch1.getN());
+    assertEquals(sketch2.getMinValue(), sketch1.getMinValue());
+    assertEquals(sketch2.getMaxValue(), sketch1.getMaxValue());
+    assertEquals(sketch2.toByteArray(), sketch1.toByteArray());
+
+    try (WritableDirectHandle wdh =
+        WritableMemory.allocateDirect(KllFloatsSketch.getMaxSerializedSizeBytes(50, 0, true))) {
+      final KllFloatsSketch directSketch = KllFloatsSketch.newDirectInstance(50, wdh.get());
+      directSketch.update(values, 0, values.length);
+      assertEquals(directSketch.getN(), sketch1.getN());
+      assertEquals(directSketch.getMinValue(), sketch1.getMinValue());
+      assertEquals(directSketch.getMaxValue(), sketch1.getMaxValue());
+      assertEquals(directSketch.getLevels(), sketch1.getLevels());
+    }
+  }
+
+  @Test
+  public void bulkUpdateInvalidatesSortedView() {
+    final KllFloatsSketch sketch = new KllFloatsSketch();
+    sketch.update(new float[] {1, 2, 3}, 0, 3);
+    assertEquals(sketch.getQuantile(1.0), 3f);
+    sketch.update(new float[] {4, 5}, 0, 2);
+    assertEquals(sketch.getQuantile(1.0), 5f);
+    assertEquals(sketch.getN(), 5);
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void bulkUpdateChecksBounds() {
+    new KllFloatsSketch().update(new float[10], 5, 6);
+  }
+
 }
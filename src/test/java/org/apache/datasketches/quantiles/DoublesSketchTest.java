@@ -154,6 +154,53 @@ public class DoublesSketchTest {
     }
   }
 
+  @Test
+  public void checkSortedViewCachedAndInvalidated() {
+    UpdateDoublesSketch uds = DoublesSketch.builder().setK(32).build();
+    for (int i = 0; i < 1000; i++) {
+      uds.update(i);
+    }
+    DoublesSketchSortedView view = uds.getSortedView();
+    assertTrue(view == uds.getSortedView());
+    double[] splitPoints = { 100, 500, 900 };
+    assertEquals(view.getCDF(splitPoints), uds.getCDF(splitPoints));
+    assertEquals(view.getPMF(splitPoints), uds.getPMF(splitPoints));
+    assertEquals(view.getQuantiles(11), uds.getQuantiles(11));
+    assertEquals(view.getQuantile(0.5), uds.getQuantile(0.5));
+    assertEquals(view.getQuantileUpperBound(0.5), uds.getQuantileUpperBound(0.5));
+    assertEquals(view.getQuantileLowerBound(0.5), uds.getQuantileLowerBound(0.5));
+    assertEquals(view.getRank(500), uds.getRank(500));
+
+    uds.update(5000);
+    assertFalse(view == uds.getSortedView());
+    assertEquals(view.getN(), 1000);
+    assertEquals(view.getMaxValue(), 999.0);
+    assertEquals(uds.getQuantile(1.0), 5000.0);
+
+    view = uds.getSortedView();
+    uds.reset();
+    assertFalse(view == uds.getSortedView());
+    assertTrue(uds.getSortedView().isEmpty());
+    assertNull(uds.getSortedView().getQuantiles(5));
+    assertEquals(view.getN(), 1001);
+  }
+
+  @Test
+  public void checkSortedViewDirect() {
+    WritableMemory mem = WritableMemory.allocate(DoublesSketch.getUpdatableStorageBytes(32, 2000));
+    UpdateDoublesSketch uds = DoublesSketch.builder().setK(32).build(mem);
+    for (int i = 0; i < 1000; i++) {
+      uds.update(i);
+    }
+    DoublesSketchSortedView view = uds.getSortedView();
+    assertFalse(view == uds.getSortedView()); //never cached for Memory-backed sketches
+    assertEquals(view.getQuantile(0.5), uds.getQuantile(0.5));
+    assertEquals(view.getRank(500), uds.getRank(500));
+    uds.update(5000);
+    assertEquals(view.getMaxValue(), 999.0);
+    assertEquals(uds.getSortedView().getMaxValue(), 5000.0);
+  }
+
   @Test
   public void printlnTest() {
     println("PRINTING: " + this.getClass().getName());
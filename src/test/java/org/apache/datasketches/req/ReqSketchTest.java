@@ -335,6 +335,43 @@ public class ReqSketchTest {
     println(sk.viewCompactorDetail(fmt, allData));
   }
 
+  @Test
+  public void checkBulkUpdate() {
+    checkBulkUpdateImpl(12, false);
+    checkBulkUpdateImpl(12, true);
+    checkBulkUpdateImpl(50, true);
+  }
+
+  private static void checkBulkUpdateImpl(final int k, final boolean hra) {
+    //the debug handler at level 0 seeds each compactor, so the two sketches compact alike
+    final ReqSketch sk1 = ReqSketch.builder().setK(k).setHighRankAccuracy(hra)
+        .setReqDebug(new ReqDebugImpl(0, "")).build();
+    final ReqSketch sk2 = ReqSketch.builder().setK(k).setHighRankAccuracy(hra)
+        .setReqDebug(new ReqDebugImpl(0, "")).build();
+    final float[] items = new float[100000];
+    for (int i = 0; i < items.length; i++) {
+      items[i] = i % 101 == 0 ? Float.NaN : (i * 7919) % items.length;
+    }
+    for (int i = 0; i < items.length; i++) {
+      sk1.update(items[i]);
+    }
+    for (int offset = 0; offset < items.length; offset += 777) {
+      sk2.update(items, offset, Math.min(777, items.length - offset));
+    }
+    assertEquals(sk2.getN(), sk1.getN());
+    assertEquals(sk2.getRetainedItems(), sk1.getRetainedItems());
+    assertEquals(sk2.getMinValue(), sk1.getMinValue());
+    assertEquals(sk2.getMaxValue(), sk1.getMaxValue());
+    assertEquals(sk2.toByteArray(), sk1.toByteArray());
+    sk2.update(items, 0, 0);
+    assertEquals(sk2.getN(), sk1.getN());
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void checkBulkUpdateBounds() {
+    ReqSketch.builder().build().update(new float[10], 5, 6);
+  }
+
   private static final void printf(final String format, final Object ...args) {
     System.out.printf(format, args);
   }
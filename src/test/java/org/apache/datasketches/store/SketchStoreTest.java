@@ -0,0 +1,216 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.datasketches.store;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+
+import org.apache.datasketches.Family;
+import org.apache.datasketches.SketchesArgumentException;
+import org.apache.datasketches.cpc.CpcSketch;
+import org.apache.datasketches.hll.HllSketch;
+import org.apache.datasketches.memory.Memory;
+import org.apache.datasketches.theta.Sketch;
+import org.apache.datasketches.theta.UpdateSketch;
+import org.testng.annotations.Test;
+
+public class SketchStoreTest {
+
+  @Test
+  public void checkMixedFamilies() throws IOException {
+    final File file = File.createTempFile("sketches", ".store");
+    file.deleteOnExit();
+    final int numKeys = 300;
+    final long[] keys = new long[numKeys];
+    final Random rand = new Random(1);
+    for (int i = 0; i < numKeys; i++) { keys[i] = rand.nextLong(); }
+
+    try (SketchStoreWriter writer = SketchStoreWriter.create(file)) {
+      for (int i = 0; i < numKeys; i++) {
+        switch (i % 4) {
+          case 0: writer.append(keys[i], thetaSketch(i)); break;
+          case 1: writer.append(keys[i], hllSketch(i)); break;
+          case 2: writer.append(keys[i], cpcSketch(i)); break;
+          default: writer.append(keys[i], new byte[i]); break;
+        }
+      }
+      assertEquals(writer.getNumSketches(), numKeys);
+    }
+
+    try (SketchStore store = SketchStore.open(file)) {
+      assertEquals(store.getNumSketches(), numKeys);
+      for (int i = 1; i < numKeys; i++) {
+        assertTrue(store.getKey(i - 1) < store.getKey(i));
+      }
+      for (int i = 0; i < numKeys; i++) {
+        assertTrue(store.contains(keys[i]));
+        switch (i % 4) {
+          case 0: {
+            assertEquals(store.getFamily(keys[i]), Family.COMPACT);
+            final Sketch sk = store.getThetaSketch(keys[i]);
+            if (i > 1) { assertTrue(sk.isDirect()); } //empty and single item sketches are heapified
+            assertEquals(sk.getEstimate(), thetaSketch(i).getEstimate());
+            break;
+          }
+          case 1: {
+            assertEquals(store.getFamily(keys[i]), Family.HLL);
+            assertEquals(store.getHllSketch(keys[i]).getEstimate(), hllSketch(i).getEstimate());
+            break;
+          }
+          case 2: {
+            assertEquals(store.getFamily(keys[i]), Family.CPC);
+            assertEquals(store.getCpcSketch(keys[i]).getEstimate(), cpcSketch(i).getEstimate());
+            break;
+          }
+          default: assertEquals(store.getMemory(keys[i]).getCapacity(), i); break;
+        }
+      }
+    }
+  }
+
+  @Test
+  public void checkMissingKey() throws IOException {
+    final File file = File.createTempFile("sketches", ".store");
+    file.deleteOnExit();
+    try (SketchStoreWriter writer = SketchStoreWriter.create(file)) {
+      writer.append(2, thetaSketch(10));
+      writer.append(4, hllSketch(10));
+    }
+    try (SketchStore store = SketchStore.open(file)) {
+      assertFalse(store.contains(3));
+      assertNull(store.getMemory(1));
+      assertNull(store.getFamily(3));
+      assertNull(store.getThetaSketch(5));
+      assertNull(store.getHllSketch(3));
+      assertNull(store.getCpcSketch(3));
+    }
+  }
+
+  @Test
+  public void checkEmptyStore() throws IOException {
+    final File file = File.createTempFile("sketches", ".store");
+    file.deleteOnExit();
+    SketchStoreWriter.create(file).close();
+    try (SketchStore store = SketchStore.open(file)) {
+      assertEquals(store.getNumSketches(), 0);
+      assertFalse(store.contains(0));
+    }
+  }
+
+  @Test
+  public void checkLargeImage() throws IOException {
+    final File file = File.createTempFile("sketches", ".store");
+    file.deleteOnExit();
+    final byte[] large = new byte[(1 << 17) + 3];
+    new Random(2).nextBytes(large);
+    try (SketchStoreWriter writer = SketchStoreWriter.create(file)) {
+      writer.append(1, new byte[5]);
+      writer.append(0, large);
+      writer.append(-1, new byte[7]);
+    }
+    try (SketchStore store = SketchStore.open(file)) {
+      final Memory mem = store.getMemory(0);
+      final byte[] out = new byte[large.length];
+      mem.getByteArray(0, out, 0, out.length);
+      assertEquals(out, large);
+      assertEquals(store.getMemory(-1).getCapacity(), 7);
+      assertEquals(store.getKey(0), -1);
+    }
+  }
+
+  @Test
+  public void checkWrap() throws IOException {
+    final File file = File.createTempFile("sketches", ".store");
+    file.deleteOnExit();
+    try (SketchStoreWriter writer = SketchStoreWriter.create(file)) {
+      writer.append(7, thetaSketch(1000));
+    }
+    final SketchStore store = SketchStore.wrap(Memory.wrap(Files.readAllBytes(file.toPath())));
+    assertEquals(store.getThetaSketch(7).getEstimate(), thetaSketch(1000).getEstimate());
+    store.close();
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void checkDuplicateKey() throws IOException {
+    final File file = File.createTempFile("sketches", ".store");
+    file.deleteOnExit();
+    try (SketchStoreWriter writer = SketchStoreWriter.create(file)) {
+      writer.append(3, new byte[8]);
+      writer.append(3, new byte[8]);
+    }
+  }
+
+  @Test
+  public void checkBadHeader() throws IOException {
+    final File file = File.createTempFile("sketches", ".store");
+    file.deleteOnExit();
+    try (SketchStoreWriter writer = SketchStoreWriter.create(file)) {
+      writer.append(3, new byte[8]);
+    }
+    final byte[] bytes = Files.readAllBytes(file.toPath());
+    checkWrapThrows(new byte[16]);
+    final byte[] badMagic = bytes.clone();
+    badMagic[0]++;
+    checkWrapThrows(badMagic);
+    final byte[] badSerVer = bytes.clone();
+    badSerVer[StoreLayout.SER_VER_INT]++;
+    checkWrapThrows(badSerVer);
+    final byte[] badNumSketches = bytes.clone();
+    badNumSketches[StoreLayout.NUM_SKETCHES_LONG]++;
+    checkWrapThrows(badNumSketches);
+  }
+
+  private static void checkWrapThrows(final byte[] bytes) {
+    try {
+      SketchStore.wrap(Memory.wrap(bytes));
+      fail();
+    } catch (final SketchesArgumentException e) {
+      //expected
+    }
+  }
+
+  private static Sketch thetaSketch(final int n) {
+    final UpdateSketch sk = UpdateSketch.builder().build();
+    for (int i = 0; i < n; i++) { sk.update(i); }
+    return sk;
+  }
+
+  private static HllSketch hllSketch(final int n) {
+    final HllSketch sk = new HllSketch(10);
+    for (int i = 0; i < n; i++) { sk.update(i); }
+    return sk;
+  }
+
+  private static CpcSketch cpcSketch(final int n) {
+    final CpcSketch sk = new CpcSketch(10);
+    for (int i = 0; i < n; i++) { sk.update(i); }
+    return sk;
+  }
+
+}
@@ -0,0 +1,191 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.datasketches.theta;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.datasketches.ResizeFactor;
+import org.apache.datasketches.SketchesArgumentException;
+import org.apache.datasketches.memory.Memory;
+import org.apache.datasketches.memory.WritableMemory;
+import org.testng.annotations.Test;
+
+@SuppressWarnings("javadoc")
+public class ConcurrentCasQuickSelectSketchTest {
+
+  @Test
+  public void checkSingleThreadMatchesDirectQuickSelect() {
+    final int k = 1 << 9;
+    final UpdateSketchBuilder bldr = UpdateSketch.builder().setNominalEntries(k)
+        .setResizeFactor(ResizeFactor.X1);
+    final UpdateSketch direct = bldr.build(WritableMemory.allocate(Sketch.getMaxUpdateSketchBytes(k)));
+    final UpdateSketch cas = bldr.buildSharedCas(null);
+    assertTrue(cas instanceof ConcurrentCasQuickSelectSketch);
+    assertTrue(cas.isEmpty());
+    for (int i = 0; i < 100_000; i++) {
+      direct.update(i);
+      cas.update(i);
+    }
+    assertFalse(cas.isEmpty());
+    assertEquals(cas.getRetainedEntries(true), direct.getRetainedEntries(true));
+    assertEquals(cas.getEstimate(), direct.getEstimate());
+    assertEquals(cas.compact().toByteArray(), direct.compact().toByteArray());
+    assertEquals(cas.toByteArray(), direct.toByteArray());
+
+    cas.rebuild();
+    direct.rebuild();
+    assertEquals(cas.getRetainedEntries(true), k);
+    assertEquals(cas.getEstimate(), direct.getEstimate());
+
+    //the image is a regular QuickSelect sketch
+    final Sketch heapified = Sketch.heapify(Memory.wrap(cas.toByteArray()));
+    assertEquals(heapified.getEstimate(), cas.getEstimate());
+
+    cas.reset();
+    assertTrue(cas.isEmpty());
+    assertEquals(cas.getRetainedEntries(true), 0);
+    assertEquals(cas.getEstimate(), 0.0);
+    cas.update(1);
+    assertEquals(cas.getEstimate(), 1.0);
+  }
+
+  @Test
+  public void checkConcurrentDuplicatesExact() throws Exception {
+    final int k = 1 << 12;
+    final int distinct = 3000; //stays in exact mode
+    final UpdateSketch cas = UpdateSketch.builder().setNominalEntries(k).buildSharedCas(null);
+    runThreads(8, t -> {
+      for (int i = 0; i < distinct; i++) { cas.update((i * 7 + t) % distinct); }
+    });
+    assertEquals(cas.getRetainedEntries(true), distinct);
+    assertEquals(cas.getEstimate(), distinct, 0.0);
+    assertEquals(cas.compact().getRetainedEntries(true), distinct);
+  }
+
+  @Test
+  public void checkConcurrentEstimationMode() throws Exception {
+    final int k = 1 << 10;
+    final int threads = 8;
+    final int perThread = 50_000;
+    final UpdateSketch cas = UpdateSketch.builder().setNominalEntries(k)
+        .buildSharedCas(WritableMemory.allocate(Sketch.getMaxUpdateSketchBytes(k)));
+    runThreads(threads, t -> {
+      final long[] batch = new long[perThread / 2];
+      for (int i = 0; i < batch.length; i++) { batch[i] = ((long) t * perThread) + i; }
+      cas.batchUpdate(batch, 0, batch.length);
+      for (int i = batch.length; i < perThread; i++) { cas.update(((long) t * perThread) + i); }
+    });
+    final double n = threads * perThread;
+    assertTrue(cas.isEstimationMode());
+    assertEquals(cas.getEstimate(), n, n * 0.1);
+    final int retained = cas.getRetainedEntries(true);
+    assertTrue((retained >= k) && (retained <= (2 * k)));
+    final CompactSketch csk = cas.compact();
+    assertEquals(csk.getRetainedEntries(true), retained);
+    assertEquals(csk.getEstimate(), cas.getEstimate());
+  }
+
+  @Test
+  public void checkCompactWhileUpdating() throws Exception {
+    final int k = 1 << 10;
+    final int distinct = 200_000;
+    final UpdateSketch cas = UpdateSketch.builder().setNominalEntries(k).buildSharedCas(null);
+    //thread 0 takes the table exclusively, over and over, while the others insert lock-free
+    runThreads(4, t -> {
+      if (t == 0) {
+        for (int i = 0; i < 200; i++) {
+          final CompactSketch csk = cas.compact();
+          final HashIterator it = csk.iterator();
+          int count = 0;
+          while (it.next()) {
+            assertTrue(it.get() < csk.getThetaLong());
+            count++;
+          }
+          assertEquals(count, csk.getRetainedEntries(true));
+        }
+      } else {
+        for (int i = 0; i < distinct; i++) { cas.update(i); }
+      }
+    });
+    final CompactSketch csk = cas.compact();
+    assertEquals(csk.getRetainedEntries(true), cas.getRetainedEntries(true));
+    assertEquals(cas.getEstimate(), distinct, distinct * 0.1);
+  }
+
+  @Test
+  public void checkIteratorIsSnapshot() throws Exception {
+    final int k = 1 << 10;
+    final UpdateSketch cas = UpdateSketch.builder().setNominalEntries(k).buildSharedCas(null);
+    for (int i = 0; i < 500; i++) { cas.update(i); }
+    final HashIterator it = cas.iterator();
+    for (int i = 500; i < 100_000; i++) { cas.update(i); } //rebuilds move the live entries
+    int count = 0;
+    while (it.next()) { count++; }
+    assertEquals(count, 500);
+
+    //iterate while the others insert lock-free
+    runThreads(4, t -> {
+      if (t == 0) {
+        for (int i = 0; i < 200; i++) {
+          final HashIterator itr = cas.iterator();
+          int n = 0;
+          while (itr.next()) { n++; }
+          assertTrue(n <= ((2 * k) + 1));
+          assertTrue(cas.getRetainedEntries(true) <= ((2 * k) + 1));
+        }
+      } else {
+        for (int i = 0; i < 200_000; i++) { cas.update(((long) t << 32) + i); }
+      }
+    });
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void checkMemoryTooSmall() {
+    UpdateSketch.builder().setNominalEntries(1 << 10).buildSharedCas(WritableMemory.allocate(1024));
+  }
+
+  private interface Worker {
+    void run(int threadIndex);
+  }
+
+  private static void runThreads(final int numThreads, final Worker worker) throws Exception {
+    final ExecutorService pool = Executors.newFixedThreadPool(numThreads);
+    try {
+      final List<Future<?>> futures = new ArrayList<>();
+      for (int t = 0; t < numThreads; t++) {
+        final int threadIndex = t;
+        futures.add(pool.submit(() -> worker.run(threadIndex)));
+      }
+      for (Future<?> f : futures) { f.get(); }
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+}
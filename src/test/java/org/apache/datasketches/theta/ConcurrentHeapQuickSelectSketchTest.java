@@ -741,7 +741,6 @@ public class ConcurrentHeapQuickSelectSketchTest {
     }
     ConcurrentSharedThetaSketch csts = (ConcurrentSharedThetaSketch)shared;
     csts.awaitBgPropagationTermination();
-    ConcurrentPropagationService.resetExecutorService(Thread.currentThread().getId());
     csts.initBgPropagationService();
   }
 
@@ -0,0 +1,110 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.datasketches.theta;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.datasketches.SketchesArgumentException;
+import org.apache.datasketches.memory.WritableMemory;
+import org.testng.annotations.Test;
+
+@SuppressWarnings("javadoc")
+public class ConcurrentPropagationServiceTest {
+
+  @Test
+  public void checkCallerSuppliedExecutor() {
+    final ExecutorService pool = Executors.newFixedThreadPool(4);
+    final AtomicInteger executed = new AtomicInteger();
+    try (ConcurrentPropagationService service = ConcurrentPropagationService.create(
+        r -> { executed.incrementAndGet(); pool.execute(r); })) {
+      checkPropagation(service, null);
+      checkPropagation(service, WritableMemory.allocate((4 << 9) << 3));
+      assertTrue(executed.get() > 0);
+      assertEquals(service.getQueueDepth(), 0);
+      assertTrue(service.getCompletedCount() > 0);
+      assertTrue(service.getMeanLatencyNanos() > 0);
+      assertTrue(service.getMaxLatencyNanos() >= service.getMeanLatencyNanos());
+    }
+    assertFalse(pool.isShutdown()); //the caller owns the executor
+    pool.shutdown();
+  }
+
+  @Test
+  public void checkOwnedThreadsAndClose() {
+    final ConcurrentPropagationService service = ConcurrentPropagationService.create(2);
+    final UpdateSketchBuilder bldr = new UpdateSketchBuilder().setPropagationService(service);
+    bldr.setLogNominalEntries(9);
+    final UpdateSketch shared = bldr.buildShared();
+    final UpdateSketch local = bldr.buildLocal(shared);
+    for (int i = 0; i < 10_000; i++) { local.update(i); }
+    service.close();
+    assertTrue(service.isClosed());
+    //propagation continues on the updating thread after the service is closed
+    final long completed = service.getCompletedCount();
+    for (int i = 10_000; i < 20_000; i++) { local.update(i); }
+    ((ConcurrentSharedThetaSketch) shared).awaitBgPropagationTermination();
+    assertTrue(service.getCompletedCount() > completed);
+    assertEquals(shared.getEstimate(), 20_000, 20_000 * 0.15);
+  }
+
+  @Test
+  public void checkDefaultService() {
+    final UpdateSketchBuilder bldr = new UpdateSketchBuilder();
+    assertEquals(bldr.getPropagationService(), null);
+    final ConcurrentPropagationService dflt = ConcurrentPropagationService.getDefaultService();
+    assertTrue(dflt == ConcurrentPropagationService.getDefaultService());
+    dflt.close();
+    final ConcurrentPropagationService dflt2 = ConcurrentPropagationService.getDefaultService();
+    assertFalse(dflt2.isClosed());
+    assertTrue(dflt != dflt2);
+    checkPropagation(null, null);
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void checkNullExecutor() {
+    ConcurrentPropagationService.create(null);
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void checkBadNumThreads() {
+    ConcurrentPropagationService.create(0);
+  }
+
+  private static void checkPropagation(final ConcurrentPropagationService service,
+      final WritableMemory wmem) {
+    final int lgK = 9;
+    final int n = 50_000;
+    final UpdateSketchBuilder bldr = new UpdateSketchBuilder().setPropagationService(service);
+    bldr.setLogNominalEntries(lgK);
+    final UpdateSketch shared = bldr.buildShared(wmem);
+    final UpdateSketch local = bldr.buildLocal(shared);
+    for (int i = 0; i < n; i++) { local.update(i); }
+    ((ConcurrentSharedThetaSketch) shared).awaitBgPropagationTermination();
+    assertEquals(shared.getEstimate(), n, n * 0.15);
+  }
+
+}
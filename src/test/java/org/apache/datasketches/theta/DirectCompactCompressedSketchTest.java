@@ -0,0 +1,184 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.datasketches.theta;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.apache.datasketches.SketchesArgumentException;
+import org.apache.datasketches.memory.Memory;
+import org.apache.datasketches.memory.WritableMemory;
+import org.testng.annotations.Test;
+
+@SuppressWarnings("javadoc")
+public class DirectCompactCompressedSketchTest {
+
+  @Test
+  public void checkRoundTrip() {
+    for (final int lgK : new int[] {4, 9, 12, 16}) {
+      for (final int n : new int[] {2, 3, 17, 1000, 100_000}) {
+        for (final float p : new float[] {1.0F, 0.1F}) {
+          final UpdateSketch usk = UpdateSketch.builder().setNominalEntries(1 << lgK).setP(p).build();
+          for (int i = 0; i < n; i++) { usk.update(i); }
+          final CompactSketch csk = usk.compact();
+          if (csk.getRetainedEntries(true) < 2) { continue; }
+          final byte[] bytes = csk.toByteArrayCompressed();
+          assertEquals(Sketch.getSerializationVersion(Memory.wrap(bytes)), 4);
+
+          final Sketch wrapped = Sketch.wrap(Memory.wrap(bytes));
+          assertTrue(wrapped instanceof DirectCompactCompressedSketch);
+          assertFalse(wrapped.hasMemory()); //not a SerVer 3 image
+          assertNull(wrapped.getMemory());
+          assertTrue(wrapped.isOrdered());
+          assertTrue(wrapped.isCompact());
+          assertFalse(wrapped.isEmpty());
+          assertEquals(wrapped.getRetainedEntries(true), csk.getRetainedEntries(true));
+          assertEquals(wrapped.getThetaLong(), csk.getThetaLong());
+          assertEquals(wrapped.getEstimate(), csk.getEstimate());
+          assertEquals(wrapped.getCurrentBytes(), bytes.length);
+          assertEquals(wrapped.getCompactBytes(), csk.getCompactBytes());
+          assertEquals(wrapped.getCache(), csk.getCache());
+          assertEquals(wrapped.toByteArray(), bytes);
+          assertEquals(((CompactSketch) wrapped).toByteArrayCompressed(), bytes);
+          assertEquals(wrapped.compact().toByteArray(), csk.toByteArray());
+
+          final Sketch heapified = Sketch.heapify(Memory.wrap(bytes));
+          assertFalse(heapified.hasMemory());
+          assertEquals(heapified.toByteArray(), csk.toByteArray());
+
+          final WritableMemory dstMem = WritableMemory.allocate(wrapped.getCompactBytes());
+          assertEquals(wrapped.compact(true, dstMem).toByteArray(), csk.toByteArray());
+          assertFalse(Sketch.toString(bytes).isEmpty());
+        }
+      }
+    }
+  }
+
+  @Test
+  public void checkWideDeltas() {
+    //few hashes spread over the whole range need more than 32 bits per delta
+    final UpdateSketch usk = UpdateSketch.builder().build();
+    usk.update(1);
+    usk.update(2);
+    usk.update(3);
+    final CompactSketch csk = usk.compact();
+    final byte[] bytes = csk.toByteArrayCompressed();
+    assertTrue(PreambleUtil.extractEntryBitsV4(Memory.wrap(bytes)) > 32);
+    assertEquals(Sketch.wrap(Memory.wrap(bytes)).getCache(), csk.getCache());
+  }
+
+  @Test
+  public void checkCompressionRatio() {
+    final UpdateSketch usk = UpdateSketch.builder().setNominalEntries(1 << 16).build();
+    for (int i = 0; i < 1_000_000; i++) { usk.update(i); }
+    final CompactSketch csk = usk.compact();
+    final int compressed = csk.toByteArrayCompressed().length;
+    assertTrue(compressed < (0.8 * csk.toByteArray().length));
+  }
+
+  @Test
+  public void checkNormalFormFallbacks() {
+    final CompactSketch empty = UpdateSketch.builder().build().compact();
+    assertEquals(empty.toByteArrayCompressed(), empty.toByteArray());
+    final UpdateSketch one = UpdateSketch.builder().build();
+    one.update(1);
+    assertEquals(one.compact().toByteArrayCompressed(), one.compact().toByteArray());
+    final UpdateSketch sampled = UpdateSketch.builder().setP(0.001F).build();
+    sampled.update(1);
+    final CompactSketch noEntries = sampled.compact();
+    assertEquals(noEntries.toByteArrayCompressed(), noEntries.toByteArray());
+  }
+
+  @Test
+  public void checkUnorderedAndDirectSources() {
+    final UpdateSketch usk = UpdateSketch.builder().setNominalEntries(512).build();
+    for (int i = 0; i < 10_000; i++) { usk.update(i); }
+    final byte[] expected = usk.compact().toByteArrayCompressed();
+    assertEquals(usk.compact(false, null).toByteArrayCompressed(), expected);
+    final CompactSketch direct = usk.compact(true, WritableMemory.allocate(usk.getCompactBytes()));
+    assertEquals(direct.toByteArrayCompressed(), expected);
+  }
+
+  @Test
+  public void checkSetOperations() {
+    final UpdateSketch a = UpdateSketch.builder().setNominalEntries(1024).build();
+    final UpdateSketch b = UpdateSketch.builder().setNominalEntries(4096).build();
+    for (int i = 0; i < 50_000; i++) { a.update(i); }
+    for (int i = 25_000; i < 30_000; i++) { b.update(i); }
+    final CompactSketch ca = a.compact();
+    final CompactSketch cb = b.compact();
+    final Memory ma = Memory.wrap(ca.toByteArrayCompressed());
+    final Memory mb = Memory.wrap(cb.toByteArrayCompressed());
+    final Sketch wa = Sketch.wrap(ma);
+    final Sketch wb = Sketch.wrap(mb);
+
+    final Union expectedUnion = SetOperation.builder().buildUnion();
+    expectedUnion.union(ca);
+    expectedUnion.union(cb);
+    final byte[] expected = expectedUnion.getResult().toByteArray();
+    Union union = SetOperation.builder().buildUnion();
+    union.union(wa);
+    union.union(wb);
+    assertEquals(union.getResult().toByteArray(), expected);
+    union = SetOperation.builder().buildUnion();
+    union.union(ma);
+    union.union(mb);
+    assertEquals(union.getResult().toByteArray(), expected);
+
+    final Intersection inter = SetOperation.builder().buildIntersection();
+    final byte[] expectedInter = inter.intersect(cb, ca).toByteArray();
+    assertEquals(inter.intersect(wb, wa).toByteArray(), expectedInter);
+    assertEquals(inter.intersect(cb, wa).toByteArray(), expectedInter);
+    assertEquals(inter.intersectAll(Arrays.asList(wb, wa)).toByteArray(), expectedInter);
+
+    final AnotB aNotB = SetOperation.builder().buildANotB();
+    assertEquals(aNotB.aNotB(wa, wb).toByteArray(), aNotB.aNotB(ca, cb).toByteArray());
+  }
+
+  @Test
+  public void checkSketchesStaticReaders() {
+    for (final int n : new int[] {2, 1000, 100_000}) { //exact, exact, estimating
+      final UpdateSketch usk = UpdateSketch.builder().setNominalEntries(4096).build();
+      for (int i = 0; i < n; i++) { usk.update(i); }
+      final CompactSketch csk = usk.compact();
+      final Memory mem = Memory.wrap(csk.toByteArrayCompressed());
+      assertEquals(Sketches.getSerializationVersion(mem), 4);
+      assertEquals(Sketches.getEstimate(mem), csk.getEstimate());
+      assertEquals(Sketches.getUpperBound(2, mem), csk.getUpperBound(2));
+      assertEquals(Sketches.getLowerBound(2, mem), csk.getLowerBound(2));
+      assertEquals(Sketches.getRetainedEntries(mem), csk.getRetainedEntries());
+      assertEquals(Sketches.getThetaLong(mem), csk.getThetaLong());
+      assertFalse(Sketches.getEmpty(mem));
+    }
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void checkSeedMismatch() {
+    final UpdateSketch usk = UpdateSketch.builder().build();
+    for (int i = 0; i < 10; i++) { usk.update(i); }
+    Sketch.wrap(Memory.wrap(usk.compact().toByteArrayCompressed()), 123);
+  }
+
+}
@@ -619,6 +619,64 @@ public class HeapQuickSelectSketchTest {
     assertEquals(hqss.getResizeFactor(), ResizeFactor.X2); // force-promote to X2
   }
 
+  @Test
+  public void checkIncrementalRebuild() {
+    int k = 4096;
+    int u = 200000;
+    UpdateSketch inc = UpdateSketch.builder().setNominalEntries(k).setIncrementalRebuild(true).build();
+    for (int i = 0; i < u; i++) { inc.update(i); }
+    assertEquals(inc.getEstimate(), u, u * 0.05);
+    int retained = inc.getRetainedEntries(true);
+    assertTrue((retained > (k * 0.8)) && (retained < (2 * k)));
+
+    CompactSketch csk = inc.compact();
+    assertEquals(csk.getRetainedEntries(true), retained);
+    long[] cache = csk.getCache();
+    for (int i = 1; i < cache.length; i++) {
+      assertTrue(cache[i - 1] < cache[i]);
+    }
+    assertTrue(cache[cache.length - 1] < inc.getThetaLong());
+    inc.rebuild();
+    assertEquals(inc.getRetainedEntries(true), k);
+  }
+
+  @Test
+  public void checkIncrementalRebuildDuplicates() {
+    int k = 4096;
+    UpdateSketch inc = UpdateSketch.builder().setNominalEntries(k).setIncrementalRebuild(true).build();
+    int n = 0;
+    while (inc.update(n) != UpdateReturnState.InsertedCountIncrementedRebuilt) { n++; }
+    //the rebuild is pending: every earlier item must be found in the old or the new hash table
+    for (int i = 0; i <= n; i++) {
+      UpdateReturnState state = inc.update(i);
+      assertTrue((state == UpdateReturnState.RejectedDuplicate)
+          || (state == UpdateReturnState.RejectedOverTheta), state.toString());
+    }
+  }
+
+  @Test
+  public void checkIncrementalRebuildSerialization() {
+    int k = 4096;
+    UpdateSketch inc = UpdateSketch.builder().setNominalEntries(k).setIncrementalRebuild(true).build();
+    int n = 0;
+    while (inc.update(n++) != UpdateReturnState.InsertedCountIncrementedRebuilt) { }
+    for (int i = 0; i < 100; i++) { inc.update(n++); } //the rebuild is still pending
+    byte[] bytes = inc.toByteArray();
+    Sketch sk = Sketch.heapify(Memory.wrap(bytes));
+    assertEquals(sk.getEstimate(), inc.getEstimate());
+    assertEquals(sk.getRetainedEntries(true), inc.getRetainedEntries(true));
+    assertEquals(sk.getThetaLong(), inc.getThetaLong());
+
+    inc.reset();
+    assertTrue(inc.isEmpty());
+    assertEquals(inc.getRetainedEntries(true), 0);
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void checkIncrementalRebuildDirect() {
+    UpdateSketch.builder().setIncrementalRebuild(true).build(WritableMemory.allocate(1 << 16));
+  }
+
   private static void tryBadMem(WritableMemory mem, int byteOffset, int byteValue) {
     try {
       mem.putByte(byteOffset, (byte) byteValue); //Corrupt
@@ -0,0 +1,147 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.datasketches.theta;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.datasketches.SketchesArgumentException;
+import org.apache.datasketches.SketchesReadOnlyException;
+import org.apache.datasketches.memory.Memory;
+import org.apache.datasketches.memory.WritableMemory;
+import org.testng.annotations.Test;
+
+@SuppressWarnings("javadoc")
+public class OrderedIntersectionTest {
+
+  @Test
+  public void checkMatchesSequentialIntersection() {
+    final Random rand = new Random(1);
+    for (int trial = 0; trial < 200; trial++) {
+      final int numIn = 1 + rand.nextInt(6);
+      final List<Sketch> sketches = new ArrayList<>();
+      for (int s = 0; s < numIn; s++) {
+        //one large dimension and small filters, with exact and estimating sketches
+        final int n = (s == 0) ? 1 + rand.nextInt(100_000) : 1 + rand.nextInt(3000);
+        final int lgK = 8 + rand.nextInt(6);
+        final UpdateSketch sk = UpdateSketch.builder().setNominalEntries(1 << lgK).build();
+        final int start = rand.nextInt(2000);
+        for (int i = start; i < (start + n); i++) { sk.update(i); }
+        sketches.add(rand.nextBoolean()
+            ? sk.compact(true, null)
+            : Sketch.wrap(Memory.wrap(sk.compact(true, null).toByteArray())));
+      }
+      checkAgainstSequential(sketches);
+    }
+  }
+
+  @Test
+  public void checkSpecialSketches() {
+    final UpdateSketch a = UpdateSketch.builder().build();
+    final UpdateSketch b = UpdateSketch.builder().build();
+    for (int i = 0; i < 1000; i++) { a.update(i); }
+    for (int i = 1000; i < 2000; i++) { b.update(i); }
+    final UpdateSketch c = UpdateSketch.builder().setNominalEntries(16).build();
+    for (int i = 0; i < 5000; i++) { c.update(i); }
+    final UpdateSketch sampled = UpdateSketch.builder().setP(0.001F).build();
+    sampled.update(1); //not empty, no entries, theta < 1.0
+    final UpdateSketch one = UpdateSketch.builder().build();
+    one.update(7);
+    final CompactSketch empty = UpdateSketch.builder().build().compact();
+
+    //exact sketches with no common hashes make the intersection empty, even if estimating
+    // sketches follow
+    checkAgainstSequential(Arrays.asList(a.compact(), b.compact(), c.compact()));
+    assertTrue(SetOperation.builder().buildIntersection()
+        .intersectAll(Arrays.asList(a.compact(), b.compact(), c.compact())).isEmpty());
+    checkAgainstSequential(Arrays.asList(c.compact(), a.compact(), b.compact()));
+    checkAgainstSequential(Arrays.asList(a.compact(), b.compact()));
+    checkAgainstSequential(Arrays.asList(a.compact(), sampled.compact(), b.compact()));
+    checkAgainstSequential(Arrays.asList(a.compact(), one.compact()));
+    checkAgainstSequential(Arrays.asList(one.compact(), c.compact()));
+    checkAgainstSequential(Arrays.asList(a.compact(), empty, c.compact()));
+    checkAgainstSequential(Collections.singletonList(c.compact()));
+    checkAgainstSequential(Collections.singletonList((Sketch) sampled.compact()));
+    //not all ordered
+    checkAgainstSequential(Arrays.asList(a.compact(), c, b.compact(false, null)));
+  }
+
+  @Test
+  public void checkDstMemory() {
+    final UpdateSketch a = UpdateSketch.builder().build();
+    final UpdateSketch b = UpdateSketch.builder().build();
+    for (int i = 0; i < 4000; i++) { a.update(i); }
+    for (int i = 1000; i < 2000; i++) { b.update(i); }
+    final List<Sketch> sketches = Arrays.asList(a.compact(), b.compact());
+    final Intersection inter = SetOperation.builder().buildIntersection();
+    final WritableMemory dstMem = WritableMemory.allocate(Sketch.getMaxCompactSketchBytes(1000));
+    final CompactSketch csk = inter.intersectAll(sketches, false, dstMem);
+    assertTrue(csk.hasMemory());
+    assertEquals(csk.getRetainedEntries(true), 1000);
+    assertEquals(csk.getEstimate(), inter.intersectAll(sketches).getEstimate());
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void checkSeedMismatch() {
+    final UpdateSketch a = UpdateSketch.builder().build();
+    final UpdateSketch b = UpdateSketch.builder().setSeed(123).build();
+    a.update(1);
+    b.update(1);
+    SetOperation.builder().buildIntersection().intersectAll(Arrays.asList(a.compact(), b.compact()));
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void checkNullSketch() {
+    SetOperation.builder().buildIntersection().intersectAll(Arrays.asList((Sketch) null));
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void checkNoSketches() {
+    SetOperation.builder().buildIntersection().intersectAll(Collections.<Sketch>emptyList());
+  }
+
+  @Test(expectedExceptions = SketchesReadOnlyException.class)
+  public void checkReadOnly() {
+    final Intersection inter =
+        SetOperation.builder().buildIntersection(WritableMemory.allocate(1 << 12));
+    final Intersection wrapped =
+        (Intersection) SetOperation.wrap(Memory.wrap(inter.toByteArray()));
+    wrapped.intersectAll(Collections.singletonList(UpdateSketch.builder().build().compact()));
+  }
+
+  private static void checkAgainstSequential(final List<? extends Sketch> sketches) {
+    final Intersection seq = SetOperation.builder().buildIntersection();
+    for (final Sketch sk : sketches) { seq.intersect(sk); }
+    final CompactSketch expected = seq.getResult();
+    final Intersection inter = SetOperation.builder().buildIntersection();
+    final CompactSketch actual = inter.intersectAll(sketches);
+    assertEquals(actual.toByteArray(), expected.toByteArray());
+    assertFalse(inter.hasResult());
+  }
+
+}
@@ -26,6 +26,13 @@ import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertTrue;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
 import org.apache.datasketches.SketchesArgumentException;
 import org.apache.datasketches.Util;
 import org.apache.datasketches.memory.Memory;
@@ -266,6 +273,95 @@ public class UnionImplTest {
     //println(csk.toString(true, true, 1, true));
   }
 
+  @Test
+  public void checkUnionAllMatchesSequentialUnion() {
+    final int lgK = 9;
+    final List<Sketch> sketches = mixedSketches(3000, lgK, DEFAULT_UPDATE_SEED);
+    final ForkJoinPool pool = new ForkJoinPool(4);
+    try {
+      for (final float p : new float[] {1.0F, 0.5F}) {
+        final SetOperationBuilder bldr = SetOperation.builder().setNominalEntries(1 << lgK).setP(p);
+        final Union seq = bldr.buildUnion();
+        for (final Sketch sk : sketches) { seq.union(sk); }
+
+        final Union par = bldr.buildUnion();
+        par.unionAll(sketches, pool);
+        assertEquals(par.getResult().toByteArray(), seq.getResult().toByteArray());
+
+        final Union parDirect = bldr.buildUnion(WritableMemory.allocate(
+            SetOperation.getMaxUnionBytes(1 << lgK)));
+        parDirect.unionAll(sketches, null);
+        assertEquals(parDirect.getResult().toByteArray(), seq.getResult().toByteArray());
+      }
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  @Test
+  public void checkUnionAllWithPriorState() {
+    final int lgK = 10;
+    final List<Sketch> sketches = mixedSketches(1000, lgK, DEFAULT_UPDATE_SEED);
+    final Union seq = SetOperation.builder().setNominalEntries(1 << lgK).buildUnion();
+    final Union par = SetOperation.builder().setNominalEntries(1 << lgK).buildUnion();
+    for (int i = 0; i < 5000; i++) {
+      seq.update(-i - 1L);
+      par.update(-i - 1L);
+    }
+    for (final Sketch sk : sketches) { seq.union(sk); }
+    par.unionAll(sketches, ForkJoinPool.commonPool());
+    assertEquals(par.getResult().toByteArray(), seq.getResult().toByteArray());
+  }
+
+  @Test
+  public void checkUnionAllSmallAndEmptyCollections() {
+    final Union union = SetOperation.builder().buildUnion();
+    union.unionAll(null, null);
+    union.unionAll(Collections.<Sketch>emptyList(), null);
+    union.unionAll(Arrays.asList((Sketch) null, UpdateSketch.builder().build()), null);
+    assertTrue(union.getResult().isEmpty());
+
+    final List<Sketch> sketches = mixedSketches(10, 12, DEFAULT_UPDATE_SEED);
+    final Union seq = SetOperation.builder().buildUnion();
+    for (final Sketch sk : sketches) { seq.union(sk); }
+    union.unionAll(sketches, null);
+    assertEquals(union.getResult().toByteArray(), seq.getResult().toByteArray());
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void checkUnionAllSeedMismatch() {
+    final List<Sketch> sketches = mixedSketches(500, 8, DEFAULT_UPDATE_SEED);
+    final UpdateSketch other = UpdateSketch.builder().setSeed(123).build();
+    other.update(1);
+    sketches.add(250, other.compact());
+    SetOperation.builder().buildUnion().unionAll(sketches, ForkJoinPool.commonPool());
+  }
+
+  //Overlapping sketches of all forms accepted by union(Sketch), including nulls and empties
+  private static List<Sketch> mixedSketches(final int num, final int lgK, final long seed) {
+    final Random rand = new Random(num);
+    final List<Sketch> sketches = new ArrayList<>(num);
+    for (int s = 0; s < num; s++) {
+      final UpdateSketch sk = UpdateSketch.builder().setNominalEntries(1 << lgK).setSeed(seed).build();
+      final int n = rand.nextInt(4 << lgK);
+      final long start = rand.nextInt(100 << lgK);
+      for (long i = start; i < (start + n); i++) { sk.update(i); }
+      switch (s % 6) {
+        case 0: sketches.add(sk.compact(true, null)); break;
+        case 1: sketches.add(sk.compact(false, null)); break;
+        case 2: sketches.add(Sketch.wrap(Memory.wrap(sk.compact().toByteArray()), seed)); break;
+        case 3: sketches.add(sk); break;
+        case 4: sketches.add((s % 12) == 4 ? null : UpdateSketch.builder().setSeed(seed).build()); break;
+        default: {
+          final UpdateSketch one = UpdateSketch.builder().setSeed(seed).build();
+          one.update(start);
+          sketches.add(one.compact());
+        }
+      }
+    }
+    return sketches;
+  }
+
   @Test
   public void printlnTest() {
     println("PRINTING: "+this.getClass().getName());
@@ -20,6 +20,7 @@
 package org.apache.datasketches.theta;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.apache.datasketches.AllocationTestUtil.minAllocatedBytes;
 import static org.apache.datasketches.Util.DEFAULT_UPDATE_SEED;
 import static org.apache.datasketches.theta.PreambleUtil.PREAMBLE_LONGS_BYTE;
 import static org.apache.datasketches.theta.PreambleUtil.SER_VER_BYTE;
@@ -31,11 +32,17 @@ import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertTrue;
 import static org.testng.Assert.fail;
 
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.apache.datasketches.AllocationTestUtil.AllTypesUpdater;
 import org.apache.datasketches.Family;
 import org.apache.datasketches.ResizeFactor;
 import org.apache.datasketches.SketchesArgumentException;
+import org.apache.datasketches.SketchesReadOnlyException;
 import org.apache.datasketches.Util;
 import org.apache.datasketches.memory.DefaultMemoryRequestServer;
+import org.apache.datasketches.memory.Memory;
 import org.apache.datasketches.memory.MemoryRequestServer;
 import org.apache.datasketches.memory.WritableMemory;
 import org.testng.annotations.Test;
@@ -223,6 +230,137 @@ public class UpdateSketchTest {
     assertTrue(cskwmem1.equals(cskwmem3));
   }
 
+  @Test
+  public void checkUpdateMemoryAndByteBufferRegions() {
+    final byte[] bytes = new byte[1000];
+    new Random(1).nextBytes(bytes);
+    final Memory mem = Memory.wrap(bytes);
+    final ByteBuffer buf = ByteBuffer.allocateDirect(bytes.length);
+    buf.put(bytes);
+    final UpdateSketch sk1 = UpdateSketch.builder().build();
+    final UpdateSketch sk2 = UpdateSketch.builder().build();
+    final UpdateSketch sk3 = UpdateSketch.builder().build();
+    for (int offset = 0; offset < 900; offset++) {
+      final int length = 1 + (offset % 40);
+      final byte[] key = new byte[length];
+      System.arraycopy(bytes, offset, key, 0, length);
+      sk1.update(key);
+      sk2.update(mem, offset, length);
+      sk3.update(buf, offset, length);
+    }
+    sk2.update(mem, 0, 0); //empty regions are ignored
+    sk3.update(buf, 0, 0);
+    assertEquals(sk2.compact().toByteArray(), sk1.compact().toByteArray());
+    assertEquals(sk3.compact().toByteArray(), sk1.compact().toByteArray());
+  }
+
+  @Test
+  public void checkUpdateDoesNotAllocate() {
+    final UpdateSketchBuilder bldr = UpdateSketch.builder().setNominalEntries(1 << 10);
+    final UpdateSketch[] sketches = {
+        bldr.build(),
+        bldr.build(WritableMemory.allocate(Sketch.getMaxUpdateSketchBytes(1 << 10)))
+    };
+    for (UpdateSketch sk : sketches) {
+      final AllTypesUpdater updater = allTypesUpdater(sk);
+      updater.run(); //reaches estimation mode and lowers theta
+      final long thetaLong = sk.getThetaLong();
+      final long bytes = minAllocatedBytes(updater);
+      assertTrue(bytes < 1024, sk.getClass().getSimpleName() + " allocated " + bytes + " bytes");
+      //repeated hashes are duplicates or over theta, so the measured passes caused no rebuild
+      assertTrue(sk.isEstimationMode());
+      assertEquals(sk.getThetaLong(), thetaLong);
+    }
+  }
+
+  private static AllTypesUpdater allTypesUpdater(final UpdateSketch sk) {
+    return new AllTypesUpdater(10_000) {
+      @Override protected void update(final long datum) { sk.update(datum); }
+      @Override protected void update(final double datum) { sk.update(datum); }
+      @Override protected void update(final long[] data) { sk.update(data); }
+      @Override protected void update(final int[] data) { sk.update(data); }
+      @Override protected void update(final char[] data) { sk.update(data); }
+      @Override protected void update(final byte[] data) { sk.update(data); }
+      @Override protected void update(final Memory mem, final long offsetBytes, final long lengthBytes) {
+        sk.update(mem, offsetBytes, lengthBytes);
+      }
+      @Override protected void update(final ByteBuffer buf, final int offset, final int length) {
+        sk.update(buf, offset, length);
+      }
+      @Override protected void update(final CharSequence datum) { sk.update(datum); }
+    };
+  }
+
+  @Test
+  public void checkBatchUpdateMatchesItemUpdates() {
+    final int k = 512;
+    final int[] lengths = {0, 1, 100, 1024, 5000, 50_000};
+    final float[] pValues = {1.0f, 0.5f};
+    final Family[] families = {Family.QUICKSELECT, Family.ALPHA};
+    for (Family family : families) {
+      for (float p : pValues) {
+        for (int len : lengths) {
+          final int offset = 5;
+          final long[] longs = new long[offset + len];
+          final int[] ints = new int[offset + len];
+          final double[] doubles = new double[offset + len];
+          for (int i = 0; i < longs.length; i++) {
+            longs[i] = i;
+            ints[i] = i / 2; //half of the ints duplicate the longs
+            doubles[i] = (i % 7 == 0) ? -0.0 : i;
+          }
+          final WritableMemory mem = WritableMemory.allocate(longs.length << 3);
+          mem.putLongArray(0, longs, 0, longs.length);
+          final UpdateSketchBuilder bldr = UpdateSketch.builder().setFamily(family)
+              .setNominalEntries(k).setP(p);
+
+          final UpdateSketch itemSk = bldr.build();
+          int itemInserted = 0;
+          for (int i = offset; i < longs.length; i++) { itemInserted += inserted(itemSk.update(longs[i])); }
+          for (int i = offset; i < longs.length; i++) { itemInserted += inserted(itemSk.update(ints[i])); }
+          for (int i = offset; i < longs.length; i++) { itemInserted += inserted(itemSk.update(doubles[i])); }
+
+          final UpdateSketch batchSk = bldr.build();
+          int batchInserted = batchSk.batchUpdate(longs, offset, len);
+          batchInserted += batchSk.batchUpdate(ints, offset, len);
+          batchInserted += batchSk.batchUpdate(doubles, offset, len);
+          assertEquals(batchInserted, itemInserted);
+          assertEquals(batchSk.isEmpty(), itemSk.isEmpty());
+          assertEquals(batchSk.compact().toByteArray(), itemSk.compact().toByteArray());
+
+          if (family == Family.QUICKSELECT) {
+            final UpdateSketch directSk = bldr.build(
+                WritableMemory.allocate(Sketch.getMaxUpdateSketchBytes(k)));
+            directSk.batchUpdate(mem, (long) offset << 3, len);
+            directSk.batchUpdate(ints, offset, len);
+            directSk.batchUpdate(doubles, offset, len);
+            assertEquals(directSk.compact().toByteArray(), itemSk.compact().toByteArray());
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  public void checkBatchUpdateReadOnly() {
+    final UpdateSketch sk = UpdateSketch.builder().setNominalEntries(16).build();
+    sk.batchUpdate(new long[] {1, 2, 3}, 0, 3);
+    final UpdateSketch roSk = (UpdateSketch) Sketch.wrap(Memory.wrap(sk.toByteArray()));
+    assertEquals(roSk.batchUpdate(new long[0], 0, 0), 0);
+    try {
+      roSk.batchUpdate(new long[] {4, 5}, 0, 2);
+      fail();
+    } catch (final SketchesReadOnlyException e) { } //expected
+    try {
+      sk.batchUpdate(new long[4], 1, 4);
+      fail();
+    } catch (final IllegalArgumentException e) { } //expected
+  }
+
+  private static int inserted(final UpdateReturnState state) {
+    return state.name().startsWith("Rejected") ? 0 : 1;
+  }
+
   @Test
   public void printlnTest() {
     println("PRINTING: "+this.getClass().getName());
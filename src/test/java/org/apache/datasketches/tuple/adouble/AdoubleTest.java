@@ -21,6 +21,8 @@ package org.apache.datasketches.tuple.adouble;
 
 import static org.testng.Assert.assertEquals;
 
+import java.nio.ByteBuffer;
+
 import org.apache.datasketches.ResizeFactor;
 import org.apache.datasketches.SketchesArgumentException;
 import org.apache.datasketches.memory.Memory;
@@ -54,6 +56,27 @@ public class AdoubleTest {
     Assert.assertFalse(it.next());
   }
 
+  @Test
+  public void checkUpdateMemoryAndByteBufferKeys() {
+    final byte[] bytes = new byte[200];
+    for (int i = 0; i < bytes.length; i++) { bytes[i] = (byte) (i * 7); }
+    final Memory mem = Memory.wrap(bytes);
+    final ByteBuffer buf = ByteBuffer.wrap(bytes);
+    final DoubleSketch sk1 = new DoubleSketch(12, mode);
+    final DoubleSketch sk2 = new DoubleSketch(12, mode);
+    final DoubleSketch sk3 = new DoubleSketch(12, mode);
+    for (int offset = 0; offset < 150; offset++) {
+      final int length = 1 + (offset % 40);
+      final byte[] key = new byte[length];
+      System.arraycopy(bytes, offset, key, 0, length);
+      sk1.update(key, (double) offset);
+      sk2.update(mem, offset, length, (double) offset);
+      sk3.update(buf, offset, length, (double) offset);
+    }
+    assertEquals(sk2.toByteArray(), sk1.toByteArray());
+    assertEquals(sk3.toByteArray(), sk1.toByteArray());
+  }
+
   @Test
   public void checkLowK() {
     final UpdatableSketchBuilder<Double, DoubleSummary> bldr = new UpdatableSketchBuilder<>(